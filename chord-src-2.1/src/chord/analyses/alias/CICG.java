@@ -5,7 +5,8 @@ import java.util.Set;
 import joeq.Class.jq_Method;
 import joeq.Compiler.Quad.Quad;
 
-import chord.bddbddb.Rel.RelView;
+import chord.bddbddb.Dom;
+import chord.bddbddb.RelIndex;
 import chord.analyses.method.DomM;
 import chord.project.analyses.ProgramRel;
 import chord.util.SetUtils;
@@ -19,6 +20,12 @@ import joeq.Compiler.Quad.Operator.Invoke;
 
 /**
  * Implementation of a context-insensitive call graph.
+ * <p>
+ * Point queries on call graph edges are answered using forward and backward
+ * indexes of relations <tt>IM</tt> and <tt>MM</tt> that are built lazily,
+ * upon the first such query in the respective direction, and are reclaimed
+ * by {@link #free()}.  Building indexes and loading relations is
+ * synchronized, so a call graph may be queried from several threads.
  * 
  * @author Mayur Naik (mhn@cs.stanford.edu)
  */
@@ -28,6 +35,7 @@ public class CICG extends AbstractGraph<jq_Method> implements ICICG {
     private ProgramRel relReachableM;
     private ProgramRel relIM;
     private ProgramRel relMM;
+    private RelIndex imByI, imByM, mmBySrc, mmByDst;
     public CICG(DomM domM, ProgramRel relRootM, ProgramRel relReachableM,
             ProgramRel relIM, ProgramRel relMM) {
         this.domM = domM;
@@ -36,34 +44,53 @@ public class CICG extends AbstractGraph<jq_Method> implements ICICG {
         this.relIM = relIM;
         this.relMM = relMM;
     }
+    private synchronized RelIndex getIMIndex(boolean forward) {
+        if (forward ? imByI == null : imByM == null) {
+            if (!relIM.isOpen())
+                relIM.load();
+            if (forward)
+                imByI = new RelIndex(relIM, 0, 1);
+            else
+                imByM = new RelIndex(relIM, 1, 0);
+        }
+        return forward ? imByI : imByM;
+    }
+    private synchronized RelIndex getMMIndex(boolean forward) {
+        if (forward ? mmBySrc == null : mmByDst == null) {
+            if (!relMM.isOpen())
+                relMM.load();
+            if (forward)
+                mmBySrc = new RelIndex(relMM, 0, 1);
+            else
+                mmByDst = new RelIndex(relMM, 1, 0);
+        }
+        return forward ? mmBySrc : mmByDst;
+    }
     public Set<Quad> getCallers(jq_Method meth) {
-        if (!relIM.isOpen())
-            relIM.load();
-        RelView view = relIM.getView();
-        view.selectAndDelete(1, meth);
-        Iterable<Quad> res = view.getAry1ValTuples();
-        Set<Quad> invks = SetUtils.newSet(view.size());
-        for (Quad invk : res)
-            invks.add(invk);
+        RelIndex index = getIMIndex(false);
+        Dom<?> domI = relIM.getDoms()[0];
+        int mIdx = domM.indexOf(meth);
+        int lo = index.begin(mIdx), hi = index.end(mIdx);
+        Set<Quad> invks = SetUtils.newSet(hi - lo);
+        for (int pos = lo; pos < hi; pos++)
+            invks.add((Quad) domI.get(index.get(pos, 0)));
         return invks;
     }
     public Set<jq_Method> getTargets(Quad invk) {
-        if (!relIM.isOpen())
-            relIM.load();
-        RelView view = relIM.getView();
-        view.selectAndDelete(0, invk);
-        Iterable<jq_Method> res = view.getAry1ValTuples();
-        Set<jq_Method> meths = SetUtils.newSet(view.size());
-        for (jq_Method meth : res)
-            meths.add(meth);
+        RelIndex index = getIMIndex(true);
+        int iIdx = relIM.getDoms()[0].indexOf(invk);
+        int lo = index.begin(iIdx), hi = index.end(iIdx);
+        Set<jq_Method> meths = SetUtils.newSet(hi - lo);
+        for (int pos = lo; pos < hi; pos++)
+            meths.add(domM.get(index.get(pos, 1)));
         return meths;
     }
-    public int numRoots() {
+    public synchronized int numRoots() {
         if (!relRootM.isOpen())
             relRootM.load();
         return relRootM.size();
     }
-    public int numNodes() {
+    public synchronized int numNodes() {
         if (!relReachableM.isOpen())
             relReachableM.load();
         return relReachableM.size();
@@ -74,33 +101,35 @@ public class CICG extends AbstractGraph<jq_Method> implements ICICG {
     public int numSuccs(jq_Method node) {
         throw new UnsupportedOperationException();
     }
-    public Set<jq_Method> getRoots() {
+    public synchronized Set<jq_Method> getRoots() {
         if (!relRootM.isOpen())
             relRootM.load();
         Iterable<jq_Method> res = relRootM.getAry1ValTuples();
         return SetUtils.iterableToSet(res, relRootM.size());
     }
-    public Set<jq_Method> getNodes() {
+    public synchronized Set<jq_Method> getNodes() {
         if (!relReachableM.isOpen())
             relReachableM.load();
         Iterable<jq_Method> res = relReachableM.getAry1ValTuples();
         return SetUtils.iterableToSet(res, relReachableM.size());
     }
     public Set<jq_Method> getPreds(jq_Method meth) {
-        if (!relMM.isOpen())
-            relMM.load();
-        RelView view = relMM.getView();
-        view.selectAndDelete(1, meth);
-        Iterable<jq_Method> res = view.getAry1ValTuples();
-        return SetUtils.iterableToSet(res, view.size());
+        RelIndex index = getMMIndex(false);
+        int mIdx = domM.indexOf(meth);
+        int lo = index.begin(mIdx), hi = index.end(mIdx);
+        Set<jq_Method> meths = SetUtils.newSet(hi - lo);
+        for (int pos = lo; pos < hi; pos++)
+            meths.add(domM.get(index.get(pos, 0)));
+        return meths;
     }
     public Set<jq_Method> getSuccs(jq_Method meth) {
-        if (!relMM.isOpen())
-            relMM.load();
-        RelView view = relMM.getView();
-        view.selectAndDelete(0, meth);
-        Iterable<jq_Method> res = view.getAry1ValTuples();
-        return SetUtils.iterableToSet(res, view.size());
+        RelIndex index = getMMIndex(true);
+        int mIdx = domM.indexOf(meth);
+        int lo = index.begin(mIdx), hi = index.end(mIdx);
+        Set<jq_Method> meths = SetUtils.newSet(hi - lo);
+        for (int pos = lo; pos < hi; pos++)
+            meths.add(domM.get(index.get(pos, 1)));
+        return meths;
     }
     public Set<Quad> getLabels(jq_Method srcMeth, jq_Method dstMeth) {
         Set<Quad> invks = new ArraySet<Quad>();
@@ -115,30 +144,37 @@ public class CICG extends AbstractGraph<jq_Method> implements ICICG {
         return invks;
     }
     public boolean calls(Quad invk, jq_Method meth) {
-        if (!relIM.isOpen())
-            relIM.load();
-        return relIM.contains(invk, meth);
+        RelIndex index = getIMIndex(true);
+        int iIdx = relIM.getDoms()[0].indexOf(invk);
+        int mIdx = domM.indexOf(meth);
+        return index.begin(iIdx, mIdx) < index.end(iIdx, mIdx);
     }
     public boolean hasRoot(jq_Method meth) {
         return domM.indexOf(meth) == 0;
     }
-    public boolean hasNode(jq_Method meth) {
+    public synchronized boolean hasNode(jq_Method meth) {
         if (!relReachableM.isOpen())
             relReachableM.load();
         return relReachableM.contains(meth);
     }
     public boolean hasEdge(jq_Method meth1, jq_Method meth2) {
-        if (!relMM.isOpen())
-            relMM.load();
-        return relMM.contains(meth1, meth2);
+        RelIndex index = getMMIndex(true);
+        int mIdx1 = domM.indexOf(meth1);
+        int mIdx2 = domM.indexOf(meth2);
+        return index.begin(mIdx1, mIdx2) < index.end(mIdx1, mIdx2);
     }
     /**
-     * Frees relations used by this call graph if they are in memory.
+     * Frees relations and indexes used by this call graph if they are in
+     * memory.
      * <p>
      * This method must be called after clients are done exercising
      * the interface of this call graph.
      */
-    public void free() {
+    public synchronized void free() {
+        imByI = null;
+        imByM = null;
+        mmBySrc = null;
+        mmByDst = null;
         if (relRootM.isOpen())
             relRootM.close();
         if (relReachableM.isOpen())
@@ -10,7 +10,8 @@ import joeq.Compiler.Quad.Quad;
 import joeq.Compiler.Quad.Operator.Invoke;
 
 import chord.util.ArraySet;
-import chord.bddbddb.Rel.RelView;
+import chord.bddbddb.Dom;
+import chord.bddbddb.RelIndex;
 import chord.analyses.method.DomM;
 import chord.project.analyses.ProgramRel;
 import chord.util.SetUtils;
@@ -19,6 +20,13 @@ import chord.util.tuple.object.Pair;
 
 /**
  * Implementation of a context-sensitive call graph.
+ * <p>
+ * Point queries on call graph nodes and edges are answered using forward
+ * and backward indexes of relations <tt>reachableCM</tt>, <tt>CICM</tt> and
+ * <tt>CMCM</tt> that are built lazily, upon the first such query in the
+ * respective direction, and are reclaimed by {@link #free()}.  Building
+ * indexes and loading relations is synchronized, so a call graph may be
+ * queried from several threads.
  * 
  * @author Mayur Naik (mhn@cs.stanford.edu)
  */
@@ -28,6 +36,7 @@ public class CSCG extends AbstractGraph<Pair<Ctxt, jq_Method>> implements ICSCG
     protected ProgramRel relReachableCM;
     protected ProgramRel relCICM;
     protected ProgramRel relCMCM;
+    private RelIndex cmByM, cicmByCI, cicmByCM, cmcmBySrc, cmcmByDst;
     public CSCG(DomM domM, ProgramRel relRootCM, ProgramRel relReachableCM,
             ProgramRel relCICM, ProgramRel relCMCM) {
         this.domM = domM;
@@ -36,42 +45,75 @@ public class CSCG extends AbstractGraph<Pair<Ctxt, jq_Method>> implements ICSCG
         this.relCICM = relCICM;
         this.relCMCM = relCMCM;
     }
-    public Set<Pair<Ctxt, jq_Method>> getNodes() {
+    private synchronized RelIndex getCMIndex() {
+        if (cmByM == null) {
+            if (!relReachableCM.isOpen())
+                relReachableCM.load();
+            cmByM = new RelIndex(relReachableCM, 1, 0);
+        }
+        return cmByM;
+    }
+    private synchronized RelIndex getCICMIndex(boolean forward) {
+        if (forward ? cicmByCI == null : cicmByCM == null) {
+            if (!relCICM.isOpen())
+                relCICM.load();
+            if (forward)
+                cicmByCI = new RelIndex(relCICM, 0, 1, 2, 3);
+            else
+                cicmByCM = new RelIndex(relCICM, 2, 3, 0, 1);
+        }
+        return forward ? cicmByCI : cicmByCM;
+    }
+    private synchronized RelIndex getCMCMIndex(boolean forward) {
+        if (forward ? cmcmBySrc == null : cmcmByDst == null) {
+            if (!relCMCM.isOpen())
+                relCMCM.load();
+            if (forward)
+                cmcmBySrc = new RelIndex(relCMCM, 0, 1, 2, 3);
+            else
+                cmcmByDst = new RelIndex(relCMCM, 2, 3, 0, 1);
+        }
+        return forward ? cmcmBySrc : cmcmByDst;
+    }
+    // provides the (ctxt, method) pairs in domains (cDomIdx, mDomIdx) of
+    // the tuples of CMCM whose key (ctxt, method) pair is the given one
+    private Set<Pair<Ctxt, jq_Method>> getCMs(RelIndex index, Ctxt ctxt, jq_Method meth,
+            int cDomIdx, int mDomIdx) {
+        Dom<?> domC = relCMCM.getDoms()[0];
+        int cIdx = domC.indexOf(ctxt);
+        int mIdx = domM.indexOf(meth);
+        int lo = index.begin(cIdx, mIdx), hi = index.end(cIdx, mIdx);
+        Set<Pair<Ctxt, jq_Method>> CMs = SetUtils.newSet(hi - lo);
+        for (int pos = lo; pos < hi; pos++) {
+            CMs.add(new Pair<Ctxt, jq_Method>((Ctxt) domC.get(index.get(pos, cDomIdx)),
+                domM.get(index.get(pos, mDomIdx))));
+        }
+        return CMs;
+    }
+    public synchronized Set<Pair<Ctxt, jq_Method>> getNodes() {
         if (!relReachableCM.isOpen())
             relReachableCM.load();
         Iterable<Pair<Ctxt, jq_Method>> res = relReachableCM.getAry2ValTuples();
         return SetUtils.iterableToSet(res, relReachableCM.size());
     }
-    public Set<Pair<Ctxt, jq_Method>> getRoots() {
+    public synchronized Set<Pair<Ctxt, jq_Method>> getRoots() {
         if (!relRootCM.isOpen())
             relRootCM.load();
         Iterable<Pair<Ctxt, jq_Method>> res = relRootCM.getAry2ValTuples();
         return SetUtils.iterableToSet(res, relRootCM.size());
     }
     public Set<Pair<Ctxt, jq_Method>> getPreds(Pair<Ctxt, jq_Method> cm) {
-        if (!relCMCM.isOpen())
-            relCMCM.load();
-        RelView view = relCMCM.getView();
-        view.selectAndDelete(2, cm.val0);
-        view.selectAndDelete(3, cm.val1);
-        Iterable<Pair<Ctxt, jq_Method>> res = view.getAry2ValTuples();
-        return SetUtils.iterableToSet(res, view.size());
+        return getCMs(getCMCMIndex(false), cm.val0, cm.val1, 0, 1);
     }
     public Set<Pair<Ctxt, jq_Method>> getSuccs(Pair<Ctxt, jq_Method> cm) {
-        if (!relCMCM.isOpen())
-            relCMCM.load();
-        RelView view = relCMCM.getView();
-        view.selectAndDelete(0, cm.val0);
-        view.selectAndDelete(1, cm.val1);
-        Iterable<Pair<Ctxt, jq_Method>> res = view.getAry2ValTuples();
-        return SetUtils.iterableToSet(res, view.size());
-    }
-    public boolean hasNode(Pair<Ctxt, jq_Method> node) {
+        return getCMs(getCMCMIndex(true), cm.val0, cm.val1, 2, 3);
+    }
+    public synchronized boolean hasNode(Pair<Ctxt, jq_Method> node) {
         if (!relReachableCM.isOpen())
             relReachableCM.load();
         return relReachableCM.contains(node.val0, node.val1);
     }
-    public boolean hasRoot(Pair<Ctxt, jq_Method> node) {
+    public synchronized boolean hasRoot(Pair<Ctxt, jq_Method> node) {
         if (!relRootCM.isOpen())
             relRootCM.load();
         if (relRootCM.contains(node.val0, node.val1))
@@ -79,46 +121,44 @@ public class CSCG extends AbstractGraph<Pair<Ctxt, jq_Method>> implements ICSCG
         return false;
     }
     public int numSuccs(Pair<Ctxt, jq_Method> node) {
-        if (!relCMCM.isOpen())
-            relCMCM.load();
-        RelView view = relCMCM.getView();
-        view.selectAndDelete(0, node.val0);
-        view.selectAndDelete(1, node.val1);
-        return view.size();
+        RelIndex index = getCMCMIndex(true);
+        int cIdx = relCMCM.getDoms()[0].indexOf(node.val0);
+        int mIdx = domM.indexOf(node.val1);
+        return index.end(cIdx, mIdx) - index.begin(cIdx, mIdx);
     }
     public Set<Ctxt> getContexts(jq_Method jq_Method) {
-        if (!relReachableCM.isOpen())
-            relReachableCM.load();
-        RelView view = relReachableCM.getView();
-        view.selectAndDelete(1, jq_Method);
-        Iterable<Ctxt> res = view.getAry1ValTuples();
-        Set<Ctxt> ctxts = SetUtils.newSet(view.size());
-        for (Ctxt ctxt : res)
-            ctxts.add(ctxt);
+        RelIndex index = getCMIndex();
+        Dom<?> domC = relReachableCM.getDoms()[0];
+        int mIdx = domM.indexOf(jq_Method);
+        int lo = index.begin(mIdx), hi = index.end(mIdx);
+        Set<Ctxt> ctxts = SetUtils.newSet(hi - lo);
+        for (int pos = lo; pos < hi; pos++)
+            ctxts.add((Ctxt) domC.get(index.get(pos, 0)));
         return ctxts;
     }
     public Set<Pair<Ctxt, Quad>> getCallers(Ctxt ctxt, jq_Method meth) {
-        if (!relCICM.isOpen())
-            relCICM.load();
-        RelView view = relCICM.getView();
-        view.selectAndDelete(2, ctxt);
-        view.selectAndDelete(3, meth);
-        Iterable<Pair<Ctxt, Quad>> res = view.getAry2ValTuples();
-        Set<Pair<Ctxt, Quad>> CIs = SetUtils.newSet(view.size());
-        for (Pair<Ctxt, Quad> ci : res)
-            CIs.add(ci);
+        RelIndex index = getCICMIndex(false);
+        Dom<?>[] doms = relCICM.getDoms();
+        Dom<?> domC = doms[0];
+        Dom<?> domI = doms[1];
+        int cIdx = doms[2].indexOf(ctxt);
+        int mIdx = domM.indexOf(meth);
+        int lo = index.begin(cIdx, mIdx), hi = index.end(cIdx, mIdx);
+        Set<Pair<Ctxt, Quad>> CIs = SetUtils.newSet(hi - lo);
+        for (int pos = lo; pos < hi; pos++)
+            CIs.add(new Pair<Ctxt, Quad>((Ctxt) domC.get(index.get(pos, 0)), (Quad) domI.get(index.get(pos, 1))));
         return CIs;
     }
     public Set<Pair<Ctxt, jq_Method>> getTargets(Ctxt ctxt, Quad invk) {
-        if (!relCICM.isOpen())
-            relCICM.load();
-        RelView view = relCICM.getView();
-        view.selectAndDelete(0, ctxt);
-        view.selectAndDelete(1, invk);
-        Iterable<Pair<Ctxt, jq_Method>> res = view.getAry2ValTuples();
-        Set<Pair<Ctxt, jq_Method>> CMs = SetUtils.newSet(view.size());
-        for (Pair<Ctxt, jq_Method> cm : res)
-            CMs.add(cm);
+        RelIndex index = getCICMIndex(true);
+        Dom<?>[] doms = relCICM.getDoms();
+        Dom<?> domC = doms[2];
+        int cIdx = doms[0].indexOf(ctxt);
+        int iIdx = doms[1].indexOf(invk);
+        int lo = index.begin(cIdx, iIdx), hi = index.end(cIdx, iIdx);
+        Set<Pair<Ctxt, jq_Method>> CMs = SetUtils.newSet(hi - lo);
+        for (int pos = lo; pos < hi; pos++)
+            CMs.add(new Pair<Ctxt, jq_Method>((Ctxt) domC.get(index.get(pos, 2)), domM.get(index.get(pos, 3))));
         return CMs;
     }
     public Set<Quad> getLabels(Pair<Ctxt, jq_Method> origNode, Pair<Ctxt, jq_Method> destNode) {
@@ -138,40 +178,46 @@ public class CSCG extends AbstractGraph<Pair<Ctxt, jq_Method>> implements ICSCG
         return invks;
     }
     public boolean hasEdge(Pair<Ctxt, jq_Method> node1, Pair<Ctxt, jq_Method> node2) {
-        if (!relCMCM.isOpen())
-            relCMCM.load();
-        return relCMCM.contains(node1.val0, node1.val1, node2.val0, node2.val1);
+        RelIndex index = getCMCMIndex(true);
+        Dom<?> domC = relCMCM.getDoms()[0];
+        return index.contains(domC.indexOf(node1.val0), domM.indexOf(node1.val1),
+            domC.indexOf(node2.val0), domM.indexOf(node2.val1));
     }
-    public int numRoots() {
+    public synchronized int numRoots() {
         if (!relRootCM.isOpen())
             relRootCM.load();
         return relRootCM.size();
     }
-    public int numNodes() {
+    public synchronized int numNodes() {
         if (!relReachableCM.isOpen())
             relReachableCM.load();
         return relReachableCM.size();
     }
     public int numPreds(Pair<Ctxt, jq_Method> node) {
-        if (!relCMCM.isOpen())
-            relCMCM.load();
-        RelView view = relCMCM.getView();
-        view.selectAndDelete(2, node.val0);
-        view.selectAndDelete(3, node.val1);
-        return view.size();
+        RelIndex index = getCMCMIndex(false);
+        int cIdx = relCMCM.getDoms()[2].indexOf(node.val0);
+        int mIdx = domM.indexOf(node.val1);
+        return index.end(cIdx, mIdx) - index.begin(cIdx, mIdx);
     }
     public boolean calls(Ctxt origCtxt, Quad origInvk, Ctxt destCtxt, jq_Method destMeth) {
-        if (!relCICM.isOpen())
-            relCICM.load();
-        return relCICM.contains(origCtxt, origInvk, destCtxt, destMeth);
+        RelIndex index = getCICMIndex(true);
+        Dom<?>[] doms = relCICM.getDoms();
+        return index.contains(doms[0].indexOf(origCtxt), doms[1].indexOf(origInvk),
+            doms[2].indexOf(destCtxt), domM.indexOf(destMeth));
     }
     /**
-     * Frees relations used by this call graph if they are in memory.
+     * Frees relations and indexes used by this call graph if they are in
+     * memory.
      * <p>
      * This jq_Method must be called after clients are done exercising
      * the interface of this call graph.
      */
-    public void free() {
+    public synchronized void free() {
+        cmByM = null;
+        cicmByCI = null;
+        cicmByCM = null;
+        cmcmBySrc = null;
+        cmcmByDst = null;
         if (relRootCM.isOpen())
             relRootCM.close();
         if (relReachableCM.isOpen())
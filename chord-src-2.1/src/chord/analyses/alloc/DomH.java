@@ -1,5 +1,6 @@
 package chord.analyses.alloc;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import joeq.Class.PrimordialClassLoader;
@@ -70,19 +71,10 @@ public class DomH extends ProgramDom<Object> {
     public void fill() {
         int numM = domM.size();
         add(null);    
-        for (int mIdx = 0; mIdx < numM; mIdx++) {
-            jq_Method m = domM.get(mIdx);
-            if (m.isAbstract())
-                continue;
-            ControlFlowGraph cfg = m.getCFG();
-            for (BasicBlock bb : cfg.reversePostOrder()) {
-                for (Quad q : bb.getQuads()) {
-                    Operator op = q.getOperator();
-                    if (op instanceof New || op instanceof NewArray || op instanceof MultiNewArray) 
-                        add(q);
-                }
-            }
-        }
+        List<jq_Method> methods = new ArrayList<jq_Method>(numM);
+        for (int mIdx = 0; mIdx < numM; mIdx++)
+            methods.add(domM.get(mIdx));
+        fill(methods);
 
         lastA = size() - 1;
         Reflect reflect = Program.g().getReflect();
@@ -97,6 +89,19 @@ public class DomH extends ProgramDom<Object> {
         }
     }
 
+    protected void collect(jq_Method m, List<Object> vals) {
+        if (m.isAbstract())
+            return;
+        ControlFlowGraph cfg = m.getCFG();
+        for (BasicBlock bb : cfg.reversePostOrder()) {
+            for (Quad q : bb.getQuads()) {
+                Operator op = q.getOperator();
+                if (op instanceof New || op instanceof NewArray || op instanceof MultiNewArray) 
+                    vals.add(q);
+            }
+        }
+    }
+
     private void processResolvedNewInstSites(List<Pair<Quad, List<jq_Reference>>> l) {
         for (Pair<Quad, List<jq_Reference>> p : l)
             add(p.val0);
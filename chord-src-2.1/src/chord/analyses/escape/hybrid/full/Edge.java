@@ -5,12 +5,13 @@ import java.util.Set;
 import joeq.Class.jq_Field;
 import chord.util.ArraySet;
 import chord.project.analyses.rhs.IEdge;
+import chord.project.analyses.rhs.IMergeHashedEdge;
 
 /**
  * 
  * @author Mayur Naik (mhn@cs.stanford.edu)
  */
-public class Edge implements IEdge {
+public class Edge implements IMergeHashedEdge {
     public final SrcNode srcNode;
     // dstNode is intentionally not final: it is updated when this edge
     // is merged with another edge with matching srcNode; see mergeWith
@@ -264,6 +265,11 @@ public class Edge implements IEdge {
         return i;
     }
 
+    // edges can be merged only if their source nodes are equal
+    public int mergeHashCode() {
+        return srcNode.hashCode();
+    }
+
     public boolean equals(Object o) {
         if (o == this)
             return true;
@@ -2,11 +2,16 @@ package chord.analyses.escape.hybrid.full;
 
 import gnu.trove.map.hash.TObjectIntHashMap;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -59,11 +64,13 @@ import chord.project.analyses.ProgramRel;
 import chord.project.analyses.rhs.RHSAnalysis;
 import chord.project.analyses.rhs.TimeoutException;
 import chord.project.analyses.rhs.IEdge;
+import chord.project.analyses.rhs.ISummaryCodec;
 import chord.project.analyses.rhs.MergeKind;
 import chord.project.analyses.rhs.IWrappedPE;
 import chord.project.analyses.rhs.BackTraceIterator;
 import chord.project.analyses.rhs.TraceKind;
 import chord.util.ArraySet;
+import chord.util.ParallelRunner;
 import chord.util.Timer;
 import chord.util.tuple.integer.IntPair;
 import chord.util.tuple.object.Pair;
@@ -78,6 +85,32 @@ import chord.util.tuple.object.Trio;
  * Relevant system properties:
  * - chord.escape.optimize = [true|false] (default = true)
  * - chord.escape.html = [true|false] (default = false)
+ * - chord.escape.query = [true|false] (default = false)
+ * - chord.escape.incremental = [true|false] (default = false)
+ * - chord.escape.threads = N (default = 1)
+ * 
+ * If chord.escape.query is true and trace generation is disabled, each pass computes only
+ * the path edges needed to decide its queries, by querying RHSAnalysis for the path edges
+ * into them (see RHSAnalysis#query).
+ * 
+ * Otherwise, if chord.escape.incremental is true, each pass after one that completed is
+ * re-solved incrementally (see RHSAnalysis#runIncrementalPass), deeming changed the methods
+ * that allocate an object tracked in either pass or contain a query of either pass, as the
+ * path edges of no other method depend on the tracked objects and queries.
+ * 
+ * Summary edges of methods that do not allocate any object tracked in the current pass
+ * and do not contain any query of the current pass are persisted if property
+ * chord.rhs.summ.dir is set (see RHSAnalysis).
+ * 
+ * If chord.escape.threads is greater than 1, the passes are independent: each tracks the
+ * objects allocated at one set of sites, and decides the queries whose base may only point
+ * to them.  They are then solved concurrently by that many worker instances of this
+ * analysis, each running its passes from scratch on its own thread (see runWorkerPasses).
+ * The workers share the read-only call graph and variable tables of this analysis, and
+ * their results are aggregated as if the passes ran in sequence.  The passes are solved in
+ * sequence instead if queries, incremental passes, HTML output, traces, or the summary
+ * store are enabled, as these either depend on the order of the passes or fill the caches
+ * of the call graph that the workers share.
  * 
  * @author Mayur Naik (mhn@cs.stanford.edu)
  */
@@ -88,6 +121,9 @@ public class ThreadEscapeFullAnalysis extends RHSAnalysis<Edge, Edge> {
 
     private boolean optimizeSumms;
     private boolean useBOTH;
+    private boolean useQueries;
+    private boolean useIncremental;
+    private int numWorkers;
 
     private static DomM domM;
     private static DomI domI;
@@ -99,13 +135,19 @@ public class ThreadEscapeFullAnalysis extends RHSAnalysis<Edge, Edge> {
     private TObjectIntHashMap<jq_Method> methToNumVars = new TObjectIntHashMap<jq_Method>();
     private TObjectIntHashMap<jq_Method> methToFstVar = new TObjectIntHashMap<jq_Method>();
     private ICICG cicg;
+    private Set<jq_Method> roots;   // roots of cicg, shared with the workers
 
     private Set<Quad> allEscEs = new HashSet<Quad>();
     private Set<Quad> allLocEs = new HashSet<Quad>();
     private Set<Quad> currHs;
     private Set<Quad> currLocEs = new HashSet<Quad>();
     private Set<Quad> currEscEs = new HashSet<Quad>();
-    private MyQuadVisitor qv = new MyQuadVisitor();
+    // methods containing a quad in currHs or currLocEs at the start of the current pass
+    private Set<jq_Method> currMs = new HashSet<jq_Method>();
+    // currMs in the last pass
+    private Set<jq_Method> prevMs = new HashSet<jq_Method>();
+    // map from unique string representations of fields to fields, for reading summary edges
+    private Map<String, jq_Field> strToFld;
     private EscQuadVisitor eqv = new EscQuadVisitor();
     private jq_Method mainMethod;
     private jq_Method threadStartMethod;
@@ -125,8 +167,22 @@ public class ThreadEscapeFullAnalysis extends RHSAnalysis<Edge, Edge> {
             Messages.fatal("Unknown value for property chord.escape.both: " + bothStr);
         if (!useBOTH && mergeKind == MergeKind.LOSSY)
             Messages.fatal("Cannot use chord.escape.both=false and chord.rhs.merge=lossy.");
+        useQueries = Boolean.getBoolean("chord.escape.query") && traceKind == TraceKind.NONE;
+        useIncremental = Boolean.getBoolean("chord.escape.incremental") && !useQueries;
+        boolean HTMLize = Boolean.getBoolean("chord.escape.html");
+        numWorkers = Integer.getInteger("chord.escape.threads", 1);
+        if (numWorkers < 1)
+            Messages.fatal("Invalid value for property chord.escape.threads: " + numWorkers);
+        if (numWorkers > 1 && (useQueries || useIncremental || HTMLize || traceKind != TraceKind.NONE ||
+                System.getProperty(CHORD_RHS_SUMM_DIR_PROPERTY) != null)) {
+            Messages.warn("ThreadEscapeFullAnalysis: Passes are solved in sequence; ignoring property chord.escape.threads.");
+            numWorkers = 1;
+        }
         System.out.println("chord.escape.optimize=" + optimizeSumms);
         System.out.println("chord.escape.both=" + bothStr);
+        System.out.println("chord.escape.query=" + useQueries);
+        System.out.println("chord.escape.incremental=" + useIncremental);
+        System.out.println("chord.escape.threads=" + numWorkers);
         // finished configuring the analysis
 
         Program program = Program.g();
@@ -191,58 +247,13 @@ public class ThreadEscapeFullAnalysis extends RHSAnalysis<Edge, Edge> {
             vIdx += n;
         }
 
-        boolean HTMLize = Boolean.getBoolean("chord.escape.html");
-
         String html = "";
         int pass = 0;
-        for (Map.Entry<Set<Quad>, Set<Quad>> entry : hs2esMap.entrySet()) {
-            currHs = entry.getKey();
-            currLocEs = entry.getValue();
-            currEscEs.clear();
-            boolean timeOut = false;
-            System.out.println("**************");
-            System.out.println("currEs:");
-            for (Quad q : currLocEs) {
-                int x = domE.indexOf(q);
-                System.out.println("\t" + q.toVerboseStr() + " " + x);
-            }
-            System.out.println("currHs:");
-            for (Quad q : currHs)
-                System.out.println("\t" + q.toVerboseStr());
-            Timer timer = new Timer("thresc-shape-timer");
-            timer.init();
-            try {
-                runPass();
-            } catch (TimeoutException ex) {
-                for (Quad q : currLocEs)
-                    currEscEs.add(q);
-                currLocEs.clear();
-                timeOut = true;
-            } catch (ThrEscException ex) {
-                // do nothing
-            }
-            for (Quad q : currLocEs)
-                System.out.println("LOC: " + q.toVerboseStr());
-            // html += "LOC: " + q.getID() + ": " + toHTMLStr(pass,
-            // q.getMethod()) + "<br>";
-            for (Quad q : currEscEs)
-                System.out.println("ESC: " + q.toVerboseStr());
-            // html += "ESC: " + q.getID() + ": " + toHTMLStr(pass,
-            // q.getMethod()) + "<br>";
-            allLocEs.addAll(currLocEs);
-            allEscEs.addAll(currEscEs);
-            // printSummaries();
-            if (HTMLize)
-                printEdges(pass);
-            if (traceKind != TraceKind.NONE && !timeOut) {
-                for (Quad q : currEscEs) {
-                    IWrappedPE<Edge, Edge> initWPE = getEscEdge(q);
-                    printEscTrace(initWPE);
-                }
-            }
-            timer.done();
-            System.out.println(timer.getInclusiveTimeStr());
-            pass++;
+        if (numWorkers > 1)
+            runWorkerPasses(new ArrayList<Map.Entry<Set<Quad>, Set<Quad>>>(hs2esMap.entrySet()));
+        else {
+            for (Map.Entry<Set<Quad>, Set<Quad>> entry : hs2esMap.entrySet())
+                runSequentialPass(pass++, entry.getKey(), entry.getValue(), HTMLize);
         }
 
         if (HTMLize) {
@@ -309,6 +320,178 @@ public class ThreadEscapeFullAnalysis extends RHSAnalysis<Edge, Edge> {
         }
     }
 
+    // runs the given pass on this analysis, tracking the objects allocated at sites hs, for
+    // queries locEs, and aggregates its results into allLocEs and allEscEs
+    private void runSequentialPass(int pass, Set<Quad> hs, Set<Quad> locEs, boolean HTMLize) {
+        currHs = hs;
+        currLocEs = locEs;
+        currEscEs.clear();
+        Set<jq_Method> tmpMs = prevMs;
+        prevMs = currMs;
+        currMs = tmpMs;
+        currMs.clear();
+        for (Quad q : currHs)
+            currMs.add(q.getMethod());
+        for (Quad q : currLocEs)
+            currMs.add(q.getMethod());
+        boolean timeOut = false;
+        System.out.println("**************");
+        System.out.println("currEs:");
+        for (Quad q : currLocEs) {
+            int x = domE.indexOf(q);
+            System.out.println("\t" + q.toVerboseStr() + " " + x);
+        }
+        System.out.println("currHs:");
+        for (Quad q : currHs)
+            System.out.println("\t" + q.toVerboseStr());
+        Timer timer = new Timer("thresc-shape-timer");
+        timer.init();
+        try {
+            if (useQueries) {
+                // the path edges of earlier passes depend on their tracked objects
+                clearQueries();
+                query(new ArrayList<Quad>(currLocEs));
+            } else if (useIncremental) {
+                Set<jq_Method> changedMs = new HashSet<jq_Method>(prevMs);
+                changedMs.addAll(currMs);
+                runIncrementalPass(changedMs);
+            } else
+                runPass();
+        } catch (TimeoutException ex) {
+            for (Quad q : currLocEs)
+                currEscEs.add(q);
+            currLocEs.clear();
+            timeOut = true;
+        } catch (ThrEscException ex) {
+            // do nothing
+        }
+        for (Quad q : currLocEs)
+            System.out.println("LOC: " + q.toVerboseStr());
+        // html += "LOC: " + q.getID() + ": " + toHTMLStr(pass,
+        // q.getMethod()) + "<br>";
+        for (Quad q : currEscEs)
+            System.out.println("ESC: " + q.toVerboseStr());
+        // html += "ESC: " + q.getID() + ": " + toHTMLStr(pass,
+        // q.getMethod()) + "<br>";
+        allLocEs.addAll(currLocEs);
+        allEscEs.addAll(currEscEs);
+        // printSummaries();
+        if (HTMLize)
+            printEdges(pass);
+        if (traceKind != TraceKind.NONE && !timeOut) {
+            for (Quad q : currEscEs) {
+                IWrappedPE<Edge, Edge> initWPE = getEscEdge(q);
+                printEscTrace(initWPE);
+            }
+        }
+        timer.done();
+        System.out.println(timer.getInclusiveTimeStr());
+    }
+
+    /**
+     * Solves the passes tracking the objects allocated at each given set of sites, for the
+     * given queries, using numWorkers worker instances of this analysis on as many threads.
+     * The queries of each pass proven local are left in its set of queries, and the results
+     * of all passes are printed and aggregated into allLocEs and allEscEs on this thread.
+     * A pass that times out deems all its queries escaping, as in sequence.
+     */
+    private void runWorkerPasses(final List<Map.Entry<Set<Quad>, Set<Quad>>> passes) {
+        final int numPasses = passes.size();
+        int n = Math.min(numWorkers, Math.max(numPasses, 1));
+        // fill the caches of the call graph shared with the workers, which only read them
+        queryCallGraph();
+        getRoots();
+        final List<ThreadEscapeFullAnalysis> workers = new ArrayList<ThreadEscapeFullAnalysis>(n);
+        for (int w = 0; w < n; w++) {
+            ThreadEscapeFullAnalysis worker;
+            try {
+                worker = getClass().getDeclaredConstructor().newInstance();
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+            worker.setName(getName() + "-worker-" + w);
+            worker.optimizeSumms = optimizeSumms;
+            worker.useBOTH = useBOTH;
+            worker.varId = varId;
+            worker.methToNumVars = methToNumVars;
+            worker.methToFstVar = methToFstVar;
+            worker.cicg = cicg;
+            worker.roots = roots;
+            worker.mainMethod = mainMethod;
+            worker.threadStartMethod = threadStartMethod;
+            worker.callersMap = callersMap;
+            worker.targetsMap = targetsMap;
+            worker.init();
+            workers.add(worker);
+        }
+        final List<Set<Quad>> escEsOf = new ArrayList<Set<Quad>>(numPasses);
+        final String[] timeStrOf = new String[numPasses];
+        for (int pass = 0; pass < numPasses; pass++)
+            escEsOf.add(null);
+        long startTime = System.currentTimeMillis();
+        try {
+            ParallelRunner.run(getName() + "-worker", n, numPasses, new ParallelRunner.Task<RuntimeException>() {
+                public void run(int w, int pass) {
+                    Map.Entry<Set<Quad>, Set<Quad>> entry = passes.get(pass);
+                    Timer timer = new Timer("thresc-shape-timer");
+                    timer.init();
+                    escEsOf.set(pass, workers.get(w).runWorkerPass(entry.getKey(), entry.getValue()));
+                    timer.done();
+                    timeStrOf[pass] = timer.getInclusiveTimeStr();
+                }
+            });
+        } finally {
+            for (ThreadEscapeFullAnalysis worker : workers)
+                worker.done();
+        }
+        for (int pass = 0; pass < numPasses; pass++) {
+            Set<Quad> hs = passes.get(pass).getKey();
+            Set<Quad> locEs = passes.get(pass).getValue();
+            Set<Quad> escEs = escEsOf.get(pass);
+            System.out.println("**************");
+            System.out.println("currEs:");
+            for (Quad q : locEs)
+                System.out.println("\t" + q.toVerboseStr() + " " + domE.indexOf(q));
+            for (Quad q : escEs)
+                System.out.println("\t" + q.toVerboseStr() + " " + domE.indexOf(q));
+            System.out.println("currHs:");
+            for (Quad q : hs)
+                System.out.println("\t" + q.toVerboseStr());
+            for (Quad q : locEs)
+                System.out.println("LOC: " + q.toVerboseStr());
+            for (Quad q : escEs)
+                System.out.println("ESC: " + q.toVerboseStr());
+            allLocEs.addAll(locEs);
+            allEscEs.addAll(escEs);
+            System.out.println(timeStrOf[pass]);
+        }
+        Messages.log("ThreadEscapeFullAnalysis: %d passes solved by %d threads in %d ms.",
+            numPasses, n, System.currentTimeMillis() - startTime);
+    }
+
+    // runs a pass of this worker tracking the objects allocated at sites hs, removing from
+    // locEs the queries it proves escaping, and returns them
+    private Set<Quad> runWorkerPass(Set<Quad> hs, Set<Quad> locEs) {
+        currHs = hs;
+        currLocEs = locEs;
+        currEscEs = new HashSet<Quad>();
+        currMs.clear();
+        for (Quad q : currHs)
+            currMs.add(q.getMethod());
+        for (Quad q : currLocEs)
+            currMs.add(q.getMethod());
+        try {
+            runPass();
+        } catch (TimeoutException ex) {
+            for (Quad q : currLocEs)
+                currEscEs.add(q);
+            currLocEs.clear();
+        } catch (ThrEscException ex) {
+            // do nothing
+        }
+        return currEscEs;
+    }
+
     private void printEscTrace(IWrappedPE<Edge, Edge> wpe) {
         BackTraceIterator<Edge, Edge> iter = this.getBackTraceIterator(wpe);
         File dir = new File(Config.outDirName, "traces");
@@ -357,12 +540,11 @@ public class ThreadEscapeFullAnalysis extends RHSAnalysis<Edge, Edge> {
                 throw new RuntimeException("Register operand expected!");
             RegisterOperand bo = (RegisterOperand) bx;
             int bIdx = getIdx(bo);
-            Set<Edge> peSet = pathEdges.get(q);
+            Set<Edge> peSet = getPEs(q);
             for (Edge pe : peSet) {
                 Obj pts = pe.dstNode.env[bIdx];
                 if (pts == Obj.ONLY_ESC || pts == Obj.BOTH) {
-                    Pair<Inst, Edge> pair = new Pair<Inst, Edge>(q, pe);
-                    escEdge = wpeMap.get(pair);
+                    escEdge = getWrappedPE(q, pe);
                     assert (escEdge != null);
                     return;
                 }
@@ -438,11 +620,11 @@ public class ThreadEscapeFullAnalysis extends RHSAnalysis<Edge, Edge> {
             for (BasicBlock bb : m.getCFG().reversePostOrder()) {
                 if (bb.isEntry() || bb.isExit()) {
                     w.println(bb.isEntry() ? "ENTRY:" : "EXIT:");
-                    Set<Edge> peSet = pathEdges.get((EntryOrExitBasicBlock) bb);
+                    Set<Edge> peSet = getPEs((EntryOrExitBasicBlock) bb);
                 } else {
                     for (Quad q : bb) {
                         w.println(q.getID() + ":");
-                        Set<Edge> peSet = pathEdges.get(q);
+                        Set<Edge> peSet = getPEs(q);
                     }
                 }
             }
@@ -492,6 +674,12 @@ public class ThreadEscapeFullAnalysis extends RHSAnalysis<Edge, Edge> {
         return cicg;
     }
 
+    private Set<jq_Method> getRoots() {
+        if (roots == null)
+            roots = cicg.getRoots();
+        return roots;
+    }
+
     // m is either the main method or the thread root method
     private Edge getRootPathEdge(jq_Method m) {
         assert (m == mainMethod || m == threadStartMethod || m.getName().toString().equals("<clinit>"));
@@ -511,7 +699,7 @@ public class ThreadEscapeFullAnalysis extends RHSAnalysis<Edge, Edge> {
 
     @Override
     public Set<Pair<Loc, Edge>> getInitPathEdges() {
-        Set<jq_Method> roots = cicg.getRoots();
+        Set<jq_Method> roots = getRoots();
         Set<Pair<Loc, Edge>> initPEs = new ArraySet<Pair<Loc, Edge>>(roots.size());
         for (jq_Method m : roots) {
             Edge pe = getRootPathEdge(m);
@@ -561,6 +749,8 @@ public class ThreadEscapeFullAnalysis extends RHSAnalysis<Edge, Edge> {
     @Override
     public Edge getMiscPathEdge(Quad q, Edge pe) {
         DstNode dstNode = pe.dstNode;
+        // a fresh visitor as this method may be called concurrently (see RHSAnalysis)
+        MyQuadVisitor qv = new MyQuadVisitor();
         qv.iDstNode = dstNode;
         qv.oDstNode = dstNode;
         q.accept(qv);
@@ -765,7 +955,7 @@ public class ThreadEscapeFullAnalysis extends RHSAnalysis<Edge, Edge> {
 
         @Override
         public void visitALoad(Quad q) {
-            if (currLocEs.contains(q))
+            if (isCurrLocE(q))
                 check(q, ALoad.getBase(q));
             Operator op = q.getOperator();
             if (!((ALoad) op).getType().isReferenceType())
@@ -788,7 +978,7 @@ public class ThreadEscapeFullAnalysis extends RHSAnalysis<Edge, Edge> {
 
         @Override
         public void visitGetfield(Quad q) {
-            if (currLocEs.contains(q))
+            if (isCurrLocE(q))
                 check(q, Getfield.getBase(q));
             jq_Field f = Getfield.getField(q).getField();
             if (!f.getType().isReferenceType())
@@ -816,7 +1006,7 @@ public class ThreadEscapeFullAnalysis extends RHSAnalysis<Edge, Edge> {
 
         @Override
         public void visitAStore(Quad q) {
-            if (currLocEs.contains(q))
+            if (isCurrLocE(q))
                 check(q, AStore.getBase(q));
             Operator op = q.getOperator();
             if (!((AStore) op).getType().isReferenceType())
@@ -840,7 +1030,7 @@ public class ThreadEscapeFullAnalysis extends RHSAnalysis<Edge, Edge> {
 
         @Override
         public void visitPutfield(Quad q) {
-            if (currLocEs.contains(q))
+            if (isCurrLocE(q))
                 check(q, Putfield.getBase(q));
             jq_Field f = Putfield.getField(q).getField();
             if (!f.getType().isReferenceType())
@@ -984,15 +1174,24 @@ public class ThreadEscapeFullAnalysis extends RHSAnalysis<Edge, Edge> {
             RegisterOperand bo = (RegisterOperand) bx;
             int bIdx = getIdx(bo);
             Obj pts = iDstNode.env[bIdx];
-            if (pts == Obj.ONLY_ESC || pts == Obj.BOTH) {
-                currLocEs.remove(q);
-                currEscEs.add(q);
-                if (currLocEs.size() == 0)
-                    throw new ThrEscException();
-            }
+            if (pts == Obj.ONLY_ESC || pts == Obj.BOTH)
+                setCurrEscE(q);
         }
     }
 
+    // currLocEs and currEscEs are guarded by this object during a pass, as path edges may
+    // be computed concurrently (see RHSAnalysis)
+    private synchronized boolean isCurrLocE(Quad q) {
+        return currLocEs.contains(q);
+    }
+
+    private synchronized void setCurrEscE(Quad q) {
+        currLocEs.remove(q);
+        currEscEs.add(q);
+        if (currLocEs.size() == 0)
+            throw new ThrEscException();
+    }
+
     private static Obj getPtsFromHeap(Obj bPts, jq_Field f, ArraySet<FldObj> heap) {
         if (bPts == Obj.EMTY || bPts == Obj.ONLY_ESC)
             return Obj.ONLY_ESC;  // in newest version of forward transfer functions, N.f = E
@@ -1038,6 +1237,98 @@ public class ThreadEscapeFullAnalysis extends RHSAnalysis<Edge, Edge> {
         return new DstNode(oEnv, emptyHeap, true, false);
     }
 
+    /*****************************************************************
+     * Persistence functions
+     *****************************************************************/
+
+    @Override
+    public String getSummaryConfig() {
+        return "optimize=" + optimizeSumms + " both=" + useBOTH;
+    }
+
+    @Override
+    public boolean isSummaryStable(jq_Method m) {
+        // path edges into the thread start method are not derived from its summary edges
+        return m != threadStartMethod && !currMs.contains(m);
+    }
+
+    @Override
+    public ISummaryCodec<Edge> getSummaryCodec() {
+        return summCodec;
+    }
+
+    private final ISummaryCodec<Edge> summCodec = new ISummaryCodec<Edge>() {
+        public void write(Edge se, DataOutput out) throws IOException {
+            writeEnv(se.srcNode.env, out);
+            writeHeap(se.srcNode.heap, out);
+            DstNode dstNode = se.dstNode;
+            writeEnv(dstNode.env, out);
+            writeHeap(dstNode.heap, out);
+            out.writeBoolean(dstNode.isKill);
+            out.writeBoolean(dstNode.isRetn);
+        }
+
+        public Edge read(jq_Method m, DataInput in) throws IOException {
+            Obj[] srcEnv = readEnv(in);
+            ArraySet<FldObj> srcHeap = readHeap(in);
+            Obj[] dstEnv = readEnv(in);
+            ArraySet<FldObj> dstHeap = readHeap(in);
+            boolean isKill = in.readBoolean();
+            boolean isRetn = in.readBoolean();
+            if (srcHeap == null || dstHeap == null)
+                return null;
+            return new Edge(new SrcNode(srcEnv, srcHeap), new DstNode(dstEnv, dstHeap, isKill, isRetn));
+        }
+    };
+
+    private static void writeEnv(Obj[] env, DataOutput out) throws IOException {
+        out.writeInt(env.length);
+        for (Obj o : env)
+            out.writeByte(o.ordinal());
+    }
+
+    private static Obj[] readEnv(DataInput in) throws IOException {
+        int n = in.readInt();
+        Obj[] env = new Obj[n];
+        Obj[] objs = Obj.values();
+        for (int i = 0; i < n; i++)
+            env[i] = objs[in.readByte()];
+        return env;
+    }
+
+    private static void writeHeap(ArraySet<FldObj> heap, DataOutput out) throws IOException {
+        out.writeInt(heap.size());
+        for (FldObj fo : heap) {
+            out.writeUTF(domF.toUniqueString(fo.f));
+            out.writeBoolean(fo.isLoc);
+            out.writeBoolean(fo.isEsc);
+        }
+    }
+
+    // returns null if a field of the heap is not in the current program
+    private ArraySet<FldObj> readHeap(DataInput in) throws IOException {
+        int n = in.readInt();
+        if (n == 0)
+            return emptyHeap;
+        if (strToFld == null) {
+            strToFld = new HashMap<String, jq_Field>();
+            for (jq_Field f : domF)
+                strToFld.put(domF.toUniqueString(f), f);
+        }
+        ArraySet<FldObj> heap = new ArraySet<FldObj>(n);
+        boolean resolved = true;
+        for (int i = 0; i < n; i++) {
+            String s = in.readUTF();
+            boolean isLoc = in.readBoolean();
+            boolean isEsc = in.readBoolean();
+            jq_Field f = strToFld.get(s);
+            if (f == null && !strToFld.containsKey(s))
+                resolved = false;
+            heap.add(new FldObj(f, isLoc, isEsc));
+        }
+        return resolved ? heap : null;
+    }
+
     /*****************************************************************
      * Frequently used functions
      *****************************************************************/
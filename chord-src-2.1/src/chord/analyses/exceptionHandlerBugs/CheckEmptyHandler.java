@@ -647,6 +647,10 @@ public class CheckEmptyHandler extends JavaAnalysis {
         return true;
     }
 
+    public boolean isStateless() {
+        return true;
+    }
+
     public void run() {
         int bugID = 1; // Unique ID for each bug.
         totalCatches = 0; // Statistic purpose: count the total number of catch blocks
@@ -113,6 +113,10 @@ public class CheckTerminatingHandler extends JavaAnalysis {
 		return false;
 	}
 	
+	public boolean isStateless() {
+		return true;
+	}
+
 	public void run() {
 		int bugID = 1;
 
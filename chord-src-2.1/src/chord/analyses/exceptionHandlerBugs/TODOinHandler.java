@@ -253,6 +253,10 @@ public class TODOinHandler extends JavaAnalysis {
 					handler_startLine, handler_endingLine, fileName);
 	}
 
+	public boolean isStateless() {
+		return true;
+	}
+
 	public void run() {
 		bugID = 1;
 
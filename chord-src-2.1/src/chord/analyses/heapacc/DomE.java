@@ -1,12 +1,21 @@
 package chord.analyses.heapacc;
 
+import java.util.List;
+
 import joeq.Class.jq_Class;
 import joeq.Class.jq_Method;
 import joeq.Compiler.Quad.Quad;
+import joeq.Compiler.Quad.BasicBlock;
 import joeq.Compiler.Quad.Operator;
+import joeq.Compiler.Quad.Operator.ALoad;
+import joeq.Compiler.Quad.Operator.AStore;
+import joeq.Compiler.Quad.Operator.Getstatic;
+import joeq.Compiler.Quad.Operator.Putstatic;
 import joeq.Compiler.Quad.Operator.Getfield;
 import joeq.Compiler.Quad.Operator.Putfield;
 import joeq.Compiler.Quad.Operand.RegisterOperand;
+import chord.program.MethodElem;
+import chord.program.Program;
 import chord.program.visitors.IHeapInstVisitor;
 import chord.analyses.method.DomM;
 import chord.project.Chord;
@@ -25,6 +34,10 @@ import chord.project.analyses.ProgramDom;
     consumes = { "M" }
 )
 public class DomE extends ProgramDom<Quad> implements IHeapInstVisitor {
+    private static final Class<?>[] HEAP_INST_KINDS = new Class<?>[] {
+        ALoad.class, Getfield.class, Putfield.class,
+        AStore.class, Getstatic.class, Putstatic.class
+    };
     protected DomM domM;
     public void init() {
         domM = (DomM) (Config.classic ?
@@ -33,20 +46,49 @@ public class DomE extends ProgramDom<Quad> implements IHeapInstVisitor {
     public void visit(jq_Class c) { }
     public void visit(jq_Method m) { }
     public void visitHeapInst(Quad q) {
+        if (isAccess(q))
+            add(q);
+    }
+    private static boolean isAccess(Quad q) {
         Operator op = q.getOperator();
         if (op instanceof Getfield) {
             if (!(Getfield.getBase(q) instanceof RegisterOperand))
-                return;
+                return false;
         }
         if (op instanceof Putfield) {
             if (!(Putfield.getBase(q) instanceof RegisterOperand))
-                return;
+                return false;
+        }
+        return true;
+    }
+    public boolean isParallelFillable() {
+        return true;
+    }
+    protected void collect(jq_Method m, List<Quad> vals) {
+        if (m.isAbstract())
+            return;
+        for (BasicBlock bb : m.getCFG().reversePostOrder()) {
+            for (Quad q : bb.getQuads()) {
+                Operator op = q.getOperator();
+                if (isHeapInst(op) && isAccess(q))
+                    vals.add(q);
+            }
         }
-        add(q);
+    }
+    private static boolean isHeapInst(Operator op) {
+        return op instanceof ALoad || op instanceof Getfield ||
+            op instanceof Putfield || op instanceof AStore ||
+            op instanceof Getstatic || op instanceof Putstatic;
     }
     public String toUniqueString(Quad q) {
         return q.toByteLocStr();
     }
+    public boolean isLoadable() {
+        return true;
+    }
+    public Quad fromUniqueString(String s) {
+        return Program.g().getQuad(MethodElem.parse(s), HEAP_INST_KINDS);
+    }
     public String toXMLAttrsString(Quad q) {
         Operator op = q.getOperator();
         jq_Method m = q.getMethod();
@@ -1,9 +1,15 @@
 package chord.analyses.invk;
 
+import java.util.List;
+
 import joeq.Class.jq_Class;
 import joeq.Class.jq_Method;
+import joeq.Compiler.Quad.BasicBlock;
 import joeq.Compiler.Quad.Operator;
+import joeq.Compiler.Quad.Operator.Invoke;
 import joeq.Compiler.Quad.Quad;
+import chord.program.MethodElem;
+import chord.program.Program;
 import chord.program.visitors.IInvokeInstVisitor;
 import chord.analyses.method.DomM;
 import chord.project.Chord;
@@ -31,9 +37,28 @@ public class DomI extends ProgramDom<Quad> implements IInvokeInstVisitor {
     public void visitInvokeInst(Quad q) {
         add(q);
     }
+    public boolean isParallelFillable() {
+        return true;
+    }
+    protected void collect(jq_Method m, List<Quad> vals) {
+        if (m.isAbstract())
+            return;
+        for (BasicBlock bb : m.getCFG().reversePostOrder()) {
+            for (Quad q : bb.getQuads()) {
+                if (q.getOperator() instanceof Invoke)
+                    vals.add(q);
+            }
+        }
+    }
     public String toUniqueString(Quad q) {
         return q.toByteLocStr();
     }
+    public boolean isLoadable() {
+        return true;
+    }
+    public Quad fromUniqueString(String s) {
+        return Program.g().getQuad(MethodElem.parse(s), Invoke.class);
+    }
     public String toXMLAttrsString(Quad q) {
         Operator op = q.getOperator();
         jq_Method m = q.getMethod();
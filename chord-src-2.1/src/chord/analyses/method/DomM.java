@@ -45,6 +45,12 @@ public class DomM extends ProgramDom<jq_Method> implements IMethodVisitor {
     public void visit(jq_Method m) {
         getOrAdd(m);
     }
+    public boolean isLoadable() {
+        return true;
+    }
+    public jq_Method fromUniqueString(String s) {
+        return Program.g().getMethod(s);
+    }
     public String toXMLAttrsString(jq_Method m) {
         jq_Class c = m.getDeclaringClass();
         String methName = m.getName().toString();
@@ -1,5 +1,12 @@
 package chord.analyses.point;
 
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import joeq.Class.jq_Method;
 import joeq.Compiler.Quad.BasicBlock;
 import joeq.Compiler.Quad.ControlFlowGraph;
@@ -8,6 +15,7 @@ import joeq.Compiler.Quad.Inst;
 import joeq.Compiler.Quad.Operator;
 import joeq.Compiler.Quad.Quad;
 import chord.analyses.method.DomM;
+import chord.program.Program;
 
 import chord.project.Chord;
 import chord.project.ClassicProject;
@@ -38,24 +46,32 @@ public class DomP extends ProgramDom<Inst> {
         domM = (DomM) (Config.classic ?
             ClassicProject.g().getTrgt("M") : consumes[0]);
         int numM = domM.size();
-        for (int mIdx = 0; mIdx < numM; mIdx++) {
-            jq_Method m = domM.get(mIdx);
-            if (m.isAbstract())
+        List<jq_Method> methods = new ArrayList<jq_Method>(numM);
+        for (int mIdx = 0; mIdx < numM; mIdx++)
+            methods.add(domM.get(mIdx));
+        fill(methods);
+    }
+    protected void collect(jq_Method m, List<Inst> vals) {
+        if (m.isAbstract())
+            return;
+        ControlFlowGraph cfg = m.getCFG();
+        for (BasicBlock bb : cfg.reversePostOrder()) {
+            int n = bb.size();
+            if (n == 0) {
+                assert (bb.isEntry() || bb.isExit());
+                vals.add((Inst) bb);
                 continue;
-            ControlFlowGraph cfg = m.getCFG();
-            for (BasicBlock bb : cfg.reversePostOrder()) {
-                int n = bb.size();
-                if (n == 0) {
-                    assert (bb.isEntry() || bb.isExit());
-                    add((Inst) bb);
-                    continue;
-                }
-                for (Quad q : bb.getQuads())
-                    add(q);
             }
+            for (Quad q : bb.getQuads())
+                vals.add(q);
         }
     }
     public String toUniqueString(Inst i) {
+        StringBuilder sb = new StringBuilder();
+        appendUniqueString(sb, i);
+        return sb.toString();
+    }
+    protected void appendUniqueString(StringBuilder sb, Inst i) {
         int x;
         if (i instanceof Quad) {
             x = ((Quad) i).getID();
@@ -66,10 +82,47 @@ public class DomP extends ProgramDom<Inst> {
             else if (bb.isExit())
                 x = -2;
             else {
-                return "null:" + i;
+                sb.append("null:").append(i);
+                return;
+            }
+        }
+        sb.append(x).append('!').append(i.getMethod());
+    }
+    public boolean isLoadable() {
+        return true;
+    }
+    // map from the unique string of each method whose quads were materialized
+    // to a map from the ids of its instructions to them, -1 and -2 denoting
+    // its entry and exit basic blocks
+    private Map<String, TIntObjectHashMap<Inst>> idToInstMaps;
+    @Override
+    public void clear() {
+        idToInstMaps = null;
+        super.clear();
+    }
+    public Inst fromUniqueString(String s) {
+        int sep = s.indexOf('!');
+        if (sep == -1 || s.startsWith("null:"))
+            return null;
+        if (idToInstMaps == null)
+            idToInstMaps = new HashMap<String, TIntObjectHashMap<Inst>>();
+        String mName = s.substring(sep + 1);
+        TIntObjectHashMap<Inst> idToInstMap = idToInstMaps.get(mName);
+        if (idToInstMap == null) {
+            idToInstMap = new TIntObjectHashMap<Inst>();
+            jq_Method m = Program.g().getMethod(mName);
+            if (m != null && !m.isAbstract()) {
+                ControlFlowGraph cfg = m.getCFG();
+                idToInstMap.put(-1, cfg.entry());
+                idToInstMap.put(-2, cfg.exit());
+                for (BasicBlock bb : cfg.reversePostOrder()) {
+                    for (Quad q : bb.getQuads())
+                        idToInstMap.put(q.getID(), q);
+                }
             }
+            idToInstMaps.put(mName, idToInstMap);
         }
-        return x + "!" + i.getMethod();
+        return idToInstMap.get(Integer.parseInt(s.substring(0, sep)));
     }
     
     public String toXMLAttrsString(Inst q) {
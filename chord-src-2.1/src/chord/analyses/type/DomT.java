@@ -22,6 +22,12 @@ public class DomT extends ProgramDom<jq_Type> {
         for (jq_Type t : types)
             add(t);
     }
+    public boolean isLoadable() {
+        return true;
+    }
+    public jq_Type fromUniqueString(String s) {
+        return Program.g().getType(s);
+    }
     public String toXMLAttrsString(jq_Type t) {
         String name = t.getName();
         String file;
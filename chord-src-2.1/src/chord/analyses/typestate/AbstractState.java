@@ -1,9 +1,15 @@
 package chord.analyses.typestate;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 import chord.util.ArraySet;
 
 /**
  * The abstract state tracked by type-state analysis for an object.
+ * <p>
+ * Must sets are persistent: the must set of each abstract state is made immutable and
+ * replaced by the unique must set equal to it (see {@link #getMS(ArraySet)}), so that
+ * abstract states share their must sets and compare them by identity.
  * 
  * @author machiry
  */
@@ -13,25 +19,56 @@ public class AbstractState {
         emptyMS = new ArraySet<AccessPath>(0);
         emptyMS.setImmutable();
     }
+    // unique instance of each non-empty must set
+    private static final ConcurrentHashMap<ArraySet<AccessPath>, ArraySet<AccessPath>> msMap =
+        new ConcurrentHashMap<ArraySet<AccessPath>, ArraySet<AccessPath>>();
 
     public final TypeState ts;
-    public final ArraySet<AccessPath> ms;
+    public final ArraySet<AccessPath> ms;   // immutable and unique
     public final boolean canReturn;
+    private final int hash;
 
     public AbstractState(TypeState ts, ArraySet<AccessPath> ms) {
         this(ts, ms, false);
     }
 
+    /**
+     * Creates an abstract state; the given must set must not be modified afterwards.
+     */
     public AbstractState(TypeState ts, ArraySet<AccessPath> ms, boolean ret) {
         this.ts = ts;
         assert (ms != null);
-        this.ms = ms;
+        this.ms = getMS(ms);
         canReturn = ret;
+        hash = this.ms.hashCode();
+    }
+
+    /**
+     * Discards the unique instances of all must sets, which are kept until then.  Must sets
+     * provided before a call to this method must not be compared with those provided after it.
+     */
+    static void clearInterned() {
+        msMap.clear();
+    }
+
+    /**
+     * Provides the unique immutable must set equal to the given one, which is made
+     * immutable and must not be modified afterwards.
+     */
+    public static ArraySet<AccessPath> getMS(ArraySet<AccessPath> ms) {
+        if (ms.isEmpty())
+            return emptyMS;
+        ArraySet<AccessPath> ms2 = msMap.get(ms);
+        if (ms2 != null)
+            return ms2;
+        ms.setImmutable();
+        ms2 = msMap.putIfAbsent(ms, ms);
+        return (ms2 == null) ? ms : ms2;
     }
 
     @Override
     public int hashCode() {
-        return ms.hashCode();
+        return hash;
     }
 
     @Override
@@ -39,7 +76,7 @@ public class AbstractState {
         if (this == obj) return true;
         if (obj instanceof AbstractState) {
             AbstractState that = (AbstractState) obj;
-            return ts == that.ts && canReturn == that.canReturn && ms.equals(that.ms);
+            return ts == that.ts && canReturn == that.canReturn && ms == that.ms;
         }
          return false;
     }
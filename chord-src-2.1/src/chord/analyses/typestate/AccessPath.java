@@ -1,30 +1,125 @@
 package chord.analyses.typestate;
 
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
 import joeq.Class.jq_Field;
 
+import chord.analyses.field.DomF;
+
+/**
+ * An access path tracked in must sets by type-state analysis.
+ * <p>
+ * Access paths are hash-consed: they are only created by the factory methods of
+ * their subclasses, which provide the unique instance of each access path, and their
+ * lists of fields are themselves unique (see {@link #getFields(List)}).  Thus, access
+ * paths and their lists of fields can be compared by identity, whatever their length.
+ * The unique lists of fields also record the indices of their fields in domain F (see
+ * {@link #setFieldDom(DomF)} and {@link #hasFieldIn(BitSet)}).
+ */
 public abstract class AccessPath {
-    // non-null and immutable; may be empty
+    // unique instance of each non-empty list of fields; the empty list is Collections.EMPTY_LIST
+    private static final ConcurrentHashMap<List<jq_Field>, FieldList> fieldsMap =
+        new ConcurrentHashMap<List<jq_Field>, FieldList>();
+    // domain of the fields in unique lists of fields, if any (see setFieldDom)
+    private static volatile DomF domF;
+
+    // immutable list of fields, along with their indices in domF
+    private static final class FieldList extends AbstractList<jq_Field> implements RandomAccess {
+        private final jq_Field[] fields;
+        final BitSet fIdxs = new BitSet();
+        FieldList(List<jq_Field> f, DomF domF) {
+            fields = f.toArray(new jq_Field[f.size()]);
+            if (domF != null) {
+                for (jq_Field g : fields) {
+                    int fIdx = domF.indexOf(g);
+                    if (fIdx >= 0)
+                        fIdxs.set(fIdx);
+                }
+            }
+        }
+        @Override
+        public jq_Field get(int i) {
+            return fields[i];
+        }
+        @Override
+        public int size() {
+            return fields.length;
+        }
+    }
+
+    // non-null, immutable, and unique (see getFields); may be empty
     public final List<jq_Field> fields;
+    private final int hash;
 
-    public AccessPath(List<jq_Field> f) {
+    protected AccessPath(List<jq_Field> f, int baseHash) {
         assert (f != null);
         this.fields = f;
-    }
-    
-    @Override
-    public int hashCode() {
         int code = 0;
-        for (jq_Field f : fields) code = code ^ f.hashCode();
-        return code;
+        for (jq_Field g : f) code = 31 * code + g.hashCode();
+        this.hash = 31 * baseHash + code;
     }
-    
+
+    /**
+     * Provides the unique immutable list of fields equal to the given one, which may then
+     * be modified by the caller.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<jq_Field> getFields(List<jq_Field> f) {
+        if (f.isEmpty())
+            return Collections.EMPTY_LIST;
+        FieldList fields = fieldsMap.get(f);
+        if (fields == null) {
+            FieldList newFields = new FieldList(f, domF);
+            fields = fieldsMap.putIfAbsent(newFields, newFields);
+            if (fields == null)
+                fields = newFields;
+        }
+        return fields;
+    }
+
+    /**
+     * Sets the domain in which the indices of the fields in unique lists of fields are
+     * recorded.  It must be called before any such list is provided, and again after
+     * {@link #clearInterned()} if the domain has changed.
+     */
+    static void setFieldDom(DomF dom) {
+        domF = dom;
+    }
+
+    /**
+     * Determines whether some field of this access path has its index in domain F (see
+     * {@link #setFieldDom(DomF)}) in the given set.
+     */
+    public boolean hasFieldIn(BitSet fIdxs) {
+        return fields instanceof FieldList && ((FieldList) fields).fIdxs.intersects(fIdxs);
+    }
+
+    /**
+     * Discards the unique instances of all lists of fields and access paths, which are kept
+     * until then.  Those provided before a call to this method must not be compared with
+     * those provided after it.
+     */
+    static void clearInterned() {
+        fieldsMap.clear();
+        RegisterAccessPath.map.clear();
+        GlobalAccessPath.map.clear();
+    }
+
+    // provides the unique instance of the given access path
+    @SuppressWarnings("unchecked")
+    static <T extends AccessPath> T intern(ConcurrentHashMap<T, T> map, T ap) {
+        T ap2 = map.putIfAbsent(ap, ap);
+        return (ap2 == null) ? ap : ap2;
+    }
+
     @Override
-    public boolean equals(Object obj) {
-        if (this == obj) return true;
-        if (obj instanceof AccessPath)
-            return ((AccessPath) obj).fields.equals(this.fields);
-        return false;
+    public final int hashCode() {
+        return hash;
     }
 
     @Override
@@ -35,4 +130,3 @@ public abstract class AccessPath {
         return ret;
     }
 }
-
@@ -6,6 +6,7 @@ import java.util.Map;
 import joeq.Compiler.Quad.Quad;
 import chord.util.ArraySet;
 import chord.project.analyses.rhs.IEdge;
+import chord.project.analyses.rhs.IMergeHashedEdge;
 import chord.util.Utils;
 
 /**
@@ -17,7 +18,7 @@ import chord.util.Utils;
  *
  * @author machiry
  */
-public class Edge implements IEdge {
+public class Edge implements IMergeHashedEdge {
     public static final Edge NULL = new Edge();
 
     final public EdgeKind type;
@@ -121,4 +122,13 @@ public class Edge implements IEdge {
                ((srcNode != null) ? srcNode.hashCode() : 0) +
                ((dstNode != null) ? dstNode.hashCode() : 0);
     }
+
+    /**
+     * Hashes the type, allocation site and source node, which edges that can be merged share.
+     */
+    @Override
+    public int mergeHashCode() {
+        return (type.ordinal() * 31 + ((h != null) ? h.hashCode() : 0)) * 31 +
+               ((srcNode != null) ? srcNode.hashCode() : 0);
+    }
 }
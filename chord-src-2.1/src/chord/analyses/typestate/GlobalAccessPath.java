@@ -2,34 +2,46 @@ package chord.analyses.typestate;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import joeq.Class.jq_Field;
 
 public class GlobalAccessPath extends AccessPath {
+    // unique instance of each access path; cleared by AccessPath.clearInterned()
+    static final ConcurrentHashMap<GlobalAccessPath, GlobalAccessPath> map =
+        new ConcurrentHashMap<GlobalAccessPath, GlobalAccessPath>();
+
     public final jq_Field global; // static field; non-null
 
-    public GlobalAccessPath(jq_Field g, List<jq_Field> fields) {
-        super(fields);
-        assert (g != null);
+    private GlobalAccessPath(jq_Field g, List<jq_Field> fields) {
+        super(fields, g.hashCode());
         this.global = g;
     }
 
-    public GlobalAccessPath(jq_Field g) {
-        super(Collections.EMPTY_LIST);
-        this.global = g;
+    /**
+     * Provides the unique access path g.fields.
+     */
+    public static GlobalAccessPath get(jq_Field g, List<jq_Field> fields) {
+        assert (g != null);
+        return intern(map, new GlobalAccessPath(g, getFields(fields)));
     }
 
-    @Override
-    public int hashCode() {
-        return 31 * global.hashCode() + super.hashCode();
+    /**
+     * Provides the unique access path g.
+     */
+    @SuppressWarnings("unchecked")
+    public static GlobalAccessPath get(jq_Field g) {
+        assert (g != null);
+        return intern(map, new GlobalAccessPath(g, Collections.EMPTY_LIST));
     }
 
+    // only used to find the unique instance of each access path
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
         if (obj instanceof GlobalAccessPath) {
             GlobalAccessPath that = (GlobalAccessPath) obj;
-            return global == that.global && fields.equals(that.fields);
+            return global == that.global && fields == that.fields;
         }
         return false;
     }
@@ -1,5 +1,6 @@
 package chord.analyses.typestate;
 
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -108,13 +109,15 @@ public class Helper {
         return pointsTo(var, alloc, cipa);
     }
     
+    // the caches below and the points-to analysis are guarded by the class lock, as
+    // path edges may be computed concurrently (see RHSAnalysis)
     private static Map<Register, Set<Quad>> VpointsToMap = new HashMap<Register, Set<Quad>>();
     private static Map<jq_Field, Set<Quad>> FpointsToMap = new HashMap<jq_Field, Set<Quad>>();
     private static Map<Pair<Quad, jq_Field>, Set<Quad>> HFHMap = new HashMap<Pair<Quad, jq_Field>, Set<Quad>>();
     
     private static Set<Quad> temp = new HashSet<Quad>(1);
 
-    private static Set<Quad> pointsTo(Set<Quad> quads, jq_Field f, CIPAAnalysis cipa) {
+    private static synchronized Set<Quad> pointsTo(Set<Quad> quads, jq_Field f, CIPAAnalysis cipa) {
         Set<Quad> retQuads = new HashSet<Quad>();
         for(Quad q : quads){
             Pair<Quad,jq_Field> p = new Pair<Quad,jq_Field>(q,f);
@@ -131,7 +134,7 @@ public class Helper {
         return retQuads;
     }
     
-    private static boolean pointsTo(Register v, Quad q, CIPAAnalysis cipa) {
+    private static synchronized boolean pointsTo(Register v, Quad q, CIPAAnalysis cipa) {
         Set<Quad> pts = VpointsToMap.get(v);
         if (pts == null) {
             pts = cipa.pointsTo(v).pts;
@@ -140,7 +143,7 @@ public class Helper {
         return pts.contains(q);
     }
     
-    private static Set<Quad> pointsTo(Register v, CIPAAnalysis cipa) {
+    private static synchronized Set<Quad> pointsTo(Register v, CIPAAnalysis cipa) {
         Set<Quad> pts = VpointsToMap.get(v);
         if (pts == null) {
             pts = cipa.pointsTo(v).pts;
@@ -149,7 +152,7 @@ public class Helper {
         return pts;
     }
     
-    private static Set<Quad> pointsTo(jq_Field f, CIPAAnalysis cipa) {
+    private static synchronized Set<Quad> pointsTo(jq_Field f, CIPAAnalysis cipa) {
         Set<Quad> pts = FpointsToMap.get(f);
         if (pts == null) {
             pts = cipa.pointsTo(f).pts;
@@ -202,20 +205,16 @@ public class Helper {
         }
     }
  
-    public static void removeModifiableAccessPaths(Set<jq_Field> modFields, ArraySet<AccessPath> MS) {
+    /**
+     * Removes from MS the access paths having some instance field in modFields, a set of
+     * indices in domain F that may be null if empty.
+     */
+    public static void removeModifiableAccessPaths(BitSet modFields, ArraySet<AccessPath> MS) {
         if (modFields == null)
             return;
         
         for (Iterator<AccessPath> i = MS.iterator(); i.hasNext();) {
-            AccessPath ap = i.next();
-            boolean mod = false;
-            for (jq_Field f : ap.fields) {
-                if (modFields.contains(f)) {
-                    mod = true;
-                    break;
-                }
-            }
-            if (mod)
+            if (i.next().hasFieldIn(modFields))
                 i.remove();
         }        
     }
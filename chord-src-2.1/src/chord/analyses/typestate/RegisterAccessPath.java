@@ -2,35 +2,47 @@ package chord.analyses.typestate;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import joeq.Compiler.Quad.RegisterFactory.Register;
 import joeq.Class.jq_Field;
 
 public class RegisterAccessPath extends AccessPath {
+    // unique instance of each access path; cleared by AccessPath.clearInterned()
+    static final ConcurrentHashMap<RegisterAccessPath, RegisterAccessPath> map =
+        new ConcurrentHashMap<RegisterAccessPath, RegisterAccessPath>();
+
     public final Register var; // non-null
 
-    public RegisterAccessPath(Register v, List<jq_Field> fields) {
-        super(fields);
-        assert (v != null);
+    private RegisterAccessPath(Register v, List<jq_Field> fields) {
+        super(fields, v.hashCode());
         this.var = v;
     }
 
-    public RegisterAccessPath(Register v) {
-        super(Collections.EMPTY_LIST);
-        this.var = v;
+    /**
+     * Provides the unique access path v.fields.
+     */
+    public static RegisterAccessPath get(Register v, List<jq_Field> fields) {
+        assert (v != null);
+        return intern(map, new RegisterAccessPath(v, getFields(fields)));
     }
 
-    @Override
-    public int hashCode() {
-        return 31 * var.hashCode() + super.hashCode();
+    /**
+     * Provides the unique access path v.
+     */
+    @SuppressWarnings("unchecked")
+    public static RegisterAccessPath get(Register v) {
+        assert (v != null);
+        return intern(map, new RegisterAccessPath(v, Collections.EMPTY_LIST));
     }
 
+    // only used to find the unique instance of each access path
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
         if (obj instanceof RegisterAccessPath) {
             RegisterAccessPath that = (RegisterAccessPath) obj;
-            return var == that.var && fields.equals(that.fields);
+            return var == that.var && fields == that.fields;
         }
         return false;
     }
@@ -1,12 +1,17 @@
 package chord.analyses.typestate;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 import joeq.Class.jq_Field;
 import joeq.Class.jq_Method;
@@ -39,17 +44,24 @@ import chord.analyses.alias.CIObj;
 import chord.analyses.alias.CIPAAnalysis;
 import chord.analyses.alias.ICICG;
 import chord.analyses.alloc.DomH;
+import chord.analyses.field.DomF;
 import chord.analyses.type.DomT;
 import chord.analyses.method.DomM;
+import chord.bddbddb.Rel.IntPairIterable;
 import chord.program.Loc;
 import chord.project.Chord;
 import chord.project.ClassicProject;
 import chord.project.Messages;
 import chord.project.analyses.ProgramRel;
 import chord.project.analyses.rhs.RHSAnalysis;
+import chord.project.analyses.rhs.TimeoutException;
+import chord.project.analyses.rhs.TraceKind;
 import chord.util.ArraySet;
+import chord.util.ParallelRunner;
 import chord.util.Utils;
+import chord.util.tuple.integer.IntPair;
 import chord.util.tuple.object.Pair;
+import chord.util.tuple.object.Trio;
 import chord.project.Config;
 import chord.program.Program;
 
@@ -61,6 +73,21 @@ import chord.program.Program;
  *    chord.typestate.maxdepth (default value: 6)
  * 3. Alloc sites to exclude from queries
  *    chord.check.exclude (default value: JDK libraries)
+ * 4. Number of groups into which tracked alloc sites are partitioned by run()
+ *    chord.typestate.groups (default value: 1)
+ * 5. Number of threads solving the groups of tracked alloc sites
+ *    chord.typestate.group.threads (default value: min(groups, available processors))
+ *
+ * The type-states of objects allocated at different sites are independent, so if
+ * there are several groups, run() solves each group with a separate instance of this
+ * analysis, on its own thread, and then sets the path and summary edges of this
+ * analysis to the union of theirs (see runGroupedPass).  The instances share the
+ * read-only call graph, mod-field map, and memoized transfers below.
+ *
+ * Access paths and must sets are unique (see AccessPath and AbstractState), and the
+ * transfer of abstract states by non-call quads and the mapping of caller must sets
+ * to callee must sets at call sites are memoized until done() is called; those of the
+ * quads of changed methods are discarded by incremental passes (see methodsChanged).
  */
 @Chord(name = "typestate-java")
 public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
@@ -68,14 +95,25 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
     protected TypeStateSpec sp;
     protected CIPAAnalysis cipa;
     protected ICICG cicg;
-    protected Map<jq_Method, Set<jq_Field>> methodToModFields;
+    // indices in domain F of the instance fields modified by each method, if any (see init())
+    protected Map<jq_Method, BitSet> methodToModFields;
     protected Set<Quad> trackedSites;
-    protected MyQuadVisitor qv = new MyQuadVisitor();
     protected jq_Method threadStartMethod;
     public static int maxDepth;
     protected String cipaName, cicgName;
     public static TypeState startState, errorState;
+    protected Set<jq_Method> methods;       // nodes of cicg, shared with the groups
+    protected int numGroups, numGroupThreads;
     private boolean isInit;
+    // the analysis of which this one solves a group of tracked sites; null if none
+    private TypeStateAnalysis parent;
+    // memoized results of getMiscPathEdge for each pair (quad, non-null abstract state) and
+    // of getCalleeMS for each triple (call site, target method, caller must set); the
+    // abstract states and must sets are unique, so these maps are keyed by them cheaply
+    private Map<Pair<Quad, AbstractState>, AbstractState> miscStates =
+        new ConcurrentHashMap<Pair<Quad, AbstractState>, AbstractState>();
+    private Map<Trio<Quad, jq_Method, ArraySet<AccessPath>>, ArraySet<AccessPath>> calleeMSs =
+        new ConcurrentHashMap<Trio<Quad, jq_Method, ArraySet<AccessPath>>, ArraySet<AccessPath>>();
 
     // subclasses can override
     public TypeStateSpec getTypeStateSpec() {
@@ -93,6 +131,11 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
         if (isInit) return;
         isInit = true;
 
+        if (parent != null) {
+            initGroup();
+            return;
+        }
+
         threadStartMethod = Program.g().getThreadStartMethod();
         sp = getTypeStateSpec();
         startState = sp.getStartState();
@@ -109,26 +152,61 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
         CICGAnalysis cicgAnalysis = (CICGAnalysis) ClassicProject.g().getTask(cicgName);
         ClassicProject.g().runTask(cicgAnalysis);
         cicg = cicgAnalysis.getCallGraph();
-        
+        methods = cicg.getNodes();
+
+        numGroups = Integer.getInteger("chord.typestate.groups", 1);
+        numGroupThreads = Integer.getInteger("chord.typestate.group.threads",
+            Math.min(numGroups, Runtime.getRuntime().availableProcessors()));
+        if (numGroups < 1 || numGroupThreads < 1)
+            throw new RuntimeException("Invalid number of groups or group threads: " + numGroups + ", " + numGroupThreads);
+
         super.init();
 
-        // build map methodToModFields
+        // build map methodToModFields: the instance fields written by each method or any
+        // method reachable from it in cicg, as bitsets over domain F, which are computed for
+        // the SCCs of cicg in callees-first order and are shared by equal sets of fields
         {
-            ProgramRel relModMF = (ProgramRel) ClassicProject.g().getTrgt("modMF");
-            ClassicProject.g().runTask("modMF-dlog");
-            relModMF.load();
-            methodToModFields = new HashMap<jq_Method, Set<jq_Field>>();
-            Iterable<Pair<jq_Method, jq_Field>> tuples = relModMF.getAry2ValTuples();
-            for (Pair<jq_Method, jq_Field> p : tuples) {
-                jq_Method m = p.val0;
-                Set<jq_Field> modFields = methodToModFields.get(m);
-                if (modFields == null) {
-                    modFields = new HashSet<jq_Field>();
-                    methodToModFields.put(m, modFields);
+            DomF domF = (DomF) ClassicProject.g().getTrgt("F");
+            ClassicProject.g().runTask(domF);
+            AccessPath.setFieldDom(domF);
+            DomM domM = (DomM) ClassicProject.g().getTrgt("M");
+            ClassicProject.g().runTask(domM);
+            ProgramRel relWriteMF = (ProgramRel) ClassicProject.g().getTrgt("writeMF");
+            ClassicProject.g().runTask("writeMF-dlog");
+            relWriteMF.load();
+            BitSet[] writeFields = new BitSet[domM.size()];
+            IntPairIterable tuples = relWriteMF.getAry2IntTuples();
+            for (IntPair tuple : tuples) {
+                int mIdx = tuple.idx0;
+                if (writeFields[mIdx] == null)
+                    writeFields[mIdx] = new BitSet();
+                writeFields[mIdx].set(tuple.idx1);
+            }
+            relWriteMF.close();
+            methodToModFields = new HashMap<jq_Method, BitSet>();
+            Map<BitSet, BitSet> uniqueModFields = new HashMap<BitSet, BitSet>();
+            for (Set<jq_Method> scc : getCalleesFirstSCCs()) {
+                BitSet modFields = new BitSet();
+                for (jq_Method m : scc) {
+                    BitSet fields = writeFields[domM.indexOf(m)];
+                    if (fields != null)
+                        modFields.or(fields);
+                    for (jq_Method m2 : cicg.getSuccs(m)) {
+                        BitSet fields2 = methodToModFields.get(m2);
+                        if (fields2 != null && !scc.contains(m2))
+                            modFields.or(fields2);
+                    }
+                }
+                if (modFields.isEmpty())
+                    continue;
+                BitSet modFields2 = uniqueModFields.get(modFields);
+                if (modFields2 == null) {
+                    uniqueModFields.put(modFields, modFields);
+                    modFields2 = modFields;
                 }
-                modFields.add(p.val1);
+                for (jq_Method m : scc)
+                    methodToModFields.put(m, modFields2);
             }
-            relModMF.close();
         }
 
         // build set trackedSites
@@ -166,19 +244,135 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
         }
     }
 
+    // initializes this analysis from its parent, but for trackedSites
+    private void initGroup() {
+        threadStartMethod = parent.threadStartMethod;
+        sp = parent.sp;
+        cipaName = parent.cipaName;
+        cipa = parent.cipa;
+        cicgName = parent.cicgName;
+        cicg = parent.cicg;
+        methods = parent.methods;
+        methodToModFields = parent.methodToModFields;
+        miscStates = parent.miscStates;
+        calleeMSs = parent.calleeMSs;
+        numGroups = numGroupThreads = 1;
+        // the call graph was queried by the parent
+        callersMap = parent.callersMap;
+        targetsMap = parent.targetsMap;
+        super.init();
+    }
+
     @Override
     public void run() {
         init();
-        runPass();
+        if (numGroups > 1)
+            runGroupedPass();
+        else
+            runPass();
         if (DEBUG) print();
         done();
     }
 
+    /**
+     * Solves this analysis as runPass() does, but with trackedSites partitioned into
+     * numGroups groups (of consecutive sites in domain H), each solved by a separate
+     * instance of this analysis, using numGroupThreads threads.  The path and summary edges
+     * of this analysis are then the union of those of the instances.  Falls back to
+     * runPass() if trace generation is enabled.
+     */
+    public void runGroupedPass() throws TimeoutException {
+        init();
+        if (traceKind != TraceKind.NONE) {
+            Messages.warn("TypeStateAnalysis: Traces are generated; ignoring property chord.typestate.groups.");
+            runPass();
+            return;
+        }
+        final DomH domH = (DomH) ClassicProject.g().getTrgt("H");
+        List<Quad> sites = new ArrayList<Quad>(trackedSites);
+        Collections.sort(sites, new Comparator<Quad>() {
+            public int compare(Quad q1, Quad q2) {
+                return domH.indexOf(q1) - domH.indexOf(q2);
+            }
+        });
+        int n = Math.min(numGroups, Math.max(sites.size(), 1));
+        // fill the caches of the call graph shared with the groups, which only read them
+        queryCallGraph();
+        final List<TypeStateAnalysis> groups = new ArrayList<TypeStateAnalysis>(n);
+        for (int g = 0; g < n; g++) {
+            TypeStateAnalysis group;
+            try {
+                group = getClass().getDeclaredConstructor().newInstance();
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+            group.setName(getName() + "-group-" + g);
+            group.parent = this;
+            group.trackedSites = new HashSet<Quad>(sites.subList(g * sites.size() / n, (g + 1) * sites.size() / n));
+            group.init();
+            groups.add(group);
+        }
+        long startTime = System.currentTimeMillis();
+        int numThreads = Math.min(numGroupThreads, n);
+        try {
+            ParallelRunner.run(getName(), numThreads, n, new ParallelRunner.Task<RuntimeException>() {
+                public void run(int worker, int g) {
+                    groups.get(g).runPass();
+                }
+            });
+        } finally {
+            for (TypeStateAnalysis group : groups)
+                group.done();
+        }
+        setEdges(groups);
+        Messages.log("TypeStateAnalysis: %d groups of %d tracked sites solved by %d threads in %d ms.",
+            n, sites.size(), numThreads, System.currentTimeMillis() - startTime);
+    }
+
+    @Override
+    protected void methodsChanged(Collection<jq_Method> changedMethods) {
+        // the memoized transfers of the quads of changed methods are stale
+        Set<jq_Method> changed = new HashSet<jq_Method>(changedMethods);
+        for (Iterator<Pair<Quad, AbstractState>> i = miscStates.keySet().iterator(); i.hasNext();) {
+            if (changed.contains(i.next().val0.getMethod()))
+                i.remove();
+        }
+        for (Iterator<Trio<Quad, jq_Method, ArraySet<AccessPath>>> i = calleeMSs.keySet().iterator(); i.hasNext();) {
+            if (changed.contains(i.next().val0.getMethod()))
+                i.remove();
+        }
+    }
+
+    @Override
+    public void done() {
+        super.done();
+        if (parent == null) {
+            miscStates.clear();
+            calleeMSs.clear();
+            AccessPath.clearInterned();
+            AbstractState.clearInterned();
+        }
+    }
+
     @Override
     public ICICG getCallGraph() {
         return cicg;
     }
 
+    /**
+     * Provides the type-states that an object allocated at tracked site h may be in at
+     * instruction i, computing only the path edges needed (see RHSAnalysis#query).
+     */
+    public Set<TypeState> queryTypeStates(Inst i, Quad h) {
+        init();
+        Set<TypeState> states = new HashSet<TypeState>();
+        for (Edge pe : query(i)) {
+            if (pe.h == h && pe.dstNode != null)
+                states.add(pe.dstNode.ts);
+        }
+        return states;
+    }
+
     /*
      * For each reachable method 'm' adds the following path edges:
      * 1. <null, null, null>
@@ -188,7 +382,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
     public Set<Pair<Loc, Edge>> getInitPathEdges() {
         Set<Pair<Loc, Edge>> initPEs = new ArraySet<Pair<Loc, Edge>>();
         Map<jq_Method, Loc> methToEntry = new HashMap<jq_Method, Loc>();
-        for (jq_Method m : cicg.getNodes()) {
+        for (jq_Method m : methods) {
             EntryOrExitBasicBlock bb = m.getCFG().entry();
             Loc loc = new Loc(bb, -1);
             methToEntry.put(m, loc);
@@ -243,25 +437,11 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
         AbstractState oldDst = pe.dstNode;
         assert (oldDst != null);
         ArraySet<AccessPath> oldMS = oldDst.ms;
-        ArraySet<AccessPath> newMS = new ArraySet<AccessPath>();
-        // Build newMS in two steps
-        // Step 1: for each r1.* where r1 is an actual arg of q, add r2.* where r2 is
-        // the corresponding formal arg of m
+        // newMS consists of r2.* for each r1.* where r1 is an actual arg of q and r2 is
+        // the corresponding formal arg of m, and of all g.*
+        ArraySet<AccessPath> newMS = getCalleeMS(q, m, oldMS);
         ParamListOperand args = Invoke.getParamList(q);
-        RegisterFactory rf = m.getCFG().getRegisterFactory();
-        boolean isthis = false;
-        for (int i = 0; i < args.length(); i++) {
-            Register actualReg = args.get(i).getRegister();
-            Register formalReg = rf.get(i);
-            for (int j = -1; (j = Helper.getIndexInAP(oldMS, actualReg, j)) >= 0;) {
-                AccessPath oldAP = oldMS.get(j);
-                AccessPath newAP = new RegisterAccessPath(formalReg, oldAP.fields);
-                newMS.add(newAP);
-                if (i == 0) isthis = true;
-            }
-        }
-        // Step 2: add all g.*
-        Helper.addAllGlobalAccessPath(newMS, oldMS);
+        boolean isthis = args.length() > 0 && Helper.getIndexInAP(oldMS, args.get(0).getRegister()) >= 0;
 
         // Do typestate change depending on whether the method is interesting or not
         jq_Method tgtMethod = Invoke.getMethod(q).getMethod();
@@ -294,17 +474,62 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
     public Edge getMiscPathEdge(Quad q, Edge pe) {
         if (DEBUG) System.out.println("ENTER getMiscPathEdge: q=" + q + " pe=" + pe);
         if (pe == Edge.NULL) return pe;
-        qv.istate = pe.dstNode;
-        qv.ostate = pe.dstNode;
-        qv.h = pe.h;
-        // may modify only qv.ostate
-        q.accept(qv);
+        AbstractState istate = pe.dstNode;
+        AbstractState ostate;
+        if (istate == null) {
+            ostate = getMiscState(q, istate, pe.h);
+        } else {
+            // the transfer of a non-null abstract state does not depend on h
+            Pair<Quad, AbstractState> key = new Pair<Quad, AbstractState>(q, istate);
+            ostate = miscStates.get(key);
+            if (ostate == null) {
+                ostate = getMiscState(q, istate, pe.h);
+                miscStates.putIfAbsent(key, ostate);
+            }
+        }
         // XXX: DO NOT REUSE incoming PE (merge does strong updates)
-        Edge newEdge = new Edge(pe.srcNode, qv.ostate, pe.type, pe.h);
+        Edge newEdge = new Edge(pe.srcNode, ostate, pe.type, pe.h);
         if (DEBUG) System.out.println("LEAVE getMiscPathEdge: ret=" + newEdge);
         return newEdge;
     }
 
+    private AbstractState getMiscState(Quad q, AbstractState istate, Quad h) {
+        // a fresh visitor as this method may be called concurrently (see RHSAnalysis)
+        MyQuadVisitor qv = new MyQuadVisitor();
+        qv.istate = istate;
+        qv.ostate = istate;
+        qv.h = h;
+        // may modify only qv.ostate
+        q.accept(qv);
+        return qv.ostate;
+    }
+
+    /**
+     * Provides the unique must set consisting of r2.* for each r1.* in the given caller
+     * must set where r1 is an actual arg of call site q and r2 is the corresponding formal
+     * arg of target method m, and of all g.* in the given must set.
+     */
+    private ArraySet<AccessPath> getCalleeMS(Quad q, jq_Method m, ArraySet<AccessPath> clrMS) {
+        Trio<Quad, jq_Method, ArraySet<AccessPath>> key =
+            new Trio<Quad, jq_Method, ArraySet<AccessPath>>(q, m, clrMS);
+        ArraySet<AccessPath> calleeMS = calleeMSs.get(key);
+        if (calleeMS != null)
+            return calleeMS;
+        ArraySet<AccessPath> newMS = new ArraySet<AccessPath>();
+        ParamListOperand args = Invoke.getParamList(q);
+        RegisterFactory rf = m.getCFG().getRegisterFactory();
+        for (int i = 0; i < args.length(); i++) {
+            Register actualReg = args.get(i).getRegister();
+            Register formalReg = rf.get(i);
+            for (int j = -1; (j = Helper.getIndexInAP(clrMS, actualReg, j)) >= 0;)
+                newMS.add(RegisterAccessPath.get(formalReg, clrMS.get(j).fields));
+        }
+        Helper.addAllGlobalAccessPath(newMS, clrMS);
+        calleeMS = AbstractState.getMS(newMS);
+        calleeMSs.putIfAbsent(key, calleeMS);
+        return calleeMS;
+    }
+
     /**
      * If target method is threadStart, then only matching summary edge tgtSE is the null edge,
      * in which case (a copy of) the incoming path edge clrPE is returned.
@@ -382,38 +607,28 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
         RegisterFactory rf = m.getCFG().getRegisterFactory();
 
         if (clrPE.type == EdgeKind.ALLOC || clrPE.type == EdgeKind.FULL) {
-            // Compare must sets; they should be equal in order to apply summary
-            // Build this must set tmpMS in two steps
-            ArraySet<AccessPath> tmpMS = new ArraySet<AccessPath>();
+            // Compare must sets; they should be equal in order to apply summary; as must sets
+            // are unique, they are compared by identity
+            ArraySet<AccessPath> tmpMS = getCalleeMS(q, m, clrPE.dstNode.ms);
+            if (tgtSE.srcNode.ms != tmpMS) {
+                if (DEBUG) System.out.println("LEAVE getInvkPathEdge: null (must sets don't match)");
+                return null;
+            }
 
-            // Step 1: for each r1.* in caller must set where r1 is an actual arg of q,
-            // add r2.* where r2 is the corresponding formal arg
+            // clrMS is the caller must set without any r1.* where r1 is an actual arg of q
+            // and without any g.*
             ArraySet<AccessPath> clrMS = new ArraySet<AccessPath>(clrPE.dstNode.ms);
             for (int i = 0; i < args.length(); i++) {
                 Register actualReg = args.get(i).getRegister();
-                Register formalReg = rf.get(i);
-                for (int j = -1; (j = Helper.getIndexInAP(clrPE.dstNode.ms, actualReg, j)) >= 0;) {
-                    AccessPath oldAP = clrPE.dstNode.ms.get(j);
-                    AccessPath newAP = new RegisterAccessPath(formalReg, oldAP.fields);
-                    tmpMS.add(newAP);
-                    clrMS.remove(oldAP);
-                }
+                for (int j = -1; (j = Helper.getIndexInAP(clrPE.dstNode.ms, actualReg, j)) >= 0;)
+                    clrMS.remove(clrPE.dstNode.ms.get(j));
             }
-
-            // Step 2: add all g.* in caller must set
-            Helper.addAllGlobalAccessPath(tmpMS, clrPE.dstNode.ms);
             Helper.removeAllGlobalAccessPaths(clrMS);
 
-            if (!tgtSE.srcNode.ms.equals(tmpMS)) {
-                if (DEBUG) System.out.println("LEAVE getInvkPathEdge: null (must sets don't match)");
-                return null;
-            }
-
-            // At this point we are done with tmpMS but we will still use clrMS.
             // Build final must set newMS in four steps.
 
             // Step 1: Add all x.* in caller must set where x is neither an actual arg nor a
-            // static field, and no instance field in "*" is modified in the callee (as per modMF)
+            // static field, and no instance field in "*" is modified in the callee (as per methodToModFields)
             addFallThroughAccessPaths(q, clrPE, m, tgtSE, newMS, clrMS);
 
             // Step 2: Add all caller local variables, i.e., paths r without any fields in caller
@@ -430,7 +645,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
                 Register actualReg = args.get(i).getRegister();
                 for (int j = -1; (j = Helper.getIndexInAP(tgtSE.dstNode.ms, formalReg, j)) >= 0;) {
                     AccessPath oldAP = tgtSE.dstNode.ms.get(j);
-                    AccessPath newAP = new RegisterAccessPath(actualReg, oldAP.fields);
+                    AccessPath newAP = RegisterAccessPath.get(actualReg, oldAP.fields);
                     newMS.add(newAP);
                 }
             }
@@ -446,7 +661,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
                 Register actualReg = args.get(i).getRegister();
                 for (int j = -1; (j = Helper.getIndexInAP(tgtSE.dstNode.ms, formalReg, j)) >= 0;) {
                     AccessPath oldAP = tgtSE.dstNode.ms.get(j);
-                    AccessPath newAP = new RegisterAccessPath(actualReg, oldAP.fields);
+                    AccessPath newAP = RegisterAccessPath.get(actualReg, oldAP.fields);
                     newMS.add(newAP);
                 }
             }
@@ -465,7 +680,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
 
         Register tgtRetReg = (Invoke.getDest(q) != null) ? Invoke.getDest(q).getRegister() : null;
         if (tgtSE.dstNode.canReturn && tgtRetReg != null) {
-            newMS.add(new RegisterAccessPath(tgtRetReg));
+            newMS.add(RegisterAccessPath.get(tgtRetReg));
         }
         
         Helper.addAllGlobalAccessPath(newMS, tgtSE.dstNode.ms);
@@ -519,7 +734,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
                 Register srcR = ((RegisterOperand) Move.getSrc(q)).getRegister();
                 for (int i = -1; (i = Helper.getIndexInAP(oldMS, srcR, i)) >= 0;) {
                     if (newMS == null) newMS = new ArraySet<AccessPath>(oldMS);
-                    newMS.add(new RegisterAccessPath(dstR, oldMS.get(i).fields));
+                    newMS.add(RegisterAccessPath.get(dstR, oldMS.get(i).fields));
                 }
             }
             if (newMS != null)
@@ -541,7 +756,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
                 Register srcR = ((RegisterOperand) ro).getRegister();
                 for (int j = -1; (j = Helper.getIndexInAP(oldMS, srcR, j)) >= 0;) {
                     if (newMS == null) newMS = new ArraySet<AccessPath>(oldMS);
-                    newMS.add(new RegisterAccessPath(dstR, oldMS.get(j).fields));
+                    newMS.add(RegisterAccessPath.get(dstR, oldMS.get(j).fields));
                 }
             }
             if (newMS != null)
@@ -555,7 +770,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
                 if (h == q && trackedSites.contains(q)) {
                     ArraySet<AccessPath> newMS = new ArraySet<AccessPath>(1);
                     Register dstR = New.getDest(q).getRegister();
-                    newMS.add(new RegisterAccessPath(dstR));
+                    newMS.add(RegisterAccessPath.get(dstR));
                     ostate = new AbstractState(sp.getStartState(), newMS);
                 }
             } else {
@@ -603,7 +818,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
             ArraySet<AccessPath> newMS = Helper.removeReference(oldMS, dstR);
             for (int i = -1; (i = Helper.getIndexInAP(oldMS, srcF, i)) >= 0;) {
                 if (newMS == null) newMS = new ArraySet<AccessPath>(oldMS);
-                newMS.add(new RegisterAccessPath(dstR, oldMS.get(i).fields));
+                newMS.add(RegisterAccessPath.get(dstR, oldMS.get(i).fields));
             }
             if (newMS != null) 
                 ostate = new AbstractState(istate.ts, newMS);
@@ -619,7 +834,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
                 Register srcR = ((RegisterOperand) Putstatic.getSrc(q)).getRegister();
                 for (int i = -1; (i = Helper.getIndexInAP(oldMS, srcR, i)) >= 0;) {
                     if (newMS == null) newMS = new ArraySet<AccessPath>(oldMS);
-                    newMS.add(new GlobalAccessPath(dstF, oldMS.get(i).fields));
+                    newMS.add(GlobalAccessPath.get(dstF, oldMS.get(i).fields));
                 }
             }
             if (newMS != null) 
@@ -650,7 +865,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
                     fields.add(dstF);
                     fields.addAll(oldAP.fields);
                     if (newMS == null) newMS = new ArraySet<AccessPath>(oldMS);
-                    newMS.add(new RegisterAccessPath(dstR, fields));
+                    newMS.add(RegisterAccessPath.get(dstR, fields));
                 }
             }
             if (newMS != null)
@@ -671,7 +886,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
                     List<jq_Field> fields = new ArrayList<jq_Field>(oldMS.get(i).fields);
                     fields.remove(0);
                     if (newMS == null) newMS = new ArraySet<AccessPath>(oldMS);
-                    newMS.add(new RegisterAccessPath(dstR, fields));
+                    newMS.add(RegisterAccessPath.get(dstR, fields));
                 }
             }
             if (newMS != null)
@@ -9,6 +9,7 @@ import joeq.Class.jq_Class;
 import joeq.Class.jq_Method;
 import joeq.Compiler.Quad.RegisterFactory.Register;
 import chord.analyses.method.DomM;
+import chord.program.Program;
 import chord.project.ClassicProject;
 import chord.project.Config;
 import chord.program.visitors.IMethodVisitor;
@@ -39,6 +40,9 @@ import chord.project.analyses.ProgramDom;
 public class DomV extends ProgramDom<Register> implements IMethodVisitor {
     protected DomM domM;
     protected Map<Register, jq_Method> varToMethodMap;
+    // map from the unique string of each method to a map from the names of
+    // its variables to them, filled while the domain is restored from disk
+    private Map<String, Map<String, Register>> nameToVarMaps;
 
     public void init() {
         domM = (DomM) (Config.classic ? ClassicProject.g().getTrgt("M") : consumes[0]);
@@ -55,16 +59,72 @@ public class DomV extends ProgramDom<Register> implements IMethodVisitor {
         if (m.isAbstract())
             return;
         List<Register> vars = m.getLiveRefVars();
-        for (Register v : vars) {
-            varToMethodMap.put(v, m);
-            add(v);
-        }
+        for (Register v : vars)
+            add(m, v);
+    }
+
+    public boolean isParallelFillable() {
+        return true;
+    }
+
+    protected void collect(jq_Method m, List<Register> vals) {
+        if (!m.isAbstract())
+            vals.addAll(m.getLiveRefVars());
+    }
+
+    protected void add(jq_Method m, Register v) {
+        varToMethodMap.put(v, m);
+        add(v);
     }
 
     public String toUniqueString(Register v) {
         return v + "!" + getMethod(v);
     }
 
+    protected void appendUniqueString(StringBuilder sb, Register v) {
+        sb.append(v).append('!').append(getMethod(v));
+    }
+
+    public boolean isLoadable() {
+        return true;
+    }
+
+    // the unique string of a variable involves its method, which is known
+    // only once the variable is materialized, hence values are not looked
+    // up lazily by value; the variables of each method are resolved at once
+    public boolean load() {
+        boolean loaded = super.load();
+        try {
+            if (loaded)
+                materializeAll();
+        } finally {
+            nameToVarMaps = null;
+        }
+        return loaded;
+    }
+
+    public Register fromUniqueString(String s) {
+        int sep = s.indexOf('!');
+        if (sep == -1)
+            return null;
+        if (nameToVarMaps == null)
+            nameToVarMaps = new HashMap<String, Map<String, Register>>();
+        String mName = s.substring(sep + 1);
+        Map<String, Register> nameToVarMap = nameToVarMaps.get(mName);
+        if (nameToVarMap == null) {
+            nameToVarMap = new HashMap<String, Register>();
+            jq_Method m = Program.g().getMethod(mName);
+            if (m != null && !m.isAbstract()) {
+                for (Register v : m.getLiveRefVars()) {
+                    varToMethodMap.put(v, m);
+                    nameToVarMap.put(v.toString(), v);
+                }
+            }
+            nameToVarMaps.put(mName, nameToVarMap);
+        }
+        return nameToVarMap.get(s.substring(0, sep));
+    }
+
     public String toXMLAttrsString(Register v) {
         int mIdx = domM.indexOf(getMethod(v));
         String file = getMethod(v).getDeclaringClass().getSourceFileName();
@@ -1,9 +1,16 @@
 package chord.bddbddb;
 
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 import chord.util.IndexMap;
 
@@ -25,6 +32,9 @@ import chord.util.IndexMap;
  * <li> {@link #indexOf(Object)}, which gives the integer mapped to the specified value in the domain in memory. </li>
  * </ul>
  * </li>
+ * <li> Alternatively, a domain previously reflected onto disk can be restored in memory by calling {@link #load(String)}, provided
+ * {@link #isLoadable()} holds.  Values of a restored domain are materialized lazily, by {@link #fromUniqueString(String)}, upon the
+ * first access to them by index or by value. </li>
  * </ul>
  *
  * @param <T> The type of values in the domain.
@@ -32,7 +42,18 @@ import chord.util.IndexMap;
  * @author Mayur Naik (mhn@cs.stanford.edu)
  */
 public class Dom<T> extends IndexMap<T> {
+    // number of characters of the .map file buffered before being written
+    private static final int MAP_CHUNK_SIZE = 1 << 16;
+    private static final String LINE_SEP = System.getProperty("line.separator");
     protected String name;
+    // unique strings of values restored from disk but not yet materialized;
+    // null if all values are materialized
+    // written only while holding the lock on this domain
+    private volatile String[] lazyVals;
+    private int numLazyVals;
+    // map from unique strings to indices of values restored from disk;
+    // built upon the first lookup by value of a non-materialized value
+    private Map<String, Integer> lazyIdxs;
     public void setName(String name) {
         assert (name != null);
         assert (this.name == null);
@@ -49,11 +70,25 @@ public class Dom<T> extends IndexMap<T> {
         if (saveDomMap) {
             mapFileName = name + ".map";
             File file = new File(dirName, mapFileName);
-            PrintWriter out = new PrintWriter(file);
+            Writer out = new FileWriter(file);
+            StringBuilder sb = new StringBuilder(MAP_CHUNK_SIZE + 1024);
+            char[] buf = new char[0];
             int size = size();
-                for (int i = 0; i < size; i++) {
-                T val = get(i);
-                out.println(toUniqueString(val));
+            for (int i = 0; i < size; i++) {
+                String s = (lazyVals != null) ? lazyVals[i] : null;
+                if (s != null)
+                    sb.append(s);
+                else
+                    appendUniqueString(sb, get(i));
+                sb.append(LINE_SEP);
+                if (sb.length() >= MAP_CHUNK_SIZE || i == size - 1) {
+                    int n = sb.length();
+                    if (buf.length < n)
+                        buf = new char[n];
+                    sb.getChars(0, n, buf, 0);
+                    out.write(buf, 0, n);
+                    sb.setLength(0);
+                }
             }
             out.close();
         }
@@ -64,6 +99,81 @@ public class Dom<T> extends IndexMap<T> {
         out.println(name + " " + size + " " + mapFileName);
         out.close();
     }
+    /**
+     * Restores the domain in memory from disk, as reflected by a previous call to {@link #save(String,boolean)}
+     * with a true map argument.  Any values previously in the domain in memory are discarded.
+     * <p>
+     * Values are not materialized by this method; each value is materialized upon the first access to it.
+     *
+     * @param dirName The directory containing the <tt>.dom</tt> and <tt>.map</tt> files of the domain.
+     *
+     * @return true iff the domain was restored; false if it is not loadable or its files are missing or malformed,
+     * in which case the domain in memory is left empty.
+     */
+    public boolean load(String dirName) throws IOException {
+        clear();
+        if (!isLoadable())
+            return false;
+        File domFile = new File(dirName, name + ".dom");
+        if (!domFile.exists())
+            return false;
+        BufferedReader in = new BufferedReader(new FileReader(domFile));
+        String line = in.readLine();
+        in.close();
+        if (line == null)
+            return false;
+        String[] a = line.trim().split(" ");
+        if (a.length != 3 || !a[0].equals(name))
+            return false;
+        int size;
+        try {
+            size = Integer.parseInt(a[1]);
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+        File mapFile = new File(dirName, a[2]);
+        if (!mapFile.exists())
+            return false;
+        String[] vals = new String[size];
+        int n = 0;
+        in = new BufferedReader(new FileReader(mapFile), MAP_CHUNK_SIZE);
+        while ((line = in.readLine()) != null) {
+            if (n == size) {
+                n++;
+                break;
+            }
+            vals[n++] = line;
+        }
+        in.close();
+        if (n != size)
+            return false;
+        for (int i = 0; i < size; i++)
+            list.add(null);
+        if (size > 0) {
+            lazyVals = vals;
+            numLazyVals = size;
+        }
+        return true;
+    }
+    /**
+     * Determines whether this domain supports {@link #load(String)}, i.e., whether {@link #fromUniqueString(String)}
+     * is overridden.  Subclasses overriding that method must override this method to return true.
+     */
+    public boolean isLoadable() {
+        return false;
+    }
+    /**
+     * Provides the value whose unique string representation, as given by {@link #toUniqueString(Object)}, is the
+     * given one.
+     *
+     * @param s A unique string representation of a value.
+     *
+     * @return The value whose unique string representation is the given one, or null if it does not exist.
+     * This default implementation always returns null.
+     */
+    public T fromUniqueString(String s) {
+        return null;
+    }
     // subclasses may override
     public String toUniqueString(T val) {
         return val == null ? "null" : val.toString();
@@ -72,6 +182,115 @@ public class Dom<T> extends IndexMap<T> {
         T val = get(idx);
         return toUniqueString(val);
     }
+    /**
+     * Appends the unique string representation of the given value to the given builder.
+     * <p>
+     * Subclasses may override this method to avoid building a string per value when the
+     * domain is reflected onto disk, but the appended characters must be the same as those
+     * of {@link #toUniqueString(Object)}.
+     */
+    protected void appendUniqueString(StringBuilder sb, T val) {
+        sb.append(toUniqueString(val));
+    }
+    private void materialize(int idx) {
+        String s = lazyVals[idx];
+        if (s == null)
+            return;
+        T val = fromUniqueString(s);
+        if (val == null ? !s.equals("null") : !s.equals(toUniqueString(val)))
+            throw new RuntimeException("Domain '" + name + "': Failed to restore value '" + s + "' at index " + idx);
+        list.set(idx, val);
+        hmap.put(val, idx);
+        lazyVals[idx] = null;
+        if (--numLazyVals == 0) {
+            lazyVals = null;
+            lazyIdxs = null;
+        }
+    }
+    /**
+     * Materializes all values of this domain not yet materialized since it was restored from disk.
+     */
+    protected synchronized void materializeAll() {
+        for (int i = 0; lazyVals != null; i++)
+            materialize(i);
+    }
+    // values are materialized under the lock on this domain so that a
+    // restored domain may be read concurrently by multiple threads
+    @Override
+    public T get(int idx) {
+        if (lazyVals != null) {
+            synchronized (this) {
+                if (lazyVals != null)
+                    materialize(idx);
+            }
+        }
+        return list.get(idx);
+    }
+    @Override
+    public int indexOf(Object val) {
+        if (lazyVals != null) {
+            synchronized (this) {
+                if (lazyVals != null)
+                    return lazyIndexOf(val);
+            }
+        }
+        Integer idx = hmap.get(val);
+        return (idx == null) ? -1 : idx.intValue();
+    }
+    @SuppressWarnings("unchecked")
+    private int lazyIndexOf(Object val) {
+        Integer idx = hmap.get(val);
+        if (idx != null)
+            return idx.intValue();
+        if (lazyIdxs == null) {
+            lazyIdxs = new HashMap<String, Integer>(numLazyVals);
+            for (int i = 0; i < lazyVals.length; i++) {
+                if (lazyVals[i] != null)
+                    lazyIdxs.put(lazyVals[i], i);
+            }
+        }
+        String s;
+        try {
+            s = toUniqueString((T) val);
+        } catch (ClassCastException ex) {
+            return -1;
+        }
+        idx = lazyIdxs.get(s);
+        if (idx == null)
+            return -1;
+        int i = idx.intValue();
+        materialize(i);
+        return val == null ? (list.get(i) == null ? i : -1) : (val.equals(list.get(i)) ? i : -1);
+    }
+    @Override
+    public boolean contains(Object val) {
+        return indexOf(val) != -1;
+    }
+    @Override
+    public int getOrAdd(T val) {
+        if (lazyVals != null)
+            materializeAll();
+        return super.getOrAdd(val);
+    }
+    @Override
+    public boolean add(T val) {
+        if (lazyVals != null)
+            materializeAll();
+        return super.add(val);
+    }
+    @Override
+    public void clear() {
+        lazyVals = null;
+        numLazyVals = 0;
+        lazyIdxs = null;
+        super.clear();
+    }
+    @Override
+    public Iterator<T> iterator() {
+        if (lazyVals != null)
+            materializeAll();
+        return super.iterator();
+    }
     /**
      * Prints the values in the domain in memory to the standard output stream.
      */
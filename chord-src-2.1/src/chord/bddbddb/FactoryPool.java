@@ -0,0 +1,246 @@
+package chord.bddbddb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import chord.project.Config;
+
+import net.sf.javabdd.BDDDomain;
+import net.sf.javabdd.BDDFactory;
+
+/**
+ * Pool of BDD factories shared by relations in memory.
+ * <p>
+ * Relations brought into memory by the same thread share a single BDD factory, and the
+ * BDD domains created in it: a relation reuses the BDD domain of each of its domains
+ * already in the factory, and adds each of its other domains to the factory on demand.
+ * Hence, the memory consumed by relations in memory is proportional to the number of
+ * live BDD nodes as opposed to the number of relations in memory.
+ * <p>
+ * The BDD variable ordering of a factory is the union of the orderings of the relations
+ * sharing it.  A relation shares a factory only if its domains in the factory have the
+ * same number of elements, and are ordered and interleaved as in its own ordering; its
+ * other domains are then placed in the ordering of the factory, interleaved with those
+ * of its domains they are interleaved with in its own ordering, which reorders the live
+ * BDDs of the factory.  Otherwise, the orderings conflict, and the relation uses another
+ * factory of the same thread, or a fresh one.
+ * <p>
+ * A factory is reclaimed when the last relation sharing it is closed, which frees the BDDs
+ * of views of its relations that were not freed.
+ * <p>
+ * BDD factories are not thread-safe, hence relations brought into memory by different
+ * threads never share a factory, and threads operating on relations concurrently, such as
+ * those of the concurrent modes of Chord, do not interfere through the pool.  As before,
+ * each relation must be operated on by a single thread at a time.
+ * <p>
+ * Sharing can be disabled by setting system property <tt>chord.bddbddb.share.factories</tt>
+ * to false, in which case each relation gets its own factory as before.
+ */
+class FactoryPool {
+    static class Entry {
+        final BDDFactory factory;
+        // id of the thread using the factory, or -1 if it is not pooled
+        final long threadId;
+        // groups of interleaved domains of the factory, in the order of their variables
+        final List<List<String>> groups = new ArrayList<List<String>>();
+        final Map<String, BDDDomain> nameToDomBdd = new HashMap<String, BDDDomain>();
+        final Map<String, Integer> nameToNumElems = new HashMap<String, Integer>();
+        int numUsers;
+        Entry(BDDFactory factory, long threadId) {
+            this.factory = factory;
+            this.threadId = threadId;
+        }
+    }
+
+    private static final Map<Long, List<Entry>> threadToEntriesMap = new HashMap<Long, List<Entry>>();
+
+    private FactoryPool() { }
+
+    /**
+     * Provides a factory suitable for a relation with the given domain layout, creating it
+     * if necessary, and fills the given array with the BDD domains of the relation in it.
+     * <p>
+     * Each call must be matched by a call to {@link #release(Entry)} when the relation is
+     * closed.
+     */
+    static synchronized Entry acquire(String[] domNames, Dom<?>[] doms, String domOrder,
+            BDDDomain[] domBdds) {
+        List<List<String>> relGroups = parseOrder(domOrder);
+        if (!Config.shareBddFactories) {
+            Entry entry = new Entry(Rel.newFactory(), -1);
+            extend(entry, domNames, doms, relGroups);
+            entry.numUsers = 1;
+            fill(entry, domNames, domBdds);
+            return entry;
+        }
+        long threadId = Thread.currentThread().getId();
+        List<Entry> entries = threadToEntriesMap.get(threadId);
+        if (entries == null) {
+            entries = new ArrayList<Entry>(1);
+            threadToEntriesMap.put(threadId, entries);
+        }
+        Entry found = null;
+        for (Entry entry : entries) {
+            if (extend(entry, domNames, doms, relGroups)) {
+                found = entry;
+                break;
+            }
+        }
+        if (found == null) {
+            found = new Entry(Rel.newFactory(), threadId);
+            extend(found, domNames, doms, relGroups);
+            entries.add(found);
+        }
+        found.numUsers++;
+        fill(found, domNames, domBdds);
+        return found;
+    }
+
+    /**
+     * Releases the given factory on behalf of a relation being closed, and reclaims the
+     * factory if no other relation uses it.
+     */
+    static synchronized void release(Entry entry) {
+        assert (entry.numUsers > 0);
+        entry.numUsers--;
+        if (entry.numUsers > 0)
+            return;
+        if (entry.threadId != -1) {
+            List<Entry> entries = threadToEntriesMap.get(entry.threadId);
+            entries.remove(entry);
+            if (entries.isEmpty())
+                threadToEntriesMap.remove(entry.threadId);
+        }
+        entry.factory.done();
+    }
+
+    /**
+     * Provides the number of factories currently in the pool.
+     */
+    static synchronized int size() {
+        int n = 0;
+        for (List<Entry> entries : threadToEntriesMap.values())
+            n += entries.size();
+        return n;
+    }
+
+    private static void fill(Entry entry, String[] domNames, BDDDomain[] domBdds) {
+        for (int i = 0; i < domNames.length; i++)
+            domBdds[i] = entry.nameToDomBdd.get(domNames[i]);
+    }
+
+    // groups of interleaved domains of the given BDD ordering, e.g. [[A], [B, C]] for A_BxC
+    private static List<List<String>> parseOrder(String domOrder) {
+        List<List<String>> groups = new ArrayList<List<String>>();
+        for (String s : domOrder.split("_")) {
+            List<String> group = new ArrayList<String>();
+            for (String name : s.split("x")) {
+                if (name.length() > 0)
+                    group.add(name);
+            }
+            if (!group.isEmpty())
+                groups.add(group);
+        }
+        return groups;
+    }
+
+    // adds the domains of a relation with the given domain layout that are missing from
+    // the factory of the given entry, and returns true, unless the ordering of the
+    // relation conflicts with that of the factory, in which case it returns false
+    private static boolean extend(Entry entry, String[] domNames, Dom<?>[] doms,
+            List<List<String>> relGroups) {
+        Map<String, Integer> nameToNumElems = new HashMap<String, Integer>();
+        for (int i = 0; i < domNames.length; i++) {
+            int numElems = doms[i].size();
+            nameToNumElems.put(domNames[i], (numElems == 0) ? 1 : numElems);
+        }
+        // group of the factory of the domains of each group of the relation in it, if any
+        int numRelGroups = relGroups.size();
+        int[] anchors = new int[numRelGroups];
+        int last = -1;
+        boolean isMissing = false;
+        for (int j = 0; j < numRelGroups; j++) {
+            anchors[j] = -1;
+            for (String name : relGroups.get(j)) {
+                Integer numElems = entry.nameToNumElems.get(name);
+                if (numElems == null) {
+                    isMissing = true;
+                    continue;
+                }
+                if (!numElems.equals(nameToNumElems.get(name)))
+                    return false;
+                int g = getGroup(entry, name);
+                if (anchors[j] == -1)
+                    anchors[j] = g;
+                else if (anchors[j] != g)
+                    return false;
+            }
+            if (anchors[j] != -1) {
+                if (anchors[j] <= last)
+                    return false;
+                last = anchors[j];
+            }
+        }
+        if (!isMissing)
+            return true;
+        // place each group of missing domains before the group of the factory of the next
+        // group of the relation in it, or at the end if there is none
+        List<List<String>> groups = entry.groups;
+        List<List<List<String>>> insertions = new ArrayList<List<List<String>>>(groups.size() + 1);
+        for (int g = 0; g <= groups.size(); g++)
+            insertions.add(new ArrayList<List<String>>());
+        List<List<String>> pending = new ArrayList<List<String>>();
+        BDDFactory factory = entry.factory;
+        for (int j = 0; j < numRelGroups; j++) {
+            List<String> missing = new ArrayList<String>();
+            for (String name : relGroups.get(j)) {
+                if (entry.nameToNumElems.containsKey(name))
+                    continue;
+                BDDDomain d = factory.extDomain(new long[] { nameToNumElems.get(name) })[0];
+                d.setName(name);
+                entry.nameToDomBdd.put(name, d);
+                entry.nameToNumElems.put(name, nameToNumElems.get(name));
+                missing.add(name);
+            }
+            if (anchors[j] != -1) {
+                insertions.get(anchors[j]).addAll(pending);
+                pending.clear();
+                groups.get(anchors[j]).addAll(missing);
+            } else
+                pending.add(missing);
+        }
+        insertions.get(groups.size()).addAll(pending);
+        List<List<String>> newGroups = new ArrayList<List<String>>();
+        for (int g = 0; g <= groups.size(); g++) {
+            newGroups.addAll(insertions.get(g));
+            if (g < groups.size())
+                newGroups.add(groups.get(g));
+        }
+        groups.clear();
+        groups.addAll(newGroups);
+        StringBuilder sb = new StringBuilder();
+        for (List<String> group : groups) {
+            if (sb.length() > 0)
+                sb.append('_');
+            for (int i = 0; i < group.size(); i++) {
+                if (i > 0)
+                    sb.append('x');
+                sb.append(group.get(i));
+            }
+        }
+        boolean reverseLocal = System.getProperty("bddreverse","true").equals("true");
+        int[] order = factory.makeVarOrdering(reverseLocal, sb.toString());
+        factory.setVarOrder(order);
+        return true;
+    }
+
+    private static int getGroup(Entry entry, String name) {
+        for (int g = 0; g < entry.groups.size(); g++) {
+            if (entry.groups.get(g).contains(name))
+                return g;
+        }
+        throw new RuntimeException("Domain '" + name + "' not found in BDD factory.");
+    }
+}
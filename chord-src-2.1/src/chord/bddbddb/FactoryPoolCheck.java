@@ -0,0 +1,70 @@
+package chord.bddbddb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import chord.project.Chord;
+import chord.project.ClassicProject;
+import chord.project.Config;
+import chord.project.Messages;
+import chord.project.analyses.JavaAnalysis;
+import chord.project.analyses.ProgramRel;
+
+/**
+ * Harness checking that relations with different domain layouts brought into memory by
+ * the same thread share a BDD factory (see {@link FactoryPool}).
+ * <p>
+ * Relevant system properties:
+ * <ul>
+ * <li> chord.bdd.pool.check.rels = comma-separated names of relations (default IM,MM) </li>
+ * </ul>
+ * The tasks producing the relations are run, and each relation is brought into memory
+ * alone and its size recorded.  The relations are then brought into memory together, and
+ * the check fails unless they all use the same BDD factory and have the same sizes as
+ * when brought into memory alone.  The check is vacuous if property
+ * chord.bddbddb.share.factories is false.
+ */
+@Chord(name = "bdd-factory-pool-check-java")
+public class FactoryPoolCheck extends JavaAnalysis {
+    public void run() {
+        String[] names = System.getProperty("chord.bdd.pool.check.rels", "IM,MM").split(",");
+        if (names.length < 2)
+            Messages.fatal("FactoryPoolCheck: Property chord.bdd.pool.check.rels must name at least two relations.");
+        if (!Config.shareBddFactories) {
+            Messages.log("FactoryPoolCheck: Sharing of BDD factories is disabled; nothing to check.");
+            return;
+        }
+        List<ProgramRel> rels = new ArrayList<ProgramRel>(names.length);
+        int[] sizes = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ProgramRel rel = (ProgramRel) ClassicProject.g().getTrgt(names[i]);
+            if (rel == null)
+                Messages.fatal("FactoryPoolCheck: Relation '" + names[i] + "' not found.");
+            ClassicProject.g().runTask(ClassicProject.g().getTaskProducingTrgt(rel));
+            rel.load();
+            sizes[i] = rel.size();
+            rel.close();
+            rels.add(rel);
+        }
+        for (ProgramRel rel : rels)
+            rel.load();
+        try {
+            ProgramRel first = rels.get(0);
+            for (int i = 0; i < names.length; i++) {
+                ProgramRel rel = rels.get(i);
+                Messages.log("FactoryPoolCheck: %s has signature %s and %d tuples.",
+                    names[i], rel.getSign(), sizes[i]);
+                if (rel.factory != first.factory)
+                    Messages.fatal("FactoryPoolCheck: %s and %s do not share a BDD factory.",
+                        names[0], names[i]);
+                if (rel.size() != sizes[i])
+                    Messages.fatal("FactoryPoolCheck: %s has %d tuples when sharing a BDD factory but %d alone.",
+                        names[i], rel.size(), sizes[i]);
+            }
+            Messages.log("FactoryPoolCheck: All %d relations share a BDD factory.", names.length);
+        } finally {
+            for (ProgramRel rel : rels)
+                rel.close();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package chord.bddbddb;
+
+/**
+ * Growable buffer of tuples of primitive ints of a fixed arity, stored contiguously
+ * in row-major form.
+ */
+class IntTupleBuffer {
+    final int arity;
+    int[] data;
+    private int numInts;
+    IntTupleBuffer(int arity) {
+        this.arity = arity;
+        data = new int[arity * 64];
+    }
+    int size() {
+        return numInts / arity;
+    }
+    private void grow(int n) {
+        if (numInts + n > data.length) {
+            int[] newData = new int[Math.max(data.length * 2, numInts + n)];
+            System.arraycopy(data, 0, newData, 0, numInts);
+            data = newData;
+        }
+    }
+    void addAll(IntTupleBuffer b) {
+        assert (arity == b.arity);
+        grow(b.numInts);
+        System.arraycopy(b.data, 0, data, numInts, b.numInts);
+        numInts += b.numInts;
+    }
+    void add(int idx0) {
+        assert (arity == 1);
+        grow(1);
+        data[numInts++] = idx0;
+    }
+    void add(int idx0, int idx1) {
+        assert (arity == 2);
+        grow(2);
+        data[numInts++] = idx0;
+        data[numInts++] = idx1;
+    }
+    void add(int idx0, int idx1, int idx2) {
+        assert (arity == 3);
+        grow(3);
+        data[numInts++] = idx0;
+        data[numInts++] = idx1;
+        data[numInts++] = idx2;
+    }
+    void add(int idx0, int idx1, int idx2, int idx3) {
+        assert (arity == 4);
+        grow(4);
+        data[numInts++] = idx0;
+        data[numInts++] = idx1;
+        data[numInts++] = idx2;
+        data[numInts++] = idx3;
+    }
+    void add(int idx0, int idx1, int idx2, int idx3, int idx4) {
+        assert (arity == 5);
+        grow(5);
+        data[numInts++] = idx0;
+        data[numInts++] = idx1;
+        data[numInts++] = idx2;
+        data[numInts++] = idx3;
+        data[numInts++] = idx4;
+    }
+    void add(int idx0, int idx1, int idx2, int idx3, int idx4, int idx5) {
+        assert (arity == 6);
+        grow(6);
+        data[numInts++] = idx0;
+        data[numInts++] = idx1;
+        data[numInts++] = idx2;
+        data[numInts++] = idx3;
+        data[numInts++] = idx4;
+        data[numInts++] = idx5;
+    }
+}
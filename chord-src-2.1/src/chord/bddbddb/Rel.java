@@ -8,9 +8,11 @@ import java.io.PrintWriter;
 import java.io.PrintStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 
@@ -84,6 +86,16 @@ public class Rel {
     protected BDDDomain[] domBdds;
     protected BDD bdd;
     protected BDD iterBdd;
+    private FactoryPool.Entry factoryEntry;
+    // file to which the relation was spilled by RelManager; null if not spilled
+    private File spillFile;
+    // live views and unfinished iterations of the relation, which prevent spilling it; they are
+    // referenced weakly, so that abandoned ones stop pinning the relation once collected
+    private final List<Pin> pins = new ArrayList<Pin>();
+    // time of the last access to the relation, on the clock of RelManager
+    long lastAccess;
+    // tuples added to the relation while buffering is on; null otherwise
+    private IntTupleBuffer buffer;
     /**
      * Sets the name of this relation.
      * 
@@ -173,6 +185,128 @@ public class Rel {
     protected void initialize() {
         if (doms == null)
             throw new RuntimeException("");
+        if (bdd != null || spillFile != null)
+            close();
+        domBdds = new BDDDomain[numDoms];
+        factoryEntry = FactoryPool.acquire(sign.val0, doms, VarOrderProfile.getDomOrder(sign), domBdds);
+        factory = factoryEntry.factory;
+        // the factory may have other domains, so domains are indexed by their position in
+        // the relation rather than in the factory
+        domIdxs = new int[numDoms];
+        iterBdd = factory.one();
+        for (int i = 0; i < numDoms; i++) {
+            BDDDomain domBdd = domBdds[i]; 
+            domIdxs[i] = i;
+            iterBdd = iterBdd.andWith(domBdd.set());
+        }
+        lastAccess = RelManager.tick();
+        RelManager.opened(this);
+    }
+    /**
+     * Checks that the relation is in memory, reloading it first if it was spilled to disk
+     * (see {@link RelManager}), and records the access.
+     */
+    void touch() {
+        // a buffering relation is not spillable, and a split of a relation is never in memory
+        if (buffer != null)
+            return;
+        if (bdd == null) {
+            if (spillFile == null)
+                throw new RuntimeException("");
+            unspill();
+        }
+        lastAccess = RelManager.tick();
+    }
+    // weak reference to a view or iteration pinning a relation, along with the BDD owned by
+    // it, if any, which is freed if it is collected without being freed
+    private static class Pin extends WeakReference<Object> {
+        final BDD bdd;
+        Pin(Object owner, BDD bdd) {
+            super(owner);
+            this.bdd = bdd;
+        }
+    }
+    private void pin(Object owner, BDD b) {
+        synchronized (pins) {
+            purgePins();
+            pins.add(new Pin(owner, b));
+        }
+    }
+    // returns false if the owner was not pinning the relation, e.g. as it was closed since
+    private boolean unpin(Object owner) {
+        synchronized (pins) {
+            for (int i = 0; i < pins.size(); i++) {
+                if (pins.get(i).get() == owner) {
+                    pins.remove(i);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    // drops the pins of collected views and iterations, freeing the BDDs they owned
+    private void purgePins() {
+        for (int i = pins.size() - 1; i >= 0; i--) {
+            Pin p = pins.get(i);
+            if (p.get() == null) {
+                if (p.bdd != null)
+                    p.bdd.free();
+                pins.remove(i);
+            }
+        }
+    }
+    /**
+     * Determines whether the relation can be spilled to disk, namely, whether it is in
+     * memory, is not buffering tuples, and has no live views or unfinished iterations.
+     */
+    boolean isSpillable() {
+        if (bdd == null || buffer != null)
+            return false;
+        synchronized (pins) {
+            purgePins();
+            return pins.isEmpty();
+        }
+    }
+    /**
+     * Writes the relation to the given file and frees it from memory; the relation is
+     * reloaded from the file by the next access to it.
+     *
+     * @return An estimate of the bytes of heap freed, which is non-zero only if the BDD
+     * factory of the relation was reclaimed.
+     */
+    long spill(File file) {
+        assert (isSpillable());
+        try {
+            BufferedWriter out = new BufferedWriter(new FileWriter(file));
+            factory.save(out, bdd);
+            out.close();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        // the node table of a JFactory holds six ints per node
+        long freed = factoryEntry.numUsers == 1 ? 24L * factory.getNodeTableSize() : 0;
+        bdd.free();
+        iterBdd.free();
+        FactoryPool.release(factoryEntry);
+        factoryEntry = null;
+        bdd = null;
+        spillFile = file;
+        return freed;
+    }
+    private void unspill() {
+        File file = spillFile;
+        spillFile = null;
+        initialize();
+        try {
+            BufferedReader in = new BufferedReader(new FileReader(file));
+            bdd = factory.load(in);
+            in.close();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        file.delete();
+    }
+    static BDDFactory newFactory() {
         int bddnodes = Integer.parseInt(
             System.getProperty("bddnodes", "500000"));
         int bddcache = Integer.parseInt(
@@ -180,20 +314,24 @@ public class Rel {
         double bddminfree = Double.parseDouble(
             System.getProperty("bddminfree", ".20"));
         // Note: Do not change the argument "java" below to "buddy".
-        // We require a separate BDD factory for each relation in Chord,
-        // for modularity purposes.  We also require the ability for
+        // We require a separate BDD factory for each thread operating on
+        // relations in Chord (see FactoryPool).  We also require the ability for
         // multiple such factories to be active simultaneously.  But
         // BuDDyFactory, the factory of choice (since it is more
         // efficient and is used for solving Datalog analyses in Chord)
         // allows at most one instance of itself to be active at a time.
         // Hence, we need to use JFactory here instead, which allows
         // multiple instances of itself be active simultaneously.
-        factory = BDDFactory.init("java", bddnodes, bddcache);
+        BDDFactory factory = BDDFactory.init("java", bddnodes, bddcache);
         factory.setVerbose(Config.verbose);
         factory.setIncreaseFactor(2);
         factory.setMinFreeNodes(bddminfree);
-        domBdds = new BDDDomain[numDoms];
-        String[] domNames = sign.val0;
+        return factory;
+    }
+    static BDDDomain[] newDomains(BDDFactory factory, String[] domNames,
+            Dom<?>[] doms, String domOrder) {
+        int numDoms = domNames.length;
+        BDDDomain[] domBdds = new BDDDomain[numDoms];
         for (int i = 0; i < numDoms; i++) {
             String name = domNames[i];
             int numElems = doms[i].size();
@@ -204,15 +342,9 @@ public class Rel {
             domBdds[i] = d;
         }
         boolean reverseLocal = System.getProperty("bddreverse","true").equals("true");
-        int[] order = factory.makeVarOrdering(reverseLocal, sign.val1);
+        int[] order = factory.makeVarOrdering(reverseLocal, domOrder);
         factory.setVarOrder(order);
-        domIdxs = new int[numDoms];
-        iterBdd = factory.one();
-        for (int i = 0; i < numDoms; i++) {
-            BDDDomain domBdd = domBdds[i]; 
-            domIdxs[i] = domBdd.getIndex();
-            iterBdd = iterBdd.andWith(domBdd.set());
-        }
+        return domBdds;
     }
     /**
      * Sets this relation in memory to the full relation (containing all tuples).
@@ -232,10 +364,22 @@ public class Rel {
      * Copies this relation from disk to memory.
      */
     public void load(String dirName) {
-        initialize();
         try {
             File file = new File(dirName, name + ".bdd");
             BufferedReader in = new BufferedReader(new FileReader(file));
+            load(in);
+            in.close();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+    /**
+     * Copies this relation to memory from the given reader, which provides the relation in the
+     * format of the file written by {@link #save(String)}.
+     */
+    public void load(BufferedReader in) {
+        initialize();
+        try {
             {
                 String s = in.readLine();
                 assert (s != null && s.startsWith("#"));
@@ -275,7 +419,6 @@ public class Rel {
                 assert (!st.hasMoreTokens());
             }
             bdd = factory.load(in, map);
-            in.close();
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
@@ -284,20 +427,133 @@ public class Rel {
      * Frees this relation from memory.
      */
     public void close() {
-        if (bdd == null)
+        if (bdd != null) {
+            // views that were not freed would otherwise pile up in a shared factory
+            synchronized (pins) {
+                for (Pin p : pins) {
+                    if (p.bdd != null)
+                        p.bdd.free();
+                }
+            }
+            bdd.free();
+            iterBdd.free();
+            FactoryPool.release(factoryEntry);
+            factoryEntry = null;
+            bdd = null;
+        } else if (spillFile != null) {
+            spillFile.delete();
+            spillFile = null;
+        } else
             throw new RuntimeException("");
-        factory.done();
-        bdd = null;
+        buffer = null;
+        synchronized (pins) {
+            pins.clear();
+        }
+        RelManager.closed(this);
+    }
+    /**
+     * Starts buffering tuples added to the relation in memory instead of adding them to its BDD.
+     * <p>
+     * While buffering is on, the add methods do not access the BDD factory of the relation, whence
+     * different relations, even those sharing a BDD factory, can be filled concurrently by different
+     * threads, provided each relation is filled by a single thread.  Operations other than adding
+     * tuples must not be called on the relation while buffering is on.
+     * <p>
+     * Elements of buffered tuples are checked to be in the range of their domains only when the
+     * tuples are added to the BDD of the relation, by {@link #stopBuffering()}.
+     */
+    public void startBuffering() {
+        touch();
+        if (buffer == null)
+            buffer = new IntTupleBuffer(numDoms);
+    }
+    /**
+     * Stops buffering tuples added to the relation in memory, and adds the buffered tuples to its BDD.
+     * <p>
+     * Calls to this method on relations sharing a BDD factory must not be concurrent.
+     */
+    public void stopBuffering() {
+        touch();
+        if (buffer == null)
+            return;
+        IntTupleBuffer b = buffer;
+        buffer = null;
+        int[] data = b.data;
+        int numTuples = b.size();
+        for (int j = 0, k = 0; j < numTuples; j++, k += numDoms) {
+            BDD t = factory.one();
+            try {
+                for (int i = 0; i < numDoms; i++)
+                    t.andWith(domBdds[i].ithVar(data[k + i]));
+            } catch (BDDException ex) {
+                t.free();
+                for (int i = 0; i < numDoms; i++)
+                    checkRange(data[k + i], i);
+                throw new RuntimeException(ex);
+            }
+            bdd.orWith(t);
+        }
+    }
+    /**
+     * Makes this relation, which must have neither a signature nor domains set, a split of the
+     * given relation.
+     * <p>
+     * A split of a relation has the name, signature, and domains of the relation, and buffers the
+     * tuples added to it, as {@link #startBuffering()} does, but is never in memory: no operation
+     * other than adding tuples may be called on it.  The buffered tuples are added to the relation
+     * by {@link #addSplit(Rel)}.  Hence, different splits of a relation can be filled concurrently
+     * by different threads.
+     *
+     * @param rel A relation whose signature and domains are set.
+     */
+    public void initSplit(Rel rel) {
+        assert (sign == null && doms == null);
+        if (name == null)
+            setName(rel.name);
+        setSign(rel.sign);
+        setDoms(rel.doms);
+        buffer = new IntTupleBuffer(numDoms);
+    }
+    /**
+     * Adds the tuples buffered by the given split of this relation to this relation, which must be
+     * buffering tuples (see {@link #startBuffering()}), and discards them from the split.
+     *
+     * @param split A split of this relation (see {@link #initSplit(Rel)}).
+     */
+    public void addSplit(Rel split) {
+        if (buffer == null || split.buffer == null)
+            throw new RuntimeException("Relation '" + name + "' or its split is not buffering tuples.");
+        buffer.addAll(split.buffer);
+        split.buffer = null;
+    }
+    /**
+     * Determines whether tuples added to the relation in memory are being buffered.
+     *
+     * @see #startBuffering()
+     */
+    public boolean isBuffering() {
+        return buffer != null;
     }
     /**
      * Copies the relation from memory to disk and frees it from memory.
      */
     public void save(String dirName) {
-        if (bdd == null)
-            throw new RuntimeException("");
         try {
             File file = new File(dirName, name + ".bdd");
             BufferedWriter out = new BufferedWriter(new FileWriter(file));
+            save(out);
+            out.close();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+    /**
+     * Copies the relation from memory to the given writer, in the format of the file written by
+     * {@link #save(String)}, and frees it from memory.
+     */
+    public void save(BufferedWriter out) {
+        touch();
+        try {
             out.write('#');
             for (BDDDomain d : domBdds)
                 out.write(" " + d + ":" + d.varNum());
@@ -309,15 +565,14 @@ public class Rel {
                 out.write('\n');
             }
             factory.save(out, bdd);
-            out.close();
+            out.flush();
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
         close();
     }
     public void print(String dirName) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         try {
             File file = new File(dirName, name + ".txt");
             PrintWriter out = new PrintWriter(new FileWriter(file));
@@ -356,9 +611,9 @@ public class Rel {
         private final BDD b;
         private final boolean[] keptDoms;
         public RelView() {
-            if (bdd == null)
-                throw new RuntimeException("");
+            touch();
             b = bdd.id();
+            pin(this, b);
             keptDoms = new boolean[numDoms];
             for (int i = 0; i < numDoms; i++)
                 keptDoms[i] = true;
@@ -579,11 +834,48 @@ public class Rel {
         public AryNIterable getAryNValTuples() {
             return new AryNIterable(b, keptDoms);
         }
+        /**
+         * Provides a fresh cursor over the tuples in this view.
+         */
+        public IntTupleCursor getIntCursor() {
+            return new IntTupleCursor(b, keptDoms);
+        }
+        public void forEachAry1(IntAry1Procedure p) {
+            Rel.forEachAry1(getIntCursor(), p);
+        }
+        public void forEachAry2(IntAry2Procedure p) {
+            Rel.forEachAry2(getIntCursor(), p);
+        }
+        public void forEachAry3(IntAry3Procedure p) {
+            Rel.forEachAry3(getIntCursor(), p);
+        }
+        public void forEachAry4(IntAry4Procedure p) {
+            Rel.forEachAry4(getIntCursor(), p);
+        }
+        public void forEachAry5(IntAry5Procedure p) {
+            Rel.forEachAry5(getIntCursor(), p);
+        }
+        public void forEachAry6(IntAry6Procedure p) {
+            Rel.forEachAry6(getIntCursor(), p);
+        }
+        public void forEachAryN(IntAryNProcedure p) {
+            Rel.forEachAryN(getIntCursor(), p);
+        }
+        /**
+         * Provides the tuples in this view in column-major form.
+         * 
+         * @see Rel#getIntColumns()
+         */
+        public int[][] getIntColumns() {
+            return toColumns(getIntCursor(), size());
+        }
         /**
          * Frees this view.
          */
         public void free() {
-            b.free();
+            // the BDD was freed already if the relation was closed
+            if (unpin(this))
+                b.free();
         }
         public void select(int domIdx, Object val) {
             assert (keptDoms[domIdx]);
@@ -668,7 +960,7 @@ public class Rel {
      * @return true iff the relation in memory is initialized.
      */
     public boolean isOpen() {
-        return bdd != null;
+        return bdd != null || spillFile != null;
     }
     /**
      * Provides the size of the relation.
@@ -676,8 +968,7 @@ public class Rel {
      * @return The size of the relation.
      */
     public int size() {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         return (int) bdd.satCount(iterBdd);
     }
     /**
@@ -685,8 +976,10 @@ public class Rel {
      * In the byte arrays, -1 means dont-care, 0 means 0, and 1 means 1.
      */
     private class AllSatIterator implements Iterator {
-        protected LinkedList loStack, hiStack;
+        protected ArrayList<BDD> loStack, hiStack;
         protected byte[] allsatProfile;
+        // buffer returned by nextSat(); reused across calls to avoid allocating per assignment
+        protected byte[] result;
         protected final boolean useLevel;
         /**
          * Constructs a satisfying-assignment iterator on the given BDD.
@@ -709,10 +1002,11 @@ public class Rel {
             if (r.isZero()) return;
             allsatProfile = new byte[factory.varNum()];
             Arrays.fill(allsatProfile, (byte) -1);
-            loStack = new LinkedList();
-            hiStack = new LinkedList();
+            result = new byte[allsatProfile.length];
+            loStack = new ArrayList<BDD>();
+            hiStack = new ArrayList<BDD>();
             if (!r.isOne()) {
-                loStack.addLast(r.id());
+                loStack.add(r.id());
                 if (!gotoNext()) allsatProfile = null;
             }
         }
@@ -725,9 +1019,9 @@ public class Rel {
                     if (hiStack.isEmpty()) {
                         return false;
                     }
-                    r = (BDD) hiStack.removeLast();
+                    r = hiStack.remove(hiStack.size() - 1);
                 } else {
-                    r = (BDD) loStack.removeLast();
+                    r = loStack.remove(loStack.size() - 1);
                 }
                 int LEVEL_r = r.level();
                 allsatProfile[useLevel?LEVEL_r:factory.level2Var(LEVEL_r)] =
@@ -737,7 +1031,7 @@ public class Rel {
                     allsatProfile[useLevel?v:factory.level2Var(v)] = -1;
                 }
                 if (!lo_empty) {
-                    hiStack.addLast(r);
+                    hiStack.add(r);
                 } else {
                     r.free();
                 }
@@ -749,16 +1043,20 @@ public class Rel {
                     rn.free();
                     continue;
                 }
-                loStack.addLast(rn);
+                loStack.add(rn);
             }
         }
         public boolean hasNext() {
             return allsatProfile != null;
         }
+        /**
+         * Returns the next satisfying assignment.
+         * The returned array is overwritten by the subsequent call to this method.
+         */
         public byte[] nextSat() {
             if (allsatProfile == null)
                 throw new NoSuchElementException();
-            byte[] b = new byte[allsatProfile.length];
+            byte[] b = result;
             System.arraycopy(allsatProfile, 0, b, 0, b.length);
             if (!gotoNext()) allsatProfile = null;
             return b;
@@ -782,6 +1080,8 @@ public class Rel {
         byte[] a;
         // Last BDD returned.  Used to support the remove() operation.
         BDD lastReturned;
+        // Whether this iterator prevents spilling the relation; true until it is exhausted.
+        boolean pinned;
 
         /**
          * Construct a new BDDIterator on the given BDD.
@@ -815,6 +1115,8 @@ public class Rel {
             p.free();
             // init b[]
             b = new boolean[n];
+            pin(this, null);
+            pinned = true;
             gotoNext();
         }
         
@@ -823,6 +1125,10 @@ public class Rel {
                 a = (byte[]) i.next();
             } else {
                 a = null;
+                if (pinned) {
+                    pinned = false;
+                    unpin(this);
+                }
                 return;
             }
             for (int i = 0; i < v.length; ++i) {
@@ -894,9 +1200,9 @@ public class Rel {
                 throw new NoSuchElementException();
             }
             lastReturned = null;
-            int[] result = new int[factory.numberOfDomains()];
+            int[] result = new int[numDoms];
             for (int i = 0; i < result.length; ++i) {
-                BDDDomain dom = factory.getDomain(i);
+                BDDDomain dom = domBdds[i];
                 int[] ivar = dom.vars();
                 int val = 0;
                 for (int m = dom.varNum() - 1; m >= 0; m--) {
@@ -919,6 +1225,50 @@ public class Rel {
             return result;
         }
         
+        /**
+         * Provides, for each domain of the relation at the given positions, the positions in v of the levels of
+         * its variables, for use by {@link #nextTuple(int[][], int[])}.
+         */
+        public int[][] getVarPositions(int[] domIdxs) {
+            int n = domIdxs.length;
+            int[][] varPos = new int[n][];
+            for (int i = 0; i < n; i++) {
+                int[] ivar = domBdds[domIdxs[i]].vars();
+                int[] pos = new int[ivar.length];
+                for (int m = 0; m < ivar.length; m++) {
+                    pos[m] = Arrays.binarySearch(v, factory.var2Level(ivar[m]));
+                    assert (pos[m] >= 0);
+                }
+                varPos[i] = pos;
+            }
+            return varPos;
+        }
+
+        /**
+         * Fills the given array with the values, in the next tuple in the iteration, of
+         * the domains whose variable positions are given.
+         * Unlike the other variants of nextTuple, this one does not allocate any memory.
+         */
+        public void nextTuple(int[][] varPos, int[] tuple) {
+            if (a == null) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = null;
+            for (int i = 0; i < varPos.length; i++) {
+                int[] pos = varPos[i];
+                int val = 0;
+                for (int m = pos.length - 1; m >= 0; m--) {
+                    val = val << 1;
+                    if (b[pos[m]])
+                        val++;
+                }
+                tuple[i] = val;
+            }
+            if (!gotoNextA()) {
+                gotoNext();
+            }
+        }
+
         /**
          * An alternate implementation of nextTuple().
          * This may be slightly faster than the default if there are many domains.
@@ -927,9 +1277,9 @@ public class Rel {
          */
         public int[] nextTuple2() {
             boolean[] store = nextSat();
-            int[] result = new int[factory.numberOfDomains()];
+            int[] result = new int[numDoms];
             for (int i = 0; i < result.length; ++i) {
-                BDDDomain dom = factory.getDomain(i);
+                BDDDomain dom = domBdds[i];
                 int[] ivar = dom.vars();
                 int val = 0;
                 for (int m = dom.varNum() - 1; m >= 0; m--) {
@@ -990,32 +1340,49 @@ public class Rel {
     }
 
     private abstract class TupleIterable<T> implements Iterable<T> {
-        protected final BDD bdd;
-        protected final BDD iterBdd;
+        protected BDD bdd;
+        protected BDD iterBdd;
         protected final int[] domIdxs;
+        // whether this iterable is over the whole relation, which may be spilled and
+        // reloaded before it is iterated
+        private final boolean isSelf;
         public TupleIterable(BDD bdd, boolean[] keptDoms) {
             this.bdd = bdd;
+            isSelf = (bdd == Rel.this.bdd && keptDoms == null);
             if (keptDoms == null) {
                 iterBdd = Rel.this.iterBdd;
                 domIdxs = Rel.this.domIdxs;
             } else {
                 iterBdd = makeIterBdd(keptDoms); 
-                int numKeptDoms = 0;
-                for (int i = 0; i < keptDoms.length; i++) {
-                    if (keptDoms[i])
-                        numKeptDoms++;
-                }
-                domIdxs = new int[numKeptDoms];
-                for (int i = 0, j = 0; i < keptDoms.length; i++) {
-                    if (keptDoms[i]) {
-                        domIdxs[j] = i;
-                        j++;
-                    }
-                }
+                domIdxs = getKeptDomIdxs(keptDoms);
             }
         }
+        protected BDDIterator newBDDIterator() {
+            if (isSelf) {
+                touch();
+                bdd = Rel.this.bdd;
+                iterBdd = Rel.this.iterBdd;
+            }
+            return new BDDIterator(bdd, iterBdd);
+        }
     };
 
+    private static int[] getKeptDomIdxs(boolean[] keptDoms) {
+        int numKeptDoms = 0;
+        for (int i = 0; i < keptDoms.length; i++) {
+            if (keptDoms[i])
+                numKeptDoms++;
+        }
+        int[] domIdxs = new int[numKeptDoms];
+        for (int i = 0, j = 0; i < keptDoms.length; i++) {
+            if (keptDoms[i]) {
+                domIdxs[j] = i;
+                j++;
+            }
+        }
+        return domIdxs;
+    }
+
     public abstract class TupleIterator<T> implements Iterator<T> {
         protected final BDDIterator it;
         protected final int[] domIdxs;
@@ -1036,7 +1403,7 @@ public class Rel {
             super(bdd, keptDoms);
         }
         public Iterator<T> iterator() {
-            BDDIterator it = new BDDIterator(bdd, iterBdd);
+            BDDIterator it = newBDDIterator();
             return new TupleIterator<T>(it, domIdxs) {
                 public T next() {
                     int[] tuple = it.nextTuple2();
@@ -1056,7 +1423,7 @@ public class Rel {
             super(bdd, keptDoms);
         }
         public Iterator<Pair<T0,T1>> iterator() {
-            BDDIterator it = new BDDIterator(bdd, iterBdd);
+            BDDIterator it = newBDDIterator();
             return new TupleIterator<Pair<T0,T1>>(it, domIdxs) {
                 public Pair<T0,T1> next() {
                     int[] tuple = it.nextTuple2();
@@ -1077,7 +1444,7 @@ public class Rel {
             super(bdd, keptDoms);
         }
         public Iterator<IntPair> iterator() {
-            BDDIterator it = new BDDIterator(bdd, iterBdd);
+            BDDIterator it = newBDDIterator();
             return new TupleIterator<IntPair>(it, domIdxs) {
                 public IntPair next() {
                     int[] tuple = it.nextTuple2();
@@ -1096,7 +1463,7 @@ public class Rel {
             super(bdd, keptDoms);
         }
         public Iterator<Trio<T0,T1,T2>> iterator() {
-            BDDIterator it = new BDDIterator(bdd, iterBdd);
+            BDDIterator it = newBDDIterator();
             return new TupleIterator<Trio<T0,T1,T2>>(it, domIdxs) {
                 public Trio<T0,T1,T2> next() {
                     int[] tuple = it.nextTuple2();
@@ -1120,7 +1487,7 @@ public class Rel {
             super(bdd, keptDoms);
         }
         public Iterator<IntTrio> iterator() {
-            BDDIterator it = new BDDIterator(bdd, iterBdd);
+            BDDIterator it = newBDDIterator();
             return new TupleIterator<IntTrio>(it, domIdxs) {
                 public IntTrio next() {
                     int[] tuple = it.nextTuple2();
@@ -1141,7 +1508,7 @@ public class Rel {
             super(bdd, keptDoms);
         }
         public Iterator<Quad<T0,T1,T2,T3>> iterator() {
-            BDDIterator it = new BDDIterator(bdd, iterBdd);
+            BDDIterator it = newBDDIterator();
             return new TupleIterator<Quad<T0,T1,T2,T3>>(it, domIdxs) {
                 public Quad<T0,T1,T2,T3> next() {
                     int[] tuple = it.nextTuple2();
@@ -1168,7 +1535,7 @@ public class Rel {
             super(bdd, keptDoms);
         }
         public Iterator<IntQuad> iterator() {
-            BDDIterator it = new BDDIterator(bdd, iterBdd);
+            BDDIterator it = newBDDIterator();
             return new TupleIterator<IntQuad>(it, domIdxs) {
                 public IntQuad next() {
                     int[] tuple = it.nextTuple2();
@@ -1191,7 +1558,7 @@ public class Rel {
             super(bdd, keptDoms);
         }
         public Iterator<Pent<T0,T1,T2,T3,T4>> iterator() {
-            BDDIterator it = new BDDIterator(bdd, iterBdd);
+            BDDIterator it = newBDDIterator();
             return new TupleIterator<Pent<T0,T1,T2,T3,T4>>(it, domIdxs) {
                 public Pent<T0,T1,T2,T3,T4> next() {
                     int[] tuple = it.nextTuple2();
@@ -1221,7 +1588,7 @@ public class Rel {
             super(bdd, keptDoms);
         }
         public Iterator<IntPent> iterator() {
-            BDDIterator it = new BDDIterator(bdd, iterBdd);
+            BDDIterator it = newBDDIterator();
             return new TupleIterator<IntPent>(it, domIdxs) {
                 public IntPent next() {
                     int[] tuple = it.nextTuple2();
@@ -1246,7 +1613,7 @@ public class Rel {
             super(bdd, keptDoms);
         }
         public Iterator<Hext<T0,T1,T2,T3,T4,T5>> iterator() {
-            BDDIterator it = new BDDIterator(bdd, iterBdd);
+            BDDIterator it = newBDDIterator();
             return new TupleIterator<Hext<T0,T1,T2,T3,T4,T5>>(it, domIdxs) {
                 public Hext<T0,T1,T2,T3,T4,T5> next() {
                     int[] tuple = it.nextTuple2();
@@ -1279,7 +1646,7 @@ public class Rel {
             super(bdd, keptDoms);
         }
         public Iterator<IntHext> iterator() {
-            BDDIterator it = new BDDIterator(bdd, iterBdd);
+            BDDIterator it = newBDDIterator();
             return new TupleIterator<IntHext>(it, domIdxs) {
                 public IntHext next() {
                     int[] tuple = it.nextTuple2();
@@ -1306,7 +1673,7 @@ public class Rel {
             super(bdd, keptDoms);
         }
         public Iterator<Object[]> iterator() {
-            BDDIterator it = new BDDIterator(bdd, iterBdd);
+            BDDIterator it = newBDDIterator();
             return new TupleIterator<Object[]>(it, domIdxs) {
                 public Object[] next() {
                     int numDoms = domIdxs.length;
@@ -1329,7 +1696,7 @@ public class Rel {
            super(bdd, keptDoms);
         }
         public Iterator<int[]> iterator() {
-           BDDIterator it = new BDDIterator(bdd, iterBdd);
+           BDDIterator it = newBDDIterator();
             return new TupleIterator<int[]>(it, domIdxs) {
                 public int[] next() {
                     int numDoms = domIdxs.length;
@@ -1346,14 +1713,211 @@ public class Rel {
         }
     };
 
+    /**
+     * Reusable cursor over the tuples of a relation or a view, providing each tuple as the
+     * indices of its elements in the respective domains.
+     * <p>
+     * Unlike the iterables over tuples, a cursor does not allocate any memory per tuple:
+     * the array holding the current tuple is overwritten by each call to {@link #next()}.
+     */
+    public class IntTupleCursor {
+        private final BDDIterator it;
+        private final int[][] varPos;
+        private final int[] tuple;
+        public IntTupleCursor(BDD bdd, boolean[] keptDoms) {
+            BDD iterBdd;
+            int[] domIdxs;
+            if (keptDoms == null) {
+                iterBdd = Rel.this.iterBdd;
+                domIdxs = Rel.this.domIdxs;
+            } else {
+                iterBdd = makeIterBdd(keptDoms);
+                domIdxs = getKeptDomIdxs(keptDoms);
+            }
+            it = new BDDIterator(bdd, iterBdd);
+            varPos = it.getVarPositions(domIdxs);
+            tuple = new int[domIdxs.length];
+        }
+        /**
+         * Advances this cursor to the next tuple, if any.
+         * 
+         * @return true iff there was a next tuple.
+         */
+        public boolean next() {
+            if (!it.hasNext())
+                return false;
+            it.nextTuple(varPos, tuple);
+            return true;
+        }
+        /**
+         * Provides the index of the i-th element of the current tuple.
+         */
+        public int get(int i) {
+            return tuple[i];
+        }
+        /**
+         * Provides the current tuple.
+         * The returned array is overwritten by each call to {@link #next()}.
+         */
+        public int[] getTuple() {
+            return tuple;
+        }
+        /**
+         * Provides the number of elements of each tuple.
+         */
+        public int arity() {
+            return tuple.length;
+        }
+    };
+
+    /**
+     * Procedures applied to each tuple of a relation or a view by the forEachAry methods.
+     * Each procedure takes the indices of the elements of the tuple in the respective domains,
+     * and returns false to stop the iteration, and true to continue it.
+     */
+    public interface IntAry1Procedure {
+        public boolean execute(int idx0);
+    }
+    public interface IntAry2Procedure {
+        public boolean execute(int idx0, int idx1);
+    }
+    public interface IntAry3Procedure {
+        public boolean execute(int idx0, int idx1, int idx2);
+    }
+    public interface IntAry4Procedure {
+        public boolean execute(int idx0, int idx1, int idx2, int idx3);
+    }
+    public interface IntAry5Procedure {
+        public boolean execute(int idx0, int idx1, int idx2, int idx3, int idx4);
+    }
+    public interface IntAry6Procedure {
+        public boolean execute(int idx0, int idx1, int idx2, int idx3, int idx4, int idx5);
+    }
+    /**
+     * The array passed to this procedure is reused across tuples.
+     */
+    public interface IntAryNProcedure {
+        public boolean execute(int[] idxs);
+    }
+
+    private static void forEachAry1(IntTupleCursor c, IntAry1Procedure p) {
+        int[] t = c.tuple;
+        while (c.next()) {
+            if (!p.execute(t[0]))
+                return;
+        }
+    }
+    private static void forEachAry2(IntTupleCursor c, IntAry2Procedure p) {
+        int[] t = c.tuple;
+        while (c.next()) {
+            if (!p.execute(t[0], t[1]))
+                return;
+        }
+    }
+    private static void forEachAry3(IntTupleCursor c, IntAry3Procedure p) {
+        int[] t = c.tuple;
+        while (c.next()) {
+            if (!p.execute(t[0], t[1], t[2]))
+                return;
+        }
+    }
+    private static void forEachAry4(IntTupleCursor c, IntAry4Procedure p) {
+        int[] t = c.tuple;
+        while (c.next()) {
+            if (!p.execute(t[0], t[1], t[2], t[3]))
+                return;
+        }
+    }
+    private static void forEachAry5(IntTupleCursor c, IntAry5Procedure p) {
+        int[] t = c.tuple;
+        while (c.next()) {
+            if (!p.execute(t[0], t[1], t[2], t[3], t[4]))
+                return;
+        }
+    }
+    private static void forEachAry6(IntTupleCursor c, IntAry6Procedure p) {
+        int[] t = c.tuple;
+        while (c.next()) {
+            if (!p.execute(t[0], t[1], t[2], t[3], t[4], t[5]))
+                return;
+        }
+    }
+    private static void forEachAryN(IntTupleCursor c, IntAryNProcedure p) {
+        int[] t = c.tuple;
+        while (c.next()) {
+            if (!p.execute(t))
+                return;
+        }
+    }
+    // column i of the result holds the index of the i-th element of each tuple
+    private static int[][] toColumns(IntTupleCursor c, int numTuples) {
+        int n = c.arity();
+        int[][] cols = new int[n][numTuples];
+        int[] t = c.tuple;
+        int j = 0;
+        while (c.next()) {
+            for (int i = 0; i < n; i++)
+                cols[i][j] = t[i];
+            j++;
+        }
+        assert (j == numTuples);
+        return cols;
+    }
+
+    /*
+     * Primitive-int tuple operations.
+     */
+
+    /**
+     * Provides a fresh cursor over the tuples of this relation.
+     */
+    public IntTupleCursor getIntCursor() {
+        touch();
+        return new IntTupleCursor(bdd, null);
+    }
+    public void forEachAry1(IntAry1Procedure p) {
+        forEachAry1(getIntCursor(), p);
+    }
+    public void forEachAry2(IntAry2Procedure p) {
+        forEachAry2(getIntCursor(), p);
+    }
+    public void forEachAry3(IntAry3Procedure p) {
+        forEachAry3(getIntCursor(), p);
+    }
+    public void forEachAry4(IntAry4Procedure p) {
+        forEachAry4(getIntCursor(), p);
+    }
+    public void forEachAry5(IntAry5Procedure p) {
+        forEachAry5(getIntCursor(), p);
+    }
+    public void forEachAry6(IntAry6Procedure p) {
+        forEachAry6(getIntCursor(), p);
+    }
+    public void forEachAryN(IntAryNProcedure p) {
+        forEachAryN(getIntCursor(), p);
+    }
+    /**
+     * Provides the tuples of this relation in column-major form: the i-th column holds the
+     * indices of the i-th elements of all tuples, and the j-th entries of all columns
+     * together form the j-th tuple.
+     * 
+     * @return The tuples of this relation in column-major form.
+     */
+    public int[][] getIntColumns() {
+        return toColumns(getIntCursor(), size());
+    }
+
     /*
      * Ary1Rel operations.
      */
 
     public <T0> void add(T0 val0) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         int idx0 = doms[0].indexOf(val0);
+        if (buffer != null) {
+            buffer.add(idx0);
+            return;
+        }
         try {
             bdd.orWith(domBdds[0].ithVar(idx0));
         } catch (BDDException ex) {
@@ -1362,8 +1926,11 @@ public class Rel {
         }
     }
     public void add(int idx0) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
+        if (buffer != null) {
+            buffer.add(idx0);
+            return;
+        }
         try {
             bdd.orWith(domBdds[0].ithVar(idx0));
         } catch (BDDException ex) {
@@ -1372,8 +1939,7 @@ public class Rel {
         }
     }
     public <T0> void remove(T0 val0) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         int idx0 = doms[0].indexOf(val0);
         try {
             bdd.andWith(domBdds[0].ithVar(idx0).not());
@@ -1383,8 +1949,7 @@ public class Rel {
         }
     }
     public void remove(int idx0) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         try {
             bdd.andWith(domBdds[0].ithVar(idx0).not());
         } catch (BDDException ex) {
@@ -1393,8 +1958,7 @@ public class Rel {
         }
     }
     public <T0> boolean contains(T0 val0) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         int idx0 = doms[0].indexOf(val0);
         try {
             return !bdd.id().andWith(domBdds[0].ithVar(idx0)).isZero();
@@ -1404,8 +1968,7 @@ public class Rel {
         }
     }
     public boolean contains(int idx0) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         try {
             return !bdd.id().andWith(domBdds[0].ithVar(idx0)).isZero();
         } catch (BDDException ex) {
@@ -1414,8 +1977,7 @@ public class Rel {
         }
     }
     public <T0> Iterable<T0> getAry1ValTuples() {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         return new SelfIterable<T0>(bdd, null);
     }
 
@@ -1424,10 +1986,13 @@ public class Rel {
      */
     
     public <T0,T1> void add(T0 val0, T1 val1) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         int idx0 = doms[0].indexOf(val0);
         int idx1 = doms[1].indexOf(val1);
+        if (buffer != null) {
+            buffer.add(idx0, idx1);
+            return;
+        }
         try {
             bdd.orWith(
                 domBdds[0].ithVar(idx0).andWith(
@@ -1439,8 +2004,11 @@ public class Rel {
         }
     }
     public void add(int idx0, int idx1) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
+        if (buffer != null) {
+            buffer.add(idx0, idx1);
+            return;
+        }
         try {
             bdd.orWith(
                 domBdds[0].ithVar(idx0).andWith(
@@ -1452,8 +2020,7 @@ public class Rel {
         }
     }
     public <T0,T1> void remove(T0 val0, T1 val1) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         int idx0 = doms[0].indexOf(val0);
         int idx1 = doms[1].indexOf(val1);
         try {
@@ -1467,8 +2034,7 @@ public class Rel {
         }
     }
     public void remove(int idx0, int idx1) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         try {
             bdd.andWith(
                 domBdds[0].ithVar(idx0).andWith(
@@ -1480,8 +2046,7 @@ public class Rel {
         }
     }
     public <T0,T1> boolean contains(T0 val0, T1 val1) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         int idx0 = doms[0].indexOf(val0);
         int idx1 = doms[1].indexOf(val1);
         try {
@@ -1495,8 +2060,7 @@ public class Rel {
         }
     }
     public boolean contains(int idx0, int idx1) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         try {
             return !bdd.id().andWith(
                 domBdds[0].ithVar(idx0).andWith(
@@ -1508,13 +2072,11 @@ public class Rel {
         }
     }
     public <T0,T1> PairIterable<T0,T1> getAry2ValTuples() {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         return new PairIterable<T0,T1>(bdd, null);
     }
     public IntPairIterable getAry2IntTuples() {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         return new IntPairIterable(bdd, null);
     }
 
@@ -1523,11 +2085,14 @@ public class Rel {
      */
     
     public <T0,T1,T2> void add(T0 val0, T1 val1, T2 val2) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         int idx0 = doms[0].indexOf(val0);
         int idx1 = doms[1].indexOf(val1);
         int idx2 = doms[2].indexOf(val2);
+        if (buffer != null) {
+            buffer.add(idx0, idx1, idx2);
+            return;
+        }
         try {
             bdd.orWith(
                 domBdds[0].ithVar(idx0).andWith(
@@ -1541,8 +2106,11 @@ public class Rel {
         }
     }
     public void add(int idx0, int idx1, int idx2) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
+        if (buffer != null) {
+            buffer.add(idx0, idx1, idx2);
+            return;
+        }
         try {
             bdd.orWith(
                 domBdds[0].ithVar(idx0).andWith(
@@ -1556,8 +2124,7 @@ public class Rel {
         }
     }
     public <T0,T1,T2> boolean contains(T0 val0, T1 val1, T2 val2) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         int idx0 = doms[0].indexOf(val0);
         int idx1 = doms[1].indexOf(val1);
         int idx2 = doms[2].indexOf(val2);
@@ -1574,13 +2141,11 @@ public class Rel {
         }
     }
     public <T0,T1,T2> TrioIterable<T0,T1,T2> getAry3ValTuples() {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         return new TrioIterable<T0,T1,T2>(bdd, null);
     }
     public IntTrioIterable getAry3IntTuples() {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         return new IntTrioIterable(bdd, null);
     }
 
@@ -1589,12 +2154,15 @@ public class Rel {
      */
     
     public <T0,T1,T2,T3> void add(T0 val0, T1 val1, T2 val2, T3 val3) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         int idx0 = doms[0].indexOf(val0);
         int idx1 = doms[1].indexOf(val1);
         int idx2 = doms[2].indexOf(val2);
         int idx3 = doms[3].indexOf(val3);
+        if (buffer != null) {
+            buffer.add(idx0, idx1, idx2, idx3);
+            return;
+        }
         try {
             bdd.orWith(
                 domBdds[0].ithVar(idx0).andWith(
@@ -1610,8 +2178,11 @@ public class Rel {
         }
     }
     public void add(int idx0, int idx1, int idx2, int idx3) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
+        if (buffer != null) {
+            buffer.add(idx0, idx1, idx2, idx3);
+            return;
+        }
         try {
             bdd.orWith(
                 domBdds[0].ithVar(idx0).andWith(
@@ -1627,8 +2198,7 @@ public class Rel {
         }
     }
     public <T0,T1,T2,T3> boolean contains(T0 val0, T1 val1, T2 val2, T3 val3) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         int idx0 = doms[0].indexOf(val0);
         int idx1 = doms[1].indexOf(val1);
         int idx2 = doms[2].indexOf(val2);
@@ -1648,13 +2218,11 @@ public class Rel {
         }
     }
     public <T0,T1,T2,T3> QuadIterable<T0,T1,T2,T3> getAry4ValTuples() {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         return new QuadIterable<T0,T1,T2,T3>(bdd, null);
     }
     public IntQuadIterable getAry4IntTuples() {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         return new IntQuadIterable(bdd, null);
     }
 
@@ -1663,13 +2231,16 @@ public class Rel {
      */
     
     public <T0,T1,T2,T3,T4> void add(T0 val0, T1 val1, T2 val2, T3 val3, T4 val4) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         int idx0 = doms[0].indexOf(val0);
         int idx1 = doms[1].indexOf(val1);
         int idx2 = doms[2].indexOf(val2);
         int idx3 = doms[3].indexOf(val3);
         int idx4 = doms[4].indexOf(val4);
+        if (buffer != null) {
+            buffer.add(idx0, idx1, idx2, idx3, idx4);
+            return;
+        }
         try {
             bdd.orWith(
                 domBdds[0].ithVar(idx0).andWith(
@@ -1687,8 +2258,11 @@ public class Rel {
         }
     }
     public void add(int idx0, int idx1, int idx2, int idx3, int idx4) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
+        if (buffer != null) {
+            buffer.add(idx0, idx1, idx2, idx3, idx4);
+            return;
+        }
         try {
             bdd.orWith(
                 domBdds[0].ithVar(idx0).andWith(
@@ -1707,8 +2281,7 @@ public class Rel {
 
     }
     public <T0,T1,T2,T3,T4> boolean contains(T0 val0, T1 val1, T2 val2, T3 val3, T4 val4) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         int idx0 = doms[0].indexOf(val0);
         int idx1 = doms[1].indexOf(val1);
         int idx2 = doms[2].indexOf(val2);
@@ -1731,13 +2304,11 @@ public class Rel {
         }
     }
     public <T0,T1,T2,T3,T4> PentIterable<T0,T1,T2,T3,T4> getAry5ValTuples() {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         return new PentIterable<T0,T1,T2,T3,T4>(bdd, null);
     }
     public IntPentIterable getAry5IntTuples() {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         return new IntPentIterable(bdd, null);
     }
     
@@ -1746,14 +2317,17 @@ public class Rel {
      */
     
     public <T0,T1,T2,T3,T4,T5> void add(T0 val0, T1 val1, T2 val2, T3 val3, T4 val4, T5 val5) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         int idx0 = doms[0].indexOf(val0);
         int idx1 = doms[1].indexOf(val1);
         int idx2 = doms[2].indexOf(val2);
         int idx3 = doms[3].indexOf(val3);
         int idx4 = doms[4].indexOf(val4);
         int idx5 = doms[5].indexOf(val5);
+        if (buffer != null) {
+            buffer.add(idx0, idx1, idx2, idx3, idx4, idx5);
+            return;
+        }
         try {
             bdd.orWith(
                 domBdds[0].ithVar(idx0).andWith(
@@ -1773,8 +2347,11 @@ public class Rel {
         }
     }
     public void add(int idx0, int idx1, int idx2, int idx3, int idx4, int idx5) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
+        if (buffer != null) {
+            buffer.add(idx0, idx1, idx2, idx3, idx4, idx5);
+            return;
+        }
         try {
             bdd.orWith(
                 domBdds[0].ithVar(idx0).andWith(
@@ -1793,8 +2370,7 @@ public class Rel {
         }
     }
     public <T0,T1,T2,T3,T4,T5> boolean contains(T0 val0, T1 val1, T2 val2, T3 val3, T4 val4, T5 val5) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         int idx0 = doms[0].indexOf(val0);
         int idx1 = doms[1].indexOf(val1);
         int idx2 = doms[2].indexOf(val2);
@@ -1820,13 +2396,11 @@ public class Rel {
         }
     }
     public <T0,T1,T2,T3,T4,T5> HextIterable<T0,T1,T2,T3,T4,T5> getAry6ValTuples() {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         return new HextIterable<T0,T1,T2,T3,T4,T5>(bdd, null);
     }
     public IntHextIterable getAry6IntTuples() {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         return new IntHextIterable(bdd, null);
     }
 
@@ -1834,28 +2408,23 @@ public class Rel {
      * AryNRel operations.
      */
     public void add(Object[] vals) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         throw new UnsupportedOperationException();
     }
     public void add(int[] idxs) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         throw new UnsupportedOperationException();
     }
     public boolean contains(Object[] vals) {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         throw new UnsupportedOperationException();
     }
     public AryNIterable getAryNValTuples() {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         return new AryNIterable(bdd, null);
     }
     public IntAryNIterable getAryNIntTuples() {
-        if (bdd == null)
-            throw new RuntimeException("");
+        touch();
         return new IntAryNIterable(bdd, null);
     }
 
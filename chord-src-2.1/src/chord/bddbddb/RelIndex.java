@@ -0,0 +1,173 @@
+package chord.bddbddb;
+
+/**
+ * Read-only, array-based index of the tuples of a relation, for answering repeated point
+ * queries without enumerating BDD satisfying assignments.
+ * <p>
+ * The index is built once from a relation in memory and is keyed on a list of the
+ * relation's domains, called key domains.  It stores the tuples of the relation in
+ * column-major form, sorted lexicographically by the key domains in the given order, along
+ * with CSR-style (compressed sparse row) offsets on the first key domain.  Thus, all tuples
+ * whose elements of the key domains have given values occupy a contiguous range of
+ * positions, which is located by a single array lookup in case of one key and by a binary
+ * search within that range in case of more keys.
+ * <p>
+ * For instance, a forward adjacency index of a call graph relation <tt>IM</tt> is keyed on
+ * domains (0, 1), and a backward one on domains (1, 0).
+ * <p>
+ * The index is a snapshot: it does not reflect subsequent modifications to the relation.
+ */
+public class RelIndex {
+    private final int[] keyDomIdxs;
+    // cols[i][j] is the index of the i-th element of the tuple at position j
+    private final int[][] cols;
+    // tuples whose first key element is k occupy positions [offsets[k], offsets[k+1])
+    private final int[] offsets;
+    /**
+     * Builds an index of the given relation keyed on the given domains.
+     *
+     * @param rel A relation in memory.
+     * @param keyDomIdxs Positions of the key domains in the relation's signature, in
+     * order of decreasing significance.  It must be non-empty and contain distinct
+     * positions.
+     */
+    public RelIndex(Rel rel, int... keyDomIdxs) {
+        if (keyDomIdxs.length == 0)
+            throw new RuntimeException("RelIndex: No key domains specified for rel " + rel.getName());
+        Dom<?>[] doms = rel.getDoms();
+        this.keyDomIdxs = keyDomIdxs.clone();
+        int[][] unsorted = rel.getIntColumns();
+        int n = unsorted.length == 0 ? 0 : unsorted[0].length;
+        // LSD radix sort: stable counting sorts from the least to the most significant key
+        int[] perm = new int[n];
+        for (int j = 0; j < n; j++)
+            perm[j] = j;
+        int[] tmp = new int[n];
+        int[] counts = null;
+        for (int k = keyDomIdxs.length - 1; k >= 0; k--) {
+            int[] col = unsorted[keyDomIdxs[k]];
+            counts = new int[doms[keyDomIdxs[k]].size() + 1];
+            for (int j = 0; j < n; j++)
+                counts[col[j] + 1]++;
+            for (int v = 1; v < counts.length; v++)
+                counts[v] += counts[v - 1];
+            int[] next = counts.clone();
+            for (int j = 0; j < n; j++) {
+                int p = perm[j];
+                tmp[next[col[p]]++] = p;
+            }
+            int[] t = perm; perm = tmp; tmp = t;
+        }
+        // counts of the last pass, which was over the first key, are the CSR offsets
+        offsets = counts;
+        cols = new int[unsorted.length][];
+        for (int i = 0; i < unsorted.length; i++) {
+            int[] src = unsorted[i];
+            int[] dst = new int[n];
+            for (int j = 0; j < n; j++)
+                dst[j] = src[perm[j]];
+            cols[i] = dst;
+        }
+    }
+    /**
+     * Provides the number of tuples in this index.
+     */
+    public int size() {
+        return cols.length == 0 ? 0 : cols[0].length;
+    }
+    /**
+     * Provides the positions of the key domains on which this index is keyed.
+     */
+    public int[] getKeyDomIdxs() {
+        return keyDomIdxs.clone();
+    }
+    /**
+     * Provides the index of the element of the given domain in the tuple at the given
+     * position.
+     *
+     * @param pos A position in the range [0, size()).
+     * @param domIdx Position of a domain in the relation's signature.
+     */
+    public int get(int pos, int domIdx) {
+        return cols[domIdx][pos];
+    }
+    /**
+     * Provides the first position of the tuples whose first key element is the given one.
+     * The tuples occupy positions [begin(key0), end(key0)); the range is empty if there is
+     * no such tuple or if the given index is out of the range of the domain.
+     */
+    public int begin(int key0) {
+        return (key0 < 0 || key0 >= offsets.length - 1) ? 0 : offsets[key0];
+    }
+    /**
+     * @see #begin(int)
+     */
+    public int end(int key0) {
+        return (key0 < 0 || key0 >= offsets.length - 1) ? 0 : offsets[key0 + 1];
+    }
+    /**
+     * Provides the first position of the tuples whose first two key elements are the given
+     * ones.
+     *
+     * @see #begin(int[])
+     */
+    public int begin(int key0, int key1) {
+        return lowerBound(cols[keyDomIdxs[1]], begin(key0), end(key0), key1);
+    }
+    /**
+     * @see #begin(int, int)
+     */
+    public int end(int key0, int key1) {
+        return lowerBound(cols[keyDomIdxs[1]], begin(key0), end(key0), key1 + 1);
+    }
+    /**
+     * Provides the first position of the tuples whose first <tt>keys.length</tt> key
+     * elements are the given ones.  The tuples occupy positions [begin(keys), end(keys)).
+     *
+     * @param keys Indices of key elements; there must be at least one and at most as many
+     * as key domains.
+     */
+    public int begin(int[] keys) {
+        int lo = begin(keys[0]);
+        int hi = end(keys[0]);
+        for (int k = 1; k < keys.length && lo < hi; k++) {
+            int[] col = cols[keyDomIdxs[k]];
+            int key = keys[k];
+            hi = lowerBound(col, lo, hi, key + 1);
+            lo = lowerBound(col, lo, hi, key);
+        }
+        return lo;
+    }
+    /**
+     * @see #begin(int[])
+     */
+    public int end(int[] keys) {
+        int lo = begin(keys[0]);
+        int hi = end(keys[0]);
+        for (int k = 1; k < keys.length && lo < hi; k++) {
+            int[] col = cols[keyDomIdxs[k]];
+            int key = keys[k];
+            lo = lowerBound(col, lo, hi, key);
+            hi = lowerBound(col, lo, hi, key + 1);
+        }
+        return lo < hi ? hi : lo;
+    }
+    /**
+     * Determines whether this index contains a tuple whose first <tt>keys.length</tt> key
+     * elements are the given ones.
+     */
+    public boolean contains(int... keys) {
+        return begin(keys) < end(keys);
+    }
+    // first position in [lo, hi) at which col holds a value >= key, or hi if none
+    private static int lowerBound(int[] col, int lo, int hi, int key) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (col[mid] < key)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,159 @@
+package chord.bddbddb;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import chord.project.Config;
+import chord.project.Messages;
+import chord.util.Utils;
+
+/**
+ * Manager of the relations in memory, which spills relations to disk under memory pressure.
+ * <p>
+ * It tracks all relations in memory and the time each was last accessed.  Whenever a
+ * relation is brought into memory and the heap used by live objects, as of the last garbage
+ * collection, exceeds a given percentage of the maximum heap size, it spills the least
+ * recently used relations in memory, one at a time, until the BDD factories reclaimed are
+ * estimated to have freed the excess or no relation can be spilled.  Spilling
+ * a relation writes its BDD to a temporary file and frees it from memory; the relation is
+ * reloaded transparently from that file by the next operation on it.
+ * <p>
+ * A relation is not spilled while tuples added to it are being buffered, while it has a
+ * view that is not freed, or while an iteration over its tuples is unfinished (a view or an
+ * iteration that is abandoned stops preventing it once it is garbage collected).  Relations with fewer than a given number of BDD nodes are not spilled either,
+ * since doing so frees little memory.  Note that the memory of the BDD nodes of a relation is
+ * returned to the heap only when all relations sharing its BDD factory are closed or spilled
+ * (see {@link FactoryPool}).
+ * <p>
+ * Spilling is enabled by system property <tt>chord.bddbddb.spill.rels</tt>; the percentage
+ * of the maximum heap size and the minimum number of BDD nodes are specified by system
+ * properties <tt>chord.bddbddb.spill.threshold</tt> and
+ * <tt>chord.bddbddb.spill.min.nodes</tt>.
+ * <p>
+ * The clock and the set of tracked relations may be accessed concurrently.  Spilling itself
+ * assumes that no relation is operated on by a thread while another thread brings a
+ * relation into memory; hence, spilling must be disabled in modes in which several threads
+ * operate on relations at once.  The concurrent modes of Chord (e.g. property
+ * <tt>chord.visit.threads</tt>) only buffer tuples in relations from worker threads, which
+ * neither brings relations into memory nor touches relations that can be spilled.
+ */
+public class RelManager {
+    private static final String SPILLING = "Spilling rel %s (%d BDD nodes, last used %d accesses ago).";
+    // relations in memory or spilled
+    private static final Set<Rel> rels = new HashSet<Rel>();
+    // logical clock incremented on each access to a relation
+    private static final AtomicLong clock = new AtomicLong();
+    private static File spillDir;
+    private static int numSpills;
+
+    private RelManager() { }
+
+    static long tick() {
+        return clock.incrementAndGet();
+    }
+
+    /**
+     * Registers the given relation, which is being brought into memory, and spills other
+     * relations if the heap is under pressure.
+     */
+    static synchronized void opened(Rel rel) {
+        if (!Config.spillRels)
+            return;
+        rels.add(rel);
+        if (isUnderPressure())
+            relievePressure(rel);
+    }
+
+    /**
+     * Unregisters the given relation, which is being closed.
+     */
+    static synchronized void closed(Rel rel) {
+        rels.remove(rel);
+    }
+
+    /**
+     * Provides the number of relations spilled so far.
+     */
+    public static synchronized int getNumSpills() {
+        return numSpills;
+    }
+
+    static File newSpillFile(String relName) {
+        if (spillDir == null) {
+            spillDir = new File(Config.bddbddbWorkDirName, "spill");
+            Utils.mkdirs(spillDir);
+        }
+        try {
+            File file = File.createTempFile(relName + ".", ".bdd", spillDir);
+            file.deleteOnExit();
+            return file;
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    // bytes of heap by which the live objects exceed the threshold; not positive if none
+    private static long getExcess() {
+        Runtime rt = Runtime.getRuntime();
+        return getLiveHeap() - rt.maxMemory() / 100 * Config.spillRelsThreshold;
+    }
+
+    // heap used by live objects as of the last garbage collection of each pool, which unlike
+    // the current usage does not count garbage that need not be spilled away
+    private static long getLiveHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP)
+                continue;
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage == null) {
+                Runtime rt = Runtime.getRuntime();
+                return rt.totalMemory() - rt.freeMemory();
+            }
+            used += usage.getUsed();
+        }
+        return used;
+    }
+
+    private static boolean isUnderPressure() {
+        return getExcess() > 0;
+    }
+
+    private static void relievePressure(Rel opened) {
+        long excess = getExcess();
+        List<Rel> victims = new ArrayList<Rel>();
+        for (Rel rel : rels) {
+            if (rel != opened && rel.isSpillable())
+                victims.add(rel);
+        }
+        Collections.sort(victims, new Comparator<Rel>() {
+            public int compare(Rel r1, Rel r2) {
+                return r1.lastAccess < r2.lastAccess ? -1 : (r1.lastAccess == r2.lastAccess ? 0 : 1);
+            }
+        });
+        for (Rel rel : victims) {
+            int numNodes = rel.bdd.nodeCount();
+            if (numNodes < Config.spillRelsMinNodes)
+                continue;
+            if (Config.verbose >= 1)
+                Messages.log(SPILLING, rel.getName(), numNodes, clock.get() - rel.lastAccess);
+            // memory is returned only when a BDD factory is reclaimed; it shows in the live
+            // heap only after the next garbage collection, so it is estimated meanwhile
+            excess -= rel.spill(newSpillFile(rel.getName()));
+            numSpills++;
+            if (excess <= 0)
+                return;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package chord.bddbddb;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import chord.project.Config;
+import chord.project.Messages;
+import chord.util.Utils;
+
+/**
+ * Persistent record of the best BDD variable ordering found for each relation signature.
+ * <p>
+ * The record is read from and written to the file specified by system property
+ * <tt>chord.bddbddb.order.file</tt>.  Each line of the file is of the form
+ * "<tt>domNames domOrder numNodes buildTime</tt>", e.g., "<tt>M0,H0 H0_M0 1234 56</tt>",
+ * where <tt>domNames</tt> is the comma-separated list of domain names of the relation
+ * signature, <tt>domOrder</tt> is the best BDD ordering found for it, <tt>numNodes</tt> is
+ * the number of BDD nodes of the relation under that ordering, and <tt>buildTime</tt> is
+ * the time in milliseconds it took to build the relation under that ordering.
+ * <p>
+ * {@link Rel} consults this record whenever it initializes a relation, and uses the recorded
+ * ordering in place of the ordering specified by the relation's signature, if any.
+ * The record is updated by {@link VarOrderTuner}.
+ */
+public class VarOrderProfile {
+    private static final String IGNORE_ENTRY =
+        "WARN: VarOrderProfile: Ignoring malformed entry '%s' in file '%s'.";
+    private static Map<String, Entry> signToEntryMap;
+
+    private VarOrderProfile() { }
+
+    public static class Entry {
+        public final String domOrder;
+        public final long numNodes;
+        public final long buildTime;
+        public Entry(String domOrder, long numNodes, long buildTime) {
+            this.domOrder = domOrder;
+            this.numNodes = numNodes;
+            this.buildTime = buildTime;
+        }
+    }
+
+    /**
+     * Provides the key under which the best ordering of the given relation signature is recorded.
+     *
+     * @param sign A relation signature.
+     *
+     * @return The key under which the best ordering of the given relation signature is recorded.
+     */
+    public static String getKey(RelSign sign) {
+        return Utils.toString(sign.getDomNames(), "", ",", "");
+    }
+
+    /**
+     * Provides the recorded entry for the given relation signature, if any, and null otherwise.
+     *
+     * @param sign A relation signature.
+     *
+     * @return The recorded entry for the given relation signature, if any, and null otherwise.
+     */
+    public static synchronized Entry getEntry(RelSign sign) {
+        if (signToEntryMap == null)
+            read();
+        return signToEntryMap.get(getKey(sign));
+    }
+
+    /**
+     * Provides the BDD ordering to be used for a relation with the given signature.
+     *
+     * @param sign A relation signature.
+     *
+     * @return The recorded best BDD ordering of the given relation signature, if any, and
+     * the BDD ordering specified by the signature itself otherwise.
+     */
+    public static String getDomOrder(RelSign sign) {
+        Entry entry = getEntry(sign);
+        return (entry != null) ? entry.domOrder : sign.getDomOrder();
+    }
+
+    /**
+     * Records the given BDD ordering as the best one for the given relation signature, and
+     * reflects the record onto disk.
+     */
+    public static synchronized void record(RelSign sign, Entry entry) {
+        if (signToEntryMap == null)
+            read();
+        signToEntryMap.put(getKey(sign), entry);
+        write();
+    }
+
+    private static void read() {
+        signToEntryMap = new HashMap<String, Entry>();
+        String fileName = Config.bddOrderFileName;
+        File file = new File(fileName);
+        if (!file.exists())
+            return;
+        List<String> lines = Utils.readFileToList(file);
+        for (String line : lines) {
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#"))
+                continue;
+            String[] a = line.split(" ");
+            if (a.length != 4) {
+                Messages.log(IGNORE_ENTRY, line, fileName);
+                continue;
+            }
+            try {
+                // validates that the recorded ordering mentions exactly the domains in the key
+                new RelSign(a[0].split(","), a[1]);
+                signToEntryMap.put(a[0], new Entry(a[1], Long.parseLong(a[2]), Long.parseLong(a[3])));
+            } catch (RuntimeException ex) {
+                Messages.log(IGNORE_ENTRY, line, fileName);
+            }
+        }
+    }
+
+    private static void write() {
+        try {
+            PrintWriter out = new PrintWriter(new File(Config.bddOrderFileName));
+            out.println("# domNames domOrder numNodes buildTime(ms)");
+            Map<String, Entry> sortedMap = new TreeMap<String, Entry>(signToEntryMap);
+            for (Map.Entry<String, Entry> e : sortedMap.entrySet()) {
+                Entry entry = e.getValue();
+                out.println(e.getKey() + " " + entry.domOrder + " " + entry.numNodes + " " + entry.buildTime);
+            }
+            out.close();
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package chord.bddbddb;
+
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+import chord.project.Config;
+import chord.project.Messages;
+import chord.util.Utils;
+
+import net.sf.javabdd.BDD;
+import net.sf.javabdd.BDDDomain;
+import net.sf.javabdd.BDDFactory;
+
+/**
+ * Utility for searching a good BDD variable ordering for a relation.
+ * <p>
+ * Given a relation in memory, it rebuilds the relation under each of a sample of candidate
+ * orderings of the relation's domains, measures the number of BDD nodes and the time needed
+ * to build the relation under each of them, and records the best ordering in
+ * {@link VarOrderProfile}, from which it is read by subsequent runs.
+ * <p>
+ * The candidate orderings comprise the ordering currently in use, the ordering specified by
+ * the relation's signature, and orderings derived from random permutations of the relation's
+ * domains, both with and without interleaving adjacent domains of the same kind.
+ * The number of random permutations is specified by system property
+ * <tt>chord.bddbddb.tune.samples</tt>.  Relations whose BDD has fewer nodes than the value of
+ * system property <tt>chord.bddbddb.tune.min.nodes</tt> are deemed cheap and are not tuned.
+ */
+public class VarOrderTuner {
+    private static final String TUNING_ORDER =
+        "Tuning BDD ordering of rel %s: ordering %s has %s nodes and took %s ms to build.";
+    private static final String TUNED_ORDER =
+        "Tuned BDD ordering of rel %s: best ordering %s has %s nodes (%s nodes under ordering %s).";
+
+    private VarOrderTuner() { }
+
+    /**
+     * Searches a good BDD ordering for the given relation, which must be open, and records the
+     * best ordering found in {@link VarOrderProfile}, unless the relation is deemed cheap.
+     *
+     * @param rel A relation in memory.
+     *
+     * @return The best ordering found, or null if the relation was deemed cheap.
+     */
+    public static String tune(Rel rel) {
+        rel.touch();
+        int currNodes = rel.bdd.nodeCount();
+        if (currNodes < Config.tuneBddOrderMinNodes)
+            return null;
+        RelSign sign = rel.getSign();
+        String currOrder = VarOrderProfile.getDomOrder(sign);
+        String bestOrder = null;
+        long bestNodes = Long.MAX_VALUE;
+        long bestTime = Long.MAX_VALUE;
+        int[][] tuples = getTuples(rel);
+        for (String order : getCandidateOrders(sign, currOrder)) {
+            long time = System.currentTimeMillis();
+            long nodes = build(rel, order, tuples);
+            time = System.currentTimeMillis() - time;
+            if (Config.verbose >= 2)
+                Messages.log(TUNING_ORDER, rel.getName(), order, nodes, time);
+            if (nodes < bestNodes || (nodes == bestNodes && time < bestTime)) {
+                bestOrder = order;
+                bestNodes = nodes;
+                bestTime = time;
+            }
+        }
+        if (Config.verbose >= 1)
+            Messages.log(TUNED_ORDER, rel.getName(), bestOrder, bestNodes, currNodes, currOrder);
+        VarOrderProfile.record(sign, new VarOrderProfile.Entry(bestOrder, bestNodes, bestTime));
+        return bestOrder;
+    }
+
+    private static Set<String> getCandidateOrders(RelSign sign, String currOrder) {
+        Set<String> orders = new LinkedHashSet<String>();
+        orders.add(currOrder);
+        orders.add(sign.getDomOrder());
+        String[] domNames = sign.getDomNames();
+        int n = domNames.length;
+        // fixed seed so that tuning is reproducible across runs
+        Random random = new Random(n);
+        for (int k = 0; k < Config.tuneBddOrderSamples; k++) {
+            int[] perm = Utils.samplePermutation(random, n);
+            String seqOrder = domNames[perm[0]];
+            String intOrder = domNames[perm[0]];
+            for (int i = 1; i < n; i++) {
+                String prevKind = Utils.trimNumSuffix(domNames[perm[i - 1]]);
+                String currKind = Utils.trimNumSuffix(domNames[perm[i]]);
+                seqOrder += "_" + domNames[perm[i]];
+                intOrder += (prevKind.equals(currKind) ? "x" : "_") + domNames[perm[i]];
+            }
+            orders.add(seqOrder);
+            orders.add(intOrder);
+        }
+        return orders;
+    }
+
+    private static int[][] getTuples(Rel rel) {
+        int[][] tuples = new int[rel.size()][];
+        int i = 0;
+        for (int[] tuple : rel.getAryNIntTuples())
+            tuples[i++] = tuple;
+        return tuples;
+    }
+
+    // builds the given tuples in a fresh factory using the given ordering and
+    // returns the number of nodes of the resulting BDD
+    private static long build(Rel rel, String order, int[][] tuples) {
+        BDDFactory factory = Rel.newFactory();
+        try {
+            BDDDomain[] domBdds = Rel.newDomains(factory, rel.sign.getDomNames(), rel.doms, order);
+            BDD bdd = factory.zero();
+            for (int[] tuple : tuples) {
+                BDD b = factory.one();
+                for (int i = 0; i < tuple.length; i++)
+                    b.andWith(domBdds[i].ithVar(tuple[i]));
+                bdd.orWith(b);
+            }
+            return bdd.nodeCount();
+        } finally {
+            factory.done();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package chord.project;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import chord.util.ProcessExecutor;
+
+/**
+ * Harness of benchmarks running Chord several times under different settings, each time
+ * via {@link Boot} in a separate JVM.
+ * <p>
+ * Each run is given all <tt>chord.*</tt> system properties of the benchmark except
+ * <tt>chord.benchmark.*</tt>, <tt>chord.out.dir</tt>, and those the benchmark sets for
+ * each run, and it runs in directory <tt>chord.work.dir</tt>.  The number of runs of each
+ * setting is <tt>chord.benchmark.runs</tt> (3 by default).
+ * <p>
+ * Note: Do not refer to any properties defined in class chord.project.Config here.
+ */
+public class BenchmarkHarness {
+    private final String name;
+    private final String workDirName;
+    private final int numRuns;
+    private final List<String> props = new ArrayList<String>();
+
+    /**
+     * @param name The name of the benchmark, used in error messages.
+     * @param runPropNames The names of the system properties the benchmark sets for each run.
+     */
+    public BenchmarkHarness(String name, String... runPropNames) {
+        this.name = name;
+        workDirName = System.getProperty("chord.work.dir", System.getProperty("user.dir"));
+        numRuns = Integer.getInteger("chord.benchmark.runs", 3);
+        List<String> excluded = Arrays.asList(runPropNames);
+        Properties sysProps = System.getProperties();
+        for (String k : sysProps.stringPropertyNames()) {
+            if (!k.startsWith("chord.") || k.startsWith("chord.benchmark.") ||
+                    k.equals("chord.out.dir") || excluded.contains(k))
+                continue;
+            props.add("-D" + k + "=" + sysProps.getProperty(k));
+        }
+    }
+
+    public String getWorkDirName() {
+        return workDirName;
+    }
+
+    public int getNumRuns() {
+        return numRuns;
+    }
+
+    /**
+     * Runs Chord once, and exits if it fails.
+     *
+     * @param runName The name of the run, used in error messages.
+     * @param outDirName The output directory of the run.
+     * @param runProps The values of the system properties the benchmark sets for the run,
+     * each of the form <tt>-D&lt;name&gt;=&lt;value&gt;</tt>.
+     *
+     * @return The wall-clock time of the run in milliseconds.
+     */
+    public long run(String runName, String outDirName, String... runProps) throws Throwable {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> cmd = new ArrayList<String>();
+        cmd.add(java);
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.addAll(props);
+        cmd.addAll(Arrays.asList(runProps));
+        cmd.add("-Dchord.out.dir=" + outDirName);
+        cmd.add("chord.project.Boot");
+        long start = System.currentTimeMillis();
+        int result = ProcessExecutor.execute(cmd.toArray(new String[cmd.size()]),
+            null, new File(workDirName), -1);
+        long time = System.currentTimeMillis() - start;
+        if (result != 0) {
+            System.err.println("ERROR: " + name + ": Run " + runName + " exited with code " +
+                result + ".");
+            System.exit(result);
+        }
+        return time;
+    }
+
+    /**
+     * Provides the minimum and median of the given wall-clock times, in the form
+     * <tt>min &lt;t&gt; ms, median &lt;t&gt; ms</tt>.
+     */
+    public static String summarize(long[] times) {
+        long[] a = times.clone();
+        Arrays.sort(a);
+        return "min " + a[0] + " ms, median " + a[a.length / 2] + " ms";
+    }
+
+    /**
+     * Provides the median of the given wall-clock times.
+     */
+    public static long getMedian(long[] times) {
+        long[] a = times.clone();
+        Arrays.sort(a);
+        return a[a.length / 2];
+    }
+}
@@ -45,6 +45,7 @@ import edu.berkeley.confspell.*;
  *    chord.max.stack "32m"
  *    chord.jvmargs   "-ea -Xmx[chord.max.heap] -Xss[chord.max.stack]"
  *    chord.classic   "true"
+ *    chord.modern.threads "1"
  *
  *    chord.std.java.analysis.path "[chord.main.dir]/chord.jar"
  *    chord.ext.java.analysis.path ""
@@ -156,6 +157,7 @@ public class Boot {
         String maxStack = getOrSetProperty("chord.max.stack", "32m");
         String jvmargs = getOrSetProperty("chord.jvmargs", "-ea -Xmx" + maxHeap + " -Xss" + maxStack);
         boolean isClassic = getOrSetProperty("chord.classic", "true").equals("true");
+        String numModernThreads = getOrSetProperty("chord.modern.threads", "1");
         String stdJavaAnalysisPath = getOrSetProperty("chord.std.java.analysis.path", chordJarFile);
         String extJavaAnalysisPath = getOrSetProperty("chord.ext.java.analysis.path", "");
         String javaAnalysisPath = getOrSetProperty("chord.java.analysis.path",
@@ -215,9 +217,11 @@ public class Boot {
         }
         if (!isClassic) {
             cmdList.add("hj.lang.Runtime");
-            cmdList.add("-INIT_THREADS_PER_PLACE=1");
+            cmdList.add("-INIT_THREADS_PER_PLACE=" + numModernThreads);
             cmdList.add("-NUMBER_OF_LOCAL_PLACES=1");
-            cmdList.add("-rt=wsh CnCHJ.runtime.CnCRuntime");
+            // the runtime and its main class are separate arguments
+            cmdList.add("-rt=wsh");
+            cmdList.add("CnCHJ.runtime.CnCRuntime");
             cmdList.add("-policy=BlockingCoarse");
         }
         cmdList.add("chord.project.Main");
@@ -228,6 +232,11 @@ public class Boot {
             showArgsToMain(cmdAry);
         
         int result = ProcessExecutor.execute(cmdAry, null, new File(workDirName), -1);
+        // a server exits with this code to be restarted after files it depends on changed
+        if (!System.getProperty("chord.server.port", "0").equals("0")) {
+            while (result == Server.RESTART_EXIT_CODE)
+                result = ProcessExecutor.execute(cmdAry, null, new File(workDirName), -1);
+        }
         System.exit(result);
     }
 
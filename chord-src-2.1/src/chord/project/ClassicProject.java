@@ -6,10 +6,12 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.FileWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -18,6 +20,7 @@ import chord.project.analyses.DlogAnalysis;
 import chord.project.analyses.ProgramDom;
 import chord.project.analyses.ProgramRel;
 import chord.project.ITask;
+import chord.program.visitors.IClassVisitor;
 import chord.util.ArraySet;
 import chord.util.Utils;
 import chord.util.Timer;
@@ -63,6 +66,12 @@ public class ClassicProject extends Project {
     private final Set<ITask> doneTasks = new HashSet<ITask>();
     private final Set<Object> doneTrgts = new HashSet<Object>();
     private boolean isBuilt = false;
+    // tasks that the outermost running task may need to run, in the order
+    // in which they were discovered; null if no task is running
+    private Set<ITask> pendingTasks;
+    private int runDepth;
+    // cache of targets across runs; null if chord.cache.trgts is false
+    private TrgtCache trgtCache;
 
     @Override
     public void build() {
@@ -337,6 +346,16 @@ public class ClassicProject extends Project {
         return trgt;
     }
 
+    public boolean hasTrgt(String name) {
+        build();
+        return nameToTrgtMap.containsKey(name);
+    }
+
+    public boolean hasTask(String name) {
+        build();
+        return nameToTaskMap.containsKey(name);
+    }
+
     public ITask getTask(String name) {
         build();
         ITask task = nameToTaskMap.get(name);
@@ -360,6 +379,21 @@ public class ClassicProject extends Project {
     }
 
     public void runTask(ITask task) {
+        if (runDepth == 0 && Config.fuseVisitors)
+            pendingTasks = getPendingTasks(task);
+        runDepth++;
+        try {
+            doRunTask(task);
+        } finally {
+            if (--runDepth == 0) {
+                pendingTasks = null;
+                if (Config.profileTasks)
+                    TaskProfiler.export();
+            }
+        }
+    }
+
+    private void doRunTask(ITask task) {
         if (isTaskDone(task)) {
             if (Config.verbose >= 1)
                 System.out.println("TASK " + task + " ALREADY DONE.");
@@ -379,6 +413,8 @@ public class ClassicProject extends Project {
                 File file = new File(Config.bddbddbWorkDirName, rel.getName() + ".bdd");
                 if (file.exists()) {
                     for (Dom dom : rel.getDoms()) {
+                        if (isTrgtDone(dom) || loadDom((ProgramDom<?>) dom))
+                            continue;
                         ITask task2 = getTaskProducingTrgt(dom);
                         runTask(task2);
                     }
@@ -386,24 +422,223 @@ public class ClassicProject extends Project {
                     continue;
                 }
             }
+            if (Config.reuseRels && trgt instanceof ProgramDom && loadDom((ProgramDom<?>) trgt))
+                continue;
             ITask task2 = getTaskProducingTrgt(trgt);
             runTask(task2);
         }
         timer.resume();
-        task.run();
+        TaskProfiler.Record record = Config.profileTasks ? TaskProfiler.start(task) : null;
+        String cacheKey = getCacheKey(task);
+        if (cacheKey != null && restoreFromCache(task, cacheKey)) {
+            timer.done();
+            if (record != null)
+                TaskProfiler.done(record, consumedTrgts, taskToProducedTrgtsMap.get(task),
+                    "restored from cache");
+            if (Config.verbose >= 1) {
+                System.out.println("LEAVE: " + task + " (restored from cache)");
+                printTimer(timer);
+            }
+            return;
+        }
+        List<ITask> fusedTasks = getFusedTasks(task);
+        if (fusedTasks == null)
+            task.run();
+        else
+            runFused(fusedTasks);
         timer.done();
+        if (record != null) {
+            if (fusedTasks == null)
+                TaskProfiler.done(record, consumedTrgts, taskToProducedTrgtsMap.get(task), null);
+            else {
+                List<Object> producedTrgts = new ArrayList<Object>();
+                for (ITask task2 : fusedTasks)
+                    producedTrgts.addAll(taskToProducedTrgtsMap.get(task2));
+                TaskProfiler.done(record, consumedTrgts, producedTrgts,
+                    "fused with " + Utils.join(fusedTasks.subList(1, fusedTasks.size()), " "));
+            }
+        }
         if (Config.verbose >= 1) {
             System.out.println("LEAVE: " + task);
             printTimer(timer);
         }
-        setTaskDone(task);
+        if (fusedTasks == null)
+            fusedTasks = Collections.singletonList(task);
+        for (ITask task2 : fusedTasks) {
+            String key = (task2 == task) ? cacheKey : getCacheKey(task2);
+            if (key != null)
+                trgtCache.store(key, taskToProducedTrgtsMap.get(task2));
+            setTaskDone(task2);
+            List<Object> producedTrgts = taskToProducedTrgtsMap.get(task2);
+            assert(producedTrgts != null);
+            for (Object trgt : producedTrgts) {
+                setTrgtDone(trgt);
+            }
+        }
+    }
+
+    // Provides the key of the given task in the target cache, if the cache is
+    // enabled and the task is cacheable, and null otherwise.  The targets
+    // consumed by the task must be done.
+    private String getCacheKey(ITask task) {
+        if (!Config.cacheTrgts)
+            return null;
+        if (trgtCache == null)
+            trgtCache = new TrgtCache(Config.cacheDirName);
+        return trgtCache.getKey(task, taskToConsumedTrgtsMap.get(task),
+            taskToProducedTrgtsMap.get(task));
+    }
+
+    // Restores the targets produced by the given task from the target cache
+    // and marks them and the task done, if the cache has them.
+    private boolean restoreFromCache(ITask task, String key) {
         List<Object> producedTrgts = taskToProducedTrgtsMap.get(task);
-        assert(producedTrgts != null);
+        if (!trgtCache.restore(key, producedTrgts))
+            return false;
         for (Object trgt : producedTrgts) {
+            if (trgt instanceof ProgramDom && !((ProgramDom) trgt).load())
+                return false;
+        }
+        setTaskDone(task);
+        for (Object trgt : producedTrgts)
             setTrgtDone(trgt);
+        return true;
+    }
+
+    // Provides the tasks transitively producing targets consumed by the given task,
+    // along with the task itself, excluding those already done and those producing
+    // targets that will be reused from disk.
+    private Set<ITask> getPendingTasks(ITask root) {
+        Set<ITask> tasks = new LinkedHashSet<ITask>();
+        List<ITask> worklist = new ArrayList<ITask>();
+        tasks.add(root);
+        worklist.add(root);
+        while (!worklist.isEmpty()) {
+            ITask task = worklist.remove(worklist.size() - 1);
+            List<Object> consumedTrgts = taskToConsumedTrgtsMap.get(task);
+            if (consumedTrgts == null)
+                continue;
+            for (Object trgt : consumedTrgts) {
+                if (isTrgtDone(trgt))
+                    continue;
+                if (Config.reuseRels) {
+                    if (trgt instanceof ProgramRel && new File(Config.bddbddbWorkDirName,
+                            ((ProgramRel) trgt).getName() + ".bdd").exists())
+                        continue;
+                    if (trgt instanceof ProgramDom && ((ProgramDom) trgt).isLoadable())
+                        continue;
+                }
+                Set<ITask> producingTasks = trgtToProducingTasksMap.get(trgt);
+                if (producingTasks == null || producingTasks.size() != 1)
+                    continue;
+                ITask task2 = producingTasks.iterator().next();
+                if (!isTaskDone(task2) && tasks.add(task2))
+                    worklist.add(task2);
+            }
+        }
+        return tasks;
+    }
+
+    // A task is fusible if it is a program domain or relation that is
+    // filled by a program visitor using the default run() and fill().
+    private static boolean isFusible(ITask task) {
+        if (!(task instanceof IClassVisitor))
+            return false;
+        Class<?> base;
+        if (task instanceof ProgramRel)
+            base = ProgramRel.class;
+        else if (task instanceof ProgramDom) {
+            // such domains fill themselves concurrently instead
+            if (Config.numVisitThreads > 1 && ((ProgramDom<?>) task).isParallelFillable())
+                return false;
+            base = ProgramDom.class;
+        } else
+            return false;
+        try {
+            Class<?> c = task.getClass();
+            return c.getMethod("run").getDeclaringClass() == base &&
+                c.getMethod("fill").getDeclaringClass() == base;
+        } catch (NoSuchMethodException ex) {
+            return false;
         }
     }
 
+    // Provides the given task along with all other pending fusible tasks whose
+    // consumed targets are all done, if the given task is fusible and there is
+    // at least one such other task, and null otherwise.
+    private List<ITask> getFusedTasks(ITask task) {
+        if (pendingTasks == null || !isFusible(task))
+            return null;
+        List<ITask> fusedTasks = null;
+        for (ITask task2 : pendingTasks) {
+            if (task2 == task || isTaskDone(task2) || !isFusible(task2))
+                continue;
+            boolean isReady = true;
+            for (Object trgt : taskToConsumedTrgtsMap.get(task2)) {
+                if (!isTrgtDone(trgt)) {
+                    isReady = false;
+                    break;
+                }
+            }
+            if (!isReady)
+                continue;
+            // leave tasks whose targets are cached to be restored when needed
+            String key = getCacheKey(task2);
+            if (key != null && trgtCache.contains(key))
+                continue;
+            if (fusedTasks == null) {
+                fusedTasks = new ArrayList<ITask>();
+                fusedTasks.add(task);
+            }
+            fusedTasks.add(task2);
+        }
+        return fusedTasks;
+    }
+
+    // Runs the given fusible tasks together, in a single visit of the program.
+    private static void runFused(List<ITask> tasks) {
+        if (Config.verbose >= 1)
+            System.out.println("FUSED: " + tasks);
+        for (ITask task : tasks) {
+            if (task instanceof ProgramRel) {
+                ProgramRel rel = (ProgramRel) task;
+                rel.zero();
+                rel.init();
+            } else {
+                ProgramDom<?> dom = (ProgramDom<?>) task;
+                dom.clear();
+                dom.init();
+            }
+        }
+        VisitorHandler vh = new VisitorHandler(tasks);
+        vh.visitProgram();
+        for (ITask task : tasks) {
+            if (task instanceof ProgramRel)
+                ((ProgramRel) task).save();
+            else
+                ((ProgramDom) task).save();
+        }
+    }
+
+    // restores the given domain from disk in lieu of running the task
+    // producing it, if possible; the targets consumed by that task are
+    // made available as well since the restored domain may refer to them
+    private boolean loadDom(ProgramDom<?> dom) {
+        if (!dom.load())
+            return false;
+        ITask task = getTaskProducingTrgt(dom);
+        for (Object trgt : taskToConsumedTrgtsMap.get(task)) {
+            if (isTrgtDone(trgt))
+                continue;
+            if (trgt instanceof ProgramDom && loadDom((ProgramDom<?>) trgt))
+                continue;
+            runTask(getTaskProducingTrgt(trgt));
+        }
+        setTrgtDone(dom);
+        setTaskDone(task);
+        return true;
+    }
+
     private static void printTimer(Timer timer) {
         System.out.println("Exclusive time: " + timer.getExclusiveTimeStr());
         System.out.println("Inclusive time: " + timer.getInclusiveTimeStr());
@@ -0,0 +1,111 @@
+package chord.project;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Client sending an analysis request to a Chord {@link Server}.
+ * <p>
+ * Usage:
+ * <pre>
+ *   java -cp chord.jar -Dchord.server.port=&lt;port&gt; [-Dchord.run.analyses=...]
+ *       [-Dchord.print.rels=...] [-D&lt;other chord property&gt;=...] chord.project.Client [stop]
+ * </pre>
+ * All <tt>chord.*</tt> system properties of the client are sent to the server along with
+ * the request.  The output of the request is printed to standard output, and the client
+ * exits with code 0 if the request succeeded and with a non-zero code otherwise.  If the
+ * server restarts because files it depends on changed, the client resends the request to
+ * the new server.  Argument <tt>stop</tt> stops the server.  The token of the server is
+ * read from the file it writes it to, so the client must be run by the same user as the
+ * server.
+ * <p>
+ * Note: Do not refer to any properties defined in class chord.project.Config here.
+ */
+public class Client {
+    // time in milliseconds to wait for a restarted server
+    private static final int RESTART_TIMEOUT = 300000;
+
+    public static void main(String[] args) throws IOException {
+        int port = Integer.getInteger("chord.server.port", 0);
+        if (port == 0) {
+            System.err.println("ERROR: Client: Property chord.server.port must be set to port of Chord server.");
+            System.exit(1);
+        }
+        boolean stop = args.length > 0 && args[0].equals("stop");
+        int status = send(port, stop);
+        if (status == Server.STATUS_RESTART) {
+            long deadline = System.currentTimeMillis() + RESTART_TIMEOUT;
+            while (true) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ex) {
+                    break;
+                }
+                try {
+                    status = send(port, stop);
+                } catch (ConnectException ex) {
+                    if (System.currentTimeMillis() > deadline)
+                        throw ex;
+                    continue;
+                }
+                if (status != Server.STATUS_RESTART)
+                    break;
+            }
+        }
+        System.exit(status);
+    }
+
+    // sends the request and prints its output; returns the status of the request
+    private static int send(int port, boolean stop) throws IOException {
+        // read anew for each request since a restarted server has a new token
+        File tokenFile = Server.getTokenFile(port);
+        String token;
+        try {
+            BufferedReader in = new BufferedReader(new FileReader(tokenFile));
+            try {
+                token = in.readLine();
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            // the server has not written it yet, or is not running
+            throw new ConnectException("Cannot read token of Chord server from file '" + tokenFile + "': " + ex.getMessage());
+        }
+        Socket s = new Socket(InetAddress.getByName(null), port);
+        try {
+            PrintStream out = new PrintStream(s.getOutputStream(), true, "UTF-8");
+            out.println(Server.TOKEN_PREFIX + token);
+            if (stop)
+                out.println(Server.STOP_REQUEST);
+            else {
+                Properties props = System.getProperties();
+                for (Map.Entry<Object, Object> e : props.entrySet()) {
+                    String key = (String) e.getKey();
+                    if (key.startsWith("chord."))
+                        out.println(key + "=" + e.getValue());
+                }
+            }
+            out.println();
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(Server.STATUS_PREFIX))
+                    return Integer.parseInt(line.substring(Server.STATUS_PREFIX.length()));
+                System.out.println(line);
+            }
+            System.err.println("ERROR: Client: Connection to Chord server closed unexpectedly.");
+            return Server.STATUS_FAILED;
+        } finally {
+            s.close();
+        }
+    }
+}
@@ -64,6 +64,7 @@ public class Config {
     public final static boolean printProject = Utils.buildBoolProperty("chord.print.project", false);
     public final static boolean printResults = Utils.buildBoolProperty("chord.print.results", true);
     public final static boolean saveDomMaps = Utils.buildBoolProperty("chord.save.maps", true);
+    public final static boolean profileTasks = Utils.buildBoolProperty("chord.profile", false);
     // Determines verbosity level of Chord:
     // 0 => silent
     // 1 => print task/process enter/leave/time messages and sizes of computed doms/rels
@@ -78,12 +79,16 @@ public class Config {
     // Chord project properties
 
     public final static boolean classic = System.getProperty("chord.classic").equals("true");
+    public final static int numModernThreads = Integer.getInteger("chord.modern.threads", 1);
     public final static String stdJavaAnalysisPathName = System.getProperty("chord.std.java.analysis.path");
     public final static String extJavaAnalysisPathName = System.getProperty("chord.ext.java.analysis.path");
     public final static String javaAnalysisPathName = System.getProperty("chord.java.analysis.path");
     public final static String stdDlogAnalysisPathName = System.getProperty("chord.std.dlog.analysis.path");
     public final static String extDlogAnalysisPathName = System.getProperty("chord.ext.dlog.analysis.path");
     public final static String dlogAnalysisPathName = System.getProperty("chord.dlog.analysis.path");
+    public final static int numVisitThreads = Integer.getInteger("chord.visit.threads", 1);
+    public final static boolean fuseVisitors = Utils.buildBoolProperty("chord.fuse.visitors", true);
+    public final static int serverPort = Integer.getInteger("chord.server.port", 0);
 
     // properties specifying configuration of instrumentation and dynamic analysis
 
@@ -104,11 +109,19 @@ public class Config {
     public final static boolean reuseScope = Utils.buildBoolProperty("chord.reuse.scope", false);
     public final static boolean reuseRels =Utils.buildBoolProperty("chord.reuse.rels", false);
     public final static boolean reuseTraces =Utils.buildBoolProperty("chord.reuse.traces", false);
+    public final static boolean cacheTrgts = Utils.buildBoolProperty("chord.cache.trgts", false);
 
     // properties concerning BDDs
 
     public final static boolean useBuddy =Utils.buildBoolProperty("chord.use.buddy", false);
     public final static String bddbddbMaxHeap = System.getProperty("chord.bddbddb.max.heap", "1024m");
+    public final static boolean shareBddFactories = Utils.buildBoolProperty("chord.bddbddb.share.factories", true);
+    public final static boolean tuneBddOrder = Utils.buildBoolProperty("chord.bddbddb.tune.order", false);
+    public final static int tuneBddOrderSamples = Integer.getInteger("chord.bddbddb.tune.samples", 8);
+    public final static int tuneBddOrderMinNodes = Integer.getInteger("chord.bddbddb.tune.min.nodes", 10000);
+    public final static boolean spillRels = Utils.buildBoolProperty("chord.bddbddb.spill.rels", false);
+    public final static int spillRelsThreshold = Integer.getInteger("chord.bddbddb.spill.threshold", 80);
+    public final static int spillRelsMinNodes = Integer.getInteger("chord.bddbddb.spill.min.nodes", 10000);
 
     // properties specifying names of Chord's output files and directories
 
@@ -124,6 +137,8 @@ public class Config {
     public final static String userClassesDirName = System.getProperty("chord.user.classes.dir", outRel2Abs("user_classes"));
     public final static String instrSchemeFileName = System.getProperty("chord.instr.scheme.file", outRel2Abs("scheme.ser"));
     public final static String traceFileName = System.getProperty("chord.trace.file", outRel2Abs("trace"));
+    public final static String bddOrderFileName = System.getProperty("chord.bddbddb.order.file", outRel2Abs("bddorder.txt"));
+    public final static String cacheDirName = System.getProperty("chord.cache.dir", workRel2Abs("chord_cache"));
 
     static {
         Utils.mkdirs(outDirName);
@@ -195,14 +210,19 @@ public class Config {
         System.out.println("chord.print.project: " + printProject);
         System.out.println("chord.print.results: " + printResults);
         System.out.println("chord.save.maps: " + saveDomMaps);
+        System.out.println("chord.profile: " + profileTasks);
         System.out.println("chord.verbose: " + verbose);
         System.out.println("chord.classic: " + classic);
+        System.out.println("chord.modern.threads: " + numModernThreads);
         System.out.println("chord.std.java.analysis.path: " + stdJavaAnalysisPathName);
         System.out.println("chord.ext.java.analysis.path: " + extJavaAnalysisPathName);
         System.out.println("chord.java.analysis.path: " + javaAnalysisPathName);
         System.out.println("chord.std.dlog.analysis.path: " + stdDlogAnalysisPathName);
         System.out.println("chord.ext.dlog.analysis.path: " + extDlogAnalysisPathName);
         System.out.println("chord.dlog.analysis.path: " + dlogAnalysisPathName);
+        System.out.println("chord.visit.threads: " + numVisitThreads);
+        System.out.println("chord.fuse.visitors: " + fuseVisitors);
+        System.out.println("chord.server.port: " + serverPort);
         System.out.println("chord.use.jvmti: " + useJvmti);
         System.out.println("chord.instr.kind: " + instrKind);
         System.out.println("chord.trace.kind: " + traceKind);
@@ -213,8 +233,18 @@ public class Config {
         System.out.println("chord.reuse.scope: " + reuseScope);
         System.out.println("chord.reuse.rels: " + reuseRels);
         System.out.println("chord.reuse.traces: " + reuseTraces);
+        System.out.println("chord.cache.trgts: " + cacheTrgts);
         System.out.println("chord.use.buddy: " + useBuddy);
         System.out.println("chord.bddbddb.max.heap: " + bddbddbMaxHeap);
+        System.out.println("chord.bddbddb.share.factories: " + shareBddFactories);
+        System.out.println("chord.bddbddb.tune.order: " + tuneBddOrder);
+        System.out.println("chord.bddbddb.tune.samples: " + tuneBddOrderSamples);
+        System.out.println("chord.bddbddb.tune.min.nodes: " + tuneBddOrderMinNodes);
+        System.out.println("chord.bddbddb.spill.rels: " + spillRels);
+        System.out.println("chord.bddbddb.spill.threshold: " + spillRelsThreshold);
+        System.out.println("chord.bddbddb.spill.min.nodes: " + spillRelsMinNodes);
+        System.out.println("chord.bddbddb.order.file: " + bddOrderFileName);
+        System.out.println("chord.cache.dir: " + cacheDirName);
     }
 
     public static String outRel2Abs(String fileName) {
@@ -47,13 +47,16 @@ public class Main {
                 errStream = new PrintStream(errFile);
             System.setErr(errStream);
         }
-        run();
+        if (Config.serverPort != 0)
+            Server.serve();
+        else
+            run(Utils.toArray(Config.runAnalyses), Utils.toArray(Config.printRels));
         if (outStream != null)
             outStream.close();
         if (errStream != null && errStream != outStream)
             errStream.close();
     }
-    private static void run() {
+    static void run(String[] analysisNames, String[] relNames) {
         Timer timer = new Timer("chord");
         timer.init();
         String initTime = timer.getInitTimeStr();
@@ -73,11 +76,9 @@ public class Main {
             for (String className : printClasses)
                 program.printClass(className);
         }
-        String[] analysisNames = Utils.toArray(Config.runAnalyses);
         if (analysisNames.length > 0) {
             project.run(analysisNames);
         }
-        String[] relNames = Utils.toArray(Config.printRels);
         if (relNames.length > 0) {
             project.printRels(relNames);
         }
@@ -0,0 +1,74 @@
+package chord.project;
+
+import java.io.File;
+
+import chord.util.Utils;
+
+/**
+ * Benchmark comparing the wall-clock time of running Chord with a classic project and with
+ * a modern project running its steps concurrently.
+ * <p>
+ * Usage:
+ * <pre>
+ *   java -cp chord.jar -Dchord.work.dir=&lt;dir&gt; -Dchord.run.analyses=...
+ *       [-Dchord.benchmark.runs=&lt;n&gt;] [-Dchord.benchmark.warm=true]
+ *       [-Dchord.modern.threads=&lt;n&gt;] [-D&lt;other chord property&gt;=...]
+ *       chord.project.ModeBenchmark
+ * </pre>
+ * Chord is run <tt>chord.benchmark.runs</tt> times in each of the two modes, as described
+ * in {@link BenchmarkHarness}, setting <tt>chord.classic</tt>.  Runs of the modern mode use
+ * <tt>chord.modern.threads</tt> threads, the number of available processors by default.
+ * <p>
+ * By default, runs are cold: each run of a mode sets <tt>chord.reuse.rels=false</tt> and
+ * writes to its own output directory <tt>[chord.work.dir]/bench_&lt;mode&gt;_&lt;i&gt;</tt>,
+ * so that it computes all domains and relations from scratch.  If
+ * <tt>chord.benchmark.warm</tt> is true, all runs of a mode set
+ * <tt>chord.reuse.rels=true</tt> and share output directory
+ * <tt>[chord.work.dir]/bench_&lt;mode&gt;</tt>, which is emptied before the first run, so
+ * that all runs but the first warm-start from the results of the first run.
+ * <p>
+ * The time of each run, the minimum and median time of each mode, and the speedup of the
+ * modern mode over the classic mode, namely, the ratio of their median times, are printed.
+ * <p>
+ * Note: Do not refer to any properties defined in class chord.project.Config here.
+ */
+public class ModeBenchmark {
+    private static final String[] MODES = { "classic", "modern" };
+
+    public static void main(String[] args) throws Throwable {
+        boolean warm = System.getProperty("chord.benchmark.warm", "false").equals("true");
+        int numThreads = Integer.getInteger("chord.modern.threads",
+            Runtime.getRuntime().availableProcessors());
+        BenchmarkHarness harness = new BenchmarkHarness("ModeBenchmark", "chord.classic",
+            "chord.reuse.rels", "chord.modern.threads");
+        String reuseProp = "-Dchord.reuse.rels=" + warm;
+        int numRuns = harness.getNumRuns();
+        long[][] times = new long[MODES.length][numRuns];
+        for (int m = 0; m < MODES.length; m++) {
+            String mode = MODES[m];
+            String[] modeProps = (m == 0) ?
+                new String[] { "-Dchord.classic=true", reuseProp } :
+                new String[] { "-Dchord.classic=false", reuseProp,
+                    "-Dchord.modern.threads=" + numThreads };
+            for (int i = 0; i < numRuns; i++) {
+                String runName = i + " of mode " + mode;
+                String outDirName = harness.getWorkDirName() + File.separator + "bench_" + mode;
+                if (warm) {
+                    if (i == 0)
+                        Utils.deleteFile(outDirName);
+                } else
+                    outDirName += "_" + i;
+                times[m][i] = harness.run(runName, outDirName, modeProps);
+                System.out.println("BENCHMARK: " + mode + " run " + i + ": " + times[m][i] + " ms");
+            }
+        }
+        String kind = warm ? "warm" : "cold";
+        System.out.println("BENCHMARK: classic (" + kind + "): " +
+            BenchmarkHarness.summarize(times[0]));
+        System.out.println("BENCHMARK: modern (" + kind + ", chord.modern.threads=" + numThreads + "): " +
+            BenchmarkHarness.summarize(times[1]));
+        System.out.println("BENCHMARK: speedup of modern over classic: " +
+            String.format("%.2f", (double) BenchmarkHarness.getMedian(times[0]) /
+                BenchmarkHarness.getMedian(times[1])));
+    }
+}
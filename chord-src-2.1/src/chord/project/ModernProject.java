@@ -2,26 +2,52 @@ package chord.project;
 
 import hj.runtime.wsh.WshRuntime_c;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Collections;
+import java.util.concurrent.locks.ReentrantLock;
 
 import CnCHJ.api.ItemCollection;
 import CnCHJ.runtime.CnCRuntime;
 import CnCHJ.runtime.ItemCollectionFactory;
 
 import chord.project.analyses.DlogAnalysis;
+import chord.project.analyses.ProgramDom;
 import chord.project.analyses.ProgramRel;
+import chord.program.Program;
+import chord.util.Utils;
 import chord.project.ITask;
 import chord.bddbddb.RelSign;
 
 /**
  * A Chord project comprising a set of tasks and a set of targets
  * produced/consumed by those tasks.
+ * <p>
+ * Tasks run as steps of the CnC runtime, on as many worker threads as
+ * specified by system property <tt>chord.modern.threads</tt>.  Steps
+ * whose inputs are available run concurrently, except that the body of
+ * a Java analysis that is not stateless (see
+ * {@link chord.project.analyses.JavaAnalysis#isStateless()}) holds a JVM
+ * lock, which keeps it from overlapping with other such bodies.  Steps
+ * filling program domains and relations, stateless Java analyses, and
+ * Datalog analyses, whose solver runs in a separate JVM, do not take
+ * the lock; the program and the CFGs of its methods are built once,
+ * before any step reads them (see {@link #buildProgram()}), as they are
+ * otherwise built lazily and not thread-safely, and each thread brings
+ * relations into memory in BDD factories of its own.
+ * <p>
+ * Relations produced by steps in Chord's JVM are kept in memory, in
+ * their data collections, and each step consuming a relation gets a
+ * copy of it (see {@link ProgramRel#copy()}).  They are saved to disk
+ * only if a Datalog analysis that may run consumes them or system property
+ * <tt>chord.reuse.rels</tt> is true.
  * 
  * @author Mayur Naik (mhn@cs.stanford.edu)
  */
@@ -30,6 +56,8 @@ public class ModernProject extends Project {
         "ERROR: ModernProject: Multiple step collections (%s) producing data collection '%s'; include exactly one of them via -Dchord.run.analyses";
     private static final String STEP_PRODUCING_DATA_NOT_FOUND =
         "ERROR: ModernProject: No step collection producing data collection '%s' found in project";
+    private static final String STEP_NOT_FOUND =
+        "ERROR: ModernProject: No step collection named '%s' prescribed in project";
 
     private ModernProject() { }
 
@@ -48,6 +76,15 @@ public class ModernProject extends Project {
     private Map<String, RelSign> nameToTrgtSignMap;
     private CnCRuntime runtime;
     private boolean isBuilt = false;
+    // serializes the bodies of Java analyses that are not stateless
+    private final ReentrantLock jvmLock = new ReentrantLock();
+    // step collections of Datalog analyses
+    private final Set<IStepCollection> dlogStepCollections = new HashSet<IStepCollection>();
+    // names of the data consumed by Datalog analyses that may run, which are saved to disk
+    private final Set<String> dlogConsumedNames = new HashSet<String>();
+    private boolean isProgramBuilt = false;
+    // computes the keys of targets saved for reuse (see isReusable)
+    private TrgtCache trgtKeys;
 
     @Override
     public void build() {
@@ -78,6 +115,7 @@ public class ModernProject extends Project {
             sc.setName(name);
             sc.setTask(task);
             nameToStepCollectionMap.put(name, sc);
+            dlogStepCollections.add(sc);
         }
         
         // create each control collection that prescribes some step
@@ -186,12 +224,22 @@ public class ModernProject extends Project {
     @Override
     public void run(String[] taskNames) {
         build();
+        findDlogConsumedNames(taskNames);
+        // prescribe the producers of data before their consumers, so that the
+        // runtime, which runs prescribed steps in order, does not fill its
+        // threads with consumers waiting for producers that cannot run
+        List<ICtrlCollection> ccList = new ArrayList<ICtrlCollection>();
+        Set<ICtrlCollection> visited = new HashSet<ICtrlCollection>();
+        for (String name : taskNames) {
+            ICtrlCollection cc = getCtrlCollectionOfStep(name);
+            if (cc == null)
+                Messages.fatal(STEP_NOT_FOUND, name);
+            addInDataOrder(cc, visited, ccList);
+        }
         WshRuntime_c.getCurrentWshActivity().startFinish();
         try {
-            for (String name : taskNames) {
-                ICtrlCollection cc = getCtrlCollectionOfStep(name);
+            for (ICtrlCollection cc : ccList)
                 cc.Put(PROGRAM_TAG);
-            }
         } catch (Throwable ex) {
             Messages.fatal(ex);
         }
@@ -204,7 +252,7 @@ public class ModernProject extends Project {
         for (String name : relNames) {
             IDataCollection dc = getDataCollectionByName(name);
             ItemCollection ic = dc.getItemCollection();
-            ProgramRel rel = (ProgramRel) ic.Get(PROGRAM_TAG);
+            ProgramRel rel = ((ProgramRel) ic.Get(PROGRAM_TAG)).copy();
             rel.load();
             rel.print();
         }
@@ -242,7 +290,32 @@ public class ModernProject extends Project {
         return dc;
     }
 
+    /**
+     * Provides the data consumed by the given step, waiting until it is
+     * produced, and then acquires the JVM lock on behalf of the step.
+     * 
+     * @see #runPrologue(Object, IStepCollection, boolean)
+     */
     public Object[] runPrologue(Object ctrl, IStepCollection sc) {
+        return runPrologue(ctrl, sc, false);
+    }
+
+    /**
+     * Provides the data consumed by the given step, waiting until it is
+     * produced, and then acquires the JVM lock on behalf of the step unless
+     * it may run concurrently with other steps.  Each consumed relation is
+     * provided as a copy of its own (see {@link ProgramRel#copy()}).
+     * <p>
+     * If the lock is acquired, the step must release it when it finishes
+     * running in Chord's JVM, by calling
+     * {@link #runEpilogue(Object, IStepCollection, Object[], Object[])}
+     * or {@link #unlockJVM()}.
+     * 
+     * @param    isConcurrent    Whether the step may run concurrently with
+     *             other steps, namely, whether it keeps no static state and
+     *             reads the program only after calling {@link #buildProgram()}.
+     */
+    public Object[] runPrologue(Object ctrl, IStepCollection sc, boolean isConcurrent) {
         List<IDataCollection> cdcList = sc.getConsumedDataCollections();
         int n = cdcList.size();
         Object[] consumes = new Object[n];
@@ -263,21 +336,127 @@ public class ModernProject extends Project {
             System.out.println(Thread.currentThread() + " Prologue of step sc=" + sc.getName() +
                 " doing PUT of ctrl=" + ctrl + " into cc=" + cc2.getName());
             cc2.Put(ctrl);
+        }
+        // get the data only once all their producers are prescribed, so that they run concurrently
+        for (int i = 0; i < n; i++) {
+            IDataCollection cdc = cdcList.get(i);
             ItemCollection cic = cdc.getItemCollection();
             System.out.println(Thread.currentThread() + " Prologue of step sc=" + sc.getName() +
                 " doing GET of ctrl=" + ctrl + " from dc=" + cdc.getName());
-            consumes[i] = cic.Get(ctrl);
+            Object o = cic.Get(ctrl);
+            consumes[i] = (o instanceof ProgramRel) ? ((ProgramRel) o).copy() : o;
         }
+        if (!isConcurrent)
+            jvmLock.lock();
         return consumes;
     }
 
+    /**
+     * Builds the program and the CFGs of all its methods, unless already
+     * done.  Must be called by each step running in Chord's JVM before it
+     * reads the program, including by restoring domains whose values are
+     * materialized from it, as steps may run concurrently.
+     */
+    public synchronized void buildProgram() {
+        if (isProgramBuilt)
+            return;
+        Program program = Program.g();
+        program.build();
+        VisitorHandler.buildCFGs(program.getMethods());
+        isProgramBuilt = true;
+    }
+
+    /**
+     * Determines whether the relation of the given name, produced by a step
+     * in Chord's JVM, must be saved to disk, namely, whether a Datalog
+     * analysis that may run consumes it or system property <tt>chord.reuse.rels</tt> is
+     * true; otherwise, it is kept in memory (see {@link ProgramRel#copy()}).
+     */
+    public boolean isSavedToDisk(String relName) {
+        return Config.reuseRels || dlogConsumedNames.contains(relName);
+    }
+
+    // adds the given control collection to the given list after those prescribing
+    // the producers of the data consumed by the steps it prescribes, transitively
+    private void addInDataOrder(ICtrlCollection cc, Set<ICtrlCollection> visited,
+            List<ICtrlCollection> ccList) {
+        if (!visited.add(cc))
+            return;
+        for (IStepCollection sc : cc.getPrescribedCollections()) {
+            for (IDataCollection dc : sc.getConsumedDataCollections()) {
+                for (IStepCollection sc2 : dc.getProducingCollections()) {
+                    ICtrlCollection cc2 = sc2.getPrescribingCollection();
+                    if (cc2 != null)
+                        addInDataOrder(cc2, visited, ccList);
+                }
+            }
+        }
+        ccList.add(cc);
+    }
+
+    // finds the data consumed by the Datalog analyses among the steps that may run
+    // when the given steps are run, namely, the steps prescribed by the control
+    // collections prescribing them, by those producing the data they consume, and by
+    // those they produce, transitively
+    private void findDlogConsumedNames(String[] taskNames) {
+        Set<ICtrlCollection> visited = new HashSet<ICtrlCollection>();
+        List<ICtrlCollection> worklist = new ArrayList<ICtrlCollection>();
+        for (String name : taskNames) {
+            ICtrlCollection cc = getCtrlCollectionOfStep(name);
+            if (cc != null && visited.add(cc))
+                worklist.add(cc);
+        }
+        while (!worklist.isEmpty()) {
+            ICtrlCollection cc = worklist.remove(worklist.size() - 1);
+            for (IStepCollection sc : cc.getPrescribedCollections()) {
+                List<ICtrlCollection> ccs = new ArrayList<ICtrlCollection>();
+                if (sc.getProducedCtrlCollections() != null)
+                    ccs.addAll(sc.getProducedCtrlCollections());
+                for (IDataCollection dc : sc.getConsumedDataCollections()) {
+                    if (dlogStepCollections.contains(sc))
+                        dlogConsumedNames.add(dc.getName());
+                    for (IStepCollection sc2 : dc.getProducingCollections())
+                        ccs.add(sc2.getPrescribingCollection());
+                }
+                for (ICtrlCollection cc2 : ccs) {
+                    if (cc2 != null && visited.add(cc2))
+                        worklist.add(cc2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the JVM lock acquired on behalf of the calling step by
+     * {@link #runPrologue(Object, IStepCollection)}.
+     */
+    public void unlockJVM() {
+        if (jvmLock.isHeldByCurrentThread())
+            jvmLock.unlock();
+    }
+
+    /**
+     * Releases the JVM lock on behalf of the given step, if it holds it,
+     * and then puts the data and control tags produced by the step.
+     * 
+     * @param    produces    The data produced by the step, in the order of
+     *             its produced data collections, or null if it produced none.
+     *             A relation that the step saved to disk itself but did not
+     *             provide here is put in the form of an unloaded relation.
+     * @param    controls    The control tags produced by the step, in the
+     *             order of its produced control collections, or null if it
+     *             produced none.
+     */
     public void runEpilogue(Object ctrl, IStepCollection sc, Object[] produces, Object[] controls) {
+        unlockJVM();
         List<IDataCollection> pdcList = sc.getProducedDataCollections();
         int m = pdcList.size();
         for (int i = 0; i < m; i++) {
             IDataCollection pdc = pdcList.get(i);
             ItemCollection pic = pdc.getItemCollection();
-            Object o = produces[i];
+            Object o = (produces == null) ? null : produces[i];
+            if (o == null)
+                o = getSavedRel(ctrl, sc, pdc.getName());
             if (o != null) {
                 System.out.println(Thread.currentThread() + " Epilogue of step sc=" +
                     sc.getName() + " doing PUT of ctrl=" + ctrl + " into dc=" + pdc.getName());
@@ -285,7 +464,7 @@ public class ModernProject extends Project {
             }
         }
         List<ICtrlCollection> pccList = sc.getProducedCtrlCollections();
-        int k = pccList.size();
+        int k = (controls == null) ? 0 : pccList.size();
         for (int i = 0; i < k; i++) {
             ICtrlCollection pcc = pccList.get(i);
             Object ctrl2 = controls[i];
@@ -297,6 +476,82 @@ public class ModernProject extends Project {
         }
     }
 
+    // provides the relation of the given name saved to disk by the given
+    // step, with its domains taken from those consumed by the step, or
+    // null if there is no such relation
+    private ProgramRel getSavedRel(Object ctrl, IStepCollection sc, String relName) {
+        RelSign sign = getSign(relName);
+        if (sign == null || !(new File(Config.bddbddbWorkDirName, relName + ".bdd")).exists())
+            return null;
+        String[] domNames = sign.getDomNames();
+        ProgramDom<?>[] doms = new ProgramDom<?>[domNames.length];
+        for (int i = 0; i < domNames.length; i++) {
+            String domName = Utils.trimNumSuffix(domNames[i]);
+            for (IDataCollection cdc : sc.getConsumedDataCollections()) {
+                if (cdc.getName().equals(domName)) {
+                    doms[i] = (ProgramDom<?>) cdc.getItemCollection().Get(ctrl);
+                    break;
+                }
+            }
+            if (doms[i] == null)
+                return null;
+        }
+        ProgramRel rel = new ProgramRel();
+        rel.setName(relName);
+        rel.setSign(sign);
+        rel.setDoms(doms);
+        return rel;
+    }
+
+    /**
+     * Determines whether the given program domain or relation, produced by a step that
+     * consumed the given data, can be restored from the files saved by a previous run
+     * instead of being recomputed.
+     * <p>
+     * This requires system property <tt>chord.reuse.rels</tt> to be true, and the target
+     * to have been saved by a previous run of the step on the same inputs (see
+     * {@link #setReusable(ITask, Object[])}), namely, with the same key as in the target
+     * cache (see {@link TrgtCache#getKey(ITask, List, List)}).
+     */
+    public synchronized boolean isReusable(ITask trgt, Object[] consumes) {
+        if (!Config.reuseRels)
+            return false;
+        File keyFile = getKeyFile(trgt);
+        if (!keyFile.exists())
+            return false;
+        String key = getTrgtKey(trgt, consumes);
+        return key != null && Utils.readFileToList(keyFile).contains(key);
+    }
+
+    /**
+     * Records the key of the given program domain or relation, just saved by the step
+     * producing it from the given consumed data, so that later runs can reuse it (see
+     * {@link #isReusable(ITask, Object[])}), if system property <tt>chord.reuse.rels</tt>
+     * is true.
+     */
+    public synchronized void setReusable(ITask trgt, Object[] consumes) {
+        if (!Config.reuseRels)
+            return;
+        File keyFile = getKeyFile(trgt);
+        String key = getTrgtKey(trgt, consumes);
+        if (key == null)
+            Utils.deleteFile(keyFile);
+        else
+            Utils.writeListToFile(Collections.singletonList(key), keyFile);
+    }
+
+    private static File getKeyFile(ITask trgt) {
+        return new File(Config.bddbddbWorkDirName, trgt.getName() + ".key");
+    }
+
+    private String getTrgtKey(ITask trgt, Object[] consumes) {
+        if (trgtKeys == null)
+            trgtKeys = new TrgtCache(Config.cacheDirName);
+        List<Object> consumedTrgts = (consumes == null) ? Collections.<Object>emptyList() :
+            Arrays.asList(consumes);
+        return trgtKeys.getKey(trgt, consumedTrgts, Collections.<Object>singletonList(trgt));
+    }
+
     public IStepCollection getStepCollectionByName(String name) {
         return nameToStepCollectionMap.get(name);
     }
@@ -0,0 +1,293 @@
+package chord.project;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import chord.util.Utils;
+
+/**
+ * Resident Chord process serving analysis requests from {@link Client} over a local socket.
+ * <p>
+ * The server is started by running Chord with system property <tt>chord.server.port</tt>
+ * set to a non-zero port; it listens on that port of the loopback interface only.  It
+ * keeps the program (the Joeq class hierarchy and the scope built by
+ * {@link chord.program.Program}) and the project (all tasks and targets, including all
+ * computed domains, and the relations computed in <tt>chord.bddbddb.work.dir</tt>) across
+ * requests.  Thus, a request only runs those tasks whose results are not already
+ * available, plus the requested analyses themselves, which are always re-run.
+ * <p>
+ * A request specifies values of properties <tt>chord.run.analyses</tt> and
+ * <tt>chord.print.rels</tt>.  All other properties are fixed when the server is started;
+ * a request that specifies a different value of any other <tt>chord.*</tt> property is
+ * rejected.  The output of a request is sent back to the client.
+ * <p>
+ * Since any local user may connect to the port, each request must start with a token
+ * that the server generates at random when it starts and writes to file
+ * <tt>~/.chord/server-&lt;port&gt;.token</tt>, which only the user running the server
+ * may read (see {@link #getTokenFile(int)}); requests with a wrong token are rejected.
+ * <p>
+ * Before serving each request, the server checks whether any class file, jar file, or
+ * Datalog file in the program's class path or in the analysis paths has changed since it
+ * started; if so, it asks the client to retry and exits with code
+ * {@link #RESTART_EXIT_CODE}, upon which {@link Boot} starts a fresh server.
+ * <p>
+ * Only classic projects (<tt>chord.classic=true</tt>) are supported.  An analysis that
+ * calls {@link Messages#fatal(String, Object...)} terminates the server.
+ */
+public class Server {
+    public static final int RESTART_EXIT_CODE = 3;
+    // prefix of the last line of each reply, followed by the status of the request
+    static final String STATUS_PREFIX = "#chord.server.status=";
+    static final int STATUS_OK = 0;
+    static final int STATUS_FAILED = 1;
+    static final int STATUS_REJECTED = 2;
+    static final int STATUS_RESTART = 3;
+    // prefix of the first line of each request, followed by the token of the server
+    static final String TOKEN_PREFIX = "#chord.server.token=";
+    // line following the token of a request to stop the server
+    static final String STOP_REQUEST = "#stop";
+    // properties that may differ between requests
+    private static final String[] REQUEST_PROPS = {
+        "chord.run.analyses", "chord.print.rels", "chord.server.port"
+    };
+    private static final String CLASSIC_ONLY =
+        "ERROR: Server: Property chord.server.port requires chord.classic=true.";
+    private static final String PROP_MISMATCH =
+        "ERROR: Server: Property '%s' has value '%s' in request but '%s' in server; restart the server to change it.";
+    private static final String TASK_NOT_FOUND =
+        "ERROR: Server: Analysis named '%s' not found in analysis paths.";
+    private static final String TRGT_NOT_FOUND =
+        "ERROR: Server: Relation named '%s' not found in analysis paths.";
+    private static final String FILES_CHANGED =
+        "Server: Files in class path or analysis paths changed; restarting server.";
+    private static final String BAD_TOKEN =
+        "ERROR: Server: Request has a wrong token; it must be read from file '%s'.";
+    private static final String CANNOT_WRITE_TOKEN =
+        "ERROR: Server: Cannot write token to file '%s' readable only by its owner.";
+    private static final int TOKEN_SIZE = 16;
+
+    private final String fingerprint;
+    private final File tokenFile;
+    private final byte[] token;
+
+    private Server() {
+        fingerprint = getFingerprint();
+        tokenFile = getTokenFile(Config.serverPort);
+        byte[] bytes = new byte[TOKEN_SIZE];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes)
+            sb.append(String.format("%02x", b & 0xff));
+        token = toBytes(sb.toString());
+        writeToken(sb.toString());
+    }
+
+    /**
+     * Provides the file to which the server listening on the given port writes its token.
+     */
+    static File getTokenFile(int port) {
+        File dir = new File(System.getProperty("user.home"), ".chord");
+        return new File(dir, "server-" + port + ".token");
+    }
+
+    // writes the token to a fresh file that only its owner may read or write, restricting
+    // its permissions before the token is written
+    private void writeToken(String s) {
+        File dir = tokenFile.getParentFile();
+        try {
+            if (!dir.isDirectory() && (!dir.mkdirs() || !restrictToOwner(dir) || !dir.setExecutable(true, true)))
+                Messages.fatal(CANNOT_WRITE_TOKEN, tokenFile);
+            if (tokenFile.exists() && !tokenFile.delete())
+                Messages.fatal(CANNOT_WRITE_TOKEN, tokenFile);
+            if (!tokenFile.createNewFile() || !restrictToOwner(tokenFile))
+                Messages.fatal(CANNOT_WRITE_TOKEN, tokenFile);
+            FileWriter out = new FileWriter(tokenFile);
+            try {
+                out.write(s);
+            } finally {
+                out.close();
+            }
+        } catch (IOException ex) {
+            Messages.fatal(ex);
+        }
+        tokenFile.deleteOnExit();
+    }
+
+    private static boolean restrictToOwner(File file) {
+        return file.setReadable(false, false) && file.setReadable(true, true) &&
+            file.setWritable(false, false) && file.setWritable(true, true) &&
+            file.setExecutable(false, false);
+    }
+
+    private static byte[] toBytes(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Serves requests until a request to stop the server is received.
+     */
+    public static void serve() throws IOException {
+        if (!Config.classic)
+            Messages.fatal(CLASSIC_ONLY);
+        Server server = new Server();
+        ServerSocket ss = new ServerSocket(Config.serverPort, 50, InetAddress.getByName(null));
+        System.out.println("Chord server listening on port: " + Config.serverPort);
+        try {
+            while (true) {
+                Socket s = ss.accept();
+                try {
+                    if (!server.handle(s))
+                        break;
+                } catch (IOException ex) {
+                    System.err.println("WARN: Server: Failed to serve request: " + ex.getMessage());
+                } finally {
+                    s.close();
+                }
+            }
+        } finally {
+            ss.close();
+        }
+        System.out.println("Chord server stopped.");
+    }
+
+    // returns false iff the server must stop serving requests
+    private boolean handle(Socket s) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+        PrintStream out = new PrintStream(s.getOutputStream(), true, "UTF-8");
+        String line = in.readLine();
+        if (line == null)
+            return true;
+        // compared in time independent of the length of their common prefix
+        if (!line.startsWith(TOKEN_PREFIX) ||
+                !MessageDigest.isEqual(token, toBytes(line.substring(TOKEN_PREFIX.length())))) {
+            out.println(String.format(BAD_TOKEN, tokenFile));
+            out.println(STATUS_PREFIX + STATUS_REJECTED);
+            return true;
+        }
+        String first = in.readLine();
+        if (first == null)
+            return true;
+        if (first.equals(STOP_REQUEST)) {
+            out.println(STATUS_PREFIX + STATUS_OK);
+            return false;
+        }
+        Map<String, String> props = new TreeMap<String, String>();
+        for (line = first; line != null && line.length() > 0; line = in.readLine()) {
+            int i = line.indexOf('=');
+            if (i > 0)
+                props.put(line.substring(0, i), line.substring(i + 1));
+        }
+        if (!fingerprint.equals(getFingerprint())) {
+            System.out.println(FILES_CHANGED);
+            out.println(FILES_CHANGED);
+            out.println(STATUS_PREFIX + STATUS_RESTART);
+            out.close();
+            s.close();
+            System.exit(RESTART_EXIT_CODE);
+        }
+        List<String> errors = new ArrayList<String>();
+        for (Map.Entry<String, String> e : props.entrySet()) {
+            String key = e.getKey();
+            if (!key.startsWith("chord.") || Utils.prefixMatch(key, REQUEST_PROPS))
+                continue;
+            String val = System.getProperty(key);
+            if (!e.getValue().equals(val))
+                errors.add(String.format(PROP_MISMATCH, key, e.getValue(), val));
+        }
+        String[] analysisNames = Utils.toArray(getOrDefault(props, "chord.run.analyses"));
+        String[] relNames = Utils.toArray(getOrDefault(props, "chord.print.rels"));
+        ClassicProject project = ClassicProject.g();
+        for (String name : analysisNames) {
+            if (!project.hasTask(name))
+                errors.add(String.format(TASK_NOT_FOUND, name));
+        }
+        for (String name : relNames) {
+            if (!project.hasTrgt(name))
+                errors.add(String.format(TRGT_NOT_FOUND, name));
+        }
+        if (!errors.isEmpty()) {
+            for (String error : errors)
+                out.println(error);
+            out.println(STATUS_PREFIX + STATUS_REJECTED);
+            return true;
+        }
+        PrintStream sysOut = System.out;
+        PrintStream sysErr = System.err;
+        System.setOut(out);
+        System.setErr(out);
+        int status = STATUS_OK;
+        try {
+            // re-run the requested analyses even if they were run by a previous request
+            for (String name : analysisNames) {
+                if (project.isTaskDone(name))
+                    project.resetTaskDone(name);
+            }
+            Main.run(analysisNames, relNames);
+        } catch (Throwable ex) {
+            ex.printStackTrace();
+            status = STATUS_FAILED;
+        } finally {
+            System.setOut(sysOut);
+            System.setErr(sysErr);
+        }
+        out.println(STATUS_PREFIX + status);
+        return true;
+    }
+
+    private static String getOrDefault(Map<String, String> props, String key) {
+        String val = props.get(key);
+        return val == null ? "" : val;
+    }
+
+    // fingerprint of the names, sizes, and times of last modification of all class, jar,
+    // and Datalog files in the program's class path and in the analysis paths
+    private static String getFingerprint() {
+        StringBuilder sb = new StringBuilder();
+        String[] pathNames = {
+            Config.userClassPathName, Config.javaAnalysisPathName, Config.dlogAnalysisPathName
+        };
+        for (String pathName : pathNames) {
+            if (pathName == null || pathName.equals(""))
+                continue;
+            for (String fileName : pathName.split(Utils.PATH_SEPARATOR))
+                addToFingerprint(new File(fileName), sb);
+        }
+        return sb.toString();
+    }
+
+    private static void addToFingerprint(File file, StringBuilder sb) {
+        if (file.isDirectory()) {
+            File[] subFiles = file.listFiles();
+            if (subFiles == null)
+                return;
+            Arrays.sort(subFiles);
+            for (File subFile : subFiles)
+                addToFingerprint(subFile, sb);
+            return;
+        }
+        String name = file.getName();
+        if (!file.exists() || !(name.endsWith(".class") || name.endsWith(".jar") ||
+                name.endsWith(".zip") || name.endsWith(".dlog") || name.endsWith(".datalog")))
+            return;
+        sb.append(file.getPath()).append(' ').append(file.length()).append(' ')
+            .append(file.lastModified()).append('\n');
+    }
+}
@@ -9,7 +9,12 @@ public class StepCollectionForStatelessTask extends AbstractStepCollection {
     @Override
     public void run(Object ctrl) {
         System.out.println("ENTER: ctrl=" + ctrl + " sc(stateless)="  + getName());
-        task.run(ctrl, this);
+        try {
+            task.run(ctrl, this);
+        } catch (Throwable ex) {
+            // steps waiting for data produced by this step would wait forever
+            Messages.fatal(ex);
+        }
         System.out.println("LEAVE: ctrl=" + ctrl + " sc(stateless)="  + getName());
     }
 }
@@ -18,7 +18,12 @@ public class StepCollectionForTaskWithState extends AbstractStepCollection {
             Messages.fatal(e);
         }
         System.out.println(Thread.currentThread() + " ENTER: ctrl=" + ctrl + " sc(stateful)="  + getName());
-        task.run(ctrl, this);
+        try {
+            task.run(ctrl, this);
+        } catch (Throwable ex) {
+            // steps waiting for data produced by this step would wait forever
+            Messages.fatal(ex);
+        }
         System.out.println(Thread.currentThread() + " LEAVE: ctrl=" + ctrl + " sc(stateful)="  + getName());
     }
 }
@@ -0,0 +1,367 @@
+package chord.project;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.scannotation.AnnotationDB;
+
+import chord.bddbddb.RelSign;
+import chord.project.analyses.DlogAnalysis;
+import chord.util.Utils;
+
+/**
+ * Precomputed index of the tasks defined in an element of a path of analyses, i.e., a jar
+ * file, a zip file, or a directory.
+ * <p>
+ * The index lists the names of all {@link Chord}-annotated classes in the path element, and
+ * the paths and signatures (name, domains, and consumed and produced relations) of all
+ * Datalog analyses in it.  It is stored in a file named {@link #INDEX_FILE_NAME} at the root
+ * of the path element, and lets {@link TaskParser} avoid scanning every class file and
+ * parsing every Datalog file in the path element at startup.
+ * <p>
+ * The index also records a fingerprint of the path element, computed from the names, sizes,
+ * and CRCs (for jar and zip files) or times of last modification (for directories) of all
+ * class files and Datalog files in it.  An index whose fingerprint does not match the path
+ * element is stale and is ignored, in which case the path element is scanned fully.
+ * <p>
+ * The index of <tt>chord.jar</tt> is generated when it is built.  The index of an extension
+ * jar file <tt>ext.jar</tt> can be generated and embedded by commands:
+ * <pre>
+ *   java -cp chord.jar:ext.jar chord.project.TaskIndex ext.jar chord_tasks.idx
+ *   jar uf ext.jar chord_tasks.idx
+ * </pre>
+ * and the index of a directory <tt>dir</tt> by command:
+ * <pre>
+ *   java -cp chord.jar:dir chord.project.TaskIndex dir
+ * </pre>
+ */
+public class TaskIndex {
+    public static final String INDEX_FILE_NAME = "chord_tasks.idx";
+    private static final String STALE_INDEX = "WARN: TaskIndex: Ignoring stale index of '%s'.";
+    private static final String CORRUPT_INDEX = "WARN: TaskIndex: Ignoring corrupt index of '%s': %s";
+
+    /**
+     * Signature of a Datalog analysis listed in an index.
+     */
+    public static class DlogInfo {
+        // path of the file relative to the root of the path element, using '/' as separator
+        public final String path;
+        // null if the analysis is not named via a # name=... line
+        public final String name;
+        public final Set<String> domNames = new HashSet<String>();
+        public final Map<String, RelSign> consumedRels = new HashMap<String, RelSign>();
+        public final Map<String, RelSign> producedRels = new HashMap<String, RelSign>();
+        DlogInfo(String path, String name) {
+            this.path = path;
+            this.name = name;
+        }
+    }
+
+    private final List<String> javaTaskNames = new ArrayList<String>();
+    private final List<DlogInfo> dlogInfos = new ArrayList<DlogInfo>();
+
+    private TaskIndex() { }
+
+    /**
+     * Provides the names of all {@link Chord}-annotated classes in the indexed path element.
+     */
+    public List<String> getJavaTaskNames() {
+        return javaTaskNames;
+    }
+
+    /**
+     * Provides the signatures of all Datalog analyses in the indexed path element.
+     */
+    public List<DlogInfo> getDlogInfos() {
+        return dlogInfos;
+    }
+
+    /**
+     * Loads the index of the given path element.
+     *
+     * @param file A jar file, zip file, or directory.
+     *
+     * @return The index of the given path element, or null if it has no index or if its
+     * index is stale or corrupt.
+     */
+    public static TaskIndex load(File file) {
+        List<String> lines = new ArrayList<String>();
+        try {
+            if (file.isDirectory()) {
+                File indexFile = new File(file, INDEX_FILE_NAME);
+                if (!indexFile.exists())
+                    return null;
+                Utils.readFileToList(indexFile, lines);
+            } else {
+                ZipFile zipFile = new ZipFile(file);
+                try {
+                    ZipEntry ze = zipFile.getEntry(INDEX_FILE_NAME);
+                    if (ze == null)
+                        return null;
+                    readLines(zipFile.getInputStream(ze), lines);
+                } finally {
+                    zipFile.close();
+                }
+            }
+        } catch (IOException ex) {
+            Messages.log(CORRUPT_INDEX, file, ex.getMessage());
+            return null;
+        }
+        if (lines.isEmpty() || !lines.get(0).startsWith("fingerprint ")) {
+            Messages.log(CORRUPT_INDEX, file, "missing fingerprint");
+            return null;
+        }
+        String fingerprint = lines.get(0).substring(12);
+        try {
+            if (!fingerprint.equals(getFingerprint(file))) {
+                if (Config.verbose >= 1) Messages.log(STALE_INDEX, file);
+                return null;
+            }
+        } catch (IOException ex) {
+            Messages.log(CORRUPT_INDEX, file, ex.getMessage());
+            return null;
+        }
+        TaskIndex index = new TaskIndex();
+        DlogInfo dlog = null;
+        for (int i = 1; i < lines.size(); i++) {
+            String line = lines.get(i);
+            String[] a = line.split(" ");
+            String kind = a[0];
+            try {
+                if (kind.equals("java") && a.length == 2) {
+                    index.javaTaskNames.add(a[1]);
+                    dlog = null;
+                } else if (kind.equals("dlog") && (a.length == 2 || a.length == 3)) {
+                    dlog = new DlogInfo(a[1], a.length == 3 ? a[2] : null);
+                    index.dlogInfos.add(dlog);
+                } else if (kind.equals("dom") && a.length == 2 && dlog != null) {
+                    dlog.domNames.add(a[1]);
+                } else if ((kind.equals("input") || kind.equals("output")) && a.length == 4 && dlog != null) {
+                    RelSign sign = new RelSign(a[2].split(","), a[3]);
+                    if (kind.equals("input"))
+                        dlog.consumedRels.put(a[1], sign);
+                    else
+                        dlog.producedRels.put(a[1], sign);
+                } else if (line.length() != 0) {
+                    Messages.log(CORRUPT_INDEX, file, "malformed line '" + line + "'");
+                    return null;
+                }
+            } catch (RuntimeException ex) {
+                Messages.log(CORRUPT_INDEX, file, ex.getMessage());
+                return null;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Generates the index of a path element.
+     * <p>
+     * Usage: <tt>chord.project.TaskIndex &lt;path element&gt; [&lt;index file&gt;]</tt>
+     * <p>
+     * The index file defaults to {@link #INDEX_FILE_NAME} at the root of the path element,
+     * which must be specified explicitly if the path element is a jar or zip file.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 && args.length != 2) {
+            System.err.println("Usage: chord.project.TaskIndex <path element> [<index file>]");
+            System.exit(1);
+        }
+        File file = new File(args[0]);
+        File indexFile;
+        if (args.length == 2)
+            indexFile = new File(args[1]);
+        else if (file.isDirectory())
+            indexFile = new File(file, INDEX_FILE_NAME);
+        else {
+            System.err.println("ERROR: TaskIndex: Index file must be specified for '" + file + "'.");
+            System.exit(1);
+            return;
+        }
+        List<String> lines = new ArrayList<String>();
+        lines.add("fingerprint " + getFingerprint(file));
+        AnnotationDB db = new AnnotationDB();
+        db.scanArchives(new URL[] { file.toURI().toURL() });
+        Map<String, Set<String>> annotIndex = db.getAnnotationIndex();
+        Set<String> classNames = (annotIndex == null) ? null : annotIndex.get(Chord.class.getName());
+        if (classNames != null) {
+            for (String className : new TreeSet<String>(classNames))
+                lines.add("java " + className);
+        }
+        boolean hasErrors = false;
+        for (Map.Entry<String, File> e : getDlogFiles(file).entrySet()) {
+            String path = e.getKey();
+            File dlogFile = e.getValue();
+            DlogAnalysis task = new DlogAnalysis();
+            boolean success = task.parse(dlogFile.getPath());
+            if (!file.isDirectory())
+                dlogFile.delete();
+            if (!success) {
+                System.err.println("ERROR: TaskIndex: Errors were found while parsing '" + path + "'.");
+                hasErrors = true;
+                continue;
+            }
+            String name = task.getDlogName();
+            lines.add("dlog " + path + (name == null ? "" : " " + name));
+            for (String domName : new TreeSet<String>(task.getDomNames()))
+                lines.add("dom " + domName);
+            addRelLines("input", task.getConsumedRels(), lines);
+            addRelLines("output", task.getProducedRels(), lines);
+        }
+        if (hasErrors)
+            System.exit(1);
+        PrintWriter out = new PrintWriter(new FileOutputStream(indexFile));
+        for (String line : lines)
+            out.println(line);
+        out.close();
+    }
+
+    private static void addRelLines(String kind, Map<String, RelSign> rels, List<String> lines) {
+        for (Map.Entry<String, RelSign> e : new TreeMap<String, RelSign>(rels).entrySet()) {
+            RelSign sign = e.getValue();
+            StringBuilder domNames = new StringBuilder();
+            for (String domName : sign.getDomNames()) {
+                if (domNames.length() > 0)
+                    domNames.append(',');
+                domNames.append(domName);
+            }
+            lines.add(kind + " " + e.getKey() + " " + domNames + " " + sign.getDomOrder());
+        }
+    }
+
+    // Datalog files in the given path element, keyed by path relative to its root; files in
+    // jar and zip files are extracted to temporary files
+    private static Map<String, File> getDlogFiles(File file) throws IOException {
+        Map<String, File> dlogFiles = new TreeMap<String, File>();
+        if (file.isDirectory()) {
+            addDlogFiles(file, "", dlogFiles);
+            return dlogFiles;
+        }
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            Enumeration<? extends ZipEntry> e = zipFile.entries();
+            while (e.hasMoreElements()) {
+                ZipEntry ze = e.nextElement();
+                String path = ze.getName();
+                if (!isDlogFile(path))
+                    continue;
+                File tmpFile = File.createTempFile("chord", ".dlog");
+                tmpFile.deleteOnExit();
+                InputStream in = zipFile.getInputStream(ze);
+                FileOutputStream out = new FileOutputStream(tmpFile);
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) != -1)
+                    out.write(buf, 0, n);
+                out.close();
+                in.close();
+                dlogFiles.put(path, tmpFile);
+            }
+        } finally {
+            zipFile.close();
+        }
+        return dlogFiles;
+    }
+
+    private static void addDlogFiles(File dir, String prefix, Map<String, File> dlogFiles) {
+        File[] subFiles = dir.listFiles();
+        if (subFiles == null)
+            return;
+        for (File subFile : subFiles) {
+            String path = prefix + subFile.getName();
+            if (subFile.isDirectory())
+                addDlogFiles(subFile, path + "/", dlogFiles);
+            else if (isDlogFile(path))
+                dlogFiles.put(path, subFile);
+        }
+    }
+
+    // fingerprint of the given path element
+    private static String getFingerprint(File file) throws IOException {
+        // sorted so that the fingerprint is independent of the order of entries
+        Map<String, String> entries = new TreeMap<String, String>();
+        if (file.isDirectory())
+            addFingerprintEntries(file, "", entries);
+        else {
+            ZipFile zipFile = new ZipFile(file);
+            try {
+                Enumeration<? extends ZipEntry> e = zipFile.entries();
+                while (e.hasMoreElements()) {
+                    ZipEntry ze = e.nextElement();
+                    String path = ze.getName();
+                    if (isIndexed(path))
+                        entries.put(path, ze.getSize() + " " + ze.getCrc());
+                }
+            } finally {
+                zipFile.close();
+            }
+        }
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            md.update((e.getKey() + " " + e.getValue() + "\n").getBytes("UTF-8"));
+        }
+        byte[] bytes = md.digest();
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static void addFingerprintEntries(File dir, String prefix, Map<String, String> entries) {
+        File[] subFiles = dir.listFiles();
+        if (subFiles == null)
+            return;
+        for (File subFile : subFiles) {
+            String path = prefix + subFile.getName();
+            if (subFile.isDirectory())
+                addFingerprintEntries(subFile, path + "/", entries);
+            else if (isIndexed(path))
+                entries.put(path, subFile.length() + " " + subFile.lastModified());
+        }
+    }
+
+    private static boolean isIndexed(String path) {
+        return path.endsWith(".class") || isDlogFile(path);
+    }
+
+    private static boolean isDlogFile(String path) {
+        return path.endsWith(".dlog") || path.endsWith(".datalog");
+    }
+
+    private static void readLines(InputStream is, List<String> lines) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(is));
+        try {
+            String s;
+            while ((s = in.readLine()) != null)
+                lines.add(s);
+        } finally {
+            in.close();
+        }
+    }
+}
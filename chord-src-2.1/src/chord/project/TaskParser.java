@@ -64,6 +64,8 @@ public class TaskParser {
         new HashMap<String, List<String>>();
     private final Map<String, Set<TrgtInfo>> nameToTrgtInfosMap =
         new HashMap<String, Set<TrgtInfo>>();
+    private final Map<String, TaskIndex> fileToTaskIndexMap =
+        new HashMap<String, TaskIndex>();
     private boolean hasNoErrors = true;
 
     public Map<String, Class<ITask>> getNameToJavaTaskMap() {
@@ -105,6 +107,7 @@ public class TaskParser {
         if (javaAnalysisPathName.equals(""))
             return;
         ArrayList<URL> list = new ArrayList<URL>();
+        Set<String> classNames = new HashSet<String>();
         String[] fileNames = javaAnalysisPathName.split(Utils.PATH_SEPARATOR);
         for (String fileName : fileNames) {
             File file = new File(fileName);
@@ -112,6 +115,11 @@ public class TaskParser {
                 nonexistentPathElem(fileName, "chord.java.analysis.path");
                 continue;
             }
+            TaskIndex taskIndex = getTaskIndex(file);
+            if (taskIndex != null) {
+                classNames.addAll(taskIndex.getJavaTaskNames());
+                continue;
+            }
             try {
                list.add(file.toURL());
             } catch (MalformedURLException ex) {
@@ -119,20 +127,22 @@ public class TaskParser {
                 continue;
            }
         }
-        URL[] urls = new URL[list.size()];
-        list.toArray(urls);
-        AnnotationDB db = new AnnotationDB();
-        try {
-            db.scanArchives(urls);
-        } catch (IOException ex) {
-            Messages.fatal(ex);
+        if (!list.isEmpty()) {
+            URL[] urls = new URL[list.size()];
+            list.toArray(urls);
+            AnnotationDB db = new AnnotationDB();
+            try {
+                db.scanArchives(urls);
+            } catch (IOException ex) {
+                Messages.fatal(ex);
+            }
+            Map<String, Set<String>> index = db.getAnnotationIndex();
+            if (index != null) {
+                Set<String> classNames2 = index.get(Chord.class.getName());
+                if (classNames2 != null)
+                    classNames.addAll(classNames2);
+            }
         }
-        Map<String, Set<String>> index = db.getAnnotationIndex();
-        if (index == null)
-            return;
-        Set<String> classNames = index.get(Chord.class.getName());
-        if (classNames == null)
-            return;
         for (String className : classNames) {
             processJavaAnalysis(className);
         }
@@ -149,7 +159,51 @@ public class TaskParser {
                 nonexistentPathElem(fileName, "chord.dlog.analysis.path");
                 continue;
             }
-            processDlogAnalysis(file);
+            TaskIndex taskIndex = getTaskIndex(file);
+            if (taskIndex != null)
+                processDlogAnalyses(file, taskIndex);
+            else
+                processDlogAnalysis(file);
+        }
+    }
+
+    // index of the given path element, or null if it does not have an up-to-date index
+    private TaskIndex getTaskIndex(File file) {
+        String fileName = file.getAbsolutePath();
+        if (fileToTaskIndexMap.containsKey(fileName))
+            return fileToTaskIndexMap.get(fileName);
+        TaskIndex taskIndex = null;
+        if (file.isDirectory() || fileName.endsWith(".jar") || fileName.endsWith(".zip"))
+            taskIndex = TaskIndex.load(file);
+        fileToTaskIndexMap.put(fileName, taskIndex);
+        return taskIndex;
+    }
+
+    private void processDlogAnalyses(File file, TaskIndex taskIndex) {
+        if (file.isDirectory()) {
+            for (TaskIndex.DlogInfo info : taskIndex.getDlogInfos()) {
+                String fileName2 = new File(file, info.path).getAbsolutePath();
+                processDlogAnalysis(fileName2, info);
+            }
+            return;
+        }
+        String fileName = file.getAbsolutePath();
+        try {
+            ZipFile zipFile = new ZipFile(fileName);
+            try {
+                for (TaskIndex.DlogInfo info : taskIndex.getDlogInfos()) {
+                    ZipEntry ze = zipFile.getEntry(info.path);
+                    if (ze == null)
+                        throw new IOException("Entry '" + info.path + "' listed in index not found");
+                    InputStream is = zipFile.getInputStream(ze);
+                    String fileName2 = OutDirUtils.copyResourceByPath(info.path, is, "dlog");
+                    processDlogAnalysis(fileName2, info);
+                }
+            } finally {
+                zipFile.close();
+            }
+        } catch (IOException ex) {
+            malformedPathElem(fileName, "chord.dlog.analysis.path", ex.getMessage());
         }
     }
 
@@ -268,11 +322,21 @@ public class TaskParser {
     }
 
     private void processDlogAnalysis(String fileName) {
+        processDlogAnalysis(fileName, null);
+    }
+
+    // info is the signature of the Datalog analysis from an index, or null if the file
+    // must be parsed
+    private void processDlogAnalysis(String fileName, TaskIndex.DlogInfo info) {
         DlogAnalysis task = new DlogAnalysis();
-        boolean success = task.parse(fileName);
-        if (!success) {
-            ignoreDlogTask(fileName);
-            return;
+        if (info != null)
+            task.init(fileName, info);
+        else {
+            boolean success = task.parse(fileName);
+            if (!success) {
+                ignoreDlogTask(fileName);
+                return;
+            }
         }
         String name = task.getDlogName();
         if (name == null) {
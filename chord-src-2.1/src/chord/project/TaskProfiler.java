@@ -0,0 +1,359 @@
+package chord.project;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import chord.project.analyses.ProgramDom;
+import chord.project.analyses.ProgramRel;
+import chord.util.ProcessScheduler;
+
+/**
+ * Profiler of the execution of tasks by {@link ClassicProject}.
+ * <p>
+ * For each task executed, it records:
+ * <ul>
+ * <li> the wall-clock time, CPU time, and garbage collection time taken by the task itself,
+ * excluding the time taken to compute the targets it consumes, </li>
+ * <li> the peak heap usage during the task, sampled at its start and end and before each
+ * garbage collection (heap usage between garbage collections does not exceed the usage
+ * before the next one), </li>
+ * <li> the number of bytes of files of consumed targets in <tt>chord.bddbddb.work.dir</tt>
+ * (which the task may read), and the number of bytes of files of produced targets in that
+ * directory written by the task, and </li>
+ * <li> the number of tuples of each relation saved by the task, </li>
+ * <li> statistics reported by the task itself (see {@link #addStat(String, long)}), and </li>
+ * <li> the number of child processes, such as bddbddb solving Datalog analyses, run by the
+ * task, and their total wall-clock time, CPU time, and time spent waiting for admission by
+ * {@link ProcessScheduler}. </li>
+ * </ul>
+ * CPU time of the task is that of this JVM; CPU time of child processes is recorded
+ * separately.  Each child process also appears as an event of its own in the timeline.
+ * <p>
+ * The records are exported as a timeline in Chrome's trace event format to file
+ * <tt>[chord.out.dir]/profile.json</tt>, viewable with <tt>chrome://tracing</tt>, and as a
+ * summary to file <tt>[chord.out.dir]/profile.csv</tt>.  Profiling is enabled by system
+ * property <tt>chord.profile</tt>.
+ */
+public class TaskProfiler {
+    public static class Record {
+        final String name;
+        final String kind;
+        final long startTime;
+        long wallTime;
+        long cpuTime;
+        long gcTime;
+        long peakHeap;
+        long bytesRead;
+        long bytesWritten;
+        String note = "";
+        final Map<String, Integer> relSizes = new HashMap<String, Integer>();
+        final Map<String, Long> stats = new TreeMap<String, Long>();
+        int numProcs;
+        long procWallTime;
+        long procCpuTime;
+        long procWaitTime;
+        private final long startNanos;
+        private final long startCpu;
+        private final long startGc;
+        private final long startMillis;
+        Record(String name, String kind, long startTime) {
+            this.name = name;
+            this.kind = kind;
+            this.startTime = startTime;
+            startMillis = System.currentTimeMillis();
+            startCpu = getCpuTime();
+            startGc = getGcTime();
+            startNanos = System.nanoTime();
+        }
+    }
+
+    private static final List<Record> records = new ArrayList<Record>();
+    // records of tasks being run, innermost last
+    private static final List<Record> activeRecords = new ArrayList<Record>();
+    private static final List<ProcessScheduler.Usage> procUsages =
+        new ArrayList<ProcessScheduler.Usage>();
+    private static final long origin = System.nanoTime();
+    // time since the epoch in milliseconds corresponding to origin
+    private static final long originMillis = System.currentTimeMillis();
+    private static boolean isListening;
+    // names of the memory pools of the heap
+    private static final Set<String> heapPoolNames = new HashSet<String>();
+
+    private TaskProfiler() { }
+
+    /**
+     * Starts profiling the given task.
+     */
+    public static synchronized Record start(ITask task) {
+        String kind;
+        if (task instanceof ProgramDom)
+            kind = "dom";
+        else if (task instanceof ProgramRel)
+            kind = "rel";
+        else if (task instanceof chord.project.analyses.DlogAnalysis)
+            kind = "dlog";
+        else
+            kind = "java";
+        if (!isListening) {
+            ProcessScheduler.g().setListener(new ProcessScheduler.Listener() {
+                public void processDone(ProcessScheduler.Usage usage) {
+                    recordProcess(usage);
+                }
+            });
+            listenToGCs();
+            isListening = true;
+        }
+        Record r = new Record(task.getName(), kind, (System.nanoTime() - origin) / 1000);
+        activeRecords.add(r);
+        recordHeapUsage(getHeapUsage());
+        return r;
+    }
+
+    /**
+     * Finishes profiling a task.
+     *
+     * @param r The record returned by {@link #start(ITask)} for the task.
+     * @param consumedTrgts The targets consumed by the task.
+     * @param producedTrgts The targets produced by the task.
+     * @param note Additional information about the execution, e.g., whether the task was
+     * fused with other tasks or restored from a cache.
+     */
+    public static synchronized void done(Record r, List<Object> consumedTrgts,
+            List<Object> producedTrgts, String note) {
+        r.wallTime = (System.nanoTime() - r.startNanos) / 1000;
+        r.cpuTime = (getCpuTime() - r.startCpu) / 1000;
+        r.gcTime = (getGcTime() - r.startGc) * 1000;
+        recordHeapUsage(getHeapUsage());
+        if (consumedTrgts != null) {
+            for (Object trgt : consumedTrgts) {
+                for (File file : getTrgtFiles(trgt))
+                    r.bytesRead += file.length();
+            }
+        }
+        if (producedTrgts != null) {
+            // file times may have a granularity of a second
+            long since = r.startMillis - r.startMillis % 1000;
+            for (Object trgt : producedTrgts) {
+                for (File file : getTrgtFiles(trgt)) {
+                    if (file.lastModified() >= since)
+                        r.bytesWritten += file.length();
+                }
+            }
+        }
+        if (note != null)
+            r.note = note;
+        activeRecords.remove(r);
+        records.add(r);
+    }
+
+    // files in chord.bddbddb.work.dir holding the given target, if any
+    private static File[] getTrgtFiles(Object trgt) {
+        String dirName = Config.bddbddbWorkDirName;
+        if (trgt instanceof ProgramRel)
+            return new File[] { new File(dirName, ((ProgramRel) trgt).getName() + ".bdd") };
+        if (trgt instanceof ProgramDom) {
+            String name = ((ProgramDom<?>) trgt).getName();
+            return new File[] { new File(dirName, name + ".dom"), new File(dirName, name + ".map") };
+        }
+        return new File[0];
+    }
+
+    // records the given heap usage in the records of all tasks being profiled
+    private static synchronized void recordHeapUsage(long used) {
+        for (Record r : activeRecords) {
+            if (used > r.peakHeap)
+                r.peakHeap = used;
+        }
+    }
+
+    // current heap usage in bytes
+    private static long getHeapUsage() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    // records the heap usage before each garbage collection, when notified of it
+    private static void listenToGCs() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                heapPoolNames.add(pool.getName());
+        }
+        NotificationListener listener = new NotificationListener() {
+            public void handleNotification(Notification n, Object handback) {
+                if (!n.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+                    return;
+                GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+                long used = 0;
+                for (Map.Entry<String, MemoryUsage> e : info.getGcInfo().getMemoryUsageBeforeGc().entrySet()) {
+                    if (heapPoolNames.contains(e.getKey()))
+                        used += e.getValue().getUsed();
+                }
+                recordHeapUsage(used);
+            }
+        };
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter)
+                ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+        }
+    }
+
+    /**
+     * Records the number of tuples of a relation saved by the innermost task being profiled,
+     * if any.
+     */
+    public static synchronized void recordRelSize(String relName, int size) {
+        int n = activeRecords.size();
+        if (n > 0)
+            activeRecords.get(n - 1).relSizes.put(relName, size);
+    }
+
+    /**
+     * Adds the given value to the statistic of the given name of the innermost task being
+     * profiled, if any.  Statistics are exported in column <tt>stats</tt> of file
+     * <tt>profile.csv</tt>, as space-separated pairs <tt>&lt;name&gt;=&lt;value&gt;</tt>.
+     */
+    public static synchronized void addStat(String name, long value) {
+        int n = activeRecords.size();
+        if (n > 0) {
+            Map<String, Long> stats = activeRecords.get(n - 1).stats;
+            Long v = stats.get(name);
+            stats.put(name, (v == null) ? value : v + value);
+        }
+    }
+
+    // records the resource usage of a child process run by the innermost task being profiled
+    private static synchronized void recordProcess(ProcessScheduler.Usage usage) {
+        procUsages.add(usage);
+        int n = activeRecords.size();
+        if (n > 0) {
+            Record r = activeRecords.get(n - 1);
+            r.numProcs++;
+            r.procWallTime += usage.wallTime * 1000;
+            if (usage.cpuTime >= 0)
+                r.procCpuTime += usage.cpuTime * 1000;
+            r.procWaitTime += usage.waitTime * 1000;
+        }
+    }
+
+    /**
+     * Writes the records of all tasks profiled so far to files <tt>profile.json</tt> and
+     * <tt>profile.csv</tt> in directory <tt>chord.out.dir</tt>.
+     */
+    public static synchronized void export() {
+        PrintWriter out = OutDirUtils.newPrintWriter("profile.json");
+        out.println("{\"traceEvents\":[");
+        for (int i = 0; i < records.size(); i++) {
+            Record r = records.get(i);
+            StringBuilder args = new StringBuilder();
+            args.append("\"cpu_ms\":").append(r.cpuTime / 1000);
+            args.append(",\"gc_ms\":").append(r.gcTime / 1000);
+            args.append(",\"peak_heap_mb\":").append(r.peakHeap >> 20);
+            args.append(",\"bytes_read\":").append(r.bytesRead);
+            args.append(",\"bytes_written\":").append(r.bytesWritten);
+            if (r.numProcs > 0) {
+                args.append(",\"procs\":").append(r.numProcs);
+                args.append(",\"proc_wall_ms\":").append(r.procWallTime / 1000);
+                args.append(",\"proc_cpu_ms\":").append(r.procCpuTime / 1000);
+                args.append(",\"proc_wait_ms\":").append(r.procWaitTime / 1000);
+            }
+            for (Map.Entry<String, Integer> e : r.relSizes.entrySet())
+                args.append(",\"tuples_").append(escape(e.getKey())).append("\":").append(e.getValue());
+            for (Map.Entry<String, Long> e : r.stats.entrySet())
+                args.append(",\"").append(escape(e.getKey())).append("\":").append(e.getValue());
+            if (r.note.length() > 0)
+                args.append(",\"note\":\"").append(escape(r.note)).append('"');
+            out.print("{\"name\":\"" + escape(r.name) + "\",\"cat\":\"" + r.kind +
+                "\",\"ph\":\"X\",\"ts\":" + r.startTime + ",\"dur\":" + r.wallTime +
+                ",\"pid\":1,\"tid\":1,\"args\":{" + args + "}}");
+            out.println(i < records.size() - 1 || !procUsages.isEmpty() ? "," : "");
+        }
+        for (int i = 0; i < procUsages.size(); i++) {
+            ProcessScheduler.Usage u = procUsages.get(i);
+            out.print("{\"name\":\"" + escape(u.name) + "\",\"cat\":\"process\",\"ph\":\"X\",\"ts\":" +
+                (u.startTime - originMillis) * 1000 + ",\"dur\":" + u.wallTime * 1000 +
+                ",\"pid\":1,\"tid\":2,\"args\":{\"cpu_ms\":" + u.cpuTime + ",\"wait_ms\":" + u.waitTime +
+                ",\"reserved_mem_mb\":" + (u.reservedMem >> 20) + "}}");
+            out.println(i < procUsages.size() - 1 ? "," : "");
+        }
+        out.println("],\"displayTimeUnit\":\"ms\"}");
+        out.close();
+        out = OutDirUtils.newPrintWriter("profile.csv");
+        out.println("task,kind,start_ms,wall_ms,cpu_ms,gc_ms,peak_heap_mb,bytes_read,bytes_written,rel_tuples," +
+            "procs,proc_wall_ms,proc_cpu_ms,proc_wait_ms,stats,note");
+        for (Record r : records) {
+            StringBuilder sizes = new StringBuilder();
+            for (Map.Entry<String, Integer> e : r.relSizes.entrySet()) {
+                if (sizes.length() > 0)
+                    sizes.append(' ');
+                sizes.append(e.getKey()).append('=').append(e.getValue());
+            }
+            StringBuilder stats = new StringBuilder();
+            for (Map.Entry<String, Long> e : r.stats.entrySet()) {
+                if (stats.length() > 0)
+                    stats.append(' ');
+                stats.append(e.getKey()).append('=').append(e.getValue());
+            }
+            out.println(escapeCSV(r.name) + "," + r.kind + "," + r.startTime / 1000 + "," +
+                r.wallTime / 1000 + "," + r.cpuTime / 1000 + "," + r.gcTime / 1000 + "," +
+                (r.peakHeap >> 20) + "," + r.bytesRead + "," + r.bytesWritten + "," +
+                escapeCSV(sizes.toString()) + "," + r.numProcs + "," + r.procWallTime / 1000 + "," +
+                r.procCpuTime / 1000 + "," + r.procWaitTime / 1000 + "," + escapeCSV(stats.toString()) +
+                "," + escapeCSV(r.note));
+        }
+        out.close();
+    }
+
+    // CPU time in nanoseconds consumed by this JVM, or by the current thread if unavailable
+    private static long getCpuTime() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            long t = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+            if (t >= 0)
+                return t;
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    // total garbage collection time in milliseconds
+    private static long getGcTime() {
+        long t = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            long t2 = gc.getCollectionTime();
+            if (t2 > 0)
+                t += t2;
+        }
+        return t;
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    // quotes a CSV field if it contains a separator, quote, or line break
+    private static String escapeCSV(String s) {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0)
+            return s;
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,318 @@
+package chord.project;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import chord.project.analyses.DlogAnalysis;
+import chord.project.analyses.JavaAnalysis;
+import chord.project.analyses.ProgramDom;
+import chord.project.analyses.ProgramRel;
+import chord.util.Utils;
+
+/**
+ * Content-addressed cache of targets produced by tasks, shared across Chord runs.
+ * <p>
+ * Each cached entry holds the files of all targets produced by a task, and is keyed by a
+ * hash of:
+ * <ul>
+ * <li> the name of the task and the version of its code, namely, the contents of the
+ * Datalog file of a Datalog analysis, or the contents of the jar file or class file
+ * containing the class of a Java task, </li>
+ * <li> the contents of the files of all targets consumed by the task, </li>
+ * <li> the values of all system properties named <tt>chord.*</tt> that may affect the
+ * result of an analysis, i.e., excluding those concerning output, verbosity, resources,
+ * and reuse, and </li>
+ * <li> for Java tasks, which may inspect the program directly, the contents of the
+ * program's class path. </li>
+ * </ul>
+ * Thus, a task is skipped only if it was previously run on the same inputs, and a Datalog
+ * analysis is skipped even if the program changed, as long as the relations it consumes
+ * did not.
+ * <p>
+ * Only tasks that consume and produce program relations and program domains are cached;
+ * moreover, each domain they produce must be loadable (see {@link ProgramDom#isLoadable()}),
+ * and domain maps must be saved (see system property <tt>chord.save.maps</tt>).
+ * <p>
+ * Files of relations are hashed as stored by BDD factories, which may store equal
+ * relations differently under different factory states; this causes cache misses but
+ * never wrong hits.
+ */
+public class TrgtCache {
+    private static final String CORRUPT_ENTRY =
+        "WARN: TrgtCache: Ignoring corrupt entry '%s': %s.";
+    // prefixes of names of system properties that do not affect analysis results
+    private static final String[] IGNORED_PROP_PREFIXES = {
+        "chord.verbose", "chord.out.", "chord.err.", "chord.work.dir", "chord.main.dir",
+        "chord.bddbddb.work.dir", "chord.bddbddb.max.heap", "chord.bddbddb.share.",
+        "chord.bddbddb.tune.", "chord.bddbddb.order.", "chord.max.heap", "chord.max.stack",
+        "chord.jvmargs", "chord.reuse.", "chord.cache.", "chord.print.", "chord.run.analyses",
+        "chord.visit.threads", "chord.fuse.", "chord.save.maps", "chord.classic",
+        "chord.std.java.analysis.path", "chord.ext.java.analysis.path", "chord.java.analysis.path",
+        "chord.std.dlog.analysis.path", "chord.ext.dlog.analysis.path", "chord.dlog.analysis.path"
+    };
+    private final File dir;
+    // memoized hashes of files, keyed by path, length and time of last modification
+    private final Map<String, String> fileToHashMap = new HashMap<String, String>();
+    private String propsHash;
+    private String programHash;
+
+    public TrgtCache(String dirName) {
+        dir = new File(dirName);
+    }
+
+    /**
+     * Provides the key of the given task, if it is cacheable, and null otherwise.
+     *
+     * @param task A task.
+     * @param consumedTrgts The targets consumed by the task; they must be done.
+     * @param producedTrgts The targets produced by the task.
+     */
+    public String getKey(ITask task, List<Object> consumedTrgts, List<Object> producedTrgts) {
+        if (!(task instanceof JavaAnalysis || task instanceof ProgramRel || task instanceof ProgramDom))
+            return null;
+        if (producedTrgts.isEmpty())
+            return null;
+        for (Object trgt : producedTrgts) {
+            if (trgt instanceof ProgramDom) {
+                if (!((ProgramDom<?>) trgt).isLoadable())
+                    return null;
+            } else if (!(trgt instanceof ProgramRel))
+                return null;
+        }
+        MessageDigest md = newDigest();
+        update(md, "task " + task.getName() + " " + task.getClass().getName());
+        if (task instanceof DlogAnalysis) {
+            String fileName = ((DlogAnalysis) task).getFileName();
+            update(md, "dlog " + hashFile(new File(fileName)));
+        } else {
+            String codeHash = getCodeHash(task.getClass());
+            if (codeHash == null)
+                return null;
+            update(md, "code " + codeHash);
+            update(md, "program " + getProgramHash());
+        }
+        for (Object trgt : consumedTrgts) {
+            List<File> files = getFiles(trgt);
+            if (files == null)
+                return null;
+            update(md, "trgt " + trgt.toString());
+            for (File file : files) {
+                if (!file.exists())
+                    return null;
+                update(md, hashFile(file));
+            }
+        }
+        update(md, "props " + getPropsHash());
+        return toHex(md.digest());
+    }
+
+    /**
+     * Copies the files of the given targets from the cache entry with the given key to
+     * directory <tt>chord.bddbddb.work.dir</tt>.
+     *
+     * @return true iff the cache has a complete entry with the given key.
+     */
+    public boolean restore(String key, List<Object> producedTrgts) {
+        File entryDir = new File(dir, key);
+        if (!new File(entryDir, "DONE").exists())
+            return false;
+        for (Object trgt : producedTrgts) {
+            for (File file : getFiles(trgt)) {
+                File cachedFile = new File(entryDir, file.getName());
+                if (!cachedFile.exists()) {
+                    Messages.log(CORRUPT_ENTRY, entryDir, "missing file " + file.getName());
+                    return false;
+                }
+            }
+        }
+        for (Object trgt : producedTrgts) {
+            for (File file : getFiles(trgt))
+                Utils.copy(new File(entryDir, file.getName()).getPath(), file.getPath());
+        }
+        return true;
+    }
+
+    /**
+     * Determines whether the cache has a complete entry with the given key.
+     */
+    public boolean contains(String key) {
+        return new File(new File(dir, key), "DONE").exists();
+    }
+
+    /**
+     * Copies the files of the given targets from directory <tt>chord.bddbddb.work.dir</tt>
+     * to a new cache entry with the given key.
+     */
+    public void store(String key, List<Object> producedTrgts) {
+        File entryDir = new File(dir, key);
+        Utils.mkdirs(entryDir);
+        for (Object trgt : producedTrgts) {
+            for (File file : getFiles(trgt)) {
+                if (!file.exists())
+                    return;
+                Utils.copy(file.getPath(), new File(entryDir, file.getName()).getPath());
+            }
+        }
+        // marks the entry complete; entries without it are ignored
+        Utils.writeListToFile(new ArrayList<String>(), new File(entryDir, "DONE"));
+    }
+
+    // files in chord.bddbddb.work.dir holding the given target, or null if it has no files
+    private static List<File> getFiles(Object trgt) {
+        String dirName = Config.bddbddbWorkDirName;
+        List<File> files = new ArrayList<File>(2);
+        if (trgt instanceof ProgramRel) {
+            files.add(new File(dirName, ((ProgramRel) trgt).getName() + ".bdd"));
+        } else if (trgt instanceof ProgramDom) {
+            if (!Config.saveDomMaps)
+                return null;
+            String name = ((ProgramDom<?>) trgt).getName();
+            files.add(new File(dirName, name + ".dom"));
+            files.add(new File(dirName, name + ".map"));
+        } else
+            return null;
+        return files;
+    }
+
+    // hash of the jar file, or else of the class file, containing the given class
+    private String getCodeHash(Class<?> c) {
+        CodeSource src = c.getProtectionDomain().getCodeSource();
+        if (src != null && src.getLocation() != null) {
+            File file = new File(src.getLocation().getPath());
+            if (file.isFile())
+                return hashFile(file);
+        }
+        URL url = c.getResource("/" + c.getName().replace('.', '/') + ".class");
+        if (url == null)
+            return null;
+        try {
+            InputStream in = url.openStream();
+            try {
+                MessageDigest md = newDigest();
+                update(md, in);
+                return toHex(md.digest());
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    // hash of the main class name and the contents of the entries of the class path
+    private String getProgramHash() {
+        if (programHash == null) {
+            MessageDigest md = newDigest();
+            update(md, "main " + Config.mainClassName);
+            update(md, "java " + System.getProperty("java.version"));
+            String classPath = Config.userClassPathName;
+            if (classPath != null) {
+                for (String fileName : classPath.split(File.pathSeparator)) {
+                    File file = new File(fileName);
+                    if (file.exists())
+                        updateWithTree(md, file);
+                }
+            }
+            programHash = toHex(md.digest());
+        }
+        return programHash;
+    }
+
+    private void updateWithTree(MessageDigest md, File file) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children == null)
+                return;
+            Map<String, File> sorted = new TreeMap<String, File>();
+            for (File child : children)
+                sorted.put(child.getName(), child);
+            for (Map.Entry<String, File> e : sorted.entrySet()) {
+                update(md, e.getKey());
+                updateWithTree(md, e.getValue());
+            }
+        } else
+            update(md, hashFile(file));
+    }
+
+    private String getPropsHash() {
+        if (propsHash == null) {
+            Map<String, String> props = new TreeMap<String, String>();
+            Properties sysProps = System.getProperties();
+            for (String name : sysProps.stringPropertyNames()) {
+                if (name.startsWith("chord.") && !Utils.prefixMatch(name, IGNORED_PROP_PREFIXES))
+                    props.put(name, sysProps.getProperty(name));
+            }
+            MessageDigest md = newDigest();
+            for (Map.Entry<String, String> e : props.entrySet())
+                update(md, e.getKey() + "=" + e.getValue());
+            propsHash = toHex(md.digest());
+        }
+        return propsHash;
+    }
+
+    private String hashFile(File file) {
+        String fileKey = file.getAbsolutePath() + " " + file.length() + " " + file.lastModified();
+        String hash = fileToHashMap.get(fileKey);
+        if (hash == null) {
+            MessageDigest md = newDigest();
+            try {
+                InputStream in = new FileInputStream(file);
+                try {
+                    update(md, in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+            hash = toHex(md.digest());
+            fileToHashMap.put(fileKey, hash);
+        }
+        return hash;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static void update(MessageDigest md, String s) {
+        try {
+            md.update(s.getBytes("UTF-8"));
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        md.update((byte) 0);
+    }
+
+    private static void update(MessageDigest md, InputStream in) throws IOException {
+        byte[] buf = new byte[1 << 16];
+        int n;
+        while ((n = in.read(buf)) != -1)
+            md.update(buf, 0, n);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -2,6 +2,7 @@ package chord.project;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import chord.program.Program;
 import chord.program.visitors.IAcqLockInstVisitor;
@@ -18,7 +19,10 @@ import chord.program.visitors.IRelLockInstVisitor;
 import chord.program.visitors.IReturnInstVisitor;
 import chord.program.visitors.ICastInstVisitor;
 import chord.project.ITask;
+import chord.project.analyses.ProgramRel;
+import chord.bddbddb.Rel;
 import chord.util.IndexSet;
+import chord.util.ParallelRunner;
 
 import joeq.Class.jq_Reference;
 import joeq.Class.jq_Array;
@@ -49,10 +53,24 @@ import joeq.Compiler.Quad.Operator.Monitor.MONITOREXIT;
 /**
  * Utility for registering and executing a set of tasks
  * as visitors over program representation.
+ * <p>
+ * If system property <tt>chord.visit.threads</tt> is greater than 1,
+ * the program is visited concurrently by that many threads.  The classes
+ * of the program are partitioned into chunks, and each thread visits the
+ * chunks it claims with its own split of each registered relation that
+ * can be split (see {@link ProgramRel#isSplittable()}).  Every other task,
+ * e.g. a domain, visits the whole program on a single thread, in the same
+ * order as in a serial visit, whence values are added to each domain in
+ * the same order and are assigned the same indices as in a serial visit.
+ * Tuples added to relations and their splits are buffered during the
+ * concurrent visit and are added to the relations' BDDs once all threads
+ * have finished.
  *
  * @author Mayur Naik (mayur.naik@intel.com)
  */
 public class VisitorHandler {
+    // number of chunks of classes per thread in a concurrent visit, for load balancing
+    private static final int CHUNKS_PER_THREAD = 4;
     private final Collection<ITask> tasks;
     private Collection<IClassVisitor> cvs;
     private Collection<IFieldVisitor> fvs;
@@ -90,15 +108,14 @@ public class VisitorHandler {
                 jq_Method m = (jq_Method) o;
                 if (!reachableMethods.contains(m))
                     continue;
-                for (IMethodVisitor mv : mvs) {
+                for (IMethodVisitor mv : mvs)
                     mv.visit(m);
-                    if (!doCFGs)
-                        continue;
-                    if (m.isAbstract())
-                        continue;
-                    ControlFlowGraph cfg = m.getCFG();
-                    visitInsts(cfg);
-                }
+                if (!doCFGs)
+                    continue;
+                if (m.isAbstract())
+                    continue;
+                ControlFlowGraph cfg = m.getCFG();
+                visitInsts(cfg);
             }
         }
     }
@@ -163,7 +180,109 @@ public class VisitorHandler {
     }
     private IndexSet<jq_Method> reachableMethods;
 
+    /**
+     * Provides all methods visited by a visit of the program, in the order
+     * in which they are visited.
+     */
+    public static List<jq_Method> getVisitedMethods() {
+        Program program = Program.g();
+        IndexSet<jq_Method> methods = program.getMethods();
+        List<jq_Method> visitedMethods = new ArrayList<jq_Method>(methods.size());
+        for (jq_Reference r : program.getClasses()) {
+            if (r instanceof jq_Array)
+                continue;
+            for (Object o : ((jq_Class) r).getSortedMembers()) {
+                if (o instanceof jq_Method && methods.contains(o))
+                    visitedMethods.add((jq_Method) o);
+            }
+        }
+        return visitedMethods;
+    }
+
     public void visitProgram() {
+        if (Config.numVisitThreads > 1)
+            visitProgramConcurrently(Config.numVisitThreads);
+        else
+            visitProgramSerially();
+    }
+
+    /**
+     * Builds the CFGs of the given methods that are not abstract.  Must be called
+     * before visiting the methods concurrently, as joeq builds CFGs lazily and not
+     * thread-safely.
+     */
+    public static void buildCFGs(Iterable<jq_Method> methods) {
+        for (jq_Method m : methods) {
+            if (!m.isAbstract())
+                m.getCFG();
+        }
+    }
+
+    private void visitProgramConcurrently(final int numThreads) {
+        buildCFGs(Program.g().getMethods());
+        // relations that can be split visit each chunk of classes by a split per
+        // thread; every other task visits the whole program on a single thread
+        final List<ITask> wholeTasks = new ArrayList<ITask>();
+        List<ProgramRel> splitRels = new ArrayList<ProgramRel>();
+        for (ITask task : tasks) {
+            if (task instanceof ProgramRel && ((ProgramRel) task).isOpen() &&
+                    ((ProgramRel) task).isSplittable())
+                splitRels.add((ProgramRel) task);
+            else
+                wholeTasks.add(task);
+            if (task instanceof Rel && ((Rel) task).isOpen())
+                ((Rel) task).startBuffering();
+        }
+        final List<jq_Class> classes = new ArrayList<jq_Class>();
+        for (jq_Reference r : Program.g().getClasses()) {
+            if (!(r instanceof jq_Array))
+                classes.add((jq_Class) r);
+        }
+        final int numChunks = splitRels.isEmpty() ? 0 :
+            Math.min(classes.size(), numThreads * CHUNKS_PER_THREAD);
+        final List<List<ProgramRel>> splitsOf = new ArrayList<List<ProgramRel>>(numThreads);
+        final VisitorHandler[] vhs = new VisitorHandler[numThreads];
+        for (int j = 0; j < numThreads && numChunks > 0; j++) {
+            List<ProgramRel> splits = new ArrayList<ProgramRel>(splitRels.size());
+            for (ProgramRel rel : splitRels)
+                splits.add(rel.newSplit());
+            splitsOf.add(splits);
+            vhs[j] = new VisitorHandler(new ArrayList<ITask>(splits));
+            vhs[j].register();
+        }
+        try {
+            ParallelRunner.run("VisitorHandler", numThreads, wholeTasks.size() + numChunks,
+                    new ParallelRunner.Task<RuntimeException>() {
+                public void run(int worker, int item) {
+                    if (item < wholeTasks.size()) {
+                        new VisitorHandler(wholeTasks.get(item)).visitProgramSerially();
+                        return;
+                    }
+                    int chunk = item - wholeTasks.size();
+                    int n = classes.size();
+                    vhs[worker].visitClasses(classes.subList(chunk * n / numChunks, (chunk + 1) * n / numChunks));
+                }
+            });
+            for (List<ProgramRel> splits : splitsOf) {
+                for (int i = 0; i < splits.size(); i++)
+                    splitRels.get(i).addSplit(splits.get(i));
+            }
+        } finally {
+            for (ITask task : tasks) {
+                if (task instanceof Rel && ((Rel) task).isBuffering())
+                    ((Rel) task).stopBuffering();
+            }
+        }
+    }
+
+    private void visitProgramSerially() {
+        register();
+        if (cvs != null)
+            visitClasses(Program.g().getClasses());
+    }
+
+    // registers the tasks with the visitor kinds they implement
+    private void register() {
         for (ITask task : tasks) {
             if (task instanceof IClassVisitor) {
                 if (cvs == null)
@@ -231,26 +350,24 @@ public class VisitorHandler {
                 relivs.add((IRelLockInstVisitor) task);
             }
         }
-        Program program = Program.g();
-        reachableMethods = program.getMethods();
+        reachableMethods = Program.g().getMethods();
         doCFGs = (ivs != null) || (hivs != null) ||
             (iivs != null) || (nivs != null) || (mivs != null) ||
             (civs != null) || (pivs != null) || (rivs != null) ||
             (acqivs != null) || (relivs != null);
-        if (cvs != null) {
-            IndexSet<jq_Reference> classes = program.getClasses();
-            for (jq_Reference r : classes) {
-                if (r instanceof jq_Array)
-                    continue;
-                jq_Class c = (jq_Class) r;
-                for (IClassVisitor cv : cvs)
-                    cv.visit(c);
-                if (fvs != null)
-                    visitFields(c);
-                if (mvs != null)
-                    visitMethods(c);
-            }
+    }
+
+    private void visitClasses(Iterable<? extends jq_Reference> classes) {
+        for (jq_Reference r : classes) {
+            if (r instanceof jq_Array)
+                continue;
+            jq_Class c = (jq_Class) r;
+            for (IClassVisitor cv : cvs)
+                cv.visit(c);
+            if (fvs != null)
+                visitFields(c);
+            if (mvs != null)
+                visitMethods(c);
         }
-        
     }
 }
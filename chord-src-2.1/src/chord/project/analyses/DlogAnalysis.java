@@ -24,6 +24,7 @@ import chord.project.ICtrlCollection;
 import chord.project.IDataCollection;
 import chord.project.IStepCollection;
 import chord.project.ModernProject;
+import chord.project.TaskIndex;
 import chord.util.Utils;
 
 import gnu.trove.list.array.TIntArrayList;
@@ -247,6 +248,21 @@ public class DlogAnalysis extends JavaAnalysis {
         }
         return hasNoErrors;
     }
+    /**
+     * Initializes this Datalog analysis from its signature in a task index instead of
+     * parsing the specified file.
+     * 
+     * @param    fileName A file containing a Datalog analysis.
+     * @param    info The signature of the Datalog analysis in the file.
+     */
+    public void init(String fileName, TaskIndex.DlogInfo info) {
+        assert (this.fileName == null);
+        this.fileName = fileName;
+        dlogName = info.name;
+        majorDomNames = new HashSet<String>(info.domNames);
+        consumedRels = new HashMap<String, RelSign>(info.consumedRels);
+        producedRels = new HashMap<String, RelSign>(info.producedRels);
+    }
     private String getSubOrder(List<String> relMinorDomNames) {
         int orderLen = order.length();
         String subOrder = null;
@@ -281,7 +297,8 @@ public class DlogAnalysis extends JavaAnalysis {
     }
     public void run(Object ctrl, IStepCollection sc) {
         ModernProject p = ModernProject.g();
-        Object[] consumes = p.runPrologue(ctrl, sc);
+        // the solver runs in a separate JVM
+        Object[] consumes = p.runPrologue(ctrl, sc, true);
         List<ProgramDom> allDoms = new ArrayList<ProgramDom>();
         for (Object o : consumes) {
             if (o instanceof ProgramDom)
@@ -37,10 +37,26 @@ public class JavaAnalysis implements ITask {
     public void run() {
         Messages.fatal(UNDEFINED_RUN, name);
     }
+    /**
+     * Determines whether this analysis, run as a step of a modern project,
+     * may run concurrently with other steps, without holding the JVM lock
+     * (see {@link ModernProject#runPrologue(Object, IStepCollection, boolean)}).
+     * This holds if it keeps no static state, accesses relations and
+     * domains only through the data it consumes and produces, and reads
+     * the program only after it is built (see
+     * {@link ModernProject#buildProgram()}), which is done before it runs.
+     * 
+     * @return    true iff this analysis is stateless.  It is false by
+     *             default.
+     */
+    public boolean isStateless() {
+        return false;
+    }
     @Override
     public void run(Object ctrl, IStepCollection sc) {
         ModernProject p = ModernProject.g();
-        consumes = p.runPrologue(ctrl, sc);
+        consumes = p.runPrologue(ctrl, sc, isStateless());
+        p.buildProgram();
         run();
         p.runEpilogue(ctrl, sc, produces, controls);
     }
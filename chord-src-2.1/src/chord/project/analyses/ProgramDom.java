@@ -4,10 +4,13 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.List;
 
 import CnCHJ.api.ItemCollection;
 
+import joeq.Class.jq_Method;
+
 import chord.project.ClassicProject;
 import chord.bddbddb.Dom;
 import chord.program.visitors.IClassVisitor;
@@ -19,6 +22,7 @@ import chord.project.VisitorHandler;
 import chord.project.analyses.ProgramDom;
 import chord.project.ITask;
 import chord.project.ModernProject;
+import chord.util.ParallelRunner;
 
 /**
  * Generic implementation of a program domain (a specialized kind
@@ -46,8 +50,13 @@ public class ProgramDom<T> extends Dom<T> implements ITask {
     @Override
     public void run(Object ctrl, IStepCollection sc) {
         ModernProject p = ModernProject.g();
-        consumes = p.runPrologue(ctrl, sc);
-        run();
+        consumes = p.runPrologue(ctrl, sc, true);
+        p.buildProgram();
+        // restore the domain saved by a previous run on the same inputs, if asked to reuse it
+        if (!p.isReusable(this, consumes) || !load()) {
+            run();
+            p.setReusable(this, consumes);
+        }
         p.runEpilogue(ctrl, sc, new Object[] { this }, null);
     }
     public void init() { }
@@ -62,8 +71,36 @@ public class ProgramDom<T> extends Dom<T> implements ITask {
         if (Config.classic)
             ClassicProject.g().setTrgtDone(this);
     }
+    /**
+     * Restores this domain from disk, as reflected by a previous run of
+     * this domain, without running {@link #fill()}.
+     * <p>
+     * {@link #init()} is called before restoring the domain.  Values of
+     * the restored domain are materialized lazily, upon the first access
+     * to them.  The restoration is done only if this domain
+     * is loadable (see {@link #isLoadable()}) and its map file was saved
+     * (see system property <tt>chord.save.maps</tt>).
+     * 
+     * @return    true iff this domain was restored from disk.
+     */
+    public boolean load() {
+        if (!Config.saveDomMaps || !isLoadable())
+            return false;
+        init();
+        boolean loaded;
+        try {
+            loaded = super.load(Config.bddbddbWorkDirName);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        if (loaded && Config.verbose >= 1)
+            System.out.println("LOADED dom " + name + " size: " + size());
+        return loaded;
+    }
     public void fill() {
-        if (this instanceof IClassVisitor) {
+        if (isParallelFillable() && Config.numVisitThreads > 1) {
+            fill(VisitorHandler.getVisitedMethods());
+        } else if (this instanceof IClassVisitor) {
             VisitorHandler vh = new VisitorHandler(this);
             vh.visitProgram();
         } else {
@@ -71,6 +108,98 @@ public class ProgramDom<T> extends Dom<T> implements ITask {
                 "' must override method fill().");
         }
     }
+    /**
+     * Determines whether this domain, which must be a program visitor,
+     * can be filled by collecting the values contributed by each method
+     * of the program concurrently instead of by visiting the program.
+     * <p>
+     * Domains returning true must override methods
+     * {@link #collect(jq_Method, List)} and, if necessary,
+     * {@link #add(jq_Method, Object)} such that filling the domain by
+     * {@link #fill(List)} on all methods visited by a visit of the program
+     * (see {@link VisitorHandler#getVisitedMethods()}) yields the same
+     * values, in the same order, as visiting the program.  Such domains
+     * are filled that way when system property <tt>chord.visit.threads</tt>
+     * is greater than 1.
+     * 
+     * @return    true iff this domain can be filled concurrently.
+     *             It is false by default.
+     */
+    public boolean isParallelFillable() {
+        return false;
+    }
+    /**
+     * Adds to the given list the values of this domain contributed by the
+     * given method, in the order in which they must be added to this
+     * domain.
+     * <p>
+     * This method may be called concurrently for different methods, and
+     * hence must not modify any state shared across methods; the values
+     * are added to this domain afterwards, by {@link #add(jq_Method, Object)}.
+     * 
+     * @param    m    A method.
+     * @param    vals    The list to which the values must be added.
+     * 
+     * @see    #fill(List)
+     */
+    protected void collect(jq_Method m, List<T> vals) {
+        throw new RuntimeException("Domain '" + getName() +
+            "' must override method collect(jq_Method, List).");
+    }
+    /**
+     * Adds the given value, contributed by the given method, to this
+     * domain.  Subclasses may override this method to also record any
+     * information about the value that is shared across methods.
+     * 
+     * @param    m    A method.
+     * @param    val    A value contributed by the method.
+     * 
+     * @see    #fill(List)
+     */
+    protected void add(jq_Method m, T val) {
+        add(val);
+    }
+    /**
+     * Adds to this domain the values contributed by each of the given
+     * methods, in the order of the methods.
+     * <p>
+     * The values of each method are collected by
+     * {@link #collect(jq_Method, List)}, concurrently by as many threads
+     * as specified by system property <tt>chord.visit.threads</tt>, and
+     * are then added to this domain by {@link #add(jq_Method, Object)}
+     * in the order of the methods.  Hence, the values are assigned the
+     * same indices regardless of the number of threads.
+     * 
+     * @param    methods    A list of methods.
+     */
+    protected void fill(final List<jq_Method> methods) {
+        final int numMethods = methods.size();
+        final List<List<T>> vals = new ArrayList<List<T>>(numMethods);
+        for (int i = 0; i < numMethods; i++)
+            vals.add(null);
+        if (Config.numVisitThreads > 1) {
+            VisitorHandler.buildCFGs(methods);
+            ParallelRunner.run(getName(), Config.numVisitThreads, numMethods,
+                    new ParallelRunner.Task<RuntimeException>() {
+                public void run(int worker, int i) {
+                    List<T> l = new ArrayList<T>();
+                    collect(methods.get(i), l);
+                    vals.set(i, l);
+                }
+            });
+        }
+        for (int i = 0; i < numMethods; i++) {
+            jq_Method m = methods.get(i);
+            List<T> l = vals.get(i);
+            if (l == null) {
+                l = new ArrayList<T>();
+                collect(m, l);
+            }
+            for (T val : l)
+                add(m, val);
+            vals.set(i, null);
+        }
+    }
     /**
      * Provides the XML attributes string of the specified value.
      * Subclasses may override this method if necessary.
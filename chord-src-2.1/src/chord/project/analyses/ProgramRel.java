@@ -1,17 +1,23 @@
 package chord.project.analyses;
 
 import java.util.List;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
 
 import chord.project.ClassicProject;
 import chord.bddbddb.Rel;
 import chord.bddbddb.RelSign;
+import chord.bddbddb.VarOrderTuner;
 import chord.program.visitors.IClassVisitor;
 import chord.project.Config;
 import chord.project.ICtrlCollection;
 import chord.project.IDataCollection;
 import chord.project.IStepCollection;
 import chord.project.ModernProject;
+import chord.project.TaskProfiler;
 import chord.project.VisitorHandler;
 import chord.util.Utils;
 import chord.project.Messages;
@@ -30,6 +36,9 @@ public class ProgramRel extends Rel implements ITask {
     private static final String SKIP_TUPLE =
         "WARN: Skipping a tuple from relation '%s' as element '%s' was not found in domain '%s'.";
     protected Object[] consumes;
+    // the relation in the format of its file on disk, if a step of a modern project kept it
+    // in memory instead of saving it to disk (see save()); null otherwise
+    private String image;
     @Override
     public void run() {
         zero();
@@ -40,7 +49,7 @@ public class ProgramRel extends Rel implements ITask {
     @Override
     public void run(Object ctrl, IStepCollection sc) {
         ModernProject p = ModernProject.g();
-        Object[] allConsumes = p.runPrologue(ctrl, sc);
+        Object[] allConsumes = p.runPrologue(ctrl, sc, true);
         RelSign sign = p.getSign(name);
         assert (sign != null);
         int numUniqDoms = sign.getDomKinds().length;
@@ -68,19 +77,38 @@ public class ProgramRel extends Rel implements ITask {
         }
         setSign(sign);
         setDoms(doms);
-        run();
+        // reuse the relation saved by a previous run on the same inputs, if asked to
+        if (!p.isReusable(this, allConsumes)) {
+            p.buildProgram();
+            run();
+            p.setReusable(this, allConsumes);
+        }
         p.runEpilogue(ctrl, sc, new Object[] { this }, null);
     }
     public void init() { }
     public void save() {
         if (Config.verbose >= 1)
             System.out.println("SAVING rel " + name + " size: " + size());
-        super.save(Config.bddbddbWorkDirName);
+        if (Config.profileTasks)
+            TaskProfiler.recordRelSize(name, size());
+        if (Config.tuneBddOrder)
+            VarOrderTuner.tune(this);
+        if (!Config.classic && !ModernProject.g().isSavedToDisk(name)) {
+            StringWriter out = new StringWriter();
+            super.save(new BufferedWriter(out));
+            image = out.toString();
+        } else
+            super.save(Config.bddbddbWorkDirName);
         if (Config.classic)
             ClassicProject.g().setTrgtDone(this);
     }
     public void load() {
-        super.load(Config.bddbddbWorkDirName);
+        if (image != null)
+            super.load(new BufferedReader(new StringReader(image)));
+        else
+            super.load(Config.bddbddbWorkDirName);
+        if (Config.tuneBddOrder)
+            VarOrderTuner.tune(this);
     }
     public void fill() {
         if (this instanceof IClassVisitor) {
@@ -91,6 +119,61 @@ public class ProgramRel extends Rel implements ITask {
                 "' must override method fill().");
         }
     }
+    /**
+     * Determines whether this relation, which must be a program visitor,
+     * can be filled by visiting disjoint sets of classes of the program
+     * concurrently, each by a separate split of this relation (see
+     * {@link #newSplit()}).  This holds if the tuples added while visiting
+     * a class depend only on that class, i.e., if this visitor keeps no
+     * state across classes.  Such relations are filled that way when
+     * system property <tt>chord.visit.threads</tt> is greater than 1.
+     * 
+     * @return    true iff this relation can be filled by splits.
+     *             It is true by default.
+     */
+    public boolean isSplittable() {
+        return true;
+    }
+    /**
+     * Creates a split of this relation (see {@link Rel#initSplit(Rel)}),
+     * namely, a new instance of the class of this relation, initialized by
+     * {@link #init()}, that buffers the tuples added to it until they are
+     * added to this relation by {@link Rel#addSplit(Rel)}.
+     * 
+     * @return    A new split of this relation.
+     */
+    public ProgramRel newSplit() {
+        ProgramRel split;
+        try {
+            split = getClass().getDeclaredConstructor().newInstance();
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+        split.initSplit(this);
+        split.consumes = consumes;
+        split.init();
+        return split;
+    }
+    /**
+     * Creates a relation with the name, signature, and domains of this relation, which must
+     * have been saved, and whose tuples are loaded from the same place as those of this
+     * relation: memory, if a step of a modern project kept this relation in memory, or disk
+     * otherwise.
+     * <p>
+     * Steps of a modern project consuming a relation are given such copies of it (see
+     * {@link ModernProject#runPrologue(Object, IStepCollection, boolean)}), so that they can
+     * bring it into memory concurrently, each in the BDD factory of its own thread.
+     * 
+     * @return    A new copy of this relation.
+     */
+    public ProgramRel copy() {
+        ProgramRel rel = new ProgramRel();
+        rel.setName(name);
+        rel.setSign(sign);
+        rel.setDoms(doms);
+        rel.image = image;
+        return rel;
+    }
     public void print() {
         super.print(Config.outDirName);
     }
@@ -0,0 +1,315 @@
+package chord.project.analyses.rhs;
+
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Compact table of path (or summary) edges, each associated with a key such as the
+ * instruction into which it is (or the method of which it is).
+ * <p>
+ * Each edge added to the table is given a dense int id, in the order in which edges are
+ * added, and the ids of the edges of each key are kept in a primitive int list.  If the
+ * edges of the table are not merged, they are moreover hash-consed: an edge equal to one
+ * already added with the same key can be looked up in constant time.  If they may be
+ * merged in place, they are hashed by their merge hash code if they provide one (see
+ * {@link IMergeHashedEdge}), so that the edges with the same key that may merge with a
+ * given edge, or be equal to it, can be looked up in constant time too; otherwise, they
+ * must be searched linearly, like sets of such edges.
+ * <p>
+ * Keys are compared by identity and edges by {@link Object#equals(Object)}.
+ *
+ * @param <K> The type of keys.
+ * @param <E> The type of edges.
+ */
+public class EdgeTable<K, E extends IEdge> {
+    private static final int INITIAL_CAPACITY = 16;
+    private final boolean isMerged;
+    // whether edges are hashed, by their hash code if they are not merged and by their
+    // merge hash code otherwise; decided when the first edge is added if they are merged
+    private boolean isHashed;
+    // edge and key of each id
+    private Object[] edges;
+    private Object[] keys;
+    // hash of (key, edge) of each id; null if not hashed
+    private int[] hashes;
+    // open-addressed hash table of ids plus one, 0 denoting an empty slot; null if not hashed
+    private int[] slots;
+    private int size;
+    private final Map<K, TIntArrayList> keyToIds = new HashMap<K, TIntArrayList>();
+
+    /**
+     * @param isMerged Whether edges may be merged in place once added.
+     */
+    public EdgeTable(boolean isMerged) {
+        this.isMerged = isMerged;
+        init();
+    }
+
+    private void init() {
+        edges = new Object[INITIAL_CAPACITY];
+        keys = new Object[INITIAL_CAPACITY];
+        isHashed = !isMerged;
+        hashes = null;
+        slots = null;
+        if (isHashed)
+            initHashes();
+        size = 0;
+    }
+
+    private void initHashes() {
+        hashes = new int[edges.length];
+        slots = new int[edges.length * 2];
+    }
+
+    public boolean isHashed() {
+        return isHashed;
+    }
+
+    /**
+     * Provides the id of the edge equal to the given one with the given key, if any, and -1
+     * otherwise.  Edges must not be merged.
+     */
+    public int indexOf(K key, E e) {
+        assert (!isMerged);
+        return find(key, e, hash(key, e));
+    }
+
+    // id of the edge equal to e with the given key and hash, if any, and -1 otherwise
+    private int find(Object key, Object e, int h) {
+        int mask = slots.length - 1;
+        for (int s = h & mask; ; s = (s + 1) & mask) {
+            int id = slots[s] - 1;
+            if (id < 0)
+                return -1;
+            if (hashes[id] == h && keys[id] == key && e.equals(edges[id]))
+                return id;
+        }
+    }
+
+    /**
+     * Provides the ids of the edges with the given key that may merge with the given edge,
+     * in the order in which they were added, or null if there is none: if edges are hashed
+     * by their merge hash code, those with the same one, and otherwise all the edges with
+     * the given key.  Edges must be merged.  The list must not be modified.
+     */
+    public TIntArrayList getMergeCandidates(K key, E e) {
+        assert (isMerged);
+        if (!isHashed)
+            return keyToIds.get(key);
+        int h = mergeHash(key, (IMergeHashedEdge) e);
+        TIntArrayList ids = null;
+        int mask = slots.length - 1;
+        for (int s = h & mask; ; s = (s + 1) & mask) {
+            int id = slots[s] - 1;
+            if (id < 0)
+                break;
+            if (hashes[id] == h && keys[id] == key) {
+                if (ids == null)
+                    ids = new TIntArrayList(2);
+                ids.add(id);
+            }
+        }
+        if (ids != null && ids.size() > 1)
+            ids.sort();
+        return ids;
+    }
+
+    /**
+     * Adds the given edge with the given key, which must not already be in the table if it
+     * is hashed.
+     *
+     * @return The id of the added edge.
+     */
+    public int add(K key, E e) {
+        int id = size;
+        if (id == 0 && isMerged && e instanceof IMergeHashedEdge) {
+            isHashed = true;
+            initHashes();
+        }
+        if (id == edges.length)
+            grow();
+        edges[id] = e;
+        keys[id] = key;
+        size++;
+        if (isHashed) {
+            int h = isMerged ? mergeHash(key, (IMergeHashedEdge) e) : hash(key, e);
+            hashes[id] = h;
+            insert(id, h);
+        }
+        TIntArrayList ids = keyToIds.get(key);
+        if (ids == null) {
+            ids = new TIntArrayList(4);
+            keyToIds.put(key, ids);
+        }
+        ids.add(id);
+        return id;
+    }
+
+    /**
+     * Adds the given edge with the given key, superseding any equal edge with the same
+     * key in lookups; the superseded edge keeps its id.  Edges must not be merged.
+     *
+     * @return The id of the added edge.
+     */
+    public int put(K key, E e) {
+        assert (!isMerged);
+        int oldId = indexOf(key, e);
+        if (oldId < 0)
+            return add(key, e);
+        int id = size;
+        if (id == edges.length)
+            grow();
+        edges[id] = e;
+        keys[id] = key;
+        hashes[id] = hashes[oldId];
+        size++;
+        int mask = slots.length - 1;
+        int s = hashes[id] & mask;
+        while (slots[s] != oldId + 1)
+            s = (s + 1) & mask;
+        slots[s] = id + 1;
+        keyToIds.get(key).add(id);
+        return id;
+    }
+
+    private void insert(int id, int h) {
+        int mask = slots.length - 1;
+        int s = h & mask;
+        while (slots[s] != 0)
+            s = (s + 1) & mask;
+        slots[s] = id + 1;
+    }
+
+    private void grow() {
+        int n = edges.length * 2;
+        Object[] newEdges = new Object[n];
+        System.arraycopy(edges, 0, newEdges, 0, size);
+        edges = newEdges;
+        Object[] newKeys = new Object[n];
+        System.arraycopy(keys, 0, newKeys, 0, size);
+        keys = newKeys;
+        if (isHashed) {
+            int[] newHashes = new int[n];
+            System.arraycopy(hashes, 0, newHashes, 0, size);
+            hashes = newHashes;
+            int[] oldSlots = slots;
+            slots = new int[n * 2];
+            for (int slot : oldSlots) {
+                if (slot != 0)
+                    insert(slot - 1, hashes[slot - 1]);
+            }
+        }
+    }
+
+    private static int hash(Object key, Object e) {
+        return spread(System.identityHashCode(key) * 31 + e.hashCode());
+    }
+
+    private static int mergeHash(Object key, IMergeHashedEdge e) {
+        return spread(System.identityHashCode(key) * 31 + e.mergeHashCode());
+    }
+
+    // spread the bits as slots are indexed by the low ones
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    // whether e is an edge with the given key
+    private boolean contains(Object key, Object e) {
+        if (isHashed) {
+            if (!isMerged)
+                return find(key, e, hash(key, e)) >= 0;
+            if (!(e instanceof IMergeHashedEdge))
+                return false;
+            int h = mergeHash(key, (IMergeHashedEdge) e);
+            int mask = slots.length - 1;
+            for (int s = h & mask; ; s = (s + 1) & mask) {
+                int id = slots[s] - 1;
+                if (id < 0)
+                    return false;
+                if (hashes[id] == h && keys[id] == key && e.equals(edges[id]))
+                    return true;
+            }
+        }
+        TIntArrayList ids = keyToIds.get(key);
+        for (int j = 0; j < ids.size(); j++) {
+            if (e.equals(edges[ids.get(j)]))
+                return true;
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(int id) {
+        assert (id >= 0 && id < size);
+        return (E) edges[id];
+    }
+
+    @SuppressWarnings("unchecked")
+    public K getKey(int id) {
+        assert (id >= 0 && id < size);
+        return (K) keys[id];
+    }
+
+    /**
+     * Provides the ids of the edges with the given key, including superseded ones, in the
+     * order in which they were added, or null if there is none.  The list must not be modified.
+     */
+    public TIntArrayList getIds(K key) {
+        return keyToIds.get(key);
+    }
+
+    /**
+     * Provides a read-only view of the edges with the given key, or null if there is none.
+     * Its contains method takes constant time if edges are hashed.
+     */
+    public Set<E> getEdges(final K key) {
+        final TIntArrayList ids = keyToIds.get(key);
+        if (ids == null)
+            return null;
+        return new AbstractSet<E>() {
+            public int size() {
+                return ids.size();
+            }
+            @Override
+            public boolean contains(Object o) {
+                return o != null && EdgeTable.this.contains(key, o);
+            }
+            public Iterator<E> iterator() {
+                return new Iterator<E>() {
+                    private int j = 0;
+                    public boolean hasNext() {
+                        return j < ids.size();
+                    }
+                    public E next() {
+                        if (j >= ids.size())
+                            throw new NoSuchElementException();
+                        return get(ids.get(j++));
+                    }
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    public Set<K> getKeys() {
+        return keyToIds.keySet();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        keyToIds.clear();
+        init();
+    }
+}
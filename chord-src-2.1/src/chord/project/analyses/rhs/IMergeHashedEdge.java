@@ -0,0 +1,14 @@
+package chord.project.analyses.rhs;
+
+/**
+ * Specification of a path edge or a summary edge that can be hashed even if it may be
+ * merged in place (see {@link EdgeTable}).
+ */
+public interface IMergeHashedEdge extends IEdge {
+    /**
+     * Provides a hash code of the part of this edge that must be the same in edges that
+     * can merge, whether merging is lossy or not; it must not change when this edge is
+     * merged with another one, and equal edges must have the same merge hash code.
+     */
+    public int mergeHashCode();
+}
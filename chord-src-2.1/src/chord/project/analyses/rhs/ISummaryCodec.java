@@ -0,0 +1,27 @@
+package chord.project.analyses.rhs;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import joeq.Class.jq_Method;
+
+/**
+ * Encoding of the summary edges of an RHS analysis persisted across runs (see
+ * {@link RHSAnalysis#getSummaryCodec()} and {@link SummaryStore}).
+ */
+public interface ISummaryCodec<SE extends IEdge> {
+    /**
+     * Writes the given summary edge.
+     */
+    public void write(SE se, DataOutput out) throws IOException;
+
+    /**
+     * Reads a summary edge of the given method written by {@link #write(IEdge, DataOutput)},
+     * in a possibly different program.
+     *
+     * @return The summary edge, or null if it cannot be resolved in the current program,
+     * in which case it is ignored.
+     */
+    public SE read(jq_Method m, DataInput in) throws IOException;
+}
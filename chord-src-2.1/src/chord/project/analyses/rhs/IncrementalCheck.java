@@ -0,0 +1,202 @@
+package chord.project.analyses.rhs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import joeq.Class.jq_Method;
+import joeq.Compiler.Quad.BasicBlock;
+import joeq.Compiler.Quad.Inst;
+import joeq.Compiler.Quad.Operand;
+import joeq.Compiler.Quad.Operand.AConstOperand;
+import joeq.Compiler.Quad.Operand.RegisterOperand;
+import joeq.Compiler.Quad.Operator.Move;
+import joeq.Compiler.Quad.Quad;
+
+import chord.analyses.method.DomM;
+import chord.project.Chord;
+import chord.project.ClassicProject;
+import chord.project.ITask;
+import chord.project.Messages;
+import chord.project.analyses.JavaAnalysis;
+
+/**
+ * Harness checking that incremental passes of an RHS analysis (see
+ * {@link RHSAnalysis#runIncrementalPass(java.util.Collection)}) compute the same path and
+ * summary edges as a pass from scratch.
+ * <p>
+ * Relevant system properties:
+ * <ul>
+ * <li> chord.rhs.incr.check.analysis = name of the RHS analysis to check; it must be fully
+ * configured by its init() method, like typestate-java (required) </li>
+ * <li> chord.rhs.incr.check.runs = N (default 10) </li>
+ * <li> chord.rhs.incr.check.size = K (default 1) </li>
+ * <li> chord.rhs.incr.check.seed = S (default 0) </li>
+ * </ul>
+ * The analysis is run from scratch once, and then N times as follows.  The code of K
+ * methods of its call graph picked at random (with seed S) among those moving a register
+ * of reference type to another is edited, by making one such move quad of each method
+ * picked at random move null instead.  The analysis is run incrementally after the edit
+ * and then from scratch, and the path and summary edges of both passes are compared.
+ * The edit is then undone, and the analysis is run incrementally again, and its path and
+ * summary edges are compared with those of the first pass from scratch.  The number of
+ * path edges processed by each pass and the instructions and methods whose path or
+ * summary edges differ are logged.
+ * <p>
+ * Property chord.rhs.merge must be naive or pjoin, since incremental passes are not
+ * supported if merging is lossy.  The check fails if any edges differ and merging is
+ * naive; if it is pjoin, edges may differ as those of passes from scratch in different
+ * orders may (see {@link RHSAnalysis}), so the number of runs whose edges differ is only
+ * logged.
+ */
+@Chord(name = "rhs-incr-check-java")
+public class IncrementalCheck extends JavaAnalysis {
+    @SuppressWarnings("unchecked")
+    public void run() {
+        String name = System.getProperty("chord.rhs.incr.check.analysis");
+        if (name == null)
+            Messages.fatal("IncrementalCheck: Property chord.rhs.incr.check.analysis not set.");
+        int numRuns = Integer.getInteger("chord.rhs.incr.check.runs", 10);
+        int size = Integer.getInteger("chord.rhs.incr.check.size", 1);
+        Random random = new Random(Long.getLong("chord.rhs.incr.check.seed", 0));
+        ITask task = ClassicProject.g().getTask(name);
+        if (!(task instanceof RHSAnalysis))
+            Messages.fatal("IncrementalCheck: '" + name + "' is not an RHS analysis.");
+        RHSAnalysis<IEdge, IEdge> analysis = (RHSAnalysis<IEdge, IEdge>) task;
+        analysis.init();
+        if (analysis.mergeKind != MergeKind.NAIVE && analysis.mergeKind != MergeKind.PJOIN)
+            Messages.fatal("IncrementalCheck: Property chord.rhs.merge must be naive or pjoin.");
+        analysis.runPass();
+        Map<Object, Set<IEdge>> original = getEdges(analysis);
+        // methods of the call graph having moves to edit, in a deterministic order
+        DomM domM = (DomM) ClassicProject.g().getTrgt("M");
+        ClassicProject.g().runTask(domM);
+        Set<jq_Method> nodes = analysis.getCallGraph().getNodes();
+        List<jq_Method> methods = new ArrayList<jq_Method>();
+        for (jq_Method m : domM) {
+            if (nodes.contains(m) && !m.isAbstract() && !getRefMoves(m).isEmpty())
+                methods.add(m);
+        }
+        if (methods.isEmpty())
+            Messages.fatal("IncrementalCheck: No method of '" + name + "' moves references.");
+        boolean isExact = analysis.mergeKind == MergeKind.NAIVE;
+        int numFailed = 0;
+        for (int run = 0; run < numRuns; run++) {
+            Collections.shuffle(methods, random);
+            List<jq_Method> changedMethods =
+                new ArrayList<jq_Method>(methods.subList(0, Math.min(size, methods.size())));
+            Map<Quad, Operand> editedMoves = new HashMap<Quad, Operand>();
+            for (jq_Method m : changedMethods) {
+                List<Quad> moves = getRefMoves(m);
+                Quad q = moves.get(random.nextInt(moves.size()));
+                editedMoves.put(q, Move.getSrc(q));
+                Messages.log("IncrementalCheck: Run %d: editing %s in %s.", run, q, m);
+                Move.setSrc(q, new AConstOperand(null));
+            }
+            boolean ok;
+            try {
+                analysis.runIncrementalPass(changedMethods);
+                Map<Object, Set<IEdge>> actual = getEdges(analysis);
+                analysis.runPass();
+                Map<Object, Set<IEdge>> expected = getEdges(analysis);
+                Messages.log("IncrementalCheck: Run %d: edit changed the edges of %d instructions or methods.",
+                    run, getDiffKeys(original, expected).size());
+                ok = compare(run, "edit", expected, actual);
+            } finally {
+                for (Map.Entry<Quad, Operand> e : editedMoves.entrySet())
+                    Move.setSrc(e.getKey(), e.getValue());
+            }
+            analysis.runIncrementalPass(changedMethods);
+            if (!compare(run, "undo", original, getEdges(analysis)))
+                ok = false;
+            if (!ok)
+                numFailed++;
+        }
+        analysis.done();
+        if (numFailed == 0)
+            Messages.log("IncrementalCheck: All %d runs OK.", numRuns);
+        else if (isExact)
+            Messages.fatal("IncrementalCheck: " + numFailed + " of " + numRuns + " runs failed.");
+        else {
+            Messages.log("IncrementalCheck: Edges of %d of %d runs differ, as they may since merging is pjoin.",
+                numFailed, numRuns);
+        }
+    }
+
+    // quads of the given method moving a register of reference type to another
+    private static List<Quad> getRefMoves(jq_Method m) {
+        List<Quad> moves = new ArrayList<Quad>();
+        for (BasicBlock bb : m.getCFG().reversePostOrder()) {
+            for (Quad q : bb.getQuads()) {
+                if (q.getOperator() instanceof Move && Move.getSrc(q) instanceof RegisterOperand &&
+                        Move.getDest(q).getType().isReferenceType())
+                    moves.add(q);
+            }
+        }
+        return moves;
+    }
+
+    // logs the instructions and methods whose edges differ, if any, and returns true iff none
+    private static boolean compare(int run, String step, Map<Object, Set<IEdge>> expected,
+            Map<Object, Set<IEdge>> actual) {
+        Set<Object> diffKeys = getDiffKeys(expected, actual);
+        for (Object key : diffKeys) {
+            Messages.log("IncrementalCheck: Run %d (%s): edges of %s differ: missing %s, extra %s",
+                run, step, key, difference(expected.get(key), actual.get(key)),
+                difference(actual.get(key), expected.get(key)));
+        }
+        int numDiffs = diffKeys.size();
+        Messages.log("IncrementalCheck: Run %d (%s): %s.", run, step,
+            (numDiffs == 0) ? "OK" : numDiffs + " instructions or methods differ");
+        return numDiffs == 0;
+    }
+
+    // instructions and methods whose edges differ in the given maps
+    private static Set<Object> getDiffKeys(Map<Object, Set<IEdge>> map1, Map<Object, Set<IEdge>> map2) {
+        Set<Object> keys = new HashSet<Object>(map1.keySet());
+        keys.addAll(map2.keySet());
+        Set<Object> diffKeys = new HashSet<Object>();
+        for (Object key : keys) {
+            Set<IEdge> set1 = map1.get(key);
+            Set<IEdge> set2 = map2.get(key);
+            if (set1 == null || set2 == null || !set1.equals(set2))
+                diffKeys.add(key);
+        }
+        return diffKeys;
+    }
+
+    private static Set<IEdge> difference(Set<IEdge> set1, Set<IEdge> set2) {
+        Set<IEdge> set = new HashSet<IEdge>();
+        if (set1 != null)
+            set.addAll(set1);
+        if (set2 != null)
+            set.removeAll(set2);
+        return set;
+    }
+
+    // copies of the non-empty sets of path edges into each instruction and summary edges
+    // of each method, which must survive later passes that may merge edges in place
+    private static Map<Object, Set<IEdge>> getEdges(RHSAnalysis<IEdge, IEdge> analysis) {
+        Map<Object, Set<IEdge>> map = new HashMap<Object, Set<IEdge>>();
+        for (Map.Entry<Inst, Set<IEdge>> e : analysis.getAllPEs().entrySet()) {
+            Set<IEdge> peSet = new HashSet<IEdge>();
+            for (IEdge pe : e.getValue())
+                peSet.add(analysis.getPECopy(pe));
+            if (!peSet.isEmpty())
+                map.put(e.getKey(), peSet);
+        }
+        for (Map.Entry<jq_Method, Set<IEdge>> e : analysis.getAllSEs().entrySet()) {
+            Set<IEdge> seSet = new HashSet<IEdge>();
+            for (IEdge se : e.getValue())
+                seSet.add(analysis.getSECopy(se));
+            if (!seSet.isEmpty())
+                map.put(e.getKey(), seSet);
+        }
+        return map;
+    }
+}
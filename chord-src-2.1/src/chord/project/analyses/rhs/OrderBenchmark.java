@@ -0,0 +1,122 @@
+package chord.project.analyses.rhs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import chord.project.BenchmarkHarness;
+
+/**
+ * Benchmark comparing the orders in which RHS analyses can process path edges (see
+ * system property <tt>chord.rhs.order</tt>).
+ * <p>
+ * Usage:
+ * <pre>
+ *   java -cp chord.jar -Dchord.work.dir=&lt;dir&gt; -Dchord.run.analyses=&lt;RHS analyses&gt;
+ *       [-Dchord.benchmark.orders=&lt;orders&gt;] [-Dchord.benchmark.runs=&lt;n&gt;]
+ *       [-D&lt;other chord property&gt;=...]
+ *       chord.project.analyses.rhs.OrderBenchmark
+ * </pre>
+ * Chord is run <tt>chord.benchmark.runs</tt> times with each order in the comma-separated
+ * list <tt>chord.benchmark.orders</tt> (all orders by default), as described in
+ * {@link BenchmarkHarness}, setting <tt>chord.rhs.order</tt> and, to collect statistics,
+ * <tt>chord.profile=true</tt>.  Each run writes to its own output directory
+ * <tt>[chord.work.dir]/bench_&lt;order&gt;_&lt;i&gt;</tt>.  For each order, the minimum
+ * and median wall-clock time of the runs are printed, along with the number of path edges
+ * processed and the time spent by all passes of all RHS analyses in the last run, as
+ * recorded in the statistics of profiled tasks (see {@link RHSAnalysis#STAT_PATH_EDGES}
+ * and {@link RHSAnalysis#STAT_TIME}).
+ * <p>
+ * Note: Do not refer to any properties defined in class chord.project.Config here.
+ */
+public class OrderBenchmark {
+    private static final String[] ORDERS = { "bfs", "dfs", "rpo", "callee-first", "summary-first" };
+
+    public static void main(String[] args) throws Throwable {
+        BenchmarkHarness harness = new BenchmarkHarness("OrderBenchmark", "chord.rhs.order",
+            "chord.profile");
+        int numRuns = harness.getNumRuns();
+        String ordersStr = System.getProperty("chord.benchmark.orders");
+        String[] orders = (ordersStr == null) ? ORDERS : ordersStr.split(",");
+        long[][] times = new long[orders.length][numRuns];
+        long[][] stats = new long[orders.length][];
+        for (int o = 0; o < orders.length; o++) {
+            String order = orders[o].trim();
+            for (int i = 0; i < numRuns; i++) {
+                String outDirName = harness.getWorkDirName() + File.separator + "bench_" + order + "_" + i;
+                times[o][i] = harness.run(i + " of order " + order, outDirName,
+                    "-Dchord.rhs.order=" + order, "-Dchord.profile=true");
+                stats[o] = readStats(new File(outDirName, "profile.csv"));
+                System.out.println("BENCHMARK: " + order + " run " + i + ": " + times[o][i] +
+                    " ms, " + stats[o][0] + " path edges processed in " + stats[o][1] + " ms");
+            }
+        }
+        for (int o = 0; o < orders.length; o++) {
+            System.out.println("BENCHMARK: " + orders[o].trim() + ": " +
+                BenchmarkHarness.summarize(times[o]) + ", " + stats[o][0] +
+                " path edges processed in " + stats[o][1] + " ms");
+        }
+    }
+
+    // total number of path edges processed and time taken by all passes of RHS analyses, as
+    // recorded in the statistics of all tasks in the given profile
+    private static long[] readStats(File profileFile) throws Throwable {
+        long[] stats = new long[2];
+        if (!profileFile.exists())
+            return stats;
+        BufferedReader in = new BufferedReader(new FileReader(profileFile));
+        try {
+            String s = in.readLine();
+            if (s == null)
+                return stats;
+            int statsCol = splitCSV(s).indexOf("stats");
+            while ((s = in.readLine()) != null) {
+                List<String> fields = splitCSV(s);
+                if (statsCol < 0 || statsCol >= fields.size())
+                    continue;
+                for (String stat : fields.get(statsCol).split(" ")) {
+                    int i = stat.indexOf('=');
+                    if (i < 0)
+                        continue;
+                    String name = stat.substring(0, i);
+                    if (name.equals(RHSAnalysis.STAT_PATH_EDGES))
+                        stats[0] += Long.parseLong(stat.substring(i + 1));
+                    else if (name.equals(RHSAnalysis.STAT_TIME))
+                        stats[1] += Long.parseLong(stat.substring(i + 1));
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return stats;
+    }
+
+    // fields of a line of a CSV file whose quoted fields do not span lines
+    private static List<String> splitCSV(String s) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (quoted) {
+                if (c != '"')
+                    field.append(c);
+                else if (i + 1 < s.length() && s.charAt(i + 1) == '"') {
+                    field.append(c);
+                    i++;
+                } else
+                    quoted = false;
+            } else if (c == '"')
+                quoted = true;
+            else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else
+                field.append(c);
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
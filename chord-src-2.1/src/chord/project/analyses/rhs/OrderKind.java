@@ -1,6 +1,5 @@
 package chord.project.analyses.rhs;
 
 public enum OrderKind {
-    BFS, DFS
+    BFS, DFS, RPO, CALLEE_FIRST, SUMMARY_FIRST
 }
-
@@ -1,11 +1,17 @@
 package chord.project.analyses.rhs;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import joeq.Class.jq_Method;
 import joeq.Compiler.Quad.BasicBlock;
@@ -16,6 +22,7 @@ import joeq.Compiler.Quad.Quad;
 import joeq.Compiler.Quad.Inst;
 import joeq.Compiler.Quad.Operator.Invoke;
 
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.hash.TObjectIntHashMap;
 import chord.util.tuple.object.Pair;
 import chord.program.Loc;
@@ -23,19 +30,38 @@ import chord.analyses.alias.ICICG;
 import chord.analyses.invk.DomI;
 import chord.analyses.method.DomM;
 import chord.project.ClassicProject;
+import chord.project.Config;
 import chord.project.analyses.JavaAnalysis;
 import chord.util.ArraySet;
 import chord.util.Alarm;
 import chord.project.Messages;
+import chord.project.TaskProfiler;
 
 /**
  * Implementation of the Reps-Horwitz-Sagiv algorithm for context-sensitive dataflow analysis.
  *
  * Relevant system properties:
  * - chord.rhs.merge = [lossy|pjoin|naive] (default = lossy)
- * - chord.rhs.order = [bfs|dfs] (default = bfs) 
+ * - chord.rhs.order = [bfs|dfs|rpo|callee-first|summary-first] (default = bfs)
  * - chord.rhs.trace = [none|any|shortest] (default = none)
  * - chord.rhs.timeout = N milliseconds (default N = 0, no timeouts)
+ * - chord.rhs.threads = N (default N = 1)
+ * - chord.rhs.summ.dir = D (default none)
+ *
+ * Property chord.rhs.order determines the order in which path edges are processed (see
+ * {@link WorkList}).  The number of path edges processed in each pass and the time it
+ * took are logged if chord.verbose >= 1, and added to the statistics
+ * {@link #STAT_PATH_EDGES} and {@link #STAT_TIME} if tasks are profiled (see {@link TaskProfiler}).
+ * The path edges of each method are kept in an {@link EdgeTable}.
+ * If traces are generated, the provenance of path edges is provided by
+ * {@link #getWrappedPE(Inst, IEdge)}.
+ * Clients may compute only the path edges into given instructions (see {@link #query(Collection)}).
+ * Clients may re-solve the last pass incrementally after methods change (see
+ * {@link #runIncrementalPass(Collection)}).
+ * If chord.rhs.threads is greater than 1, passes are solved by that many threads (see
+ * propagateConcurrently).
+ * If chord.rhs.summ.dir is set, summary edges are persisted in directory D across runs
+ * (see {@link SummaryStore}).
  *
  * @author Mayur Naik (mhn@cs.stanford.edu)
  */
@@ -45,9 +71,17 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
     protected static final String CHORD_RHS_ORDER_PROPERTY = "chord.rhs.order";
     protected static final String CHORD_RHS_TRACE_PROPERTY = "chord.rhs.trace";
     protected static final String CHORD_RHS_TIMEOUT_PROPERTY = "chord.rhs.timeout";
+    protected static final String CHORD_RHS_THREADS_PROPERTY = "chord.rhs.threads";
+    protected static final String CHORD_RHS_SUMM_DIR_PROPERTY = "chord.rhs.summ.dir";
+    /** Name of the statistic of profiled tasks counting the path edges processed by RHS analyses. */
+    public static final String STAT_PATH_EDGES = "rhs_path_edges";
+    /** Name of the statistic of profiled tasks summing the time in ms taken by passes of RHS analyses. */
+    public static final String STAT_TIME = "rhs_ms";
+    private static final int NUM_SUMM_LOCKS = 64;
 
-    protected List<Pair<Loc, PE>> workList = new ArrayList<Pair<Loc, PE>>();
-    protected Map<Inst, Set<PE>> pathEdges = new HashMap<Inst, Set<PE>>();
+    protected WorkList<PE> workList;
+    // path edges of each method, keyed by the instruction into which they are
+    private Map<jq_Method, EdgeTable<Inst, PE>> pathEdges = new HashMap<jq_Method, EdgeTable<Inst, PE>>();
     protected Map<jq_Method, Set<SE>> summEdges = new HashMap<jq_Method, Set<SE>>();
     protected DomI domI;
     protected DomM domM;
@@ -57,8 +91,17 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
     protected Map<jq_Method, Set<Quad>> callersMap = new HashMap<jq_Method, Set<Quad>>();
     protected Map<Quad, Set<jq_Method>> targetsMap = new HashMap<Quad, Set<jq_Method>>();
 
-    protected Map<Pair<Inst, PE>, WrappedPE<PE, SE>> wpeMap = new HashMap<Pair<Inst, PE>, WrappedPE<PE, SE>>();
-    protected Map<Pair<jq_Method, SE>, WrappedSE<PE, SE>> wseMap = new HashMap<Pair<jq_Method, SE>, WrappedSE<PE, SE>>();
+    // provenance of path and summary edges, if traces are generated: copies of the path
+    // edges into each instruction and of the summary edges of each method, hash-consed,
+    // and for each id of such a copy, the ids of the path and summary edges from which it
+    // was derived (-1 if none) and the length of its trace
+    private EdgeTable<Inst, PE> wpeTable;
+    private EdgeTable<jq_Method, SE> wseTable;
+    private final TIntArrayList wpePredPEs = new TIntArrayList();
+    private final TIntArrayList wpePredSEs = new TIntArrayList();
+    private final TIntArrayList wpeLens = new TIntArrayList();
+    private final TIntArrayList wsePredPEs = new TIntArrayList();
+    private final TIntArrayList wseLens = new TIntArrayList();
 
     protected boolean isInit, isDone;
 
@@ -69,6 +112,56 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
     private int timeout;
     private Alarm alarm;
 
+    // index of each method in the order of the call graph in which its path edges are
+    // processed; computed only for orders that need it
+    private TObjectIntHashMap<jq_Method> methodToRank;
+    // SCCs of the call graph sorted such that callees come first; computed lazily
+    private List<Set<jq_Method>> calleesFirstSCCs;
+    // number of path edges processed in the current pass
+    private long numProcessed;
+
+    // number of threads solving each pass; parallel solving is used iff it is greater than 1
+    protected int numThreads;
+    // work of each method; non-null only during a pass solved in parallel
+    private Map<jq_Method, MethodWork> methodWorks;
+    // index of each method in the reverse post-order of the call graph
+    private TObjectIntHashMap<jq_Method> methodToRPOid;
+    // methods scheduled to be processed, callees first; also guards numScheduled and failure
+    private final PriorityQueue<MethodWork> readyMethods = new PriorityQueue<MethodWork>(16,
+        new Comparator<MethodWork>() {
+            public int compare(MethodWork w1, MethodWork w2) {
+                return w2.rpoId - w1.rpoId;
+            }
+        });
+    // number of methods in readyMethods or being processed
+    private int numScheduled;
+    // first exception thrown by any thread solving the current pass
+    private volatile Throwable failure;
+    // lock stripes guarding summEdges during a pass solved in parallel
+    private final Object[] summLocks = new Object[NUM_SUMM_LOCKS];
+
+    // whether all path edges have been computed by the last pass
+    private boolean isSolved;
+    // instructions into which path edges are computed by queries since the last pass; null
+    // if no query has been answered since
+    private Set<Inst> queryInsts;
+    // subset of queryInsts whose path edges are computed from all callers of their methods
+    private Set<Inst> ascQueryInsts;
+    // path edges into instructions not in queryInsts, deferred until they become relevant
+    private Map<Inst, List<Pair<Loc, PE>>> deferredPEs;
+    // call sites whose path edges skip each tracked target method to its exit
+    private Map<jq_Method, List<Quad>> trackedCallers;
+    // methods whose path and summary edges are kept from the last pass by the current
+    // incremental pass and not yet discarded; null unless an incremental pass is running
+    private Map<jq_Method, KeptMethod> keptMethods;
+    // whether a warning that incremental passes are not supported was issued
+    private boolean warnedNoIncrementalPasses;
+
+    // persistent store of summary edges, or null if summary edges are not persisted
+    private SummaryStore<PE, SE> summStore;
+    // summary edges of methods loaded from summStore in the current pass, if any
+    private Map<jq_Method, List<SE>> storedSEs;
+
     protected boolean mustMerge;
     protected boolean mayMerge;
 
@@ -142,6 +235,12 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
             orderKind = OrderKind.BFS;
         else if (s.equals("dfs"))
             orderKind = OrderKind.DFS;
+        else if (s.equals("rpo"))
+            orderKind = OrderKind.RPO;
+        else if (s.equals("callee-first"))
+            orderKind = OrderKind.CALLEE_FIRST;
+        else if (s.equals("summary-first"))
+            orderKind = OrderKind.SUMMARY_FIRST;
         else
             throw new RuntimeException("Bad value for property " + CHORD_RHS_ORDER_PROPERTY + ": " + s);
     }
@@ -162,15 +261,55 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
         timeout = Integer.getInteger("chord.rhs.timeout", 0);
     }
 
+    public void setNumThreads() {
+        numThreads = Integer.getInteger(CHORD_RHS_THREADS_PROPERTY, 1);
+    }
+
     public void setTrackedInvkSites(Map<Quad,Set<jq_Method>> trackedInvkSites) {
         this.trackedInvkSites = trackedInvkSites;
     }
 
+    /*********************************************************************************
+     * Methods that clients must override to persist summary edges across runs; see
+     * property chord.rhs.summ.dir.
+     *********************************************************************************/
+
+    /**
+     * Provides a description of the configuration of this analysis in the current pass
+     * on which its summary edges depend, besides the code of the analyzed methods.
+     *
+     * @return  The configuration of this analysis in the current pass, or null if its
+     * summary edges must not be persisted (default).
+     */
+    public String getSummaryConfig() {
+        return null;
+    }
+
+    /**
+     * Determines whether the summary edges of the given method may be persisted in the
+     * current pass, as far as its own code is concerned: they must depend only on the
+     * code of the method and its callees and on {@link #getSummaryConfig()}, and analyzing
+     * the method must not have side-effects other than computing them.
+     */
+    public boolean isSummaryStable(jq_Method m) {
+        return true;
+    }
+
+    /**
+     * Provides the encoding of the summary edges of this analysis.
+     *
+     * @return  The encoding of the summary edges of this analysis, or null if they cannot
+     * be persisted (default).
+     */
+    public ISummaryCodec<SE> getSummaryCodec() {
+        return null;
+    }
+
     /*********************************************************************************
      * Methods that client may call/override.  Example usage:
      * init();
      * while (*) {
-     *   runPass();
+     *   runPass();  // or runIncrementalPass(changedMethods) after the first pass
      *   // done building path/summary edges; clients can now call:
      *   // getPEs(i), getSEs(m), getAllPEs(), getAllSEs(),
      *   // getBackTracIterator(pe), print()
@@ -195,6 +334,24 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
             Messages.fatal("Cannot create RHS analysis '" + getName() + "' with mustMerge and trace generation.");
         }
         setTimeout();
+        setNumThreads();
+        if (numThreads > 1 && traceKind != TraceKind.NONE) {
+            Messages.warn("RHS analysis '" + getName() + "' generates traces; ignoring property " +
+                CHORD_RHS_THREADS_PROPERTY + "=" + numThreads + ".");
+            numThreads = 1;
+        }
+        String summDirName = System.getProperty(CHORD_RHS_SUMM_DIR_PROPERTY);
+        if (summDirName != null && traceKind != TraceKind.NONE) {
+            Messages.warn("RHS analysis '" + getName() + "' generates traces; ignoring property " +
+                CHORD_RHS_SUMM_DIR_PROPERTY + ".");
+            summDirName = null;
+        }
+        ISummaryCodec<SE> summCodec = getSummaryCodec();
+        if (summDirName != null && summCodec == null) {
+            Messages.warn("RHS analysis '" + getName() + "' cannot persist summary edges; ignoring property " +
+                CHORD_RHS_SUMM_DIR_PROPERTY + ".");
+            summDirName = null;
+        }
         // done configuring the analysis
 
         if (timeout > 0) {
@@ -225,6 +382,63 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
             }
             quadToRPOid.put(cfg.exit(), rpoId);
         }
+        if (orderKind == OrderKind.RPO) {
+            // rank methods in reverse post-order of the call graph, in which callers come
+            // first; methods unreachable from its roots come last
+            methodToRank = new TObjectIntHashMap<jq_Method>();
+            int rank = 0;
+            for (jq_Method m : cicg.getNodesInRPO())
+                methodToRank.put(m, rank++);
+            for (jq_Method m : cicg.getNodes()) {
+                if (!methodToRank.containsKey(m))
+                    methodToRank.put(m, rank++);
+            }
+        } else if (orderKind == OrderKind.CALLEE_FIRST || orderKind == OrderKind.SUMMARY_FIRST) {
+            methodToRank = new TObjectIntHashMap<jq_Method>();
+            int rank = 0;
+            for (Set<jq_Method> scc : getCalleesFirstSCCs()) {
+                for (jq_Method m : scc)
+                    methodToRank.put(m, rank++);
+            }
+        }
+        workList = newWorkList();
+        if (summDirName != null)
+            summStore = new SummaryStore<PE, SE>(this, summCodec, cicg, summDirName);
+        if (traceKind != TraceKind.NONE) {
+            wpeTable = new EdgeTable<Inst, PE>(false);
+            wseTable = new EdgeTable<jq_Method, SE>(false);
+        }
+        if (numThreads > 1) {
+            // fill callersMap and targetsMap upfront, as they are plain maps read by all threads
+            methodToRPOid = new TObjectIntHashMap<jq_Method>();
+            int rpoId = 0;
+            for (jq_Method m : cicg.getNodesInRPO())
+                methodToRPOid.put(m, rpoId++);
+            queryCallGraph();
+            pathEdges = new ConcurrentHashMap<jq_Method, EdgeTable<Inst, PE>>();
+            summEdges = new ConcurrentHashMap<jq_Method, Set<SE>>();
+            for (int i = 0; i < NUM_SUMM_LOCKS; i++)
+                summLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Queries the call graph upfront for the callers of each method and the targets of
+     * each call site, which are cached in callersMap and targetsMap.  Passes of this
+     * analysis, or of analyses given these maps, then only read these maps, so they may
+     * read them concurrently.  Must be called after {@link #init()}.
+     */
+    protected void queryCallGraph() {
+        for (jq_Method m : cicg.getNodes()) {
+            getCallers(m);
+            if (m.isAbstract()) continue;
+            for (BasicBlock bb : m.getCFG().reversePostOrder()) {
+                for (Quad q : bb.getQuads()) {
+                    if (q.getOperator() instanceof Invoke)
+                        getTargets(q);
+                }
+            }
+        }
     }
 
     public void done() {
@@ -241,19 +455,581 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
     public void runPass() throws TimeoutException {
         if (timeout > 0)
             alarm.initNewPass();
-        // clear these sets since client may call this method multiple times
+        clearPass();
+        long startTime = System.currentTimeMillis();
+        Set<Pair<Loc, PE>> initPEs = getInitPathEdges();
+        loadSummaryEdges();
+        if (numThreads > 1)
+            propagateConcurrently(initPEs);
+        else {
+            for (Pair<Loc, PE> pair : initPEs) {
+                Loc loc = pair.val0;
+                PE pe = pair.val1;
+                addPathEdge(loc, pe, null, null, null, null);
+            }
+            propagate();
+        }
+        donePass(startTime);
+        isSolved = true;
+        if (storedSEs != null) {
+            summStore.save(summEdges);
+            if (Config.verbose >= 1) {
+                Messages.log("RHS analysis '%s': loaded summary edges of %d methods; saved %d so far.",
+                    getName(), storedSEs.size(), summStore.getNumSaved());
+            }
+        }
+    }
+
+    // logs the number of path edges processed by the pass started at the given time and the
+    // time it took, and adds them to the statistics of the task being profiled
+    private void donePass(long startTime) {
+        long time = System.currentTimeMillis() - startTime;
+        if (Config.verbose >= 1) {
+            Messages.log("RHS analysis '%s': %d path edges processed in %d ms.", getName(),
+                numProcessed, time);
+        }
+        addPassStats(time);
+    }
+
+    private void addPassStats(long time) {
+        if (Config.profileTasks) {
+            TaskProfiler.addStat(STAT_PATH_EDGES, numProcessed);
+            TaskProfiler.addStat(STAT_TIME, time);
+        }
+    }
+
+    // clear the results of the last pass since client may run several passes
+    private void clearPass() {
+        isSolved = false;
+        queryInsts = null;
+        ascQueryInsts = null;
+        deferredPEs = null;
+        trackedCallers = null;
         workList.clear();
         summEdges.clear();
         pathEdges.clear();
-        wpeMap.clear();
-        wseMap.clear();
-        Set<Pair<Loc, PE>> initPEs = getInitPathEdges();
-        for (Pair<Loc, PE> pair : initPEs) {
-            Loc loc = pair.val0;
-            PE pe = pair.val1;
-            addPathEdge(loc, pe, null, null, null, null);
+        if (traceKind != TraceKind.NONE) {
+            wpeTable.clear();
+            wseTable.clear();
+            wpePredPEs.resetQuick();
+            wpePredSEs.resetQuick();
+            wpeLens.resetQuick();
+            wsePredPEs.resetQuick();
+            wseLens.resetQuick();
+        }
+        numProcessed = 0;
+    }
+
+    /**
+     * Sets the path and summary edges of this analysis to the union of those computed by
+     * the last passes of the given analyses, which must be complete.  This analysis is
+     * then deemed solved, as if by {@link #runPass()}.  The given analyses must be of the
+     * same client over the same call graph, e.g. copies of this analysis each solving part
+     * of its initial path edges (as per {@link #getInitPathEdges()}).  If merging is naive,
+     * the union is what {@link #runPass()} computes for all their initial path edges.
+     * <p>
+     * Edges are shared with, not copied from, the given analyses, which must not run
+     * further passes.  Trace generation must be disabled.
+     */
+    public void setEdges(Collection<? extends RHSAnalysis<PE, SE>> analyses) {
+        if (traceKind != TraceKind.NONE)
+            throw new RuntimeException("RHS analysis '" + getName() + "': cannot set edges when generating traces.");
+        clearPass();
+        for (RHSAnalysis<PE, SE> analysis : analyses) {
+            if (!analysis.isSolved)
+                throw new RuntimeException("RHS analysis '" + analysis.getName() + "' is not solved.");
+            for (Map.Entry<jq_Method, EdgeTable<Inst, PE>> e : analysis.pathEdges.entrySet()) {
+                EdgeTable<Inst, PE> table = getPathEdgeTable(e.getKey());
+                EdgeTable<Inst, PE> table2 = e.getValue();
+                for (Inst i : table2.getKeys()) {
+                    Set<PE> peSet = table.getEdges(i);
+                    // edges are no longer merged, so they can be hashed here
+                    Set<PE> oldPEs = (peSet == null) ? new HashSet<PE>() : new HashSet<PE>(peSet);
+                    for (PE pe : table2.getEdges(i)) {
+                        if (oldPEs.add(pe))
+                            table.add(i, pe);
+                    }
+                }
+            }
+            for (Map.Entry<jq_Method, Set<SE>> e : analysis.summEdges.entrySet()) {
+                jq_Method m = e.getKey();
+                Set<SE> seSet = summEdges.get(m);
+                if (seSet == null) {
+                    seSet = new HashSet<SE>();
+                    summEdges.put(m, seSet);
+                }
+                seSet.addAll(e.getValue());
+            }
+        }
+        isSolved = true;
+    }
+
+    /**
+     * Run an instance of the analysis after the given methods changed, re-solving the last
+     * pass incrementally.  If merging is naive, the results are the same as those of
+     * {@link #runPass()}, which is called instead if the last pass (or query) did not
+     * complete or if incremental passes are not supported by this analysis, in which case
+     * a warning is issued once.  Either way, {@link #methodsChanged(Collection)} is called
+     * first.
+     * <p>
+     * The path and summary edges of the changed methods and of their transitive callers
+     * are discarded, and those of all other methods are kept.  The initial path edges are
+     * then propagated as in a pass from scratch, except that kept methods are not
+     * processed again, and that the summary edges of a kept method are held back until it
+     * is confirmed, that is, until the path edges into its entry are derived anew.  If no
+     * kept method can be confirmed, the topmost unconfirmed ones are discarded and
+     * re-solved.  If merging is pjoin, results may differ as those of passes from scratch
+     * in different orders may.  Incremental passes are solved by a single thread, and are
+     * not supported if merging is lossy, traces are generated, summary edges are
+     * persisted, or call sites are tracked (see {@link #setTrackedInvkSites(Map)}).
+     * {@link IncrementalCheck} checks them against passes from scratch.
+     *
+     * @param changedMethods The methods whose code, or whose transfer functions in this
+     * analysis, changed since the last pass.
+     */
+    public void runIncrementalPass(Collection<jq_Method> changedMethods) throws TimeoutException {
+        methodsChanged(changedMethods);
+        String unsupported = null;
+        if (mustMerge)
+            unsupported = "merging is lossy";
+        else if (traceKind != TraceKind.NONE)
+            unsupported = "traces are generated";
+        else if (summStore != null)
+            unsupported = "summary edges are persisted";
+        else if (!trackedInvkSites.isEmpty())
+            unsupported = "call sites are tracked";
+        if (unsupported != null && !warnedNoIncrementalPasses) {
+            warnedNoIncrementalPasses = true;
+            Messages.warn("WARN: RHS analysis '%s': incremental passes not supported since %s; running a pass from scratch.",
+                getName(), unsupported);
+        }
+        if (!isSolved || unsupported != null) {
+            runPass();
+            return;
+        }
+        if (timeout > 0)
+            alarm.initNewPass();
+        isSolved = false;
+        workList.clear();
+        numProcessed = 0;
+        long startTime = System.currentTimeMillis();
+        // methods whose path or summary edges may depend on the changed ones
+        Set<jq_Method> affectedMethods = new HashSet<jq_Method>();
+        List<jq_Method> work = new ArrayList<jq_Method>(changedMethods);
+        while (!work.isEmpty()) {
+            jq_Method m = work.remove(work.size() - 1);
+            if (affectedMethods.add(m)) {
+                for (Quad q : getCallers(m))
+                    work.add(q.getMethod());
+            }
+        }
+        keptMethods = new HashMap<jq_Method, KeptMethod>();
+        for (Map.Entry<jq_Method, EdgeTable<Inst, PE>> e : pathEdges.entrySet()) {
+            jq_Method m = e.getKey();
+            if (!affectedMethods.contains(m))
+                keptMethods.put(m, new KeptMethod(m, e.getValue().getEdges(m.getCFG().entry())));
+        }
+        int numKept = keptMethods.size();
+        for (jq_Method m : affectedMethods) {
+            pathEdges.remove(m);
+            summEdges.remove(m);
+        }
+        Collection<Pair<Loc, PE>> pes = getInitPathEdges();
+        int numRounds = 0;
+        try {
+            while (pes != null) {
+                numRounds++;
+                for (Pair<Loc, PE> pair : pes)
+                    addPathEdge(pair.val0, pair.val1, null, null, null, null);
+                propagate();
+                pes = discardUnconfirmedMethods();
+            }
+            numKept = keptMethods.size();
+        } finally {
+            keptMethods = null;
+        }
+        donePass(startTime);
+        if (Config.verbose >= 1) {
+            Messages.log("RHS analysis '%s': incremental pass kept path edges of %d methods; %d changed or affected; %d rounds.",
+                getName(), numKept, affectedMethods.size(), numRounds);
+        }
+        isSolved = true;
+    }
+
+    /**
+     * Called by {@link #runIncrementalPass(Collection)} before re-solving the last pass, so
+     * that subclasses can discard any state they keep across passes that depends on the
+     * code of the changed methods (e.g. memoized transfer functions).  Does nothing by default.
+     *
+     * @param changedMethods The methods whose code, or whose transfer functions in this
+     * analysis, changed since the last pass.
+     */
+    protected void methodsChanged(Collection<jq_Method> changedMethods) { }
+
+    // a method whose path and summary edges are kept from the last pass by an incremental pass
+    private class KeptMethod {
+        final jq_Method m;
+        // path edges into the entry of m at the end of the last pass; they may have been
+        // merged with path edges added since
+        final List<PE> oldPEs;
+        // copies of the path edges recorded into the entry of m in the current pass
+        final List<PE> newPEs = new ArrayList<PE>();
+        boolean isConfirmed;
+        KeptMethod(jq_Method m, Set<PE> oldPEs) {
+            this.m = m;
+            this.oldPEs = (oldPEs == null) ? new ArrayList<PE>(0) : new ArrayList<PE>(oldPEs);
+        }
+    }
+
+    // confirm the kept methods whose path edges are the same as in the last pass and apply
+    // the summary edges held back for them, or else discard the path and summary edges of
+    // the topmost unconfirmed ones; returns the path edges recorded into the entries of
+    // the discarded methods (none if some kept method was confirmed), or null if all kept
+    // methods are confirmed
+    private List<Pair<Loc, PE>> discardUnconfirmedMethods() {
+        List<KeptMethod> work = new ArrayList<KeptMethod>(keptMethods.values());
+        List<KeptMethod> confirmed = new ArrayList<KeptMethod>();
+        while (!work.isEmpty()) {
+            KeptMethod km = work.remove(work.size() - 1);
+            if (km.isConfirmed || !isConfirmed(km))
+                continue;
+            km.isConfirmed = true;
+            confirmed.add(km);
+            // the path edges into the call sites of km are those of the last pass
+            EdgeTable<Inst, PE> table = pathEdges.get(km.m);
+            for (Inst i : table.getKeys()) {
+                if (!(i instanceof Quad) || !(((Quad) i).getOperator() instanceof Invoke))
+                    continue;
+                Quad q = (Quad) i;
+                for (jq_Method m2 : getTargets(q)) {
+                    KeptMethod km2 = keptMethods.get(m2);
+                    if (km2 == null || km2.isConfirmed)
+                        continue;
+                    for (PE pe : table.getEdges(q))
+                        km2.newPEs.add(getInitPathEdge(q, m2, pe));
+                    work.add(km2);
+                }
+            }
+        }
+        // more path edges may be recorded into the entry of an unconfirmed method only if a
+        // caller of it is unconfirmed too
+        List<KeptMethod> unconfirmed = new ArrayList<KeptMethod>();
+        List<KeptMethod> topmost = new ArrayList<KeptMethod>();
+        for (KeptMethod km : keptMethods.values()) {
+            if (km.isConfirmed)
+                continue;
+            unconfirmed.add(km);
+            boolean isTopmost = true;
+            for (Quad q : getCallers(km.m)) {
+                KeptMethod km2 = keptMethods.get(q.getMethod());
+                if (km2 != null && km2 != km && !km2.isConfirmed) {
+                    isTopmost = false;
+                    break;
+                }
+            }
+            if (isTopmost)
+                topmost.add(km);
+        }
+        if (!confirmed.isEmpty()) {
+            applyHeldSummaryEdges(confirmed);
+            return new ArrayList<Pair<Loc, PE>>(0);
+        }
+        if (unconfirmed.isEmpty())
+            return null;
+        // unconfirmed methods may all call each other recursively
+        if (topmost.isEmpty())
+            topmost = unconfirmed;
+        List<Pair<Loc, PE>> pes = new ArrayList<Pair<Loc, PE>>();
+        for (KeptMethod km : topmost) {
+            jq_Method m = km.m;
+            keptMethods.remove(m);
+            pathEdges.remove(m);
+            summEdges.remove(m);
+            Loc loc = new Loc(m.getCFG().entry(), -1);
+            for (PE pe : km.newPEs)
+                pes.add(new Pair<Loc, PE>(loc, pe));
         }
-        propagate();
+        return pes;
+    }
+
+    // apply the summary edges held back for the given newly confirmed methods: those of
+    // each of them to the path edges into its call sites, and those of its callees to the
+    // path edges into its own call sites, unless the callee or caller is still unconfirmed
+    private void applyHeldSummaryEdges(List<KeptMethod> confirmed) {
+        for (KeptMethod km : confirmed) {
+            for (Quad q : getCallers(km.m)) {
+                if (!isUnconfirmed(q.getMethod()))
+                    applySummaryEdges(q, km.m);
+            }
+            EdgeTable<Inst, PE> table = pathEdges.get(km.m);
+            for (Inst i : table.getKeys()) {
+                if (!(i instanceof Quad) || !(((Quad) i).getOperator() instanceof Invoke))
+                    continue;
+                Quad q = (Quad) i;
+                for (jq_Method m2 : getTargets(q)) {
+                    if (!isUnconfirmed(m2))
+                        applySummaryEdges(q, m2);
+                }
+            }
+        }
+    }
+
+    // apply the summary edges of method m to the path edges into call site q
+    private void applySummaryEdges(Quad q, jq_Method m) {
+        Set<PE> peSet = getPEs(q);
+        Set<SE> seSet = summEdges.get(m);
+        if (peSet == null || seSet == null)
+            return;
+        Loc loc = invkQuadToLoc.get(q);
+        for (PE pe : new ArrayList<PE>(peSet)) {
+            for (SE se : new ArrayList<SE>(seSet))
+                propagateSEtoPE(pe, loc, m, se);
+        }
+    }
+
+    // whether m is a kept method of the current incremental pass not yet confirmed, in
+    // which case its summary edges are not applied to path edges into its call sites, nor
+    // are new summary edges applied to the path edges kept into its own call sites
+    private boolean isUnconfirmed(jq_Method m) {
+        if (keptMethods == null)
+            return false;
+        KeptMethod km = keptMethods.get(m);
+        return km != null && !km.isConfirmed;
+    }
+
+    // whether the path edges recorded into the entry of kept method km, merged as in a pass
+    // from scratch, are exactly those that were into it at the end of the last pass
+    private boolean isConfirmed(KeptMethod km) {
+        List<PE> peList = new ArrayList<PE>();
+        for (PE pe : km.newPEs) {
+            boolean matched = false;
+            for (PE pe2 : peList) {
+                if (mayMerge ? pe2.canMerge(pe, false) >= 0 : pe2.equals(pe)) {
+                    if (mayMerge)
+                        pe2.mergeWith(pe);
+                    matched = true;
+                    break;
+                }
+            }
+            if (!matched)
+                peList.add(mayMerge ? getPECopy(pe) : pe);
+        }
+        for (PE pe : km.oldPEs) {
+            if (!peList.contains(pe))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Provides the path edges into the given instruction, computing only those needed to
+     * answer this query and earlier ones since the last pass (see {@link #query(Collection)}).
+     *
+     * @return A read-only view of the path edges into the given instruction.
+     */
+    public Set<PE> query(Inst i) throws TimeoutException {
+        query(Collections.singleton(i));
+        Set<PE> peSet = getPEs(i);
+        return (peSet == null) ? Collections.<PE>emptySet() : peSet;
+    }
+
+    /**
+     * Computes the path edges into the given instructions, along with only those needed to
+     * compute them that were not computed by earlier queries since the last pass.  If the
+     * last pass completed, all path edges are already computed and nothing is done.  After
+     * this method returns, {@link #getPEs(Inst)} provides the path edges into the given
+     * instructions.  If a query times out, the results of all queries since the last pass
+     * are discarded.
+     * <p>
+     * A query first marks as relevant the instructions from which path edges may flow into
+     * the given ones: backward within methods, from the entry of a method to its call
+     * sites, and from the successor of a call site to the exits of its targets and thence
+     * backward to their entries.  Path edges into other instructions are deferred until a
+     * later query makes them relevant.  Summary edges computed by queries may be
+     * incomplete and are not persisted.
+     * Pre-condition: trace generation is disabled.
+     */
+    public void query(Collection<? extends Inst> insts) throws TimeoutException {
+        if (isSolved)
+            return;
+        if (traceKind != TraceKind.NONE)
+            throw new RuntimeException("RHS analysis '" + getName() + "' generates traces; queries not supported");
+        if (timeout > 0)
+            alarm.initNewPass();
+        numProcessed = 0;
+        long startTime = System.currentTimeMillis();
+        if (queryInsts == null)
+            initQueries();
+        List<Pair<Loc, PE>> pes = addQueryInsts(insts);
+        boolean done = false;
+        try {
+            if (numThreads > 1)
+                propagateConcurrently(pes);
+            else {
+                for (Pair<Loc, PE> pair : pes)
+                    addPathEdge(pair.val0, pair.val1, null, null, null, null);
+                propagate();
+            }
+            done = true;
+        } finally {
+            // path edges of an incomplete query may be missing
+            if (!done)
+                clearQueries();
+        }
+        long time = System.currentTimeMillis() - startTime;
+        if (Config.verbose >= 1) {
+            Messages.log("RHS analysis '%s': %d path edges processed in %d ms for query; %d relevant instructions so far.",
+                getName(), numProcessed, time, queryInsts.size());
+        }
+        addPassStats(time);
+    }
+
+    /**
+     * Discards the path and summary edges computed by queries since the last pass, if any.
+     */
+    public void clearQueries() {
+        if (queryInsts == null)
+            return;
+        queryInsts = null;
+        ascQueryInsts = null;
+        deferredPEs = null;
+        trackedCallers = null;
+        workList.clear();
+        summEdges.clear();
+        pathEdges.clear();
+    }
+
+    private void initQueries() {
+        workList.clear();
+        summEdges.clear();
+        pathEdges.clear();
+        queryInsts = new HashSet<Inst>();
+        ascQueryInsts = new HashSet<Inst>();
+        deferredPEs = new HashMap<Inst, List<Pair<Loc, PE>>>();
+        trackedCallers = new HashMap<jq_Method, List<Quad>>();
+        for (Map.Entry<Quad, Set<jq_Method>> e : trackedInvkSites.entrySet()) {
+            for (jq_Method m : e.getValue()) {
+                List<Quad> callers = trackedCallers.get(m);
+                if (callers == null) {
+                    callers = new ArrayList<Quad>();
+                    trackedCallers.put(m, callers);
+                }
+                callers.add(e.getKey());
+            }
+        }
+        for (Pair<Loc, PE> pair : getInitPathEdges())
+            deferPathEdge(pair.val0, pair.val1);
+        loadSummaryEdges();
+        // summary edges computed by queries may be incomplete
+        storedSEs = null;
+    }
+
+    private void deferPathEdge(Loc loc, PE pe) {
+        synchronized (deferredPEs) {
+            List<Pair<Loc, PE>> pes = deferredPEs.get(loc.i);
+            if (pes == null) {
+                pes = new ArrayList<Pair<Loc, PE>>();
+                deferredPEs.put(loc.i, pes);
+            }
+            pes.add(new Pair<Loc, PE>(loc, pe));
+        }
+    }
+
+    // add the instructions from which path edges may flow into the given ones to queryInsts,
+    // and return the deferred path edges into the added instructions
+    private List<Pair<Loc, PE>> addQueryInsts(Collection<? extends Inst> insts) {
+        List<Pair<Loc, PE>> pes = new ArrayList<Pair<Loc, PE>>();
+        // instructions to visit, and whether each of them is visited from all callers
+        List<Pair<Inst, Boolean>> work = new ArrayList<Pair<Inst, Boolean>>();
+        for (Inst i : insts)
+            addQueryInst(i, true, work, pes);
+        while (!work.isEmpty()) {
+            Pair<Inst, Boolean> pair = work.remove(work.size() - 1);
+            Inst i = pair.val0;
+            boolean asc = pair.val1;
+            if (i instanceof EntryOrExitBasicBlock && ((EntryOrExitBasicBlock) i).isEntry()) {
+                // path edges into the entry of a method visited from a call site of it
+                // come from that call site
+                if (asc) {
+                    for (Quad q : getCallers(i.getMethod()))
+                        addQueryInst(q, true, work, pes);
+                }
+                continue;
+            }
+            BasicBlock bb = i.getBasicBlock();
+            int idx = (i instanceof Quad) ? bb.getQuadIndex((Quad) i) : 0;
+            if (idx > 0)
+                addQueryPred(bb.getQuad(idx - 1), asc, work, pes);
+            else {
+                for (BasicBlock bb2 : bb.getPredecessors()) {
+                    Inst i2 = bb2.isEntry() ? (EntryOrExitBasicBlock) bb2 : bb2.getLastQuad();
+                    addQueryPred(i2, asc, work, pes);
+                }
+            }
+            if (bb.isExit()) {
+                List<Quad> callers = trackedCallers.get(i.getMethod());
+                if (callers != null) {
+                    for (Quad q : callers)
+                        addQueryInst(q, true, work, pes);
+                }
+            }
+        }
+        return pes;
+    }
+
+    private void addQueryPred(Inst i, boolean asc, List<Pair<Inst, Boolean>> work,
+            List<Pair<Loc, PE>> pes) {
+        addQueryInst(i, asc, work, pes);
+        if (i instanceof Quad && ((Quad) i).getOperator() instanceof Invoke) {
+            // summary edges of the targets flow into the successor of the call site
+            for (jq_Method m : getTargets((Quad) i))
+                addQueryInst(m.getCFG().exit(), false, work, pes);
+        }
+    }
+
+    private void addQueryInst(Inst i, boolean asc, List<Pair<Inst, Boolean>> work,
+            List<Pair<Loc, PE>> pes) {
+        if (asc ? !ascQueryInsts.add(i) : queryInsts.contains(i))
+            return;
+        if (queryInsts.add(i)) {
+            List<Pair<Loc, PE>> deferred = deferredPEs.remove(i);
+            if (deferred != null)
+                pes.addAll(deferred);
+        }
+        work.add(new Pair<Inst, Boolean>(i, asc));
+    }
+
+    private void loadSummaryEdges() {
+        storedSEs = null;
+        if (summStore == null)
+            return;
+        String config = getSummaryConfig();
+        if (config == null)
+            return;
+        summStore.initPass(config);
+        storedSEs = summStore.load();
+        // keep the loaded summary edges intact as summary edges of the pass may be merged
+        for (Map.Entry<jq_Method, List<SE>> e : storedSEs.entrySet()) {
+            Set<SE> seSet = new HashSet<SE>();
+            for (SE se : e.getValue())
+                seSet.add(getSECopy(se));
+            summEdges.put(e.getKey(), seSet);
+        }
+    }
+
+    // whether a summary edge of method m loaded from the summary store applies to path
+    // edge pe into call site q
+    private boolean hasStoredSE(Quad q, PE pe, jq_Method m) {
+        if (storedSEs == null)
+            return false;
+        List<SE> seList = storedSEs.get(m);
+        if (seList == null)
+            return false;
+        for (SE se : seList) {
+            if (getInvkPathEdge(q, pe, m, se) != null)
+                return true;
+        }
+        return false;
     }
 
     // TODO: might have to change the argument type to PE
@@ -264,12 +1040,37 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
         return new BackTraceIterator<PE,SE>(wpe);
     }
 
+    /**
+     * Provides the provenance of the given path edge into the given instruction.  Copies of
+     * path and summary edges are hash-consed in edge tables whose ids index the provenance
+     * lists, from which a read-only {@link WrappedPE} view is created on each call.
+     * Pre-condition: trace generation is enabled.
+     *
+     * @return The provenance of the given path edge, or null if it is not a path edge
+     * into the given instruction.
+     */
+    public IWrappedPE<PE, SE> getWrappedPE(Inst i, PE pe) {
+        if (traceKind == TraceKind.NONE) {
+            throw new RuntimeException("trace generation not enabled");
+        }
+        int id = wpeTable.indexOf(i, pe);
+        return (id < 0) ? null : new WrappedPEView(id);
+    }
+
+    // a read-only view; null if there are no path edges into i
     public Set<PE> getPEs(Inst i) {
-        return pathEdges.get(i);
+        EdgeTable<Inst, PE> table = pathEdges.get(i.getMethod());
+        return (table == null) ? null : table.getEdges(i);
     }
 
+    // a map from each instruction to a read-only view of the path edges into it
     public Map<Inst, Set<PE>> getAllPEs() {
-        return pathEdges;
+        Map<Inst, Set<PE>> map = new HashMap<Inst, Set<PE>>();
+        for (EdgeTable<Inst, PE> table : pathEdges.values()) {
+            for (Inst i : table.getKeys())
+                map.put(i, table.getEdges(i));
+        }
+        return map;
     }
 
     public Set<SE> getSEs(jq_Method m) {
@@ -289,9 +1090,10 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
                     System.out.println("\tSE " + se);
             }
         }
-        for (Inst i : pathEdges.keySet()) {
+        Map<Inst, Set<PE>> allPEs = getAllPEs();
+        for (Inst i : allPEs.keySet()) {
             System.out.println("PE of " + i);
-            Set<PE> peSet = pathEdges.get(i);
+            Set<PE> peSet = allPEs.get(i);
             if (peSet != null) {
                 for (PE pe : peSet)
                     System.out.println("\tPE " + pe);
@@ -321,6 +1123,61 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
         return targets;
     }
     
+    /**
+     * Provides the SCCs of the call graph of this analysis, topologically sorted such that
+     * callees come first.  The call graph is queried the first time, so this method must
+     * not be called concurrently with other uses of it.
+     */
+    public List<Set<jq_Method>> getCalleesFirstSCCs() {
+        if (calleesFirstSCCs != null)
+            return calleesFirstSCCs;
+        List<Set<jq_Method>> sccList = cicg.getTopSortedSCCs();
+        int n = sccList.size();
+        Map<jq_Method, Integer> methodToSCC = new HashMap<jq_Method, Integer>();
+        for (int i = 0; i < n; i++) {
+            for (jq_Method m : sccList.get(i))
+                methodToSCC.put(m, i);
+        }
+        // number of callee SCCs of each SCC not yet sorted, and caller SCCs of each SCC
+        int[] numCallees = new int[n];
+        List<List<Integer>> callers = new ArrayList<List<Integer>>(n);
+        for (int i = 0; i < n; i++)
+            callers.add(new ArrayList<Integer>());
+        for (int i = 0; i < n; i++) {
+            Set<Integer> callees = new HashSet<Integer>();
+            for (jq_Method m : sccList.get(i)) {
+                for (jq_Method m2 : cicg.getSuccs(m)) {
+                    int j = methodToSCC.get(m2);
+                    if (j != i && callees.add(j))
+                        callers.get(j).add(i);
+                }
+            }
+            numCallees[i] = callees.size();
+        }
+        List<Set<jq_Method>> sorted = new ArrayList<Set<jq_Method>>(n);
+        List<Integer> ready = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            if (numCallees[i] == 0)
+                ready.add(i);
+        }
+        while (!ready.isEmpty()) {
+            int i = ready.remove(ready.size() - 1);
+            sorted.add(sccList.get(i));
+            for (int j : callers.get(i)) {
+                if (--numCallees[j] == 0)
+                    ready.add(j);
+            }
+        }
+        assert (sorted.size() == n);
+        calleesFirstSCCs = sorted;
+        return sorted;
+    }
+
+    private WorkList<PE> newWorkList() {
+        return WorkList.newWorkList(orderKind, quadToRPOid, methodToRank);
+    }
+
+
     /**
      * Propagate analysis results until fixpoint is reached.
      */
@@ -330,40 +1187,333 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
                 System.out.println("TIMED OUT");
                 throw new TimeoutException();
             }
-            if (DEBUG) {
-                System.out.println("WORKLIST:");
-                for (Pair<Loc, PE> pair : workList) {
-                    Loc loc = pair.val0;
-                    int id = quadToRPOid.get(loc.i);
-                    System.out.println("\t" + pair + " " + id);
+            if (DEBUG) System.out.println("WORKLIST: " + workList);
+            Pair<Loc, PE> pair = workList.remove();
+            numProcessed++;
+            process(pair.val0, pair.val1);
+        }
+    }
+
+    private void process(Loc loc, PE pe) {
+        Inst i = loc.i;
+        if (DEBUG) System.out.println("Processing loc: " + loc + " PE: " + pe);
+        if (i instanceof EntryOrExitBasicBlock) {
+            // method entry or method exit
+            EntryOrExitBasicBlock bb = (EntryOrExitBasicBlock) i;
+            if (bb.isEntry()) {
+                processEntry(bb, pe);
+            } else {
+                assert (bb.isExit());
+                processExit(bb, pe);
+            }
+        } else {
+            Quad q = (Quad) i;
+            // invoke or misc quad
+            Operator op = q.getOperator();
+            if (op instanceof Invoke) {
+                processInvk(loc, pe);
+            } else {
+                PE pe2 = getMiscPathEdge(q, pe);
+                propagatePEtoPE(loc, pe2, pe, null, null);
+            }
+        }
+    }
+
+    /*********************************************************************************
+     * Parallel solving methods.
+     *********************************************************************************/
+
+    // a copy 'se' of summary edge 'orig' of method m to be applied at call site q;
+    // applications of the same summary edge at the same call site are equal, so that
+    // a pending one is superseded by a later copy of the summary edge
+    private class SummApp {
+        final Quad q;
+        final jq_Method m;
+        final SE orig;
+        SE se;
+        SummApp(Quad q, jq_Method m, SE orig, SE se) {
+            this.q = q;
+            this.m = m;
+            this.orig = orig;
+            this.se = se;
+        }
+        @Override
+        public int hashCode() {
+            return q.hashCode() * 31 + System.identityHashCode(orig);
+        }
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RHSAnalysis<?, ?>.SummApp))
+                return false;
+            RHSAnalysis<?, ?>.SummApp that = (RHSAnalysis<?, ?>.SummApp) o;
+            return q == that.q && orig == that.orig;
+        }
+    }
+
+    // the work of a method; its work list and callees to yield to are accessed only by the
+    // thread processing it, and its other fields are guarded by the object itself
+    private class MethodWork {
+        final int rpoId;
+        final WorkList<PE> workList = newWorkList();
+        // number of path edges processed
+        long numProcessed;
+        List<Pair<Loc, PE>> postedPEs = new ArrayList<Pair<Loc, PE>>();
+        Map<SummApp, SummApp> postedSEs = new LinkedHashMap<SummApp, SummApp>();
+        boolean scheduled;
+        // callees posted a path edge that are scheduled before this method
+        final Set<MethodWork> yieldTo = new HashSet<MethodWork>();
+        // methods waiting for this method to be processed
+        List<MethodWork> waiters = new ArrayList<MethodWork>();
+        // number of callees this method is waiting for, plus one while it starts waiting
+        int numWaits;
+        MethodWork(jq_Method m) {
+            rpoId = methodToRPOid.get(m);
+        }
+    }
+
+    private MethodWork getMethodWork(jq_Method m) {
+        MethodWork work = methodWorks.get(m);
+        if (work == null) {
+            synchronized (methodWorks) {
+                work = methodWorks.get(m);
+                if (work == null) {
+                    work = new MethodWork(m);
+                    methodWorks.put(m, work);
                 }
             }
-            int last = workList.size() - 1;
-            Pair<Loc, PE> pair = workList.remove(last);
-            Loc loc = pair.val0;
-            PE pe = pair.val1;
-            Inst i = loc.i;
-            if (DEBUG) System.out.println("Processing loc: " + loc + " PE: " + pe);
-            if (i instanceof EntryOrExitBasicBlock) {
-                // method entry or method exit
-                EntryOrExitBasicBlock bb = (EntryOrExitBasicBlock) i;
-                if (bb.isEntry()) {
-                    processEntry(bb, pe);
-                } else {
-                    assert (bb.isExit());
-                    processExit(bb, pe);
+        }
+        return work;
+    }
+
+    private WorkList<PE> getWorkList(Inst i) {
+        return (methodWorks == null) ? workList : getMethodWork(i.getMethod()).workList;
+    }
+
+    private Object getSummLock(jq_Method m) {
+        return summLocks[(m.hashCode() & 0x7fffffff) % NUM_SUMM_LOCKS];
+    }
+
+    // post path edge 'pe' into 'loc', which is the entry or exit of method m
+    private void postPathEdge(jq_Method m, Loc loc, PE pe) {
+        MethodWork work = getMethodWork(m);
+        boolean schedule;
+        synchronized (work) {
+            work.postedPEs.add(new Pair<Loc, PE>(loc, pe));
+            schedule = !work.scheduled;
+            work.scheduled = true;
+        }
+        if (schedule)
+            schedule(work);
+    }
+
+    // post copy 'se' of summary edge 'orig' of method m to be applied at call site q
+    private void postSummaryEdge(Quad q, jq_Method m, SE orig, SE se) {
+        MethodWork work = getMethodWork(q.getMethod());
+        SummApp app = new SummApp(q, m, orig, se);
+        boolean schedule;
+        synchronized (work) {
+            SummApp pending = work.postedSEs.get(app);
+            if (pending != null)
+                pending.se = se;
+            else
+                work.postedSEs.put(app, app);
+            schedule = !work.scheduled;
+            work.scheduled = true;
+        }
+        if (schedule)
+            schedule(work);
+    }
+
+    private void schedule(MethodWork work) {
+        synchronized (readyMethods) {
+            numScheduled++;
+            readyMethods.add(work);
+            readyMethods.notify();
+        }
+    }
+
+    /**
+     * Solves a pass, or a query, by chord.rhs.threads threads.  Each method has its own work
+     * list and is processed by one thread at a time, so its path edges are only accessed by
+     * that thread; path edges into the entry or exit of another method and summary edges to
+     * apply at call sites are posted to that method instead.  Methods are scheduled callees
+     * first, and a method posting a path edge to a callee yields to it, so that callers
+     * mostly see complete summary edges of their callees.  Summary edges are read and merged
+     * under per-method lock stripes, and callers are given copies of them.  Edges may be
+     * merged in a different order than by {@link #propagate()}, so results may differ if
+     * merging is lossy.  Clients must only ensure that their methods can be called
+     * concurrently for different methods being analyzed.
+     */
+    private void propagateConcurrently(Collection<Pair<Loc, PE>> initPEs) throws TimeoutException {
+        methodWorks = new ConcurrentHashMap<jq_Method, MethodWork>();
+        numScheduled = 0;
+        failure = null;
+        try {
+            for (Pair<Loc, PE> pair : initPEs) {
+                Loc loc = pair.val0;
+                postPathEdge(loc.i.getMethod(), loc, pair.val1);
+            }
+            Thread[] threads = new Thread[numThreads];
+            for (int j = 0; j < numThreads; j++) {
+                threads[j] = new Thread(getName() + "-" + j) {
+                    public void run() {
+                        runWorker();
+                    }
+                };
+                threads[j].start();
+            }
+            try {
+                for (Thread t : threads)
+                    t.join();
+            } catch (InterruptedException ex) {
+                throw new RuntimeException(ex);
+            }
+            for (MethodWork work : methodWorks.values())
+                numProcessed += work.numProcessed;
+        } finally {
+            methodWorks = null;
+            readyMethods.clear();
+        }
+        Throwable ex = failure;
+        if (ex instanceof TimeoutException)
+            System.out.println("TIMED OUT");
+        if (ex instanceof RuntimeException)
+            throw (RuntimeException) ex;
+        if (ex instanceof Error)
+            throw (Error) ex;
+        if (ex != null)
+            throw new RuntimeException(ex);
+    }
+
+    private void runWorker() {
+        while (true) {
+            MethodWork work;
+            synchronized (readyMethods) {
+                while (readyMethods.isEmpty() && numScheduled > 0 && failure == null) {
+                    try {
+                        readyMethods.wait();
+                    } catch (InterruptedException ex) {
+                        throw new RuntimeException(ex);
+                    }
                 }
-            } else {
-                Quad q = (Quad) i;
-                // invoke or misc quad
-                Operator op = q.getOperator();
-                if (op instanceof Invoke) {
-                    processInvk(loc, pe);
-                } else {
-                    PE pe2 = getMiscPathEdge(q, pe);
-                    propagatePEtoPE(loc, pe2, pe, null, null);
+                if (numScheduled == 0 || failure != null) {
+                    readyMethods.notifyAll();
+                    return;
+                }
+                work = readyMethods.remove();
+            }
+            try {
+                if (processMethodWork(work)) {
+                    waitForCallees(work);
+                    continue;
+                }
+            } catch (Throwable ex) {
+                synchronized (readyMethods) {
+                    if (failure == null)
+                        failure = ex;
                 }
             }
+            synchronized (readyMethods) {
+                numScheduled--;
+                if (numScheduled == 0 || failure != null)
+                    readyMethods.notifyAll();
+            }
+        }
+    }
+
+    // reschedule a method that yielded once the callees it yielded to have been processed
+    private void waitForCallees(MethodWork work) {
+        synchronized (work) {
+            work.numWaits = 1;
+        }
+        for (MethodWork callee : work.yieldTo) {
+            synchronized (callee) {
+                if (!callee.scheduled)
+                    continue;
+                callee.waiters.add(work);
+            }
+            synchronized (work) {
+                work.numWaits++;
+            }
+        }
+        work.yieldTo.clear();
+        stopWaiting(work);
+    }
+
+    private void stopWaiting(MethodWork work) {
+        synchronized (work) {
+            if (--work.numWaits > 0)
+                return;
+        }
+        synchronized (readyMethods) {
+            readyMethods.add(work);
+            readyMethods.notify();
+        }
+    }
+
+    // process the posted edges and the work list of a method until none is left, or until
+    // the method yields to a callee; returns true iff it yielded
+    private boolean processMethodWork(MethodWork work) {
+        WorkList<PE> wl = work.workList;
+        while (true) {
+            List<Pair<Loc, PE>> pes;
+            Collection<SummApp> ses;
+            List<MethodWork> waiters = null;
+            synchronized (work) {
+                if ((wl.isEmpty() && work.postedPEs.isEmpty() && work.postedSEs.isEmpty()) ||
+                        failure != null) {
+                    work.scheduled = false;
+                    waiters = work.waiters;
+                    work.waiters = new ArrayList<MethodWork>();
+                }
+                pes = work.postedPEs;
+                ses = work.postedSEs.values();
+                work.postedPEs = new ArrayList<Pair<Loc, PE>>();
+                work.postedSEs = new LinkedHashMap<SummApp, SummApp>();
+            }
+            if (waiters != null) {
+                for (MethodWork waiter : waiters)
+                    stopWaiting(waiter);
+                return false;
+            }
+            for (Pair<Loc, PE> pair : pes)
+                addPathEdge(pair.val0, pair.val1, null, null, null, null);
+            for (SummApp app : ses)
+                applySummaryEdge(app.q, app.m, app.se);
+            while (!wl.isEmpty()) {
+                if (failure != null)
+                    return false;
+                if (timeout > 0 && alarm.passTimedOut())
+                    throw new TimeoutException();
+                Pair<Loc, PE> pair = wl.remove();
+                work.numProcessed++;
+                process(pair.val0, pair.val1);
+                if (!work.yieldTo.isEmpty())
+                    return true;
+            }
+        }
+    }
+
+    private void applySummaryEdge(Quad q, jq_Method m, SE se) {
+        Set<PE> peSet = getPEs(q);
+        if (peSet == null)
+            return;
+        List<PE> peList = new ArrayList<PE>(peSet);
+        Loc loc = invkQuadToLoc.get(q);
+        for (PE pe : peList)
+            propagateSEtoPE(pe, loc, m, se);
+    }
+
+    // copies of the summary edges of method m, or null if it has none
+    private List<SE> getSECopies(jq_Method m) {
+        synchronized (getSummLock(m)) {
+            Set<SE> seSet = summEdges.get(m);
+            if (seSet == null)
+                return null;
+            List<SE> seList = new ArrayList<SE>(seSet.size());
+            for (SE se : seSet)
+                seList.add(getSECopy(se));
+            return seList;
         }
     }
 
@@ -382,16 +1532,24 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
                 if (trackedMethods != null) 
                     if(trackedMethods.contains(m2)) 
                         skip = true;
-                if(skip){
-                    final EntryOrExitBasicBlock bb2 = m2.getCFG().exit();
-                    final Loc loc2 = new Loc(bb2, -1);
-                    addPathEdge(loc2, pe2, q, pe, null, null);
-                } else {
-                    final EntryOrExitBasicBlock bb2 = m2.getCFG().entry();
-                    final Loc loc2 = new Loc(bb2, -1);
-                    addPathEdge(loc2, pe2, q, pe, null, null);
+                final EntryOrExitBasicBlock bb2 = skip ? m2.getCFG().exit() : m2.getCFG().entry();
+                final Loc loc2 = new Loc(bb2, -1);
+                // do not descend into m2 if a loaded summary edge of it applies
+                if (skip || !hasStoredSE(q, pe, m2)) {
+                    if (methodWorks == null)
+                        addPathEdge(loc2, pe2, q, pe, null, null);
+                    else {
+                        postPathEdge(m2, loc2, pe2);
+                        MethodWork work = getMethodWork(q.getMethod());
+                        MethodWork work2 = getMethodWork(m2);
+                        if (work2.rpoId > work.rpoId)
+                            work.yieldTo.add(work2);
+                    }
                 }
-                final Set<SE> seSet = summEdges.get(m2);
+                // the summary edges of m2 are held back while it is unconfirmed
+                if (isUnconfirmed(m2))
+                    continue;
+                final Collection<SE> seSet = (methodWorks == null) ? summEdges.get(m2) : getSECopies(m2);
                 if (seSet == null) {
                     if (DEBUG) System.out.println("\tSE set empty");
                     continue;
@@ -432,6 +1590,51 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
     private void processExit(EntryOrExitBasicBlock bb, PE pe) {
         jq_Method m = bb.getMethod();
         SE se = getSummaryEdge(m, pe);
+        if (methodWorks != null) {
+            SE seToAdd, seCopy;
+            synchronized (getSummLock(m)) {
+                seToAdd = addSummaryEdge(bb, pe, se);
+                if (seToAdd == null)
+                    return;
+                seCopy = getSECopy(seToAdd);
+            }
+            for (Quad q2 : getCallers(m))
+                postSummaryEdge(q2, m, seToAdd, seCopy);
+            return;
+        }
+        SE seToAdd = addSummaryEdge(bb, pe, se);
+        if (seToAdd == null || isUnconfirmed(m))
+            return;
+        for (Quad q2 : getCallers(m)) {
+            if (DEBUG) System.out.println("\tCaller: " + q2 + " in " + q2.getMethod());
+            // the path edges into q2 may be kept from the last pass and not yet confirmed
+            if (isUnconfirmed(q2.getMethod()))
+                continue;
+            Set<PE> peSet = getPEs(q2);
+            if (peSet == null)
+                continue;
+            // make a copy as propagateSEtoPE might add a path edge to this set itself;
+            // in this case we could get a ConcurrentModification exception if we don't
+            // make a copy.
+            List<PE> peList = new ArrayList<PE>(peSet);
+            Loc loc2 = invkQuadToLoc.get(q2);
+            for (PE pe2 : peList) {
+                if (DEBUG) System.out.println("\tTesting PE: " + pe2);
+                boolean match = propagateSEtoPE(pe2, loc2, m, seToAdd);
+                if (match) {
+                    if (DEBUG) System.out.println("\tMatched");
+                } else {
+                    if (DEBUG) System.out.println("\tDid not match");
+                }
+            }
+        }
+    }
+
+    // Add summary edge 'se' of the method of exit 'bb', lifted from 'pe', merging it with
+    // an existing one if possible; returns the added or changed summary edge, or null if
+    // summary edges did not change.
+    private SE addSummaryEdge(EntryOrExitBasicBlock bb, PE pe, SE se) {
+        jq_Method m = bb.getMethod();
         Set<SE> seSet = summEdges.get(m);
         if (DEBUG) System.out.println("\tChecking if " + m + " has SE: " + se);
         SE seToAdd = se;
@@ -452,7 +1655,7 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
                         if (DEBUG) System.out.println("\tExisting SE did not change");
                         if (traceKind != TraceKind.NONE && result == 0)
                             updateWSE(m, se2, bb, pe);
-                        return;
+                        return null;
                     }
                     if (DEBUG) System.out.println("\tExisting SE changed");
                     // se2 is already in summEdges(m), so no need to add it
@@ -469,31 +1672,12 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
             if (DEBUG) System.out.println("\tYes, not adding");
             if (traceKind != TraceKind.NONE)
                 updateWSE(m, se, bb, pe);
-            return;
+            return null;
         }
         if (traceKind != TraceKind.NONE) {
             recordWSE(m, seToAdd, bb, pe);
         }
-        for (Quad q2 : getCallers(m)) {
-            if (DEBUG) System.out.println("\tCaller: " + q2 + " in " + q2.getMethod());
-            Set<PE> peSet = pathEdges.get(q2);
-            if (peSet == null)
-                continue;
-            // make a copy as propagateSEtoPE might add a path edge to this set itself;
-            // in this case we could get a ConcurrentModification exception if we don't
-            // make a copy.
-            List<PE> peList = new ArrayList<PE>(peSet);
-            Loc loc2 = invkQuadToLoc.get(q2);
-            for (PE pe2 : peList) {
-                if (DEBUG) System.out.println("\tTesting PE: " + pe2);
-                boolean match = propagateSEtoPE(pe2, loc2, m, seToAdd);
-                if (match) {
-                    if (DEBUG) System.out.println("\tMatched");
-                } else {
-                    if (DEBUG) System.out.println("\tDid not match");
-                }
-            }
-        }
+        return seToAdd;
     }
 
     // Add 'pe' as an incoming PE into loc.
@@ -504,16 +1688,28 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
     private void addPathEdge(Loc loc, PE pe, Inst predI, PE predPE, jq_Method predM, SE predSE) {
         if (DEBUG) System.out.println("\tChecking if " + loc + " has PE: " + pe);
         Inst i = loc.i;
-        Set<PE> peSet = pathEdges.get(i);
+        if (queryInsts != null && !queryInsts.contains(i)) {
+            if (DEBUG) System.out.println("\tNot relevant to queries, deferring");
+            deferPathEdge(loc, pe);
+            return;
+        }
+        if (keptMethods != null && i instanceof EntryOrExitBasicBlock) {
+            KeptMethod km = keptMethods.get(i.getMethod());
+            if (km != null && ((EntryOrExitBasicBlock) i).isEntry())
+                km.newPEs.add(mayMerge ? getPECopy(pe) : pe);
+        }
+        WorkList<PE> workList = getWorkList(i);
+        EdgeTable<Inst, PE> table = getPathEdgeTable(i.getMethod());
+        TIntArrayList ids = table.getIds(i);
         PE peToAdd = pe;
-        if (peSet == null) {
-            peSet = new HashSet<PE>();
-            pathEdges.put(i, peSet);
-            peSet.add(pe);
+        if (ids == null) {
+            table.add(i, pe);
             if (DEBUG) System.out.println("\tNo, adding it as first PE");
         } else if (mayMerge) {
             boolean matched = false;
-            for (PE pe2 : peSet) {
+            ids = table.getMergeCandidates(i, pe);
+            for (int j = 0; ids != null && j < ids.size(); j++) {
+                PE pe2 = table.get(ids.get(j));
                 int result = pe2.canMerge(pe, mustMerge);
                 if (result >= 0) {
                     if (DEBUG) System.out.println("\tNo, but matches PE: " + pe2);
@@ -527,16 +1723,11 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
                     }
                     if (DEBUG) System.out.println("\tExisting PE changed");
                     // pe2 is already in pathEdges(i) so no need to add it; but it may or may not be in workList
-                    for (int j = workList.size() - 1; j >= 0; j--) {
-                        Pair<Loc, PE> pair = workList.get(j);
-                        PE pe3 = pair.val1;
-                        if (pe3 == pe2) {
-                            assert (loc.equals(pair.val0));
-                            if (traceKind != TraceKind.NONE) {
-                                recordWPE(i, pe2, predI, predPE, predM, predSE);
-                            }
-                            return;
+                    if (workList.contains(pe2)) {
+                        if (traceKind != TraceKind.NONE) {
+                            recordWPE(i, pe2, predI, predPE, predM, predSE);
                         }
+                        return;
                     }
                     peToAdd = pe2;
                     matched = true;
@@ -545,34 +1736,32 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
             }
             if (!matched) {
                 if (DEBUG) System.out.println("\tNo, adding");
-                peSet.add(pe);
+                table.add(i, pe);
             }
-        } else if (!peSet.add(pe)) {
+        } else if (table.indexOf(i, pe) >= 0) {
             if (DEBUG) System.out.println("\tYes, not adding");
             if (traceKind != TraceKind.NONE)
                 updateWPE(i, pe, predI, predPE, predM, predSE);
             return;
-        }
+        } else
+            table.add(i, pe);
         assert (peToAdd != null);
         if (traceKind != TraceKind.NONE) {
             recordWPE(i, peToAdd, predI, predPE, predM, predSE);
         }
-        Pair<Loc, PE> pair = new Pair<Loc, PE>(loc, peToAdd);
-        int j = workList.size() - 1;
-        if (orderKind == OrderKind.BFS) {
-            jq_Method m = loc.i.getMethod();
-            int rpoId = quadToRPOid.get(i);
-            for (; j >= 0; j--) {
-                Loc loc2 = workList.get(j).val0;
-                Inst i2 = loc2.i;
-                if (i2.getMethod() != m) break;
-                int rpoId2 = quadToRPOid.get(i2);
-                if (rpoId2 > rpoId)
-                    break;
-            }
+        if (DEBUG) System.out.println("\tAlso adding to worklist");
+        workList.add(loc, peToAdd, predSE != null);
+    }
+
+    // path edges of method m; created if absent, by the thread processing m
+    private EdgeTable<Inst, PE> getPathEdgeTable(jq_Method m) {
+        EdgeTable<Inst, PE> table = pathEdges.get(m);
+        if (table == null) {
+            // path edges merged in place are hashed by their merge hash code, if any
+            table = new EdgeTable<Inst, PE>(mayMerge);
+            pathEdges.put(m, table);
         }
-        if (DEBUG) System.out.println("\tAlso adding to worklist at " + (j + 1));
-        workList.add(j + 1, pair);
+        return table;
     }
 
     // Adds 'pe' as an incoming PE into each immediate successor of 'loc'.
@@ -638,17 +1827,17 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
      */
     private void updateWSE(jq_Method m, SE seToAdd, EntryOrExitBasicBlock bb, PE predPE) {
         assert (seToAdd != null && predPE != null);
-        Pair<jq_Method, SE> p = new Pair<jq_Method, SE>(m, seToAdd);
-        WrappedSE<PE, SE> wse = wseMap.get(p);
-        assert (wse != null);
+        int wseId = wseTable.indexOf(m, seToAdd);
+        assert (wseId >= 0);
         if (traceKind == TraceKind.SHORTEST) {
-            int oldLen = wse.getLen();
-            Pair<Inst, PE> predP = new Pair<Inst, PE>(bb, predPE);
-            WrappedPE<PE, SE> newWPE = wpeMap.get(predP);
-            assert (newWPE != null);
-            int newLen = 1 + newWPE.getLen();
-            if (newLen < oldLen)
-                wse.update(newWPE, newLen);
+            int oldLen = wseLens.get(wseId);
+            int newWPEId = wpeTable.indexOf(bb, predPE);
+            assert (newWPEId >= 0);
+            int newLen = 1 + wpeLens.get(newWPEId);
+            if (newLen < oldLen) {
+                wsePredPEs.set(wseId, newWPEId);
+                wseLens.set(wseId, newLen);
+            }
         }
     }
 
@@ -663,39 +1852,39 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
     private void updateWPE(Inst i, PE peToAdd, Inst predI, PE predPE, jq_Method predM, SE predSE) {
         assert (peToAdd != null);
         // predPE and/or predSE may be null
-        Pair<Inst, PE> p = new Pair<Inst, PE>(i, peToAdd);
-        WrappedPE<PE, SE> wpe = wpeMap.get(p);
-        assert (wpe != null);
+        int wpeId = wpeTable.indexOf(i, peToAdd);
+        assert (wpeId >= 0);
         if (traceKind == TraceKind.SHORTEST) {
-            int oldLen = wpe.getLen();
+            int oldLen = wpeLens.get(wpeId);
             if (predPE == null) {
                 assert (oldLen == 0);
                 // cannot reduce below 0, so return
                 return;
             }
             int newLen;
-            Pair<Inst, PE> predP = new Pair<Inst, PE>(predI, predPE);
-            WrappedPE<PE, SE> newWPE = wpeMap.get(predP);
-            assert (newWPE != null);
+            int newWPEId = wpeTable.indexOf(predI, predPE);
+            assert (newWPEId >= 0);
             if (i instanceof EntryOrExitBasicBlock && ((EntryOrExitBasicBlock) i).isEntry())
                 newLen = 0;
             else
-                newLen = 1 + newWPE.getLen();
-            WrappedSE<PE, SE> newWSE;
+                newLen = 1 + wpeLens.get(newWPEId);
+            int newWSEId;
             if (predSE != null) {
                 assert (predM != null);
-                Pair<jq_Method, SE> predN = new Pair<jq_Method, SE>(predM, predSE);
-                newWSE = wseMap.get(predN);
-                assert (newWSE != null);
-                newLen += newWSE.getLen();
+                newWSEId = wseTable.indexOf(predM, predSE);
+                assert (newWSEId >= 0);
+                newLen += wseLens.get(newWSEId);
             } else {
                 assert (predM == null);
-                newWSE = null;
+                newWSEId = -1;
             }
             if(newLen < 0)
                 throw new TraceOverflowException();
-            if (newLen < oldLen)
-                wpe.update(newWPE, newWSE, newLen);
+            if (newLen < oldLen) {
+                wpePredPEs.set(wpeId, newWPEId);
+                wpePredSEs.set(wpeId, newWSEId);
+                wpeLens.set(wpeId, newLen);
+            }
         }
     }
 
@@ -707,13 +1896,14 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
      */
     private void recordWSE(jq_Method m, SE seToAdd, EntryOrExitBasicBlock bb, PE predPE) {
         assert (seToAdd != null && predPE != null);
-        assert (!wseMap.containsKey(seToAdd));
-        WrappedPE<PE, SE> wpe = wpeMap.get(new Pair<Inst, PE>(bb, predPE));
-        assert (wpe != null);
-        SE seCopy = getSECopy(seToAdd);
-        int len = 1 + wpe.getLen();
-        WrappedSE<PE, SE> wse = new WrappedSE<PE, SE>(seCopy, wpe, len);
-        wseMap.put(new Pair<jq_Method, SE>(m, seCopy), wse);
+        int wpeId = wpeTable.indexOf(bb, predPE);
+        assert (wpeId >= 0);
+        int len = 1 + wpeLens.get(wpeId);
+        // an existing provenance of an equal SE is superseded, but kept for the edges
+        // derived from it
+        wseTable.put(m, getSECopy(seToAdd));
+        wsePredPEs.add(wpeId);
+        wseLens.add(len);
     }
 
     /**
@@ -725,39 +1915,101 @@ public abstract class RHSAnalysis<PE extends IEdge, SE extends IEdge> extends Ja
     private void recordWPE(Inst i, PE peToAdd, Inst predI, PE predPE, jq_Method predM, SE predSE) {
         assert (peToAdd != null);
         // predPE and/or predSE may be null
-        assert (!wpeMap.containsKey(peToAdd));
-        PE peCopy = getPECopy(peToAdd);
-        WrappedPE<PE, SE> predWPE;
+        int predWPEId;
         int len;
         if (predPE == null) {
             assert (predI == null && predM == null && predSE == null);
-            predWPE = null;
+            predWPEId = -1;
             len = 0;
         } else {
             assert (predI != null);
-            predWPE = wpeMap.get(new Pair<Inst, PE>(predI, predPE));
-            assert (predWPE != null);
+            predWPEId = wpeTable.indexOf(predI, predPE);
+            assert (predWPEId >= 0);
             if (i instanceof EntryOrExitBasicBlock && ((EntryOrExitBasicBlock) i).isEntry())
                 len = 0;
             else
-                len = 1 + predWPE.getLen();
+                len = 1 + wpeLens.get(predWPEId);
         }
-        WrappedSE<PE, SE> predWSE;
+        int predWSEId;
         if (predSE == null) {
             assert (predM == null);
-            predWSE = null;
+            predWSEId = -1;
         } else {
             assert (predM != null);
-            predWSE = wseMap.get(new Pair<jq_Method, SE>(predM, predSE));
-            assert (predWSE != null);
-            len += predWSE.getLen();
+            predWSEId = wseTable.indexOf(predM, predSE);
+            assert (predWSEId >= 0);
+            len += wseLens.get(predWSEId);
         }
         if(len < 0){
             System.out.println("Trace length overflowed.");
             throw new TraceOverflowException();
             }
-        WrappedPE<PE, SE> wpe = new WrappedPE<PE, SE>(i, peCopy, predWPE, predWSE, len);
-        wpeMap.put(new Pair<Inst, PE>(i, peCopy), wpe);
+        // an existing provenance of an equal PE is superseded, but kept for the edges
+        // derived from it
+        wpeTable.put(i, getPECopy(peToAdd));
+        wpePredPEs.add(predWPEId);
+        wpePredSEs.add(predWSEId);
+        wpeLens.add(len);
+    }
+
+    // read-only view of the provenance of the path edge copy of the given id in wpeTable
+    private class WrappedPEView extends WrappedPE<PE, SE> {
+        private final int id;
+        WrappedPEView(int id) {
+            super(null, null, null, null, 0);
+            this.id = id;
+        }
+        @Override
+        public void update(IWrappedPE<PE, SE> newWPE, IWrappedSE<PE, SE> newWSE, int newLen) {
+            throw new UnsupportedOperationException();
+        }
+        @Override
+        public int getLen() {
+            return wpeLens.get(id);
+        }
+        @Override
+        public Inst getInst() {
+            return wpeTable.getKey(id);
+        }
+        @Override
+        public PE getPE() {
+            return wpeTable.get(id);
+        }
+        @Override
+        public IWrappedPE<PE, SE> getWPE() {
+            int predId = wpePredPEs.get(id);
+            return (predId < 0) ? null : new WrappedPEView(predId);
+        }
+        @Override
+        public IWrappedSE<PE, SE> getWSE() {
+            int predId = wpePredSEs.get(id);
+            return (predId < 0) ? null : new WrappedSEView(predId);
+        }
+    }
+
+    // read-only view of the provenance of the summary edge copy of the given id in wseTable
+    private class WrappedSEView extends WrappedSE<PE, SE> {
+        private final int id;
+        WrappedSEView(int id) {
+            super(null, null, 0);
+            this.id = id;
+        }
+        @Override
+        public void update(IWrappedPE<PE, SE> newWPE, int newLen) {
+            throw new UnsupportedOperationException();
+        }
+        @Override
+        public int getLen() {
+            return wseLens.get(id);
+        }
+        @Override
+        public SE getSE() {
+            return wseTable.get(id);
+        }
+        @Override
+        public IWrappedPE<PE, SE> getWPE() {
+            return new WrappedPEView(wsePredPEs.get(id));
+        }
     }
 }
 
@@ -0,0 +1,289 @@
+package chord.project.analyses.rhs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import joeq.Class.jq_Method;
+import joeq.Compiler.Quad.BasicBlock;
+import joeq.Compiler.Quad.Quad;
+
+import chord.analyses.alias.ICICG;
+import chord.project.Messages;
+import chord.util.Utils;
+
+/**
+ * Persistent store of the summary edges of methods computed by an RHS analysis, shared
+ * across runs of the analysis, even on different programs.  It is used if property
+ * chord.rhs.summ.dir is set, trace generation is disabled, and the analysis provides a
+ * configuration (see {@link RHSAnalysis#getSummaryConfig()}) and an encoding of its
+ * summary edges (see {@link RHSAnalysis#getSummaryCodec()}).
+ * <p>
+ * At the start of each pass, the stored summary edges are loaded, and a call site does
+ * not descend into a target method if a loaded summary edge of that method applies to
+ * the path edge into the call site.  At the end of each pass that does not time out, the
+ * summary edges are stored.
+ * <p>
+ * The summary edges of a method are stored in a file keyed by a hash of:
+ * <ul>
+ * <li> the name and class of the analysis and the configuration on which its summary
+ * edges depend (see {@link RHSAnalysis#getSummaryConfig()}), </li>
+ * <li> the signature and code of the method, and </li>
+ * <li> the signatures and code of all methods transitively called by it in the call
+ * graph of the analysis. </li>
+ * </ul>
+ * Only the summary edges of methods all of whose transitive callees (including itself)
+ * are stable in the current pass (see {@link RHSAnalysis#isSummaryStable(jq_Method)})
+ * are stored and loaded.
+ * <p>
+ * Entries are not versioned with the code of the analysis: the store must be cleared
+ * whenever the analysis changes.  Concurrent runs may share a store since each entry is
+ * written to a temporary file that is then renamed.
+ */
+public class SummaryStore<PE extends IEdge, SE extends IEdge> {
+    private static final String CORRUPT_ENTRY =
+        "WARN: SummaryStore: Ignoring corrupt entry '%s': %s.";
+    private static final int MAGIC = 0x52485353;
+    private static final String SUFFIX = ".se";
+    private final RHSAnalysis<PE, SE> analysis;
+    private final ISummaryCodec<SE> codec;
+    private final ICICG cicg;
+    private final File dir;
+    // SCCs of the call graph, callees first
+    private List<Set<jq_Method>> sccs;
+    // hash of the code of each method and of all methods it transitively calls
+    private Map<jq_Method, String> methodToCodeHash;
+    // key of each method whose summary edges may be stored in the current pass
+    private Map<jq_Method, String> methodToKey;
+    private int numLoaded, numSaved;
+
+    public SummaryStore(RHSAnalysis<PE, SE> analysis, ISummaryCodec<SE> codec, ICICG cicg,
+            String dirName) {
+        this.analysis = analysis;
+        this.codec = codec;
+        this.cicg = cicg;
+        this.dir = new File(dirName);
+        Utils.mkdirs(dir);
+    }
+
+    /**
+     * Computes the keys of methods whose summary edges may be stored in a new pass.
+     * The call graph is queried, so this method must not be called concurrently with
+     * other uses of it.
+     *
+     * @param config The configuration of the analysis in the new pass.
+     */
+    public void initPass(String config) {
+        if (sccs == null)
+            computeCodeHashes();
+        methodToKey = new HashMap<jq_Method, String>();
+        Map<jq_Method, Boolean> isStable = new HashMap<jq_Method, Boolean>();
+        String prefix = analysis.getName() + " " + analysis.getClass().getName() + " " +
+            analysis.mergeKind + " " + config + " ";
+        for (Set<jq_Method> scc : sccs) {
+            boolean stable = true;
+            for (jq_Method m : scc) {
+                if (!analysis.isSummaryStable(m)) {
+                    stable = false;
+                    break;
+                }
+                for (jq_Method m2 : cicg.getSuccs(m)) {
+                    if (!scc.contains(m2) && !isStable.get(m2)) {
+                        stable = false;
+                        break;
+                    }
+                }
+                if (!stable)
+                    break;
+            }
+            for (jq_Method m : scc) {
+                isStable.put(m, stable);
+                if (stable) {
+                    MessageDigest md = newDigest();
+                    update(md, prefix + methodToCodeHash.get(m));
+                    methodToKey.put(m, toHex(md.digest()));
+                }
+            }
+        }
+    }
+
+    // hash each method together with all methods it transitively calls, callees first
+    private void computeCodeHashes() {
+        sccs = analysis.getCalleesFirstSCCs();
+        methodToCodeHash = new HashMap<jq_Method, String>();
+        for (Set<jq_Method> scc : sccs) {
+            List<String> hashes = new ArrayList<String>();
+            for (jq_Method m : scc) {
+                hashes.add(getCodeHash(m));
+                for (jq_Method m2 : cicg.getSuccs(m)) {
+                    if (!scc.contains(m2)) {
+                        String hash = methodToCodeHash.get(m2);
+                        if (hash == null)
+                            throw new RuntimeException("Callee " + m2 + " of " + m + " not hashed.");
+                        hashes.add(hash);
+                    }
+                }
+            }
+            Collections.sort(hashes);
+            MessageDigest md = newDigest();
+            for (String hash : hashes)
+                update(md, hash);
+            String sccHash = toHex(md.digest());
+            for (jq_Method m : scc) {
+                md = newDigest();
+                update(md, sccHash + " " + m);
+                methodToCodeHash.put(m, toHex(md.digest()));
+            }
+        }
+    }
+
+    // hash of the signature and code of the given method; its quads are hashed besides its
+    // bytecode since the latter refers to the constant pool of the declaring class
+    private static String getCodeHash(jq_Method m) {
+        MessageDigest md = newDigest();
+        update(md, m.toString());
+        if (!m.isAbstract()) {
+            byte[] bytecode = m.getBytecode();
+            if (bytecode != null)
+                md.update(bytecode);
+            for (BasicBlock bb : m.getCFG().reversePostOrder()) {
+                for (Quad q : bb.getQuads()) {
+                    // drop the id of the quad, which depends on the program
+                    String s = q.toString();
+                    update(md, s.substring(s.indexOf(':') + 1));
+                }
+            }
+        }
+        return toHex(md.digest());
+    }
+
+    /**
+     * Loads the stored summary edges of all methods whose keys were computed by the last
+     * call to {@link #initPass(String)}.
+     *
+     * @return A map from each method having stored summary edges to those summary edges.
+     */
+    public Map<jq_Method, List<SE>> load() {
+        Map<jq_Method, List<SE>> map = new HashMap<jq_Method, List<SE>>();
+        for (Map.Entry<jq_Method, String> e : methodToKey.entrySet()) {
+            jq_Method m = e.getKey();
+            File file = new File(dir, e.getValue() + SUFFIX);
+            if (!file.exists())
+                continue;
+            List<SE> seList = load(m, file);
+            if (seList != null && !seList.isEmpty()) {
+                map.put(m, seList);
+                numLoaded++;
+            }
+        }
+        return map;
+    }
+
+    // summary edges of method m stored in the given file that can be resolved in the current
+    // program, or null if the file cannot be read
+    private List<SE> load(jq_Method m, File file) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC)
+                    throw new IOException("bad magic number");
+                int n = in.readInt();
+                List<SE> seList = new ArrayList<SE>(n);
+                for (int i = 0; i < n; i++) {
+                    SE se = codec.read(m, in);
+                    if (se != null)
+                        seList.add(se);
+                }
+                return seList;
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            Messages.log(CORRUPT_ENTRY, file, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores the given summary edges of all methods whose keys were computed by the last
+     * call to {@link #initPass(String)}.
+     *
+     * @param summEdges A map from methods to their summary edges at the end of a pass.
+     */
+    public void save(Map<jq_Method, Set<SE>> summEdges) {
+        for (Map.Entry<jq_Method, Set<SE>> e : summEdges.entrySet()) {
+            jq_Method m = e.getKey();
+            String key = methodToKey.get(m);
+            if (key == null)
+                continue;
+            Set<SE> seSet = e.getValue();
+            File file = new File(dir, key + SUFFIX);
+            try {
+                File tmpFile = File.createTempFile(key, ".tmp", dir);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+                try {
+                    out.writeInt(MAGIC);
+                    out.writeInt(seSet.size());
+                    for (SE se : seSet)
+                        codec.write(se, out);
+                } finally {
+                    out.close();
+                }
+                if (!tmpFile.renameTo(file)) {
+                    file.delete();
+                    if (!tmpFile.renameTo(file)) {
+                        tmpFile.delete();
+                        throw new IOException("cannot rename " + tmpFile);
+                    }
+                }
+                numSaved++;
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+
+    public int getNumLoaded() {
+        return numLoaded;
+    }
+
+    public int getNumSaved() {
+        return numSaved;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static void update(MessageDigest md, String s) {
+        try {
+            md.update(s.getBytes("UTF-8"));
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return sb.toString();
+    }
+}
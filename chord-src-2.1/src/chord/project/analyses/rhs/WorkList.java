@@ -0,0 +1,255 @@
+package chord.project.analyses.rhs;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import joeq.Class.jq_Method;
+import joeq.Compiler.Quad.Inst;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import chord.program.Loc;
+import chord.util.tuple.object.Pair;
+
+/**
+ * Work list of path edges of an RHS analysis, ordered as per property chord.rhs.order
+ * (see {@link OrderKind}): bfs and dfs process the last added path edge first, bfs
+ * keeping the trailing path edges of the same method in reverse post-order; rpo,
+ * callee-first and summary-first process the path edges of one method at a time in
+ * reverse post-order, picking the first method in a callers-first (rpo) or callees-first
+ * order of the call graph, and summary-first moreover defers path edges derived from
+ * summary edges until no other path edge is left.
+ * <p>
+ * A path edge is added to the work list only if it is not already in it at the same
+ * location; path edges are mutable, and are compared by identity.
+ */
+public abstract class WorkList<PE extends IEdge> {
+    /**
+     * Adds a path edge that is not in this work list at the given location.
+     *
+     * @param loc The location into which the path edge is.
+     * @param pe The path edge.
+     * @param fromSE Whether the path edge was derived from a summary edge at a call site.
+     */
+    public abstract void add(Loc loc, PE pe, boolean fromSE);
+
+    public abstract boolean contains(PE pe);
+
+    /**
+     * Removes the next path edge to be processed from this work list, which must not be
+     * empty.
+     */
+    public abstract Pair<Loc, PE> remove();
+
+    public abstract boolean isEmpty();
+
+    public abstract int size();
+
+    public abstract void clear();
+
+    /**
+     * Creates an empty work list.
+     *
+     * @param orderKind The order of the work list.
+     * @param quadToRPOid The index of each quad and entry or exit basic block in the reverse
+     * post-order of the control-flow graph of its method.
+     * @param methodToRank The rank of each method in the order of the call graph in which
+     * its path edges are processed (callers first for order RPO and callees first for
+     * orders CALLEE_FIRST and SUMMARY_FIRST); not needed by orders BFS and DFS.
+     */
+    public static <PE extends IEdge> WorkList<PE> newWorkList(OrderKind orderKind,
+            TObjectIntHashMap<Inst> quadToRPOid, TObjectIntHashMap<jq_Method> methodToRank) {
+        switch (orderKind) {
+        case BFS:
+        case DFS:
+            return new ListWorkList<PE>(orderKind == OrderKind.BFS, quadToRPOid);
+        default:
+            return new PriorityWorkList<PE>(orderKind, quadToRPOid, methodToRank);
+        }
+    }
+
+    /**
+     * Work list processing the last added path edge first.  If it is breadth-first, a path
+     * edge is instead added before the trailing path edges of the same method that are
+     * later in its reverse post-order.
+     */
+    private static class ListWorkList<PE extends IEdge> extends WorkList<PE> {
+        private final boolean isBFS;
+        private final TObjectIntHashMap<Inst> quadToRPOid;
+        private final List<Pair<Loc, PE>> list = new ArrayList<Pair<Loc, PE>>();
+        ListWorkList(boolean isBFS, TObjectIntHashMap<Inst> quadToRPOid) {
+            this.isBFS = isBFS;
+            this.quadToRPOid = quadToRPOid;
+        }
+        public void add(Loc loc, PE pe, boolean fromSE) {
+            Inst i = loc.i;
+            int j = list.size() - 1;
+            if (isBFS) {
+                jq_Method m = i.getMethod();
+                int rpoId = quadToRPOid.get(i);
+                for (; j >= 0; j--) {
+                    Inst i2 = list.get(j).val0.i;
+                    if (i2.getMethod() != m) break;
+                    int rpoId2 = quadToRPOid.get(i2);
+                    if (rpoId2 > rpoId)
+                        break;
+                }
+            }
+            list.add(j + 1, new Pair<Loc, PE>(loc, pe));
+        }
+        public boolean contains(PE pe) {
+            for (int j = list.size() - 1; j >= 0; j--) {
+                if (list.get(j).val1 == pe)
+                    return true;
+            }
+            return false;
+        }
+        public Pair<Loc, PE> remove() {
+            return list.remove(list.size() - 1);
+        }
+        public boolean isEmpty() {
+            return list.isEmpty();
+        }
+        public int size() {
+            return list.size();
+        }
+        public void clear() {
+            list.clear();
+        }
+        public String toString() {
+            return list.toString();
+        }
+    }
+
+    /**
+     * Work list processing the path edges of one method at a time, in reverse post-order
+     * of the method (the last added first among path edges into the same location).
+     * <p>
+     * The method processed is the one of least rank: for order RPO, the first one in a
+     * reverse post-order of the call graph, in which callers come first, and for orders
+     * CALLEE_FIRST and SUMMARY_FIRST, the first one in a topological order of the strongly
+     * connected components of the call graph in which callees come first.  For order SUMMARY_FIRST, moreover,
+     * path edges derived from summary edges are deferred until no other path edge is left.
+     */
+    private static class PriorityWorkList<PE extends IEdge> extends WorkList<PE> {
+        private class Entry {
+            final Loc loc;
+            final PE pe;
+            final int rpoId;
+            final long time;
+            Entry(Loc loc, PE pe, int rpoId, long time) {
+                this.loc = loc;
+                this.pe = pe;
+                this.rpoId = rpoId;
+                this.time = time;
+            }
+        }
+        private class MethodQueue {
+            final PriorityQueue<Entry> ready = new PriorityQueue<Entry>(11, entryComparator);
+            final PriorityQueue<Entry> deferred = new PriorityQueue<Entry>(11, entryComparator);
+            // key of this method in readyMethods and deferredMethods
+            int key;
+        }
+        private final Comparator<Entry> entryComparator = new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2) {
+                if (e1.rpoId != e2.rpoId)
+                    return e1.rpoId < e2.rpoId ? -1 : 1;
+                return e1.time > e2.time ? -1 : (e1.time == e2.time ? 0 : 1);
+            }
+        };
+        private final OrderKind orderKind;
+        private final TObjectIntHashMap<Inst> quadToRPOid;
+        private final TObjectIntHashMap<jq_Method> methodToRank;
+        private final Map<jq_Method, MethodQueue> methodToQueue = new HashMap<jq_Method, MethodQueue>();
+        // methods having ready or deferred path edges, keyed by the order of processing them
+        private final TreeMap<Integer, MethodQueue> readyMethods = new TreeMap<Integer, MethodQueue>();
+        private final TreeMap<Integer, MethodQueue> deferredMethods = new TreeMap<Integer, MethodQueue>();
+        // number of entries of each path edge; a path edge may be shared by several locations
+        // (e.g. a singleton path edge of the client), so it may have several entries
+        private final IdentityHashMap<PE, Integer> peToCount = new IdentityHashMap<PE, Integer>();
+        private int size;
+        private long time;
+        // number of methods without rank, which are keyed after all ranked methods
+        private int numUnranked;
+        PriorityWorkList(OrderKind orderKind, TObjectIntHashMap<Inst> quadToRPOid,
+                TObjectIntHashMap<jq_Method> methodToRank) {
+            this.orderKind = orderKind;
+            this.quadToRPOid = quadToRPOid;
+            this.methodToRank = methodToRank;
+        }
+        public void add(Loc loc, PE pe, boolean fromSE) {
+            Inst i = loc.i;
+            jq_Method m = i.getMethod();
+            MethodQueue mq = methodToQueue.get(m);
+            if (mq == null) {
+                mq = new MethodQueue();
+                // keys must be distinct as they index readyMethods and deferredMethods
+                mq.key = methodToRank.containsKey(m) ? methodToRank.get(m) :
+                    Integer.MAX_VALUE - numUnranked++;
+                methodToQueue.put(m, mq);
+            }
+            Entry e = new Entry(loc, pe, quadToRPOid.get(i), time++);
+            Integer count = peToCount.get(pe);
+            peToCount.put(pe, (count == null) ? 1 : count + 1);
+            size++;
+            if (fromSE && orderKind == OrderKind.SUMMARY_FIRST) {
+                if (mq.deferred.isEmpty())
+                    deferredMethods.put(mq.key, mq);
+                mq.deferred.add(e);
+                return;
+            }
+            if (mq.ready.isEmpty())
+                readyMethods.put(mq.key, mq);
+            mq.ready.add(e);
+        }
+        public boolean contains(PE pe) {
+            return peToCount.containsKey(pe);
+        }
+        public Pair<Loc, PE> remove() {
+            boolean isReady = !readyMethods.isEmpty();
+            TreeMap<Integer, MethodQueue> methods = isReady ? readyMethods : deferredMethods;
+            Integer key = methods.firstKey();
+            MethodQueue mq = methods.get(key);
+            PriorityQueue<Entry> queue = isReady ? mq.ready : mq.deferred;
+            Entry e = queue.remove();
+            if (queue.isEmpty())
+                methods.remove(key);
+            int count = peToCount.get(e.pe);
+            if (count == 1)
+                peToCount.remove(e.pe);
+            else
+                peToCount.put(e.pe, count - 1);
+            size--;
+            return new Pair<Loc, PE>(e.loc, e.pe);
+        }
+        public boolean isEmpty() {
+            return size == 0;
+        }
+        public int size() {
+            return size;
+        }
+        public void clear() {
+            methodToQueue.clear();
+            numUnranked = 0;
+            readyMethods.clear();
+            deferredMethods.clear();
+            peToCount.clear();
+            size = 0;
+        }
+        public String toString() {
+            List<Pair<Loc, PE>> list = new ArrayList<Pair<Loc, PE>>(size);
+            for (MethodQueue mq : methodToQueue.values()) {
+                for (Entry e : mq.ready)
+                    list.add(new Pair<Loc, PE>(e.loc, e.pe));
+                for (Entry e : mq.deferred)
+                    list.add(new Pair<Loc, PE>(e.loc, e.pe));
+            }
+            return list.toString();
+        }
+    }
+}
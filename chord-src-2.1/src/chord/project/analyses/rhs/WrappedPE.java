@@ -3,6 +3,14 @@ package chord.project.analyses.rhs;
 import chord.util.Utils;
 import joeq.Compiler.Quad.Inst;
 
+/**
+ * Provenance of a path edge into an instruction, for traces of RHS analyses.
+ * <p>
+ * {@link RHSAnalysis} keeps provenance in compact tables, and provides it through
+ * read-only instances of subclasses overriding the accessors of this class (see
+ * {@link RHSAnalysis#getWrappedPE(Inst, IEdge)}); clients may also create instances of
+ * this class holding provenance of their own.
+ */
 public class WrappedPE<PE extends IEdge, SE extends IEdge> implements IWrappedPE<PE, SE> {
     private final Inst i;
     private final PE pe;
@@ -44,6 +52,8 @@ public class WrappedPE<PE extends IEdge, SE extends IEdge> implements IWrappedPE
     public int hashCode() {
         final int prime = 31;
         int result = 1;
+        Inst i = getInst();
+        PE pe = getPE();
         result = prime * result + ((i == null) ? 0 : i.hashCode());
         result = prime * result + ((pe == null) ? 0 : pe.hashCode());
         return result;
@@ -53,12 +63,12 @@ public class WrappedPE<PE extends IEdge, SE extends IEdge> implements IWrappedPE
     public boolean equals(Object obj) {
         if (this == obj) return true;
         if (!(obj instanceof WrappedPE)) return false;
-        WrappedPE that = (WrappedPE) obj;
-        return this.i == that.i && Utils.areEqual(this.pe, that.pe);
+        WrappedPE<?, ?> that = (WrappedPE<?, ?>) obj;
+        return this.getInst() == that.getInst() && Utils.areEqual(this.getPE(), that.getPE());
     }
 
     @Override
     public String toString() {
-        return "WrappedEdge [Inst=" + i + ", PE="+pe+"]";
+        return "WrappedEdge [Inst=" + getInst() + ", PE=" + getPE() + "]";
     }
 }
@@ -2,6 +2,14 @@ package chord.project.analyses.rhs;
 
 import chord.util.Utils;
 
+/**
+ * Provenance of a summary edge, for traces of RHS analyses.
+ * <p>
+ * {@link RHSAnalysis} keeps provenance in compact tables, and provides it through
+ * read-only instances of subclasses overriding the accessors of this class (see
+ * {@link WrappedPE}); clients may also create instances of this class holding
+ * provenance of their own.
+ */
 public class WrappedSE<PE extends IEdge, SE extends IEdge> implements IWrappedSE<PE, SE> {
     private final SE se;
     private IWrappedPE<PE, SE> wpe;
@@ -32,6 +40,7 @@ public class WrappedSE<PE extends IEdge, SE extends IEdge> implements IWrappedSE
     public int hashCode() {
         final int prime = 31;
         int result = 1;
+        SE se = getSE();
         result = prime * result + ((se == null) ? 0 : se.hashCode());
         return result;
     }
@@ -40,11 +49,12 @@ public class WrappedSE<PE extends IEdge, SE extends IEdge> implements IWrappedSE
     public boolean equals(Object obj) {
         if (this == obj) return true;
         if (!(obj instanceof WrappedSE)) return false;
-        WrappedSE that = (WrappedSE) obj;
-        return Utils.areEqual(this.se, that.se);
+        WrappedSE<?, ?> that = (WrappedSE<?, ?>) obj;
+        return Utils.areEqual(this.getSE(), that.getSE());
     }
+
     @Override
     public String toString() {
-        return "WrappedSE [se=" + se + "]";
+        return "WrappedSE [se=" + getSE() + "]";
     }
 }
@@ -0,0 +1,88 @@
+package chord.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Utility for processing a given number of work items by a given number of threads.
+ * <p>
+ * Each thread repeatedly claims the next unclaimed work item, in increasing order of
+ * items, and processes it.  Once processing an item fails, no further items are
+ * claimed, and the first failure is rethrown on the calling thread after all threads
+ * have finished.
+ */
+public final class ParallelRunner {
+    /**
+     * A procedure processing a work item.
+     *
+     * @param <X> The type of checked exceptions thrown by the procedure, if any.
+     */
+    public interface Task<X extends Exception> {
+        /**
+         * Processes the given work item.
+         *
+         * @param worker The index, in the range [0..numThreads-1], of the thread processing the item.
+         * Items processed by the same thread are processed sequentially.
+         * @param item The index, in the range [0..numItems-1], of the item.
+         */
+        void run(int worker, int item) throws X;
+    }
+
+    private ParallelRunner() { }
+
+    /**
+     * Processes work items 0, 1, ..., numItems-1 by the given task on the given number of
+     * threads, and returns after all threads have finished.  If there is a single thread or
+     * a single item, the items are processed on the calling thread.
+     *
+     * @param name The prefix of the names of the threads.
+     * @param numThreads The number of threads; at most numItems threads are used.
+     * @param numItems The number of work items.
+     * @param task The procedure processing each work item.
+     *
+     * @throws X The first checked exception thrown by the task, if any.  Unchecked exceptions
+     * and errors thrown by the task are rethrown as is.
+     */
+    @SuppressWarnings("unchecked")
+    public static <X extends Exception> void run(String name, int numThreads, final int numItems,
+            final Task<X> task) throws X {
+        int n = Math.min(numThreads, numItems);
+        if (n <= 1) {
+            for (int i = 0; i < numItems; i++)
+                task.run(0, i);
+            return;
+        }
+        final AtomicInteger nextItem = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[n];
+        for (int j = 0; j < n; j++) {
+            final int worker = j;
+            threads[j] = new Thread(name + "-" + j) {
+                public void run() {
+                    int i;
+                    while (failure.get() == null && (i = nextItem.getAndIncrement()) < numItems) {
+                        try {
+                            task.run(worker, i);
+                        } catch (Throwable ex) {
+                            failure.compareAndSet(null, ex);
+                        }
+                    }
+                }
+            };
+            threads[j].start();
+        }
+        try {
+            for (Thread t : threads)
+                t.join();
+        } catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+        }
+        Throwable ex = failure.get();
+        if (ex instanceof RuntimeException)
+            throw (RuntimeException) ex;
+        if (ex instanceof Error)
+            throw (Error) ex;
+        if (ex != null)
+            throw (X) ex;
+    }
+}
@@ -22,13 +22,18 @@ public final class ProcessExecutor {
     /**
      * Executes a given system command specified as a string in a separate process.
      * <p>
-     * The invoking process waits till the invoked process finishes.
+     * The invoking process waits till the invoked process finishes.  The invoked process
+     * is started only once {@link ProcessScheduler} admits it.
      * 
      * @param cmdarray A system command to be executed.
      * 
      * @return The exit value of the invoked process.  By convention, 0 indicates normal termination.
      */
     public static final int execute(String[] cmdarray, String[] envp, File dir, int timeout) throws Throwable {
+        return ProcessScheduler.g().execute(cmdarray, envp, dir, timeout);
+    }
+
+    static final int executeNow(String[] cmdarray, String[] envp, File dir, int timeout) throws Throwable {
         Process proc = executeAsynch(cmdarray, envp, dir);
         TimerTask killOnDelay = null;
         if (timeout > 0) {
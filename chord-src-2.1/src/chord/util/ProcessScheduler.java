@@ -0,0 +1,251 @@
+package chord.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Scheduler of the child processes executed by {@link ProcessExecutor}.
+ * <p>
+ * It caps the total memory and the total number of processors reserved by child processes
+ * running concurrently, and makes a process that would exceed either cap wait until enough
+ * running processes finish.  A process is always admitted if no other process is running,
+ * even if it alone exceeds a cap.
+ * <p>
+ * A child process reserves one processor, and an amount of memory given by the
+ * <tt>-Xmx</tt> option in its command if it is a JVM, or else no memory.  The caps are
+ * specified by system properties <tt>chord.proc.max.mem</tt>, in the format of the
+ * <tt>-Xmx</tt> option (e.g., <tt>4096m</tt> or <tt>8g</tt>), and
+ * <tt>chord.proc.max.cpus</tt>.  They default to the physical memory of the machine minus
+ * the maximum heap size of the current JVM, and to the number of processors of the machine.
+ * <p>
+ * It also measures the resource usage of each child process: its wall-clock time, and on
+ * Linux, its CPU time, and reports it to a {@link Listener}, if any.  The CPU time is that
+ * of all child processes that terminated while it ran, and is thus approximate if other
+ * child processes finish concurrently.
+ * <p>
+ * Note: Do not refer to any properties defined in class chord.project.Config here; this
+ * class is also used by chord.project.Boot.
+ */
+public class ProcessScheduler {
+    /**
+     * Resource usage of a finished child process.
+     */
+    public static class Usage {
+        public final String name;
+        public final long reservedMem;
+        // time at which the process started, in milliseconds since the epoch
+        public final long startTime;
+        // time spent waiting for admission, in milliseconds
+        public final long waitTime;
+        // wall-clock and CPU times in milliseconds; CPU time is -1 if unavailable
+        public final long wallTime;
+        public final long cpuTime;
+        Usage(String name, long reservedMem, long startTime, long waitTime, long wallTime, long cpuTime) {
+            this.name = name;
+            this.reservedMem = reservedMem;
+            this.startTime = startTime;
+            this.waitTime = waitTime;
+            this.wallTime = wallTime;
+            this.cpuTime = cpuTime;
+        }
+    }
+
+    /**
+     * Listener notified of the resource usage of each finished child process.
+     */
+    public interface Listener {
+        public void processDone(Usage usage);
+    }
+
+    // clock ticks per second in /proc; its value on all supported Linux platforms
+    private static final int CLOCK_TICKS = 100;
+    private static ProcessScheduler scheduler;
+    private final long maxMem;
+    private final int maxCpus;
+    private long usedMem;
+    private int usedCpus;
+    private int numRunning;
+    private Listener listener;
+
+    private ProcessScheduler(long maxMem, int maxCpus) {
+        this.maxMem = maxMem;
+        this.maxCpus = maxCpus;
+    }
+
+    public static synchronized ProcessScheduler g() {
+        if (scheduler == null) {
+            String mem = System.getProperty("chord.proc.max.mem");
+            long maxMem = (mem != null) ? parseMem(mem) : getDefaultMaxMem();
+            int maxCpus = Integer.getInteger("chord.proc.max.cpus",
+                Runtime.getRuntime().availableProcessors());
+            scheduler = new ProcessScheduler(maxMem, Math.max(maxCpus, 1));
+        }
+        return scheduler;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Executes a command in a separate process once resources are available for it, and
+     * waits till the process finishes.
+     *
+     * @param cmdarray A system command to be executed.
+     * @param envp Environment variables of the process, or null to inherit them.
+     * @param dir Working directory of the process, or null to inherit it.
+     * @param timeout Time in milliseconds after which the process is killed, or a
+     * non-positive value if it must not be killed.
+     *
+     * @return The exit value of the process.
+     */
+    public int execute(String[] cmdarray, String[] envp, File dir, int timeout) throws Throwable {
+        long mem = getReservedMem(cmdarray);
+        long waitStart = System.currentTimeMillis();
+        acquire(mem);
+        long start = System.currentTimeMillis();
+        long cpuStart = getChildCpuTime();
+        try {
+            return ProcessExecutor.executeNow(cmdarray, envp, dir, timeout);
+        } finally {
+            long end = System.currentTimeMillis();
+            long cpuEnd = getChildCpuTime();
+            release(mem);
+            Listener l;
+            synchronized (this) {
+                l = listener;
+            }
+            if (l != null) {
+                long cpuTime = (cpuStart < 0 || cpuEnd < 0) ? -1 : cpuEnd - cpuStart;
+                l.processDone(new Usage(getName(cmdarray), mem, start, start - waitStart,
+                    end - start, cpuTime));
+            }
+        }
+    }
+
+    private synchronized void acquire(long mem) throws InterruptedException {
+        while (numRunning > 0 && (mem > maxMem - usedMem || usedCpus + 1 > maxCpus))
+            wait();
+        usedMem += mem;
+        usedCpus++;
+        numRunning++;
+    }
+
+    private synchronized void release(long mem) {
+        usedMem -= mem;
+        usedCpus--;
+        numRunning--;
+        notifyAll();
+    }
+
+    // memory reserved by the given command: its maximum heap size if it is a JVM
+    private static long getReservedMem(String[] cmdarray) {
+        if (cmdarray.length == 0 || !isJava(cmdarray[0]))
+            return 0;
+        long mem = -1;
+        for (String s : cmdarray) {
+            if (s.startsWith("-Xmx"))
+                mem = parseMem(s.substring(4));
+        }
+        // JVMs default to a maximum heap size of a quarter of the physical memory
+        return (mem >= 0) ? mem : getPhysicalMem() / 4;
+    }
+
+    private static boolean isJava(String cmd) {
+        return cmd.equals("java") || cmd.endsWith("/java") || cmd.endsWith("\\java") ||
+            cmd.endsWith("java.exe");
+    }
+
+    // name of the main class of a JVM followed by its first argument, if any, or else the
+    // name of the command
+    private static String getName(String[] cmdarray) {
+        if (cmdarray.length == 0)
+            return "";
+        if (isJava(cmdarray[0])) {
+            for (int i = 1; i < cmdarray.length; i++) {
+                String s = cmdarray[i];
+                if (s.equals("-cp") || s.equals("-classpath")) {
+                    i++;
+                    continue;
+                }
+                if (!s.startsWith("-"))
+                    return (i + 1 < cmdarray.length) ? s + " " + cmdarray[i + 1] : s;
+            }
+        }
+        return cmdarray[0];
+    }
+
+    /**
+     * Parses a memory size in the format of the <tt>-Xmx</tt> option of JVMs.
+     *
+     * @return The given memory size in bytes.
+     */
+    public static long parseMem(String s) {
+        s = s.trim().toLowerCase();
+        long unit = 1;
+        char c = s.length() > 0 ? s.charAt(s.length() - 1) : ' ';
+        if (c == 'k')
+            unit = 1L << 10;
+        else if (c == 'm')
+            unit = 1L << 20;
+        else if (c == 'g')
+            unit = 1L << 30;
+        else if (c == 't')
+            unit = 1L << 40;
+        if (unit != 1)
+            s = s.substring(0, s.length() - 1);
+        try {
+            return Long.parseLong(s) * unit;
+        } catch (NumberFormatException ex) {
+            throw new RuntimeException("Invalid memory size '" + s + "'");
+        }
+    }
+
+    private static long getDefaultMaxMem() {
+        long mem = getPhysicalMem() - Runtime.getRuntime().maxMemory();
+        return mem > 0 ? mem : Long.MAX_VALUE;
+    }
+
+    // physical memory in bytes, or Long.MAX_VALUE if unavailable; it is read as an attribute
+    // of the operating system MXBean since the JDK-specific getter of it is deprecated
+    private static long getPhysicalMem() {
+        try {
+            ObjectName name = new ObjectName(ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME);
+            Object mem = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "TotalPhysicalMemorySize");
+            if (mem instanceof Long && (Long) mem > 0)
+                return (Long) mem;
+        } catch (JMException ex) {
+            // not provided by this JVM
+        }
+        return Long.MAX_VALUE;
+    }
+
+    // CPU time in milliseconds of all terminated child processes of this process, or -1
+    // if unavailable; on Linux, it is read from fields cutime and cstime of /proc/self/stat
+    private static long getChildCpuTime() {
+        try {
+            BufferedReader in = new BufferedReader(new FileReader("/proc/self/stat"));
+            String s;
+            try {
+                s = in.readLine();
+            } finally {
+                in.close();
+            }
+            // fields following the command name, which is enclosed in parentheses,
+            // start with the third field
+            String[] a = s.substring(s.lastIndexOf(')') + 2).split(" ");
+            long ticks = Long.parseLong(a[13]) + Long.parseLong(a[14]);
+            return ticks * 1000 / CLOCK_TICKS;
+        } catch (IOException ex) {
+            return -1;
+        } catch (RuntimeException ex) {
+            return -1;
+        }
+    }
+}
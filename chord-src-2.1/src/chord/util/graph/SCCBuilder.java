@@ -59,7 +59,7 @@ public class SCCBuilder<Node> {
             Node w;
             do {
                 w = stk.remove(n);
-                idxStk.remove(n);
+                idxStk.removeAt(n);
                 visitor.visit(w);
                 n--;
             } while (w != v);